@@ -0,0 +1,66 @@
+package com.microservicios.login.bench;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservicios.login.dto.AirtableMapper;
+import com.microservicios.login.dto.AirtableUserResponse;
+import coms.dto.UserDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Respuesta de user?email= del microservicio de usuarios: JSON → AirtableUserResponse → UserDTO.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AirtableUserBenchmark {
+
+    // Un registro real trae muchos campos que no usamos: se ignoran al deserializar
+    private static final String RESPONSE = "{\"id\":\"recA1b2C3d4E5f6G7\",\"createdTime\":\"2024-03-01T12:00:00.000Z\","
+            + "\"fields\":{\"Nombre\":\"Ana\",\"Apellido\":\"Pérez\",\"Correo Moby\":\"ana@mobydigital.com\","
+            + "\"Foto de Perfil URL\":\"https://lh3.googleusercontent.com/a/ACg8ocJ\",\"Legajo\":1234,"
+            + "\"Area\":\"Desarrollo\",\"Seniority\":\"Semi Senior\",\"Activo\":true,"
+            + "\"Skills\":[\"Java\",\"Spring\",\"Redis\"],\"Fecha de ingreso\":\"2021-06-14\"}}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final AirtableMapper airtableMapper = new AirtableMapper();
+    private byte[] body;
+    private AirtableUserResponse response;
+
+    @Setup
+    public void setUp() throws Exception {
+        body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+        response = objectMapper.readValue(body, AirtableUserResponse.class);
+    }
+
+    @Benchmark
+    public AirtableUserResponse deserialize() throws Exception {
+        return objectMapper.readValue(body, AirtableUserResponse.class);
+    }
+
+    @Benchmark
+    public UserDTO map() {
+        return airtableMapper.fromAirtable(response);
+    }
+
+    @Benchmark
+    public UserDTO deserializeAndMap() throws Exception {
+        return airtableMapper.fromAirtable(objectMapper.readValue(body, AirtableUserResponse.class));
+    }
+}
@@ -0,0 +1,142 @@
+package com.microservicios.login.bench;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.json.webtoken.JsonWebSignature;
+import com.microservicios.login.google.GoogleSigningKeys;
+import com.microservicios.login.google.GoogleTokenVerifier;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verificación de un ID token RS256 con las claves ya cacheadas (camino caliente del callback).
+ * El JWKS lo sirve un HttpServer local; sólo se descarga en el setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GoogleTokenVerifierBenchmark {
+
+    private static final String CLIENT_ID = "bench-client";
+    private static final String KID = "k1";
+
+    private HttpServer jwksServer;
+    private GoogleSigningKeys signingKeys;
+    private GoogleTokenVerifier verifier;
+    private GoogleIdToken parsed;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        byte[] jwks = jwks((RSAPublicKey) keyPair.getPublic()).getBytes(StandardCharsets.UTF_8);
+        jwksServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        jwksServer.createContext("/certs", exchange -> {
+            exchange.getResponseHeaders().add("Cache-Control", "public, max-age=86400");
+            exchange.sendResponseHeaders(200, jwks.length);
+            exchange.getResponseBody().write(jwks);
+            exchange.close();
+        });
+        jwksServer.start();
+
+        signingKeys = new GoogleSigningKeys(new NetHttpTransport(),
+                "http://127.0.0.1:" + jwksServer.getAddress().getPort() + "/certs",
+                Duration.ofMinutes(5), Duration.ofMinutes(10), Clock.systemUTC(), new SimpleMeterRegistry());
+        signingKeys.refresh();
+        verifier = new GoogleTokenVerifier(new NetHttpTransport(), GsonFactory.getDefaultInstance(),
+                signingKeys, CLIENT_ID);
+
+        JsonWebSignature.Header header = new JsonWebSignature.Header();
+        header.setAlgorithm("RS256");
+        header.setKeyId(KID);
+        long now = System.currentTimeMillis() / 1000;
+        GoogleIdToken.Payload payload = new GoogleIdToken.Payload();
+        payload.setIssuer("https://accounts.google.com");
+        payload.setAudience(CLIENT_ID);
+        payload.setIssuedAtTimeSeconds(now);
+        payload.setExpirationTimeSeconds(now + 86400);
+        payload.setEmail("ana@mobydigital.com");
+        payload.setEmailVerified(true);
+        payload.set("given_name", "Ana");
+        payload.set("family_name", "Pérez");
+        payload.set("picture", "https://lh3.googleusercontent.com/a/ACg8ocJ");
+        token = JsonWebSignature.signUsingRsaSha256(keyPair.getPrivate(), GsonFactory.getDefaultInstance(), header, payload);
+        parsed = GoogleIdToken.parse(GsonFactory.getDefaultInstance(), token);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        signingKeys.close();
+        jwksServer.stop(0);
+    }
+
+    /**
+     * Parseo + firma + claims, como en LoginService.verifyIdToken.
+     */
+    @Benchmark
+    public GoogleIdToken verify() throws Exception {
+        return verifier.verify(token);
+    }
+
+    /**
+     * Sólo el parseo del JWT (base64 + JSON), para separar su costo del de la firma RSA.
+     */
+    @Benchmark
+    public GoogleIdToken parse() throws Exception {
+        return GoogleIdToken.parse(GsonFactory.getDefaultInstance(), token);
+    }
+
+    /**
+     * Firma y claims de un token ya parseado.
+     */
+    @Benchmark
+    public boolean verifyParsed() throws Exception {
+        return verifier.verify(parsed);
+    }
+
+    private static String jwks(RSAPublicKey key) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return "{\"keys\":[{\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\",\"kid\":\"" + KID
+                + "\",\"n\":\"" + encoder.encodeToString(unsigned(key.getModulus().toByteArray()))
+                + "\",\"e\":\"" + encoder.encodeToString(unsigned(key.getPublicExponent().toByteArray()))
+                + "\"}]}";
+    }
+
+    private static byte[] unsigned(byte[] bytes) {
+        if (bytes.length > 1 && bytes[0] == 0) {
+            byte[] trimmed = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, trimmed, 0, trimmed.length);
+            return trimmed;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,177 @@
+package com.microservicios.login.bench;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.CoreConstants;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.microservicios.login.logging.LogMarkers;
+import com.microservicios.login.logging.RedactingMessageConverter;
+import com.microservicios.login.logging.SamplingTurboFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Los logs de un login (callback) más un /me, a una consola que descarta lo escrito.
+ *
+ * - before: los mensajes de antes por java.util.logging → jul-to-slf4j → appender de consola sincrónico,
+ *   con el bloque de debug del canje, el access token y los IDs de sesión.
+ * - after: los mensajes de ahora por SLF4J con parámetros, {@link SamplingTurboFilter}, %m con
+ *   {@link RedactingMessageConverter} y AsyncAppender como en logback-spring.xml ({@code -p rate=1} escribe todo).
+ *
+ * Lo que importa es gc.alloc.rate.norm (bytes por login + /me). El profiler de GC suma todos los hilos,
+ * así que cuenta también lo que aloca el hilo del AsyncAppender.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginLoggingBenchmark {
+
+    private static final String PATTERN =
+            "%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p --- [%15.15t] %-40.40logger{39} : %m%n%wEx";
+
+    private static final String EMAIL = "ana@mobydigital.com";
+    private static final String ACCESS_TOKEN = "ya29.a0AfB_byC1x2y3z4Ww5Vv6Uu7Tt8Ss9Rr0QqPpOoNnMmLlKkJjIiHh";
+    private static final String CLIENT_ID = "1234567890-abcdefghijklmnop.apps.googleusercontent.com";
+    private static final String CLIENT_SECRET = "GOCSPX-abcdefghijklmnopqrstuvwxyz";
+    private static final String CODE = "4/0AfJohXkLmNoPqRsTuVwXyZaBcDeFgHiJkLmNoPqRsTuVwXyZ";
+    private static final String REDIRECT_URI = "https://login.mobydigital.com/api/auth/google/callback";
+    private static final String SESSION_ID = "3f2a9c4e-8b1d-4e6f-a7c2-9d0e1f2a3b4c";
+    private static final String REDIRECT = "https://portal.mobydigital.com/home?auth=success";
+
+    @State(Scope.Benchmark)
+    public static class Before {
+
+        private final Logger controller = Logger.getLogger("com.microservicios.login.controller.LoginController");
+        private final Logger service = Logger.getLogger("com.microservicios.login.service.LoginService");
+        private final Logger profile = Logger.getLogger("com.microservicios.login.service.UserProfileService");
+
+        @Setup
+        public void setUp() {
+            // Contexto global: jul-to-slf4j busca los loggers por LoggerFactory, como hace Spring Boot
+            LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+            context.reset();
+            root(context, console(context, new HashMap<>()));
+            for (Logger logger : new Logger[]{controller, service, profile}) {
+                logger.setUseParentHandlers(false);
+                logger.addHandler(new SLF4JBridgeHandler());
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class After {
+
+        @Param({"100", "1"})
+        int rate;
+
+        private final LoggerContext context = new LoggerContext();
+        private org.slf4j.Logger controller;
+        private org.slf4j.Logger service;
+        private org.slf4j.Logger profile;
+
+        @Setup
+        public void setUp() {
+            SamplingTurboFilter sampling = new SamplingTurboFilter();
+            sampling.setRate(rate);
+            sampling.setContext(context);
+            sampling.start();
+            context.addTurboFilter(sampling);
+
+            Map<String, String> rules = new HashMap<>();
+            rules.put("m", RedactingMessageConverter.class.getName());
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setQueueSize(1024);
+            async.setNeverBlock(true);
+            async.addAppender(console(context, rules));
+            async.start();
+            root(context, async);
+
+            controller = context.getLogger("com.microservicios.login.controller.LoginController");
+            service = context.getLogger("com.microservicios.login.service.LoginService");
+            profile = context.getLogger("com.microservicios.login.service.UserProfileService");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            context.stop();
+        }
+    }
+
+    @Benchmark
+    public void before(Before log) {
+        // Callback
+        log.controller.info("Callback recibido - Procesando autenticación");
+        log.service.info("=== OAUTH TOKEN EXCHANGE DEBUG ===");
+        log.service.info("Client ID: " + CLIENT_ID);
+        log.service.info("Client Secret: " + CLIENT_SECRET.substring(0, 10) + "...");
+        log.service.info("Redirect URI: " + REDIRECT_URI);
+        log.service.info("Code (first 20 chars): " + CODE.substring(0, 20) + "...");
+        log.service.info("==================================");
+        log.controller.info("Tengo token " + ACCESS_TOKEN);
+        log.service.info("Verificando token de Google...");
+        log.profile.info("Usuario resuelto desde caché. Email: " + EMAIL);
+        log.service.info("Usuario autenticado exitosamente ! : " + EMAIL);
+        log.controller.info("Sesión automática creada con ID: " + SESSION_ID);
+        log.controller.info("Redireccionando a: " + REDIRECT);
+        // /me
+        Logger.getLogger(log.controller.getName()).info("Leyendo user desde sesión id=" + SESSION_ID);
+    }
+
+    @Benchmark
+    public void after(After log) {
+        // Callback
+        log.controller.info(LogMarkers.SAMPLED, "Callback recibido - Procesando autenticación");
+        log.service.info(LogMarkers.SAMPLED, "Verificando token de Google...");
+        log.profile.info(LogMarkers.SAMPLED, "Usuario resuelto desde caché. Email: {}", EMAIL);
+        log.service.info(LogMarkers.SAMPLED, "Usuario autenticado exitosamente ! : {}", EMAIL);
+        log.controller.info(LogMarkers.SAMPLED, "Redireccionando a: {}", REDIRECT);
+        // /me
+        log.controller.info(LogMarkers.SAMPLED, "Leyendo user desde sesión");
+    }
+
+    private static Appender<ILoggingEvent> console(LoggerContext context, Map<String, String> rules) {
+        context.putObject(CoreConstants.PATTERN_RULE_REGISTRY, rules);
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern(PATTERN);
+        encoder.start();
+        OutputStreamAppender<ILoggingEvent> console = new OutputStreamAppender<>();
+        console.setContext(context);
+        console.setName("CONSOLE");
+        console.setEncoder(encoder);
+        console.setOutputStream(OutputStream.nullOutputStream());
+        console.start();
+        return console;
+    }
+
+    private static void root(LoggerContext context, Appender<ILoggingEvent> appender) {
+        ch.qos.logback.classic.Logger root = context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        root.setLevel(ch.qos.logback.classic.Level.INFO);
+        root.addAppender(appender);
+    }
+}
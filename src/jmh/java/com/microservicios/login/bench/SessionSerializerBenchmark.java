@@ -0,0 +1,89 @@
+package com.microservicios.login.bench;
+
+import com.microservicios.login.config.SessionConfig;
+import com.microservicios.login.session.LoginSession;
+import coms.dto.UserDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Atributos de sesión con el serializador de {@link SessionConfig} (formato compacto) contra
+ * los cuatro atributos sueltos en GenericJackson2Json que se guardaban antes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionSerializerBenchmark {
+
+    private final RedisSerializer<Object> serializer = new SessionConfig().springSessionDefaultRedisSerializer();
+    private final GenericJackson2JsonRedisSerializer legacy = new GenericJackson2JsonRedisSerializer();
+
+    private LoginSession login;
+    private UserDTO user;
+    private String accessToken;
+    private String refreshToken;
+    private Map<String, String> tokens;
+    private byte[] compactBytes;
+    private byte[][] legacyBytes;
+
+    @Setup
+    public void setUp() {
+        user = new UserDTO();
+        user.setName("Ana");
+        user.setEmail("ana@mobydigital.com");
+        user.setProfilePicture("https://lh3.googleusercontent.com/a/ACg8ocJ");
+        accessToken = "ya29.a0AfB_byC" + "x".repeat(200);
+        refreshToken = "1//0gL" + "y".repeat(96);
+        tokens = new HashMap<>();
+        tokens.put("accessToken", accessToken);
+        tokens.put("refreshToken", refreshToken);
+        login = new LoginSession(user, accessToken, refreshToken, 1_700_000_000_000L);
+
+        compactBytes = serializer.serialize(login);
+        legacyBytes = new byte[][]{legacy.serialize(tokens), legacy.serialize(accessToken),
+                legacy.serialize(refreshToken), legacy.serialize(user)};
+    }
+
+    @Benchmark
+    public byte[] compactSerialize() {
+        return serializer.serialize(login);
+    }
+
+    @Benchmark
+    public Object compactDeserialize() {
+        return serializer.deserialize(compactBytes);
+    }
+
+    @Benchmark
+    public void legacySerialize(Blackhole blackhole) {
+        blackhole.consume(legacy.serialize(tokens));
+        blackhole.consume(legacy.serialize(accessToken));
+        blackhole.consume(legacy.serialize(refreshToken));
+        blackhole.consume(legacy.serialize(user));
+    }
+
+    @Benchmark
+    public void legacyDeserialize(Blackhole blackhole) {
+        for (byte[] attribute : legacyBytes) {
+            blackhole.consume(legacy.deserialize(attribute));
+        }
+    }
+}
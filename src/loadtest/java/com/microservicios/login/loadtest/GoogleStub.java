@@ -0,0 +1,155 @@
+package com.microservicios.login.loadtest;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.json.webtoken.JsonWebSignature;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Endpoints de Google para la prueba de carga: intercambio de código (/token) y claves públicas (/certs).
+ *
+ * El código de autorización es "u-" + email: el stub devuelve un ID token RS256 para ese mail firmado con
+ * una clave local publicada en /certs, así el servicio hace la misma verificación que con Google.
+ * Los ID tokens se firman una vez por mail para que la firma no compita por CPU con el servicio medido.
+ */
+public class GoogleStub implements Closeable {
+
+    public static final String KID = "loadtest";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final KeyPair keyPair;
+    private final String clientId;
+    private final Duration latency;
+    private final Map<String, String> idTokens = new ConcurrentHashMap<>();
+    private final AtomicInteger exchanges = new AtomicInteger();
+    private final AtomicInteger certFetches = new AtomicInteger();
+
+    public GoogleStub(String clientId, Duration latency, int threads) throws IOException, GeneralSecurityException {
+        this.clientId = clientId;
+        this.latency = latency;
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        this.keyPair = generator.generateKeyPair();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 512);
+        server.createContext("/token", this::token);
+        server.createContext("/certs", this::certs);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public static String codeFor(String email) {
+        return "u-" + email;
+    }
+
+    public String tokenUrl() {
+        return base() + "/token";
+    }
+
+    public String certsUrl() {
+        return base() + "/certs";
+    }
+
+    public int exchanges() {
+        return exchanges.get();
+    }
+
+    public int certFetches() {
+        return certFetches.get();
+    }
+
+    private String base() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void token(HttpExchange exchange) throws IOException {
+        exchanges.incrementAndGet();
+        String code = formParam(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8), "code");
+        if (code == null || !code.startsWith("u-")) {
+            Stubs.respond(exchange, 400, "{\"error\":\"invalid_grant\"}");
+            return;
+        }
+        Stubs.sleep(latency);
+        String email = code.substring(2);
+        String idToken = idTokens.computeIfAbsent(email, this::sign);
+        Stubs.respond(exchange, 200, "{\"access_token\":\"ya29." + email.hashCode()
+                + "\",\"expires_in\":3599,\"refresh_token\":\"1//" + email.hashCode()
+                + "\",\"scope\":\"openid email profile\",\"token_type\":\"Bearer\",\"id_token\":\"" + idToken + "\"}");
+    }
+
+    private void certs(HttpExchange exchange) throws IOException {
+        certFetches.incrementAndGet();
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        RSAPublicKey key = (RSAPublicKey) keyPair.getPublic();
+        exchange.getResponseHeaders().add("Cache-Control", "public, max-age=21600");
+        Stubs.respond(exchange, 200, "{\"keys\":[{\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\",\"kid\":\"" + KID
+                + "\",\"n\":\"" + encoder.encodeToString(unsigned(key.getModulus().toByteArray()))
+                + "\",\"e\":\"" + encoder.encodeToString(unsigned(key.getPublicExponent().toByteArray())) + "\"}]}");
+    }
+
+    private String sign(String email) {
+        JsonWebSignature.Header header = new JsonWebSignature.Header();
+        header.setAlgorithm("RS256");
+        header.setKeyId(KID);
+        long now = System.currentTimeMillis() / 1000;
+        GoogleIdToken.Payload payload = new GoogleIdToken.Payload();
+        payload.setIssuer("https://accounts.google.com");
+        payload.setAudience(clientId);
+        payload.setIssuedAtTimeSeconds(now);
+        payload.setExpirationTimeSeconds(now + 3600);
+        payload.setEmail(email);
+        payload.setEmailVerified(true);
+        payload.set("given_name", "Carga");
+        payload.set("family_name", email.substring(0, email.indexOf('@')));
+        try {
+            return JsonWebSignature.signUsingRsaSha256(keyPair.getPrivate(), GsonFactory.getDefaultInstance(), header, payload);
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String formParam(String form, String name) {
+        for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static byte[] unsigned(byte[] bytes) {
+        if (bytes.length > 1 && bytes[0] == 0) {
+            byte[] trimmed = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, trimmed, 0, trimmed.length);
+            return trimmed;
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,217 @@
+package com.microservicios.login.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resultados de una corrida: latencias exactas (no histogramas) por usuario virtual, que se juntan al final.
+ */
+class LoadReport {
+
+    private final String name;
+    private final List<Recorder> recorders = new CopyOnWriteArrayList<>();
+    private final Map<String, AtomicLong> errors = new ConcurrentHashMap<>();
+    private final long gcCountBefore = gcCount();
+    private final long gcMillisBefore = gcMillis();
+    private long elapsedNanos;
+    private long heapPeak;
+    private long heapAfterGc;
+    private long gcCount;
+    private long gcMillis;
+    private int[] stubCalls = new int[4];
+    private Latencies login;
+    private Latencies callback;
+    private Latencies me;
+    private Latencies loginReturning;
+    private Latencies loginNew;
+
+    LoadReport(String name) {
+        this.name = name;
+    }
+
+    Recorder recorder() {
+        Recorder recorder = new Recorder();
+        recorders.add(recorder);
+        return recorder;
+    }
+
+    void elapsed(long nanos) {
+        this.elapsedNanos = nanos;
+        this.gcCount = gcCount() - gcCountBefore;
+        this.gcMillis = gcMillis() - gcMillisBefore;
+        LongList all = new LongList();
+        LongList callbacks = new LongList();
+        LongList mes = new LongList();
+        LongList returning = new LongList();
+        LongList fresh = new LongList();
+        for (Recorder r : recorders) {
+            all.addAll(r.login);
+            callbacks.addAll(r.callback);
+            mes.addAll(r.me);
+            returning.addAll(r.returning);
+            fresh.addAll(r.fresh);
+        }
+        login = new Latencies(all);
+        callback = new Latencies(callbacks);
+        me = new Latencies(mes);
+        loginReturning = new Latencies(returning);
+        loginNew = new Latencies(fresh);
+    }
+
+    void heap(long[] peakAndAfterGc) {
+        this.heapPeak = peakAndAfterGc[0];
+        this.heapAfterGc = peakAndAfterGc[1];
+    }
+
+    void stubCalls(int exchanges, int lookups, int nominaChecks, int migrations) {
+        this.stubCalls = new int[]{exchanges, lookups, nominaChecks, migrations};
+    }
+
+    Latencies login() {
+        return login;
+    }
+
+    double throughput() {
+        return login.count() / (elapsedNanos / 1e9);
+    }
+
+    double errorRate() {
+        long failed = errors.values().stream().mapToLong(AtomicLong::get).sum();
+        long total = failed + login.count();
+        return total == 0 ? 1 : (double) failed / total;
+    }
+
+    String errorSummary() {
+        return new TreeMap<>(errors).toString();
+    }
+
+    long heapAfterGcMb() {
+        return heapAfterGc / (1024 * 1024);
+    }
+
+    String format() {
+        StringBuilder out = new StringBuilder();
+        out.append("\n=== Prueba de carga: ").append(name).append(" ===\n");
+        out.append(String.format("logins ok: %d en %.1fs -> %.1f logins/s, errores: %s%n",
+                login.count(), elapsedNanos / 1e9, throughput(), errorSummary()));
+        out.append(String.format("%-22s %8s %8s %8s %8s %8s%n", "latencia (ms)", "n", "p50", "p99", "p999", "max"));
+        row(out, "login (callback + me)", login);
+        row(out, "  callback", callback);
+        row(out, "  me", me);
+        row(out, "  usuario existente", loginReturning);
+        row(out, "  usuario nuevo", loginNew);
+        out.append(String.format("heap: pico %dMB, después de GC %dMB, GCs %d (%dms)%n",
+                heapPeak / (1024 * 1024), heapAfterGcMb(), gcCount, gcMillis));
+        out.append(String.format("stubs: google/token %d, user?email %d, checkEmail %d, migrateUser %d (acumulado)%n",
+                stubCalls[0], stubCalls[1], stubCalls[2], stubCalls[3]));
+        return out.toString();
+    }
+
+    String toJson() {
+        return "{\"mode\":\"" + name + "\",\"logins\":" + login.count()
+                + ",\"throughput\":" + Math.round(throughput() * 10) / 10.0
+                + ",\"errorRate\":" + errorRate()
+                + ",\"p50Ms\":" + millis(login.percentile(0.5))
+                + ",\"p99Ms\":" + millis(login.percentile(0.99))
+                + ",\"p999Ms\":" + millis(login.percentile(0.999))
+                + ",\"heapPeakMb\":" + heapPeak / (1024 * 1024)
+                + ",\"heapAfterGcMb\":" + heapAfterGcMb()
+                + ",\"gcCount\":" + gcCount + ",\"gcMillis\":" + gcMillis + "}\n";
+    }
+
+    private static void row(StringBuilder out, String label, Latencies latencies) {
+        out.append(String.format("%-22s %8d %8.1f %8.1f %8.1f %8.1f%n", label, latencies.count(),
+                millis(latencies.percentile(0.5)), millis(latencies.percentile(0.99)),
+                millis(latencies.percentile(0.999)), millis(latencies.percentile(1.0))));
+    }
+
+    static double millis(long nanos) {
+        return Math.round(nanos / 100_000.0) / 10.0;
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+
+    /**
+     * Latencias de un único usuario virtual: sin sincronización, se leen cuando terminó la corrida.
+     */
+    final class Recorder {
+
+        private final LongList login = new LongList();
+        private final LongList callback = new LongList();
+        private final LongList me = new LongList();
+        private final LongList returning = new LongList();
+        private final LongList fresh = new LongList();
+
+        void success(boolean returningUser, long callbackNanos, long meNanos, long loginNanos) {
+            login.add(loginNanos);
+            callback.add(callbackNanos);
+            me.add(meNanos);
+            (returningUser ? returning : fresh).add(loginNanos);
+        }
+
+        void error(String kind) {
+            errors.computeIfAbsent(kind, k -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    static final class Latencies {
+
+        private final long[] sorted;
+
+        Latencies(LongList values) {
+            this.sorted = values.toArray();
+            Arrays.sort(sorted);
+        }
+
+        int count() {
+            return sorted.length;
+        }
+
+        /**
+         * Percentil por rango más cercano.
+         */
+        long percentile(double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(p * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+        }
+    }
+
+    static final class LongList {
+
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(LongList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
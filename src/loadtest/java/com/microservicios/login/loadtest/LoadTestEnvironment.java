@@ -0,0 +1,122 @@
+package com.microservicios.login.loadtest;
+
+import com.microservicios.login.redis.FakeRedisServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stubs locales (Google, microservicio de usuarios, Redis) y la configuración con la que el servicio
+ * se levanta contra ellos. Lo comparten la prueba de carga y el benchmark de arranque.
+ */
+public class LoadTestEnvironment implements Closeable {
+
+    public static final String CLIENT_ID = "loadtest-client";
+    public static final String REDIRECT = "http://localhost/app";
+
+    private final FakeRedisServer redis;
+    private final GoogleStub google;
+    private final UserServiceStub userService;
+
+    /**
+     * @param returningUsers usuarios que ya existen en la tabla ({@link #returningUser(int)} de 0 a n-1)
+     */
+    public LoadTestEnvironment(Duration googleLatency, Duration usersLatency, int returningUsers)
+            throws IOException, GeneralSecurityException {
+        redis = new FakeRedisServer();
+        google = new GoogleStub(CLIENT_ID, googleLatency, 64);
+        userService = new UserServiceStub(usersLatency, 64);
+        for (int i = 0; i < returningUsers; i++) {
+            userService.addUser(returningUser(i));
+        }
+    }
+
+    public static String returningUser(int i) {
+        return "usuario" + i + "@mobydigital.com";
+    }
+
+    public FakeRedisServer redis() {
+        return redis;
+    }
+
+    public GoogleStub google() {
+        return google;
+    }
+
+    public UserServiceStub userService() {
+        return userService;
+    }
+
+    /**
+     * Argumentos de línea de comandos del servicio: pisan application.properties y no necesitan variables de entorno.
+     */
+    public List<String> applicationArgs(boolean reactive, int port) {
+        return List.of("--server.port=" + port,
+                "--server.address=127.0.0.1",
+                "--login.reactive.enabled=" + reactive,
+                "--eureka.client.enabled=false",
+                "--google.client.id=" + CLIENT_ID,
+                "--google.client.secret=loadtest-secret",
+                "--GOOGLE_REDIRECT_URI=" + REDIRECT + "/api/auth/google/callback",
+                "--LOGIN_REDIRECT=" + REDIRECT,
+                "--google.token.url=" + google.tokenUrl(),
+                "--google.certs.url=" + google.certsUrl(),
+                "--URL_BASE=" + userService.urlBase(),
+                "--MAIL_CHECK=" + userService.mailCheckUrl(),
+                "--URL_EUREKA=http://127.0.0.1:9/eureka",
+                "--spring.data.redis.url=redis://127.0.0.1:" + redis.getPort(),
+                "--spring.data.redis.ssl.enabled=false",
+                "--management.tracing.enabled=false",
+                // Rate limit activo (script en Redis y leases locales en el camino del request), pero con
+                // capacidades que no rechazan: todo el tráfico sale de 127.0.0.1 y reusa los mismos mails
+                // Se mide el formato de sesión al que se llega después del deploy en dos pasos (ver LoginSessions)
+                "--session.compact-login.enabled=" + System.getProperty("loadtest.compact-login", "true"),
+                "--login.rate-limit.enabled=" + System.getProperty("loadtest.rate-limit", "true"),
+                "--login.rate-limit.callback.ip.capacity=10000000",
+                "--login.rate-limit.callback.email.capacity=10000000",
+                "--login.rate-limit.me.ip.capacity=10000000",
+                "--login.rate-limit.me.email.capacity=10000000",
+                "--logging.level.root=" + System.getProperty("loadtest.log-level", "WARN"));
+    }
+
+    /**
+     * Cookies del callback (JSESSIONID y, si está habilitado, el token de sesión) para mandar a /me.
+     */
+    public static String cookies(HttpResponse<?> response) {
+        List<String> pairs = new ArrayList<>();
+        for (String header : response.headers().allValues("Set-Cookie")) {
+            int end = header.indexOf(';');
+            pairs.add(end > 0 ? header.substring(0, end) : header);
+        }
+        return String.join("; ", pairs);
+    }
+
+    /**
+     * Duración de una propiedad de sistema: 500ms, 30s, 2m o milisegundos.
+     */
+    public static Duration duration(String property, String defaultValue) {
+        String value = System.getProperty(property, defaultValue).trim().toLowerCase();
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        if (value.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        return Duration.ofMillis(Long.parseLong(value));
+    }
+
+    @Override
+    public void close() throws IOException {
+        userService.close();
+        google.close();
+        redis.close();
+    }
+}
@@ -0,0 +1,224 @@
+package com.microservicios.login.loadtest;
+
+import com.microservicios.login.LoginApplication;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Prueba de carga de punta a punta: callback de Google + /me contra el servicio levantado en este proceso,
+ * con Google, el microservicio de usuarios y Redis reemplazados por stubs locales (corre sin red).
+ *
+ * Cada iteración de un usuario virtual hace el callback con un código nuevo, toma las cookies que devuelve
+ * y llama a /me con ellas. Una fracción de los logins es de usuarios que todavía no existen en la tabla
+ * (lookup 404 + nómina + migración), el resto de usuarios que ya existen.
+ *
+ * Reporta throughput, p50/p99/p999 y heap, y falla si se supera alguno de los umbrales.
+ * Todo se configura con -Dloadtest.*:
+ *   threads, warmup, duration, returning-ratio, users, google-latency, users-latency, modes, rate-limit, compact-login,
+ *   min-throughput, max-p99, max-p999, max-error-rate, max-heap-after-gc-mb
+ *
+ * Los umbrales por defecto son un piso que pasa en una máquina de un core (servicio, stubs y driver comparten
+ * el proceso). En CI conviene fijarlos a partir de una corrida de referencia en el mismo runner.
+ */
+class LoginLoadIT {
+
+    private static final int THREADS = Integer.getInteger("loadtest.threads", 8);
+    private static final Duration WARMUP = LoadTestEnvironment.duration("loadtest.warmup", "10s");
+    private static final Duration DURATION = LoadTestEnvironment.duration("loadtest.duration", "30s");
+    private static final double RETURNING_RATIO = Double.parseDouble(System.getProperty("loadtest.returning-ratio", "0.9"));
+    private static final int USERS = Integer.getInteger("loadtest.users", 2000);
+    private static final Duration GOOGLE_LATENCY = LoadTestEnvironment.duration("loadtest.google-latency", "20ms");
+    private static final Duration USERS_LATENCY = LoadTestEnvironment.duration("loadtest.users-latency", "30ms");
+    private static final List<String> MODES = Arrays.asList(System.getProperty("loadtest.modes", "servlet,reactive").split(","));
+
+    private static final double MIN_THROUGHPUT = Double.parseDouble(System.getProperty("loadtest.min-throughput", "20"));
+    private static final Duration MAX_P99 = LoadTestEnvironment.duration("loadtest.max-p99", "1s");
+    private static final Duration MAX_P999 = LoadTestEnvironment.duration("loadtest.max-p999", "2s");
+    private static final double MAX_ERROR_RATE = Double.parseDouble(System.getProperty("loadtest.max-error-rate", "0.001"));
+    private static final long MAX_HEAP_AFTER_GC_MB = Long.getLong("loadtest.max-heap-after-gc-mb", 200);
+
+    private static LoadTestEnvironment environment;
+
+    // Compartido entre modos: un usuario migrado en la corrida servlet ya no es nuevo en la reactiva
+    private static final AtomicInteger NEW_USERS = new AtomicInteger();
+
+    @BeforeAll
+    static void startStubs() throws Exception {
+        environment = new LoadTestEnvironment(GOOGLE_LATENCY, USERS_LATENCY, USERS);
+    }
+
+    @AfterAll
+    static void stopStubs() throws IOException {
+        environment.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"servlet", "reactive"})
+    void loginBajoCarga(String mode) throws Exception {
+        assumeTrue(MODES.contains(mode), "modo " + mode + " excluido por loadtest.modes");
+
+        try (ConfigurableApplicationContext app = start(mode)) {
+            int port = Integer.parseInt(app.getEnvironment().getProperty("local.server.port"));
+            HttpClient client = HttpClient.newBuilder()
+                    .followRedirects(HttpClient.Redirect.NEVER)
+                    .connectTimeout(Duration.ofSeconds(2))
+                    .executor(Executors.newFixedThreadPool(THREADS))
+                    .build();
+            String base = "http://127.0.0.1:" + port + "/api/auth";
+
+            // Warm-up: JIT, pools de conexiones, claves de Google y caché de usuarios
+            run(client, base, WARMUP, new LoadReport(mode + " (warm-up)"));
+
+            HeapSampler heap = HeapSampler.start();
+            LoadReport report = run(client, base, DURATION, new LoadReport(mode));
+            report.heap(heap.stop());
+            report.stubCalls(environment.google().exchanges(), environment.userService().lookups(),
+                    environment.userService().nominaChecks(), environment.userService().migrations());
+
+            System.out.println(report.format());
+            Path json = Path.of("target", "loadtest", mode + ".json");
+            Files.createDirectories(json.getParent());
+            Files.writeString(json, report.toJson());
+
+            assertTrue(report.errorRate() <= MAX_ERROR_RATE,
+                    mode + ": tasa de error " + report.errorRate() + " > " + MAX_ERROR_RATE + " " + report.errorSummary());
+            assertTrue(report.throughput() >= MIN_THROUGHPUT,
+                    mode + ": throughput " + Math.round(report.throughput()) + "/s < " + MIN_THROUGHPUT + "/s");
+            assertTrue(report.login().percentile(0.99) <= MAX_P99.toNanos(),
+                    mode + ": p99 " + LoadReport.millis(report.login().percentile(0.99)) + "ms > " + MAX_P99.toMillis() + "ms");
+            assertTrue(report.login().percentile(0.999) <= MAX_P999.toNanos(),
+                    mode + ": p999 " + LoadReport.millis(report.login().percentile(0.999)) + "ms > " + MAX_P999.toMillis() + "ms");
+            assertTrue(report.heapAfterGcMb() <= MAX_HEAP_AFTER_GC_MB,
+                    mode + ": heap después de GC " + report.heapAfterGcMb() + "MB > " + MAX_HEAP_AFTER_GC_MB + "MB");
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String mode) {
+        return new SpringApplicationBuilder(LoginApplication.class)
+                .run(environment.applicationArgs(mode.equals("reactive"), 0).toArray(String[]::new));
+    }
+
+    private LoadReport run(HttpClient client, String base, Duration duration, LoadReport report) throws InterruptedException {
+        ExecutorService users = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        long deadline = System.nanoTime() + duration.toNanos();
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            users.execute(() -> {
+                LoadReport.Recorder recorder = report.recorder();
+                try {
+                    while (System.nanoTime() < deadline) {
+                        login(client, base, recorder);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        report.elapsed(System.nanoTime() - start);
+        users.shutdown();
+        return report;
+    }
+
+    private void login(HttpClient client, String base, LoadReport.Recorder recorder) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean returning = random.nextDouble() < RETURNING_RATIO;
+        String email = returning ? LoadTestEnvironment.returningUser(random.nextInt(USERS)) : "nuevo" + NEW_USERS.incrementAndGet() + "@mobydigital.com";
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> callback = client.send(HttpRequest.newBuilder(
+                            URI.create(base + "/google/callback?code=" + GoogleStub.codeFor(email) + "&state=lt"))
+                    .GET().build(), HttpResponse.BodyHandlers.ofString());
+            long callbackDone = System.nanoTime();
+            String location = callback.headers().firstValue("Location").orElse("");
+            if (callback.statusCode() != 302 || !location.contains("auth=success")) {
+                recorder.error("callback " + callback.statusCode() + " " + location);
+                return;
+            }
+
+            HttpResponse<String> me = client.send(HttpRequest.newBuilder(URI.create(base + "/me"))
+                    .header("Cookie", LoadTestEnvironment.cookies(callback))
+                    .GET().build(), HttpResponse.BodyHandlers.ofString());
+            long end = System.nanoTime();
+            if (me.statusCode() != 200 || !me.body().contains(email)) {
+                recorder.error("me " + me.statusCode());
+                return;
+            }
+            recorder.success(returning, callbackDone - start, end - callbackDone, end - start);
+        } catch (IOException e) {
+            recorder.error(e.getClass().getSimpleName());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            recorder.error("interrupted");
+        }
+    }
+
+    /**
+     * Pico de heap muestreado cada 50ms durante la corrida, y heap retenido después de un GC completo.
+     */
+    static final class HeapSampler {
+
+        private final AtomicLong peak = new AtomicLong();
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        private HeapSampler() {
+            thread = new Thread(() -> {
+                while (running) {
+                    peak.accumulateAndGet(usedHeap(), Math::max);
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "heap-sampler");
+            thread.setDaemon(true);
+        }
+
+        static HeapSampler start() {
+            System.gc();
+            HeapSampler sampler = new HeapSampler();
+            sampler.thread.start();
+            return sampler;
+        }
+
+        long[] stop() throws InterruptedException {
+            running = false;
+            thread.join();
+            System.gc();
+            Thread.sleep(200);
+            return new long[]{peak.get(), usedHeap()};
+        }
+
+        private static long usedHeap() {
+            return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.microservicios.login.loadtest;
+
+import com.microservicios.login.LoginApplication;
+import com.microservicios.login.redis.FakeRedisServer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Comandos y round-trips a Redis por login (callback) y por /me, con el repositorio de sesiones de Spring Session
+ * y con session.coalescing.enabled=true, en modo servlet y reactivo. Corre secuencial contra los stubs locales:
+ * lo que cuenta {@link FakeRedisServer} entre dos requests es exactamente lo que generó ese request.
+ *
+ * Uso (ver perfil loadtest en el pom):
+ *   ./mvnw -Ploadtest test-compile exec:java -Dloadtest.main=com.microservicios.login.loadtest.SessionWritesReport
+ *
+ * Propiedades: sessions.logins (20), sessions.me-per-login (5).
+ */
+public class SessionWritesReport {
+
+    public static void main(String[] args) throws Exception {
+        int logins = Integer.getInteger("sessions.logins", 20);
+        int mePerLogin = Integer.getInteger("sessions.me-per-login", 5);
+
+        List<String> lines = new ArrayList<>();
+        try (LoadTestEnvironment environment = new LoadTestEnvironment(Duration.ZERO, Duration.ZERO, logins + 1)) {
+            for (String mode : new String[]{"servlet", "reactive"}) {
+                for (boolean coalescing : new boolean[]{false, true}) {
+                    lines.addAll(measure(environment, mode, coalescing, logins, mePerLogin));
+                }
+            }
+        }
+        System.out.println("\n=== Redis por request (" + logins + " logins, " + mePerLogin + " /me por sesión) ===");
+        lines.forEach(System.out::println);
+    }
+
+    private static List<String> measure(LoadTestEnvironment environment, String mode, boolean coalescing,
+                                        int logins, int mePerLogin) throws IOException, InterruptedException {
+        List<String> args = new ArrayList<>(environment.applicationArgs(mode.equals("reactive"), 0));
+        args.add("--session.coalescing.enabled=" + coalescing);
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(LoginApplication.class)
+                .run(args.toArray(String[]::new))) {
+            String base = "http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port") + "/api/auth";
+            HttpClient client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).build();
+            FakeRedisServer redis = environment.redis();
+
+            // Primer login fuera de la medición: claves de Google, conexiones, cachés
+            login(client, base, LoadTestEnvironment.returningUser(logins), 1);
+
+            Usage callback = new Usage();
+            Usage me = new Usage();
+            for (int i = 0; i < logins; i++) {
+                Snapshot before = Snapshot.of(redis);
+                String cookies = login(client, base, LoadTestEnvironment.returningUser(i), 0);
+                callback.add(before, Snapshot.of(redis));
+                for (int j = 0; j < mePerLogin; j++) {
+                    before = Snapshot.of(redis);
+                    me(client, base, cookies);
+                    me.add(before, Snapshot.of(redis));
+                }
+            }
+            String label = String.format("%-8s %-22s", mode, coalescing ? "coalescing" : "spring session");
+            return List.of(label + " login: " + callback.format(logins),
+                    label + " /me:   " + me.format(logins * mePerLogin));
+        }
+    }
+
+    /**
+     * @return cookies de la sesión creada
+     */
+    private static String login(HttpClient client, String base, String email, int me)
+            throws IOException, InterruptedException {
+        HttpResponse<String> callback = client.send(HttpRequest.newBuilder(URI.create(base + "/google/callback?code="
+                + GoogleStub.codeFor(email))).build(), HttpResponse.BodyHandlers.ofString());
+        String location = callback.headers().firstValue("Location").orElse("");
+        if (!location.contains("auth=success")) {
+            throw new IllegalStateException("Login fallido: " + callback.statusCode() + " " + location);
+        }
+        String cookies = LoadTestEnvironment.cookies(callback);
+        for (int i = 0; i < me; i++) {
+            me(client, base, cookies);
+        }
+        return cookies;
+    }
+
+    private static void me(HttpClient client, String base, String cookies) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(base + "/me"))
+                .header("Cookie", cookies).build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("/me respondió " + response.statusCode());
+        }
+    }
+
+    private record Snapshot(Map<String, Long> commands, long roundTrips) {
+        static Snapshot of(FakeRedisServer redis) {
+            return new Snapshot(redis.commandCounts(), redis.roundTrips());
+        }
+    }
+
+    private static final class Usage {
+
+        private final Map<String, Long> commands = new TreeMap<>();
+        private long roundTrips;
+
+        void add(Snapshot before, Snapshot after) {
+            after.commands().forEach((name, count) -> {
+                long delta = count - before.commands().getOrDefault(name, 0L);
+                if (delta > 0) {
+                    commands.merge(name, delta, Long::sum);
+                }
+            });
+            roundTrips += after.roundTrips() - before.roundTrips();
+        }
+
+        String format(int requests) {
+            long total = commands.values().stream().mapToLong(Long::longValue).sum();
+            StringBuilder detail = new StringBuilder();
+            commands.forEach((name, count) -> detail.append(' ').append(name).append('=')
+                    .append(String.format("%.1f", (double) count / requests)));
+            return String.format("%5.1f comandos, %5.1f round-trips  [%s ]", (double) total / requests,
+                    (double) roundTrips / requests, detail.toString().trim());
+        }
+    }
+}
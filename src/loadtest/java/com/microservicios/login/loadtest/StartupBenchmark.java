@@ -0,0 +1,141 @@
+package com.microservicios.login.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmark de arranque en frío: lanza el servicio como proceso aparte (igual que en Cloud Run / fly.io)
+ * contra los stubs locales y mide, desde el fork del proceso:
+ *
+ * - health: primer GET /actuator/health con 200 (cuando la plataforma empieza a mandar tráfico); incluye
+ *   el warm-up (login.warmup.enabled, ver WarmUp)
+ * - me: primer /me respondido por el controller (403 sin sesión)
+ * - login: callback de Google + /me con la sesión nueva, el camino que espera el usuario
+ *
+ * Uso (ver perfil loadtest en el pom):
+ *   ./mvnw -Ploadtest test-compile exec:java -Dstartup.command="java -jar target/ms-login-1.0.0-SNAPSHOT.jar"
+ *   ./mvnw -Ploadtest test-compile exec:java -Dstartup.command="java -XX:SharedArchiveFile=target/fast-start/app.jsa
+ *       -Dspring.aot.enabled=true -Dspring.profiles.active=faststart -jar target/fast-start/ms-login.jar"
+ *
+ * Propiedades: startup.command, startup.runs (5), startup.timeout (120s). El log de cada corrida queda en target/startup.
+ */
+public class StartupBenchmark {
+
+    private static final Duration POLL = Duration.ofMillis(10);
+
+    public static void main(String[] args) throws Exception {
+        List<String> command = Arrays.asList(System.getProperty("startup.command",
+                "java -jar target/ms-login-1.0.0-SNAPSHOT.jar").trim().split("\\s+"));
+        int runs = Integer.getInteger("startup.runs", 5);
+        Duration timeout = LoadTestEnvironment.duration("startup.timeout", "120s");
+
+        long[][] results = new long[runs][];
+        try (LoadTestEnvironment environment = new LoadTestEnvironment(Duration.ZERO, Duration.ZERO, 1)) {
+            for (int run = 0; run < runs; run++) {
+                results[run] = measure(environment, command, run, timeout);
+                System.out.printf("corrida %d: health %dms, primer /me %dms, primer login %dms%n",
+                        run + 1, results[run][0], results[run][1], results[run][2]);
+            }
+        }
+
+        System.out.println("\n=== Arranque en frío: " + String.join(" ", command) + " ===");
+        String[] labels = {"primer /actuator/health 200", "primer /me", "primer login (callback + /me)"};
+        for (int i = 0; i < labels.length; i++) {
+            long[] values = new long[runs];
+            for (int run = 0; run < runs; run++) {
+                values[run] = results[run][i];
+            }
+            Arrays.sort(values);
+            System.out.printf("%-32s mediana %6dms  min %6dms  max %6dms%n",
+                    labels[i], values[runs / 2], values[0], values[runs - 1]);
+        }
+    }
+
+    /**
+     * @return milisegundos desde el fork hasta health, primer /me y primer login
+     */
+    private static long[] measure(LoadTestEnvironment environment, List<String> command, int run, Duration timeout)
+            throws IOException, InterruptedException {
+        int port = freePort();
+        List<String> fullCommand = new ArrayList<>(command);
+        fullCommand.addAll(environment.applicationArgs(false, port));
+        Path log = Path.of("target", "startup", "run-" + (run + 1) + ".log");
+        Files.createDirectories(log.getParent());
+
+        HttpClient client = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(1))
+                .build();
+        String base = "http://127.0.0.1:" + port;
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(fullCommand)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .directory(new File("."))
+                .start();
+        try {
+            long deadline = start + timeout.toNanos();
+            long health = pollUntil(client, base + "/actuator/health", 200, process, deadline, log) - start;
+
+            long me = pollUntil(client, base + "/api/auth/me", 403, process, deadline, log) - start;
+
+            String email = LoadTestEnvironment.returningUser(0);
+            HttpResponse<String> callback = client.send(HttpRequest.newBuilder(URI.create(base
+                    + "/api/auth/google/callback?code=" + GoogleStub.codeFor(email))).build(), HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> session = client.send(HttpRequest.newBuilder(URI.create(base + "/api/auth/me"))
+                    .header("Cookie", LoadTestEnvironment.cookies(callback)).build(), HttpResponse.BodyHandlers.ofString());
+            if (session.statusCode() != 200 || !session.body().contains(email)) {
+                throw new IllegalStateException("El primer login falló: callback " + callback.statusCode()
+                        + " " + callback.headers().firstValue("Location").orElse("") + ", /me " + session.statusCode()
+                        + ". Ver " + log);
+            }
+            long login = System.nanoTime() - start;
+            return new long[]{health / 1_000_000, me / 1_000_000, login / 1_000_000};
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    /**
+     * @return System.nanoTime() de la primera respuesta con el status esperado
+     */
+    private static long pollUntil(HttpClient client, String url, int status, Process process, long deadline, Path log)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(5)).build();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("El servicio terminó con código " + process.exitValue() + ". Ver " + log);
+            }
+            try {
+                if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == status) {
+                    return System.nanoTime();
+                }
+            } catch (ConnectException | HttpTimeoutException e) {
+                // todavía no escucha
+            }
+            Thread.sleep(POLL.toMillis());
+        }
+        throw new IllegalStateException("Sin respuesta " + status + " de " + url + " antes del timeout. Ver " + log);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
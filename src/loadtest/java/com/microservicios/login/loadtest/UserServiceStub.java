@@ -0,0 +1,127 @@
+package com.microservicios.login.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Microservicio de usuarios para la prueba de carga: user?email= (404 si no existe), checkEmail y migrateUser.
+ * Cada llamada espera la latencia configurada, que simula la de Airtable.
+ */
+public class UserServiceStub implements Closeable {
+
+    private static final Pattern EMAIL = Pattern.compile("\"(?:email|Correo Moby)\"\\s*:\\s*\"([^\"]+)\"");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Duration latency;
+    private final Set<String> users = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final AtomicInteger nominaChecks = new AtomicInteger();
+    private final AtomicInteger migrations = new AtomicInteger();
+
+    public UserServiceStub(Duration latency, int threads) throws IOException {
+        this.latency = latency;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 512);
+        server.createContext("/user", this::user);
+        server.createContext("/checkEmail", this::checkEmail);
+        server.createContext("/migrateUser", this::migrateUser);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Usuario que ya existe en la tabla: su login no migra.
+     */
+    public void addUser(String email) {
+        users.add(email);
+    }
+
+    public String urlBase() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    public String mailCheckUrl() {
+        return urlBase() + "checkEmail?email=";
+    }
+
+    public int lookups() {
+        return lookups.get();
+    }
+
+    public int nominaChecks() {
+        return nominaChecks.get();
+    }
+
+    public int migrations() {
+        return migrations.get();
+    }
+
+    private void user(HttpExchange exchange) throws IOException {
+        lookups.incrementAndGet();
+        Stubs.sleep(latency);
+        String email = queryParam(exchange, "email");
+        if (email == null || !users.contains(email)) {
+            Stubs.respond(exchange, 404, "{\"error\":\"NOT_FOUND\"}");
+            return;
+        }
+        Stubs.respond(exchange, 200, userJson(email));
+    }
+
+    private void checkEmail(HttpExchange exchange) throws IOException {
+        nominaChecks.incrementAndGet();
+        Stubs.sleep(latency);
+        Stubs.respond(exchange, 200, "true");
+    }
+
+    private void migrateUser(HttpExchange exchange) throws IOException {
+        migrations.incrementAndGet();
+        Stubs.sleep(latency);
+        Matcher m = EMAIL.matcher(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        if (!m.find()) {
+            Stubs.respond(exchange, 400, "{\"error\":\"email requerido\"}");
+            return;
+        }
+        users.add(m.group(1));
+        Stubs.respond(exchange, 200, userJson(m.group(1)));
+    }
+
+    private static String userJson(String email) {
+        return "{\"id\":\"rec" + Integer.toHexString(email.hashCode()) + "\",\"fields\":{\"Nombre\":\"Carga\","
+                + "\"Apellido\":\"" + email.substring(0, email.indexOf('@')) + "\",\"Correo Moby\":\"" + email + "\"}}";
+    }
+
+    private static String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,264 @@
+package com.microservicios.login.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import coms.dto.UserDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Caché de perfiles de usuario ({@link UserDTO}) delante del lookup {@code user?email=}.
+ *
+ * Dos niveles:
+ * - Local: Caffeine (W-TinyLFU) acotado por tamaño, por réplica.
+ * - Redis: compartido entre réplicas, con TTL propio.
+ *
+ * Los 404 del microservicio de usuarios se cachean como entrada negativa con un TTL corto,
+ * así un mail que no está en la tabla no vuelve a consultar en cada reintento.
+ */
+public class UserProfileCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserProfileCache.class);
+
+    static final String KEY_PREFIX = "login:user:";
+    private static final String NOT_FOUND = "-";
+
+    /**
+     * Resultado de una búsqueda en caché. {@code user == null} significa 404 cacheado.
+     */
+    public record Entry(UserDTO user) {
+        public boolean isNotFound() {
+            return user == null;
+        }
+    }
+
+    private static final Entry NOT_FOUND_ENTRY = new Entry(null);
+
+    private final Cache<String, Entry> local;
+    private final StringRedisTemplate redis;
+    private final ReactiveStringRedisTemplate reactiveRedis;
+    private final ObjectMapper objectMapper;
+    private final Duration redisTtl;
+    private final Duration negativeTtl;
+
+    private final Counter redisHits;
+    private final Counter redisMisses;
+    private final Counter redisErrors;
+    private final Counter negativeHits;
+
+    /**
+     * @param redis         nivel compartido; si es null sólo se usa la caché local
+     * @param reactiveRedis cliente no bloqueante del mismo Redis, para el modo reactivo (puede ser null)
+     */
+    public UserProfileCache(long maxSize, Duration localTtl, Duration redisTtl, Duration negativeTtl,
+                            StringRedisTemplate redis, ReactiveStringRedisTemplate reactiveRedis,
+                            ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.redis = redis;
+        this.reactiveRedis = reactiveRedis;
+        this.objectMapper = objectMapper;
+        this.redisTtl = redisTtl;
+        this.negativeTtl = negativeTtl;
+        this.local = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry value, long currentTime) {
+                        return (value.isNotFound() ? negativeTtl : localTtl).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+
+        // hits, misses y evictions del nivel local: cache.gets{result=hit|miss}, cache.evictions
+        CaffeineCacheMetrics.monitor(meterRegistry, local, "login.user.profile");
+        this.redisHits = Counter.builder("login.user.cache.redis").tag("result", "hit").register(meterRegistry);
+        this.redisMisses = Counter.builder("login.user.cache.redis").tag("result", "miss").register(meterRegistry);
+        this.redisErrors = Counter.builder("login.user.cache.redis").tag("result", "error").register(meterRegistry);
+        this.negativeHits = Counter.builder("login.user.cache.negative.hits").register(meterRegistry);
+    }
+
+    /**
+     * Busca el perfil en la caché local y después en Redis.
+     *
+     * @return la entrada cacheada, o null si hay que ir al microservicio de usuarios
+     */
+    public Entry get(String email) {
+        String key = normalize(email);
+        Entry entry = local.getIfPresent(key);
+        if (entry == null) {
+            entry = getFromRedis(key);
+            if (entry != null) {
+                local.put(key, entry);
+            }
+        }
+        if (entry != null && entry.isNotFound()) {
+            negativeHits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Lee sólo el nivel compartido (Redis), salteando la caché local. Sirve para ver el resultado
+     * que acaba de escribir otra réplica aunque acá quede un 404 cacheado.
+     */
+    public Entry getShared(String email) {
+        String key = normalize(email);
+        Entry entry = getFromRedis(key);
+        if (entry != null && !entry.isNotFound()) {
+            local.put(key, entry);
+        }
+        return entry;
+    }
+
+    public void put(String email, UserDTO user) {
+        store(normalize(email), new Entry(user), redisTtl);
+    }
+
+    /**
+     * Registra un 404 del lookup. Se pisa con {@link #put} cuando la migración crea el usuario.
+     */
+    public void putNotFound(String email) {
+        store(normalize(email), NOT_FOUND_ENTRY, negativeTtl);
+    }
+
+    public void evict(String email) {
+        String key = normalize(email);
+        local.invalidate(key);
+        if (redis == null) {
+            return;
+        }
+        try {
+            redis.delete(KEY_PREFIX + key);
+        } catch (RuntimeException e) {
+            redisErrors.increment();
+            logger.warn("No se pudo invalidar el usuario en Redis: {}", e.getMessage());
+        }
+    }
+
+    private void store(String key, Entry entry, Duration ttl) {
+        local.put(key, entry);
+        if (redis == null) {
+            return;
+        }
+        try {
+            redis.opsForValue().set(KEY_PREFIX + key, encode(entry), ttl);
+        } catch (JsonProcessingException | RuntimeException e) {
+            // La caché nunca debe romper el login: si Redis falla seguimos sólo con la local
+            redisErrors.increment();
+            logger.warn("No se pudo guardar el usuario en Redis: {}", e.getMessage());
+        }
+    }
+
+    private Entry getFromRedis(String key) {
+        if (redis == null) {
+            return null;
+        }
+        try {
+            String value = redis.opsForValue().get(KEY_PREFIX + key);
+            if (value == null) {
+                redisMisses.increment();
+                return null;
+            }
+            redisHits.increment();
+            return decode(value);
+        } catch (RuntimeException e) {
+            redisErrors.increment();
+            logger.warn("No se pudo leer el usuario desde Redis: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Versión no bloqueante de {@link #get}. Vacío = hay que ir al microservicio de usuarios.
+     */
+    public Mono<Entry> getReactive(String email) {
+        String key = normalize(email);
+        Entry entry = local.getIfPresent(key);
+        if (entry != null || reactiveRedis == null) {
+            return countNegative(Mono.justOrEmpty(entry));
+        }
+        Mono<Entry> shared = reactiveRedis.opsForValue().get(KEY_PREFIX + key)
+                .map(value -> {
+                    redisHits.increment();
+                    Entry found = decode(value);
+                    local.put(key, found);
+                    return found;
+                })
+                .switchIfEmpty(Mono.fromRunnable(redisMisses::increment))
+                .onErrorResume(e -> {
+                    redisErrors.increment();
+                    logger.warn("No se pudo leer el usuario desde Redis: {}", e.getMessage());
+                    return Mono.empty();
+                });
+        return countNegative(shared);
+    }
+
+    public Mono<Void> putReactive(String email, UserDTO user) {
+        return storeReactive(normalize(email), new Entry(user), redisTtl);
+    }
+
+    public Mono<Void> putNotFoundReactive(String email) {
+        return storeReactive(normalize(email), NOT_FOUND_ENTRY, negativeTtl);
+    }
+
+    private Mono<Void> storeReactive(String key, Entry entry, Duration ttl) {
+        local.put(key, entry);
+        if (reactiveRedis == null) {
+            return Mono.empty();
+        }
+        return Mono.fromCallable(() -> encode(entry))
+                .flatMap(value -> reactiveRedis.opsForValue().set(KEY_PREFIX + key, value, ttl))
+                .onErrorResume(e -> {
+                    redisErrors.increment();
+                    logger.warn("No se pudo guardar el usuario en Redis: {}", e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private Mono<Entry> countNegative(Mono<Entry> entry) {
+        return entry.doOnNext(e -> {
+            if (e.isNotFound()) {
+                negativeHits.increment();
+            }
+        });
+    }
+
+    private String encode(Entry entry) throws JsonProcessingException {
+        return entry.isNotFound() ? NOT_FOUND : objectMapper.writeValueAsString(entry.user());
+    }
+
+    private Entry decode(String value) {
+        try {
+            return NOT_FOUND.equals(value) ? NOT_FOUND_ENTRY : new Entry(objectMapper.readValue(value, UserDTO.class));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Usuario cacheado ilegible", e);
+        }
+    }
+
+    public static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,145 @@
+package com.microservicios.login.concurrency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+
+/**
+ * Límite de concurrencia adaptativo (AIMD): cuántas llamadas pueden estar en curso a la vez.
+ *
+ * Si una llamada termina bien y rápido y el límite se está usando, el límite sube de a uno. Si falla,
+ * vence o tarda más que el umbral, se multiplica por el factor de backoff. Con el límite lleno la llamada
+ * se rechaza en el acto en lugar de esperar, así una dependencia lenta no acumula hilos bloqueados.
+ * Con min = max es un bulkhead de tamaño fijo.
+ *
+ * Métricas: login.limiter.limit, login.limiter.inflight, login.limiter.rejected y login.limiter.dropped
+ * (llamadas que hicieron bajar el límite), todas con tag name.
+ */
+public class AdaptiveLimiter {
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    private final Counter rejected;
+    private final Counter dropped;
+
+    // Protegidos por this: cada cambio es de pocas instrucciones y no hay I/O adentro
+    private double limit;
+    private int inFlight;
+
+    public AdaptiveLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                           Duration latencyThreshold, double backoffRatio, MeterRegistry meterRegistry) {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("Límites inválidos para " + name + ": min=" + minLimit + " max=" + maxLimit);
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+
+        Gauge.builder("login.limiter.limit", this, AdaptiveLimiter::getLimit)
+                .tag("name", name)
+                .description("Llamadas concurrentes permitidas")
+                .register(meterRegistry);
+        Gauge.builder("login.limiter.inflight", this, AdaptiveLimiter::getInFlight)
+                .tag("name", name)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("login.limiter.rejected").tag("name", name)
+                .description("Llamadas rechazadas por tener el límite lleno")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("login.limiter.dropped").tag("name", name)
+                .description("Llamadas fallidas o lentas que hicieron bajar el límite")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Bulkhead de tamaño fijo: mismo mecanismo y métricas, sin adaptación.
+     */
+    public static AdaptiveLimiter fixed(String name, int limit, MeterRegistry meterRegistry) {
+        return new AdaptiveLimiter(name, limit, limit, limit, Duration.ofNanos(Long.MAX_VALUE), 1.0, meterRegistry);
+    }
+
+    /**
+     * @return el permiso a liberar al terminar, o null si el límite está lleno
+     */
+    public Permit tryAcquire() {
+        synchronized (this) {
+            if (inFlight >= (int) limit) {
+                rejected.increment();
+                return null;
+            }
+            inFlight++;
+        }
+        return new Permit(System.nanoTime());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private synchronized void release(long latencyNanos, Result result) {
+        int current = inFlight--;
+        if (result == Result.IGNORE) {
+            return;
+        }
+        if (result == Result.DROPPED || latencyNanos > latencyThresholdNanos) {
+            dropped.increment();
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (current * 2 >= limit) {
+            // Sólo crece si el límite se está usando: con poco tráfico no hay evidencia de que aguante más
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+
+    private enum Result { SUCCESS, DROPPED, IGNORE }
+
+    /**
+     * Una llamada en curso. Se libera una sola vez con el resultado que corresponda.
+     */
+    public final class Permit {
+
+        private final long startNanos;
+        private boolean released;
+
+        private Permit(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        /** La dependencia respondió (aunque sea un 4xx): la latencia decide si el límite sube o baja. */
+        public void success() {
+            release(Result.SUCCESS);
+        }
+
+        /** Timeout, error de conexión o 5xx: señal de sobrecarga. */
+        public void dropped() {
+            release(Result.DROPPED);
+        }
+
+        /** La llamada no dice nada sobre la carga (ej: se canceló): sólo libera el lugar. */
+        public void ignore() {
+            release(Result.IGNORE);
+        }
+
+        private synchronized void release(Result result) {
+            if (released) {
+                return;
+            }
+            released = true;
+            AdaptiveLimiter.this.release(System.nanoTime() - startNanos, result);
+        }
+    }
+}
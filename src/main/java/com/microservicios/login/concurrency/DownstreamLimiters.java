@@ -0,0 +1,75 @@
+package com.microservicios.login.concurrency;
+
+import com.microservicios.login.exception.LoginOverloadedException;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Un {@link AdaptiveLimiter} por dependencia saliente (Google, microservicio de usuarios, nómina),
+ * elegido por prefijo de URL. Lo aplican el HttpClient compartido (RestTemplate y transporte de Google)
+ * y el WebClient del modo reactivo, así ninguna llamada a una dependencia queda fuera del límite.
+ */
+public class DownstreamLimiters {
+
+    private record Route(String urlPrefix, AdaptiveLimiter limiter) {
+    }
+
+    private final List<Route> routes = new ArrayList<>();
+
+    /**
+     * @param limitersByUrlPrefix limiter de cada dependencia, por prefijo de URL. Gana el prefijo más largo.
+     */
+    public DownstreamLimiters(Map<String, AdaptiveLimiter> limitersByUrlPrefix) {
+        limitersByUrlPrefix.forEach((prefix, limiter) -> routes.add(new Route(prefix, limiter)));
+        routes.sort(Comparator.comparingInt((Route route) -> route.urlPrefix().length()).reversed());
+    }
+
+    /**
+     * @return el limiter de la dependencia, o null si la URL no es de ninguna dependencia limitada
+     */
+    public AdaptiveLimiter forUrl(String url) {
+        for (Route route : routes) {
+            if (url.startsWith(route.urlPrefix())) {
+                return route.limiter();
+            }
+        }
+        return null;
+    }
+
+    public static LoginOverloadedException rejected(AdaptiveLimiter limiter) {
+        return new LoginOverloadedException("Límite de concurrencia lleno para " + limiter.getName());
+    }
+
+    /**
+     * Mismo criterio para el WebClient: 5xx o error = sobrecarga, cancelación = no cuenta.
+     */
+    public ExchangeFilterFunction exchangeFilter() {
+        return (request, next) -> {
+            AdaptiveLimiter limiter = forUrl(request.url().toString());
+            if (limiter == null) {
+                return next.exchange(request);
+            }
+            return Mono.defer(() -> {
+                AdaptiveLimiter.Permit permit = limiter.tryAcquire();
+                if (permit == null) {
+                    return Mono.error(rejected(limiter));
+                }
+                return next.exchange(request)
+                        .doOnNext(response -> {
+                            if (response.statusCode().is5xxServerError()) {
+                                permit.dropped();
+                            } else {
+                                permit.success();
+                            }
+                        })
+                        .doOnError(e -> permit.dropped())
+                        .doOnCancel(permit::ignore);
+            });
+        };
+    }
+}
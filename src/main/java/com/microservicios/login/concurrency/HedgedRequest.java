@@ -0,0 +1,135 @@
+package com.microservicios.login.concurrency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Llamada con "hedging": si el primer intento tarda más que el percentil observado de la
+ * operación, se lanza un segundo intento igual y gana el que responda primero. Un intento que falla no
+ * decide el resultado mientras el otro siga en curso.
+ *
+ * Sólo para operaciones idempotentes (lecturas). El percentil sale de las latencias recientes
+ * de los intentos; hasta juntar suficientes muestras se usa un delay inicial fijo.
+ */
+public class HedgedRequest {
+
+    private static final long MIN_SAMPLES = 20;
+
+    private final Executor executor;
+    private final Timer attempts;
+    private final Duration initialDelay;
+    private final Duration minDelay;
+    private final Counter hedged;
+    private final Counter hedgeWon;
+
+    /**
+     * @param percentile percentil de latencia a partir del cual se lanza el segundo intento (ej: 0.95)
+     */
+    public HedgedRequest(Executor executor, MeterRegistry meterRegistry, String name, double percentile,
+                         Duration initialDelay, Duration minDelay) {
+        this.executor = executor;
+        this.initialDelay = initialDelay;
+        this.minDelay = minDelay;
+        this.attempts = Timer.builder("login.hedge.attempts")
+                .tag("operation", name)
+                .publishPercentiles(percentile)
+                .distributionStatisticExpiry(Duration.ofMinutes(2))
+                .register(meterRegistry);
+        this.hedged = Counter.builder("login.hedge.sent").tag("operation", name).register(meterRegistry);
+        this.hedgeWon = Counter.builder("login.hedge.won").tag("operation", name).register(meterRegistry);
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        InFlight inFlight = new InFlight();
+        CompletableFuture.runAsync(() -> attempt(call, result, inFlight, false), executor);
+        // El rechazo del executor pasa en el hilo del delayer, cuando vence el delay: se atrapa ahí
+        Executor delayed = CompletableFuture.delayedExecutor(hedgeDelay().toNanos(), TimeUnit.NANOSECONDS, task -> {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // Sin hilos libres: seguimos sólo con el primer intento
+            }
+        });
+        delayed.execute(() -> {
+            // Sólo si el primer intento sigue en curso: si ya falló, el resultado ya es ese error
+            if (!result.isDone() && inFlight.launch()) {
+                hedged.increment();
+                attempt(call, result, inFlight, true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Delay actual antes del segundo intento.
+     */
+    public Duration hedgeDelay() {
+        if (attempts.count() < MIN_SAMPLES) {
+            return initialDelay;
+        }
+        ValueAtPercentile[] percentiles = attempts.takeSnapshot().percentileValues();
+        if (percentiles.length == 0) {
+            return initialDelay;
+        }
+        long nanos = (long) percentiles[0].value(TimeUnit.NANOSECONDS);
+        return nanos > minDelay.toNanos() ? Duration.ofNanos(nanos) : minDelay;
+    }
+
+    private <T> void attempt(Supplier<T> call, CompletableFuture<T> result, InFlight inFlight, boolean hedge) {
+        long start = System.nanoTime();
+        try {
+            T value = call.get();
+            attempts.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (result.complete(value) && hedge) {
+                hedgeWon.increment();
+            }
+        } catch (RuntimeException e) {
+            // Un intento que falla (5xx, conexión cortada, hedge rechazado por el límite de la dependencia)
+            // no corta al otro: el resultado falla recién cuando fallaron todos los que se lanzaron
+            RuntimeException failure = inFlight.failed(e, hedge);
+            if (failure != null) {
+                result.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * Intentos en curso de un submit y el error a devolver si fallan todos (el del primer intento, si falló).
+     */
+    private static final class InFlight {
+
+        private final AtomicInteger running = new AtomicInteger(1);
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        /**
+         * @return false si ya no queda ningún intento en curso
+         */
+        boolean launch() {
+            return running.getAndUpdate(n -> n > 0 ? n + 1 : n) > 0;
+        }
+
+        /**
+         * @return el error con el que completar el resultado, o null si otro intento sigue en curso
+         */
+        RuntimeException failed(RuntimeException e, boolean hedge) {
+            if (hedge) {
+                failure.compareAndSet(null, e);
+            } else {
+                failure.set(e);
+            }
+            return running.decrementAndGet() == 0 ? failure.get() : null;
+        }
+    }
+}
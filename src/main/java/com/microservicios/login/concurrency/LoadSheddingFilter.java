@@ -0,0 +1,118 @@
+package com.microservicios.login.concurrency;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Corta la carga en la entrada de /api/auth antes de ocupar un hilo de Tomcat esperando dependencias.
+ *
+ * - Callback de Google: límite adaptativo. Lleno = redirect inmediato a /login?auth=error&type=overloaded.
+ * - /me, /logout, /google/token y /sessions: bulkhead propio de tamaño fijo, así siguen respondiendo aunque el
+ *   callback esté saturado. Lleno = 503 con Retry-After.
+ *
+ * Corre antes del filtro de Spring Session: un request rechazado no toca Redis.
+ * En modo reactivo el permiso se libera cuando termina el request asíncrono, no cuando vuelve el handler.
+ */
+public class LoadSheddingFilter extends OncePerRequestFilter {
+
+    public static final String CALLBACK_PATH = "/api/auth/google/callback";
+    public static final Set<String> SESSION_PATHS = Set.of("/api/auth/me", "/api/auth/logout", "/api/auth/google/token");
+    /** Listado y cierre de sesiones, con o sin id: mismo bulkhead que /me. */
+    public static final String SESSIONS_PATH = "/api/auth/sessions";
+
+    private final AdaptiveLimiter callbackLimiter;
+    private final AdaptiveLimiter sessionBulkhead;
+    private final String overloadedRedirect;
+
+    public LoadSheddingFilter(AdaptiveLimiter callbackLimiter, AdaptiveLimiter sessionBulkhead, String overloadedRedirect) {
+        this.callbackLimiter = callbackLimiter;
+        this.sessionBulkhead = sessionBulkhead;
+        this.overloadedRedirect = overloadedRedirect;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        boolean callback = CALLBACK_PATH.equals(path);
+        boolean session = SESSION_PATHS.contains(path) || path.startsWith(SESSIONS_PATH);
+        AdaptiveLimiter limiter = callback ? callbackLimiter : session ? sessionBulkhead : null;
+        if (limiter == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        AdaptiveLimiter.Permit permit = limiter.tryAcquire();
+        if (permit == null) {
+            reject(response, callback);
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            permit.dropped();
+            throw e;
+        }
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    release(permit, response);
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                    permit.dropped();
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    permit.dropped();
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        } else {
+            release(permit, response);
+        }
+    }
+
+    /**
+     * El callback siempre responde 302: un redirect de error por timeout o sobrecarga aguas abajo
+     * también es señal para bajar el límite.
+     */
+    private static void release(AdaptiveLimiter.Permit permit, HttpServletResponse response) {
+        String location = response.getHeader(HttpHeaders.LOCATION);
+        boolean overloaded = response.getStatus() >= 500
+                || (location != null && (location.contains("type=timeout") || location.contains("type=overloaded")));
+        if (overloaded) {
+            permit.dropped();
+        } else {
+            permit.success();
+        }
+    }
+
+    private void reject(HttpServletResponse response, boolean callback) throws IOException {
+        if (callback) {
+            response.setStatus(HttpStatus.FOUND.value());
+            response.setHeader(HttpHeaders.LOCATION, overloadedRedirect);
+            return;
+        }
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getWriter().write("Servicio saturado, reintentá en unos segundos.");
+    }
+}
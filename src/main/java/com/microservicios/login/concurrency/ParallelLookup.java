@@ -0,0 +1,11 @@
+package com.microservicios.login.concurrency;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Configuración del modo paralelo de resolución de usuarios (user.resolve.parallel.enabled=true):
+ * pool para las llamadas en paralelo, hedging del lookup y tiempo máximo total.
+ */
+public record ParallelLookup(ExecutorService executor, HedgedRequest userLookup, Duration deadline) {
+}
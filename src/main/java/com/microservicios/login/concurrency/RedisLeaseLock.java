@@ -0,0 +1,66 @@
+package com.microservicios.login.concurrency;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * Lock distribuido de corta duración sobre Redis ({@code SET NX PX}).
+ *
+ * El lock expira solo al terminar el lease, así una réplica que muere no lo deja tomado.
+ * Si Redis no responde se sigue sin lock (fail-open): preferimos una migración duplicada
+ * antes que un login caído.
+ */
+public class RedisLeaseLock {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisLeaseLock.class);
+
+    static final String KEY_PREFIX = "login:lock:";
+    /** Token devuelto cuando Redis falló y se continúa sin lock. */
+    public static final String UNLOCKED = "";
+
+    private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final StringRedisTemplate redis;
+
+    public RedisLeaseLock(StringRedisTemplate redis) {
+        this.redis = redis;
+    }
+
+    /**
+     * @return token para liberar el lock, {@link #UNLOCKED} si Redis no está disponible,
+     *         o null si otra réplica tiene el lock
+     */
+    public String tryAcquire(String name, Duration lease) {
+        String token = UUID.randomUUID().toString();
+        try {
+            Boolean acquired = redis.opsForValue().setIfAbsent(KEY_PREFIX + name, token, lease);
+            return Boolean.TRUE.equals(acquired) ? token : null;
+        } catch (RuntimeException e) {
+            logger.warn("No se pudo tomar el lock {} en Redis, se continúa sin lock: {}", name, e.getMessage());
+            return UNLOCKED;
+        }
+    }
+
+    /**
+     * Libera el lock sólo si sigue siendo nuestro (el lease puede haber vencido y otro haberlo tomado).
+     */
+    public void release(String name, String token) {
+        if (token == null || UNLOCKED.equals(token)) {
+            return;
+        }
+        try {
+            redis.execute(RELEASE, Collections.singletonList(KEY_PREFIX + name), token);
+        } catch (RuntimeException e) {
+            logger.warn("No se pudo liberar el lock {} en Redis: {}", name, e.getMessage());
+        }
+    }
+}
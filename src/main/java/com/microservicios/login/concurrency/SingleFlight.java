@@ -0,0 +1,71 @@
+package com.microservicios.login.concurrency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Junta llamadas concurrentes con la misma clave en una sola ejecución dentro de la JVM.
+ *
+ * El primer hilo ejecuta la operación; los que llegan mientras está en curso esperan
+ * y reciben el mismo resultado (o la misma excepción).
+ */
+public class SingleFlight<K, V> {
+
+    @FunctionalInterface
+    public interface Call<V, E extends Exception> {
+        V call() throws E;
+    }
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+
+    public SingleFlight(MeterRegistry meterRegistry, String name) {
+        this.coalesced = Counter.builder("login.singleflight.coalesced")
+                .tag("operation", name)
+                .description("Llamadas que esperaron el resultado de otra en curso en lugar de ejecutarse")
+                .register(meterRegistry);
+    }
+
+    public <E extends Exception> V execute(K key, Call<V, E> call) throws E {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+        try {
+            V value = call.call();
+            mine.complete(value);
+            return value;
+        } catch (Exception | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E extends Exception> V await(CompletableFuture<V> future) throws E {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido esperando una operación en curso", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            // El líder sólo puede fallar con E o con una excepción no chequeada
+            throw (E) cause;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.microservicios.login.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservicios.login.cache.UserProfileCache;
+import com.microservicios.login.directory.EmployeeDirectory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+
+@Configuration
+public class CacheConfig {
+
+    /**
+     * Caché de perfiles de usuario: local (Caffeine) + Redis compartido entre réplicas.
+     * Con user.cache.redis.enabled=false queda sólo el nivel local.
+     */
+    @Bean
+    public UserProfileCache userProfileCache(StringRedisTemplate stringRedisTemplate,
+                                             ReactiveStringRedisTemplate reactiveStringRedisTemplate,
+                                             ObjectMapper objectMapper,
+                                             MeterRegistry meterRegistry,
+                                             @Value("${user.cache.local.max-size:1000}") long maxSize,
+                                             @Value("${user.cache.local.ttl:10m}") Duration localTtl,
+                                             @Value("${user.cache.redis.enabled:true}") boolean redisEnabled,
+                                             @Value("${user.cache.redis.ttl:12h}") Duration redisTtl,
+                                             @Value("${user.cache.negative-ttl:30s}") Duration negativeTtl) {
+        return new UserProfileCache(maxSize, localTtl, redisTtl, negativeTtl,
+                redisEnabled ? stringRedisTemplate : null,
+                redisEnabled ? reactiveStringRedisTemplate : null,
+                objectMapper, meterRegistry);
+    }
+
+    /**
+     * Directorio de empleados replicado en memoria: el login de un usuario existente no sale a la red.
+     */
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnProperty(name = "user.directory.enabled", havingValue = "true")
+    public EmployeeDirectory employeeDirectory(RestTemplate restTemplate,
+                                               MeterRegistry meterRegistry,
+                                               @Value("${user.directory.url:${URL_BASE}users}") String listUrl,
+                                               @Value("${user.directory.page-size:100}") int pageSize,
+                                               @Value("${user.directory.sync-interval:1m}") Duration syncInterval,
+                                               @Value("${user.directory.full-reload:6h}") Duration fullReload,
+                                               @Value("${user.directory.overlap:1m}") Duration overlap) {
+        return new EmployeeDirectory(restTemplate, listUrl, pageSize, syncInterval, fullReload, overlap,
+                Clock.systemUTC(), meterRegistry);
+    }
+}
@@ -0,0 +1,59 @@
+package com.microservicios.login.config;
+
+import com.microservicios.login.concurrency.HedgedRequest;
+import com.microservicios.login.concurrency.ParallelLookup;
+import com.microservicios.login.concurrency.RedisLeaseLock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class ConcurrencyConfig {
+
+    /**
+     * Lock distribuido para operaciones que no deben correr en dos réplicas a la vez
+     * (ej: migración del primer login). Con user.migration.lock.enabled=false no se crea.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "user.migration.lock.enabled", havingValue = "true", matchIfMissing = true)
+    public RedisLeaseLock redisLeaseLock(StringRedisTemplate stringRedisTemplate) {
+        return new RedisLeaseLock(stringRedisTemplate);
+    }
+
+    /**
+     * Modo paralelo del login: lookup con hedging y check de nómina especulativo en un pool acotado.
+     * Si el pool y su cola se llenan la llamada falla en el acto en lugar de encolar sin límite.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "user.resolve.parallel.enabled", havingValue = "true")
+    public ParallelLookup parallelLookup(MeterRegistry meterRegistry,
+                                         @Value("${user.resolve.parallel.threads:16}") int threads,
+                                         @Value("${user.resolve.deadline:4s}") Duration deadline,
+                                         @Value("${user.resolve.hedge.percentile:0.95}") double percentile,
+                                         @Value("${user.resolve.hedge.initial-delay:300ms}") Duration initialDelay,
+                                         @Value("${user.resolve.hedge.min-delay:50ms}") Duration minDelay) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 4), runnable -> {
+                    Thread thread = new Thread(runnable, "user-resolve-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        ExecutorService executor = ExecutorServiceMetrics.monitor(meterRegistry, pool, "user-resolve");
+        HedgedRequest userLookup = new HedgedRequest(executor, meterRegistry, "user_lookup", percentile,
+                initialDelay, minDelay);
+        return new ParallelLookup(executor, userLookup, deadline);
+    }
+}
@@ -0,0 +1,82 @@
+package com.microservicios.login.config;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.microservicios.login.google.ApacheHttpClient5Transport;
+import com.microservicios.login.concurrency.RedisLeaseLock;
+import com.microservicios.login.google.GoogleSigningKeys;
+import com.microservicios.login.google.GoogleTokenBroker;
+import com.microservicios.login.google.GoogleTokenVerifier;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.lang.Nullable;
+
+import java.time.Clock;
+import java.time.Duration;
+
+@Configuration
+public class GoogleConfig {
+
+    /**
+     * Transporte HTTP único para todas las llamadas a Google (certificados y token endpoint),
+     * sobre el mismo pool de conexiones que el RestTemplate.
+     */
+    @Bean
+    public HttpTransport googleHttpTransport(CloseableHttpClient outboundHttpClient) {
+        return new ApacheHttpClient5Transport(outboundHttpClient);
+    }
+
+    @Bean
+    public JsonFactory googleJsonFactory() {
+        return GsonFactory.getDefaultInstance();
+    }
+
+    /**
+     * Claves de firma de Google cacheadas en memoria y refrescadas en background.
+     */
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public GoogleSigningKeys googleSigningKeys(HttpTransport googleHttpTransport,
+                                               MeterRegistry meterRegistry,
+                                               @Value("${google.certs.url}") String certsUrl,
+                                               @Value("${google.certs.refresh-ahead:5m}") Duration refreshAhead,
+                                               @Value("${google.certs.min-refetch-interval:30s}") Duration minRefetchInterval) {
+        return new GoogleSigningKeys(googleHttpTransport, certsUrl, refreshAhead, minRefetchInterval,
+                Clock.systemUTC(), meterRegistry);
+    }
+
+    @Bean
+    public GoogleTokenVerifier googleTokenVerifier(HttpTransport googleHttpTransport,
+                                                   JsonFactory googleJsonFactory,
+                                                   GoogleSigningKeys googleSigningKeys,
+                                                   @Value("${google.client.id}") String googleClientId) {
+        return new GoogleTokenVerifier(googleHttpTransport, googleJsonFactory, googleSigningKeys, googleClientId);
+    }
+
+    /**
+     * Broker de access tokens de Google con refresh en background (GET /api/auth/google/token).
+     */
+    @Bean(destroyMethod = "close")
+    public GoogleTokenBroker googleTokenBroker(HttpTransport googleHttpTransport,
+                                               JsonFactory googleJsonFactory,
+                                               StringRedisTemplate stringRedisTemplate,
+                                               @Nullable RedisLeaseLock redisLeaseLock,
+                                               MeterRegistry meterRegistry,
+                                               @Value("${google.token.url:https://oauth2.googleapis.com/token}") String tokenUrl,
+                                               @Value("${google.client.id}") String googleClientId,
+                                               @Value("${google.client.secret}") String googleClientSecret,
+                                               @Value("${google.token.broker.refresh-ahead:5m}") Duration refreshAhead,
+                                               @Value("${google.token.broker.idle:1h}") Duration idle,
+                                               @Value("${google.token.broker.max-users:10000}") long maxUsers,
+                                               @Value("${google.token.broker.threads:2}") int threads,
+                                               @Value("${google.token.broker.lock.lease:10s}") Duration lockLease,
+                                               @Value("${google.token.broker.lock.wait:5s}") Duration lockWait) {
+        return new GoogleTokenBroker(googleHttpTransport, googleJsonFactory, tokenUrl, googleClientId, googleClientSecret,
+                stringRedisTemplate, redisLeaseLock, refreshAhead, idle, maxUsers, threads, lockLease, lockWait,
+                Clock.systemUTC(), meterRegistry);
+    }
+}
@@ -0,0 +1,93 @@
+package com.microservicios.login.config;
+
+import com.microservicios.login.concurrency.DownstreamLimiters;
+import com.microservicios.login.http.DownstreamLimitHandler;
+import com.microservicios.login.http.InstrumentedConnectionManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+
+/**
+ * Cliente HTTP saliente único para el microservicio de usuarios, el check de nómina y Google.
+ *
+ * - Pool de conexiones keep-alive con tope total y por host (route).
+ * - Timeouts de conexión, de lectura y de espera por una conexión del pool.
+ * - Las conexiones ociosas o vencidas se cierran en background.
+ * - Límite de concurrencia adaptativo por dependencia (ver LoadSheddingConfig).
+ */
+@Configuration
+public class HttpClientConfig {
+
+    @Value("${http.client.max-total:40}")
+    private int maxTotal;
+
+    @Value("${http.client.max-per-route:10}")
+    private int maxPerRoute;
+
+    @Value("${http.client.connect-timeout:2s}")
+    private Duration connectTimeout;
+
+    @Value("${http.client.read-timeout:5s}")
+    private Duration readTimeout;
+
+    @Value("${http.client.pool-timeout:1s}")
+    private Duration poolTimeout;
+
+    @Value("${http.client.idle-evict:30s}")
+    private Duration idleEvict;
+
+    @Value("${http.client.connection-ttl:5m}")
+    private Duration connectionTtl;
+
+    @Bean(destroyMethod = "close")
+    public InstrumentedConnectionManager outboundConnectionManager(MeterRegistry meterRegistry) {
+        InstrumentedConnectionManager manager = new InstrumentedConnectionManager(meterRegistry, "outbound");
+        manager.setMaxTotal(maxTotal);
+        manager.setDefaultMaxPerRoute(maxPerRoute);
+        manager.setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(connectTimeout))
+                .setSocketTimeout(Timeout.of(readTimeout))
+                .setTimeToLive(TimeValue.of(connectionTtl))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                .build());
+        // leased, available, pending y max del pool
+        new PoolingHttpClientConnectionManagerMetricsBinder(manager, "outbound").bindTo(meterRegistry);
+        return manager;
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient outboundHttpClient(InstrumentedConnectionManager outboundConnectionManager,
+                                                  @Nullable DownstreamLimiters downstreamLimiters) {
+        HttpClientBuilder builder = HttpClients.custom();
+        if (downstreamLimiters != null) {
+            builder.addExecInterceptorFirst("downstream-limits", new DownstreamLimitHandler(downstreamLimiters));
+        }
+        return builder
+                .setConnectionManager(outboundConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(poolTimeout))
+                        .setResponseTimeout(Timeout.of(readTimeout))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(idleEvict))
+                .build();
+    }
+
+    @Bean
+    public HttpComponentsClientHttpRequestFactory outboundRequestFactory(CloseableHttpClient outboundHttpClient) {
+        return new HttpComponentsClientHttpRequestFactory(outboundHttpClient);
+    }
+}
@@ -0,0 +1,25 @@
+package com.microservicios.login.config;
+
+import com.microservicios.login.LoginApplication;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class LazyInitializationConfig {
+
+    private static final String SERVICE_PACKAGE = LoginApplication.class.getPackageName() + ".";
+
+    /**
+     * Con spring.main.lazy-initialization=true (perfil faststart) sólo se difiere lo que el login no usa
+     * (autoconfiguraciones y endpoints de actuator que nadie pide). Los beans del servicio se crean al arrancar, y
+     * con ellos sus dependencias: claves de Google (prefetch del JWKS), verificador, broker, pools HTTP y Redis.
+     * Diferidos, los pagaba el request que despierta la máquina.
+     *
+     * Estático: el filtro lo usa un BeanFactoryPostProcessor, antes de que exista esta configuración.
+     */
+    @Bean
+    public static LazyInitializationExcludeFilter loginPathEagerInitialization() {
+        return (beanName, beanDefinition, beanType) -> beanType != null && beanType.getName().startsWith(SERVICE_PACKAGE);
+    }
+}
@@ -0,0 +1,89 @@
+package com.microservicios.login.config;
+
+import com.microservicios.login.concurrency.AdaptiveLimiter;
+import com.microservicios.login.concurrency.DownstreamLimiters;
+import com.microservicios.login.concurrency.LoadSheddingFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Límites de concurrencia del login (login.limiter.enabled, activo por defecto).
+ *
+ * El máximo del callback más el bulkhead de sesión tiene que quedar por debajo de server.tomcat.threads.max,
+ * así siempre quedan hilos para /me y /logout aunque el callback esté lleno.
+ */
+@Configuration
+@ConditionalOnProperty(name = "login.limiter.enabled", havingValue = "true", matchIfMissing = true)
+public class LoadSheddingConfig {
+
+    @Value("${login.limiter.downstream.initial:10}")
+    private int downstreamInitial;
+
+    @Value("${login.limiter.downstream.min:2}")
+    private int downstreamMin;
+
+    @Value("${login.limiter.downstream.max:10}")
+    private int downstreamMax;
+
+    @Value("${login.limiter.downstream.latency-threshold:2s}")
+    private Duration downstreamLatencyThreshold;
+
+    @Value("${login.limiter.backoff-ratio:0.9}")
+    private double backoffRatio;
+
+    @Bean
+    public AdaptiveLimiter callbackLimiter(MeterRegistry meterRegistry,
+                                           @Value("${login.limiter.callback.initial:20}") int initial,
+                                           @Value("${login.limiter.callback.min:4}") int min,
+                                           @Value("${login.limiter.callback.max:100}") int max,
+                                           @Value("${login.limiter.callback.latency-threshold:3s}") Duration latencyThreshold) {
+        return new AdaptiveLimiter("callback", initial, min, max, latencyThreshold, backoffRatio, meterRegistry);
+    }
+
+    @Bean
+    public AdaptiveLimiter sessionBulkhead(MeterRegistry meterRegistry,
+                                           @Value("${login.limiter.session.max:50}") int max) {
+        return AdaptiveLimiter.fixed("session", max, meterRegistry);
+    }
+
+    /**
+     * Un límite por dependencia. El check de nómina puede vivir bajo URL_BASE: gana el prefijo más largo.
+     */
+    @Bean
+    public DownstreamLimiters downstreamLimiters(MeterRegistry meterRegistry,
+                                                 @Value("${google.token.url:https://oauth2.googleapis.com/token}") String googleTokenUrl,
+                                                 @Value("${URL_BASE}") String urlBase,
+                                                 @Value("${MAIL_CHECK}") String mailCheckUri) {
+        Map<String, AdaptiveLimiter> limiters = new LinkedHashMap<>();
+        limiters.put(googleTokenUrl, downstream("google_token", meterRegistry));
+        limiters.put(urlBase, downstream("user_service", meterRegistry));
+        limiters.put(mailCheckUri, downstream("nomina", meterRegistry));
+        return new DownstreamLimiters(limiters);
+    }
+
+    @Bean
+    public FilterRegistrationBean<LoadSheddingFilter> loadSheddingFilter(AdaptiveLimiter callbackLimiter,
+                                                                         AdaptiveLimiter sessionBulkhead,
+                                                                         @Value("${LOGIN_REDIRECT}") String loginRedirectUri) {
+        FilterRegistrationBean<LoadSheddingFilter> registration = new FilterRegistrationBean<>(new LoadSheddingFilter(
+                callbackLimiter, sessionBulkhead, loginRedirectUri + "/login?auth=error&type=overloaded"));
+        registration.addUrlPatterns("/api/auth/*");
+        // Después de la observación HTTP (los rechazos cuentan en http.server.requests) y antes de Spring Session
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+    private AdaptiveLimiter downstream(String name, MeterRegistry meterRegistry) {
+        return new AdaptiveLimiter(name, downstreamInitial, downstreamMin, downstreamMax,
+                downstreamLatencyThreshold, backoffRatio, meterRegistry);
+    }
+}
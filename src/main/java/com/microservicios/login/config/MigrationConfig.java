@@ -0,0 +1,56 @@
+package com.microservicios.login.config;
+
+import com.microservicios.login.migration.MigrationQueue;
+import com.microservicios.login.migration.MigrationWorker;
+import com.microservicios.login.service.UserProfileService;
+import com.microservicios.login.session.LoginSessions;
+import com.microservicios.login.session.SessionIndex;
+import com.microservicios.login.token.SessionTokens;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Migración asíncrona del primer login (user.migration.async.enabled=true): el callback encola en un
+ * Redis Stream y cada réplica consume la cola con un consumer group.
+ */
+@Configuration
+@ConditionalOnProperty(name = "user.migration.async.enabled", havingValue = "true")
+public class MigrationConfig {
+
+    @Bean
+    public MigrationQueue migrationQueue(StringRedisTemplate stringRedisTemplate, MeterRegistry meterRegistry) {
+        return new MigrationQueue(stringRedisTemplate, meterRegistry);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public MigrationWorker migrationWorker(StringRedisTemplate stringRedisTemplate,
+                                           UserProfileService userProfileService,
+                                           SessionRepository<? extends Session> sessionRepository,
+                                           LoginSessions loginSessions,
+                                           @Nullable SessionIndex sessionIndex,
+                                           @Nullable SessionTokens sessionTokens,
+                                           MeterRegistry meterRegistry,
+                                           @Value("${spring.application.name:ms-login}") String applicationName,
+                                           @Value("${user.migration.async.batch-size:10}") int batchSize,
+                                           @Value("${user.migration.async.max-attempts:8}") int maxAttempts,
+                                           @Value("${user.migration.async.backoff.initial:10s}") Duration initialBackoff,
+                                           @Value("${user.migration.async.backoff.max:5m}") Duration maxBackoff,
+                                           @Value("${user.migration.async.poll-interval:500ms}") Duration pollInterval) {
+        // Un consumidor por proceso: lo que deja pendiente una réplica que se reinicia lo reclama otra
+        String consumerName = applicationName + "-" + UUID.randomUUID().toString().substring(0, 8);
+        return new MigrationWorker(stringRedisTemplate, userProfileService::completeMigration, sessionRepository,
+                loginSessions, sessionIndex, sessionTokens, consumerName, batchSize, maxAttempts, initialBackoff, maxBackoff,
+                pollInterval, Clock.systemUTC(), meterRegistry);
+    }
+}
@@ -0,0 +1,18 @@
+package com.microservicios.login.config;
+
+import com.microservicios.login.metrics.LoginStages;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ObservabilityConfig {
+
+    /**
+     * Timers + spans por etapa del callback de Google (ver LoginStages).
+     */
+    @Bean
+    public LoginStages loginStages(ObservationRegistry observationRegistry) {
+        return new LoginStages(observationRegistry);
+    }
+}
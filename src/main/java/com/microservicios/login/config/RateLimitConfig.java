@@ -0,0 +1,68 @@
+package com.microservicios.login.config;
+
+import com.microservicios.login.ratelimit.RateLimitFilter;
+import com.microservicios.login.ratelimit.RateLimits;
+import com.microservicios.login.ratelimit.TokenBucket;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rate limit distribuido del login (login.rate-limit.enabled, activo por defecto).
+ *
+ * Cada endpoint/dimensión se configura con login.rate-limit.<callback|me>.<ip|email>.capacity (ráfaga;
+ * 0 = sin límite) y .period (en cuánto se recupera la capacidad completa). Los límites por IP tienen que
+ * contemplar oficinas enteras detrás de un mismo NAT.
+ */
+@Configuration
+@ConditionalOnProperty(name = "login.rate-limit.enabled", havingValue = "true", matchIfMissing = true)
+public class RateLimitConfig {
+
+    private static final String PREFIX = "login.rate-limit.";
+
+    /** Cuánto dura el lease local de tokens; su tamaño sale de la tasa de recarga (TokenBucket.leaseSize). */
+    @Value("${login.rate-limit.lease-ttl:1s}")
+    private Duration leaseTtl;
+
+    @Bean
+    public RateLimits rateLimits(StringRedisTemplate stringRedisTemplate, MeterRegistry meterRegistry, Environment environment) {
+        Map<String, TokenBucket> buckets = new HashMap<>();
+        for (String endpoint : new String[]{RateLimits.CALLBACK, RateLimits.ME}) {
+            for (String dimension : new String[]{RateLimits.IP, RateLimits.EMAIL}) {
+                String prefix = PREFIX + endpoint + "." + dimension + ".";
+                int capacity = environment.getProperty(prefix + "capacity", Integer.class, 0);
+                if (capacity <= 0) {
+                    continue;
+                }
+                Duration period = environment.getProperty(prefix + "period", Duration.class, Duration.ofMinutes(1));
+                String name = endpoint + ":" + dimension;
+                buckets.put(name, new TokenBucket(name, capacity, period,
+                        TokenBucket.leaseSize(capacity, period, leaseTtl), leaseTtl,
+                        stringRedisTemplate, Clock.systemUTC(), meterRegistry));
+            }
+        }
+        return new RateLimits(buckets);
+    }
+
+    @Bean
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilter(RateLimits rateLimits,
+                                                                   @Value("${LOGIN_REDIRECT}") String loginRedirectUri) {
+        FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(new RateLimitFilter(
+                rateLimits, loginRedirectUri + "/login?auth=error&type=rate_limited"));
+        registration.addUrlPatterns("/api/auth/*");
+        // Después de la observación HTTP y antes del load shedding (+10) y de Spring Session
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 5);
+        return registration;
+    }
+}
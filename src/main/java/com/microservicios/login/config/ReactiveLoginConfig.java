@@ -0,0 +1,91 @@
+package com.microservicios.login.config;
+
+import com.microservicios.login.concurrency.DownstreamLimiters;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.lang.Nullable;
+import org.springframework.session.data.redis.ReactiveRedisSessionRepository;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Beans del modo reactivo del callback (login.reactive.enabled=true).
+ *
+ * - WebClient no bloqueante con su propio pool (reactor-netty), los mismos límites que http.client.*
+ *   y los mismos límites de concurrencia por dependencia que el HttpClient servlet.
+ * - Repositorio reactivo de sesiones sobre las mismas claves de Redis que usa Spring Session en modo servlet,
+ *   así una sesión creada en un modo se puede leer desde el otro.
+ */
+@Configuration
+@ConditionalOnProperty(name = "login.reactive.enabled", havingValue = "true")
+public class ReactiveLoginConfig {
+
+    @Value("${http.client.max-total:40}")
+    private int maxTotal;
+
+    @Value("${http.client.connect-timeout:2s}")
+    private Duration connectTimeout;
+
+    @Value("${http.client.read-timeout:5s}")
+    private Duration readTimeout;
+
+    @Value("${http.client.pool-timeout:1s}")
+    private Duration poolTimeout;
+
+    @Value("${http.client.idle-evict:30s}")
+    private Duration idleEvict;
+
+    @Value("${http.client.connection-ttl:5m}")
+    private Duration connectionTtl;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider outboundConnectionProvider() {
+        return ConnectionProvider.builder("outbound-reactive")
+                .maxConnections(maxTotal)
+                .pendingAcquireTimeout(poolTimeout)
+                .maxIdleTime(idleEvict)
+                .maxLifeTime(connectionTtl)
+                .evictInBackground(idleEvict)
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public WebClient outboundWebClient(WebClient.Builder builder, ConnectionProvider outboundConnectionProvider,
+                                       @Nullable DownstreamLimiters downstreamLimiters) {
+        HttpClient httpClient = HttpClient.create(outboundConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .responseTimeout(readTimeout);
+        builder.clientConnector(new ReactorClientHttpConnector(httpClient));
+        if (downstreamLimiters != null) {
+            builder.filter(downstreamLimiters.exchangeFilter());
+        }
+        return builder.build();
+    }
+
+    @Bean
+    public ReactiveRedisSessionRepository reactiveSessionRepository(ReactiveRedisConnectionFactory connectionFactory,
+                                                                    RedisSerializer<Object> springSessionDefaultRedisSerializer) {
+        RedisSerializationContext<String, Object> context = RedisSerializationContext
+                .<String, Object>newSerializationContext(springSessionDefaultRedisSerializer)
+                .key(StringRedisSerializer.UTF_8)
+                .hashKey(StringRedisSerializer.UTF_8)
+                .build();
+        ReactiveRedisSessionRepository repository =
+                new ReactiveRedisSessionRepository(new ReactiveRedisTemplate<>(connectionFactory, context));
+        repository.setDefaultMaxInactiveInterval(Duration.ofSeconds(SessionConfig.MAX_INACTIVE_INTERVAL_SECONDS));
+        return repository;
+    }
+}
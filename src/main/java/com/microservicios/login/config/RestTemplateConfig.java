@@ -1,13 +1,18 @@
 package com.microservicios.login.config;
 
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 @Configuration
 public class RestTemplateConfig {
+        // Usa el pool de conexiones compartido (ver HttpClientConfig).
+        // Se arma con el builder de Spring Boot para que las llamadas generen métricas http.client.requests
+        // y propaguen el trace (traceparent) al microservicio de usuarios.
         @Bean
-        public RestTemplate restTemplate() {
-            return new RestTemplate();
+        public RestTemplate restTemplate(RestTemplateBuilder builder, HttpComponentsClientHttpRequestFactory outboundRequestFactory) {
+            return builder.requestFactory(() -> outboundRequestFactory).build();
         }
 }
@@ -1,20 +1,38 @@
 package com.microservicios.login.config;
 
+import com.microservicios.login.session.CoalescingSessionRepository;
+import com.microservicios.login.session.CompactSessionSerializer;
+import com.microservicios.login.session.LoginSessions;
+import com.microservicios.login.session.SessionIndex;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.session.config.annotation.web.http.EnableSpringHttpSession;
 import org.springframework.session.data.redis.config.ConfigureRedisAction;
 import org.springframework.session.data.redis.config.annotation.web.http.EnableRedisHttpSession;
 import org.springframework.session.web.http.CookieSerializer;
 import org.springframework.session.web.http.DefaultCookieSerializer;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.FlashMap;
+import org.springframework.web.servlet.FlashMapManager;
 
+import java.time.Clock;
+import java.time.Duration;
 
 @Configuration
-@EnableRedisHttpSession(maxInactiveIntervalInSeconds = 3600) // Sesión expira en 1 hora
 public class SessionConfig {
 
+    public static final int MAX_INACTIVE_INTERVAL_SECONDS = 3600;
+
     @Value("${cookie.secure:false}")
     private boolean cookieSecure;
 
@@ -62,16 +80,88 @@ public class SessionConfig {
 
     /**
      * Este bean configura el serializador para los atributos de la sesión en Redis.
-     * Usamos GenericJackson2JsonRedisSerializer para guardar los datos como JSON,
-     * lo cual evita los caracteres extraños de la serialización de Java.
+     * El login se guarda en un único atributo con formato compacto (ver CompactSessionSerializer);
+     * el resto sigue como JSON de GenericJackson2JsonRedisSerializer, así las sesiones viejas se siguen leyendo.
      */
     @Bean
     public RedisSerializer<Object> springSessionDefaultRedisSerializer() {
-        return new GenericJackson2JsonRedisSerializer();
+        return new CompactSessionSerializer();
+    }
+
+    /**
+     * Formato en que se escribe el login en la sesión. Ver el orden de deploy en {@link LoginSessions}.
+     */
+    @Bean
+    public LoginSessions loginSessions(@Value("${session.compact-login.enabled:false}") boolean compact) {
+        return new LoginSessions(compact);
+    }
+
+    /**
+     * Sin flash attributes (la API no los usa). El SessionFlashMapManager por defecto pide la sesión en cada
+     * request del DispatcherServlet, también en el modo reactivo y en los endpoints que no la usan: un HGETALL
+     * y el commit de la sesión (EXISTS/HMSET/PEXPIREAT con el repositorio de Spring Session) por request.
+     */
+    @Bean(name = DispatcherServlet.FLASH_MAP_MANAGER_BEAN_NAME)
+    public FlashMapManager flashMapManager() {
+        return new FlashMapManager() {
+            @Override
+            public FlashMap retrieveAndUpdate(HttpServletRequest request, HttpServletResponse response) {
+                return null;
+            }
+
+            @Override
+            public void saveOutputFlashMap(FlashMap flashMap, HttpServletRequest request, HttpServletResponse response) {
+            }
+        };
     }
 
     @Bean
     public static ConfigureRedisAction configureRedisAction() {
         return ConfigureRedisAction.NO_OP;
     }
-}
\ No newline at end of file
+
+    /**
+     * Índice de sesiones por mail para listar y cerrar todas las sesiones de un usuario
+     * sin recorrer Redis (session.index.enabled, activo por defecto).
+     */
+    @Bean
+    @ConditionalOnProperty(name = "session.index.enabled", havingValue = "true", matchIfMissing = true)
+    public SessionIndex sessionIndex(StringRedisTemplate stringRedisTemplate, MeterRegistry meterRegistry,
+                                     @Value("${session.index.ttl:7d}") Duration indexTtl) {
+        return new SessionIndex(stringRedisTemplate, indexTtl, Clock.systemUTC(), meterRegistry);
+    }
+
+    /**
+     * Repositorio de Spring Session de siempre (session.coalescing.enabled=false, default).
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnProperty(name = "session.coalescing.enabled", havingValue = "false", matchIfMissing = true)
+    @EnableRedisHttpSession(maxInactiveIntervalInSeconds = MAX_INACTIVE_INTERVAL_SECONDS) // Sesión expira en 1 hora
+    static class RedisSessionConfig {
+    }
+
+    /**
+     * Escrituras de sesión agrupadas en un pipeline por request y lastAccessedTime escrito como mucho
+     * una vez por touch-interval (ver {@link CoalescingSessionRepository}). Mismas claves y cookie.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnProperty(name = "session.coalescing.enabled", havingValue = "true")
+    @EnableSpringHttpSession
+    static class CoalescingSessionConfig {
+
+        @Bean
+        public CoalescingSessionRepository sessionRepository(RedisConnectionFactory connectionFactory,
+                                                             RedisSerializer<Object> springSessionDefaultRedisSerializer,
+                                                             MeterRegistry meterRegistry,
+                                                             @Value("${session.coalescing.touch-interval:60s}") Duration touchInterval) {
+            RedisTemplate<String, Object> template = new RedisTemplate<>();
+            template.setConnectionFactory(connectionFactory);
+            template.setKeySerializer(StringRedisSerializer.UTF_8);
+            template.setHashKeySerializer(StringRedisSerializer.UTF_8);
+            template.setHashValueSerializer(springSessionDefaultRedisSerializer);
+            template.afterPropertiesSet();
+            return new CoalescingSessionRepository(template, Duration.ofSeconds(MAX_INACTIVE_INTERVAL_SECONDS),
+                    touchInterval, meterRegistry);
+        }
+    }
+}
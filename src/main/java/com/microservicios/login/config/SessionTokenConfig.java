@@ -0,0 +1,58 @@
+package com.microservicios.login.config;
+
+import com.microservicios.login.token.SessionTokenCookie;
+import com.microservicios.login.token.SessionTokenKeys;
+import com.microservicios.login.token.SessionTokens;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Modo de sesión firmada (auth.token.enabled=true): además de la sesión en Redis, el callback
+ * emite un token corto que /me valida sin ir a Redis.
+ */
+@Configuration
+@ConditionalOnProperty(name = "auth.token.enabled", havingValue = "true")
+public class SessionTokenConfig {
+
+    @Bean
+    public SessionTokens sessionTokens(StringRedisTemplate stringRedisTemplate,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${auth.token.keys}") String keyset,
+                                       @Value("${auth.token.active-kid:}") String activeKid,
+                                       @Value("${auth.token.ttl:5m}") Duration ttl,
+                                       @Value("${auth.token.deny-list.max-size:10000}") long denyListMaxSize) {
+        return new SessionTokens(SessionTokenKeys.parse(keyset, activeKid), ttl, denyListMaxSize,
+                Clock.systemUTC(), stringRedisTemplate, meterRegistry);
+    }
+
+    @Bean
+    public SessionTokenCookie sessionTokenCookie(@Value("${cookie.secure:false}") boolean cookieSecure,
+                                                 @Value("${cookie.same-site:Lax}") String cookieSameSite) {
+        return new SessionTokenCookie(cookieSecure, cookieSameSite);
+    }
+
+    /**
+     * Recibe las revocaciones (logout) publicadas por las demás réplicas.
+     */
+    @Bean
+    public RedisMessageListenerContainer sessionTokenRevocationListener(RedisConnectionFactory redisConnectionFactory,
+                                                                        SessionTokens sessionTokens) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener((message, pattern) ->
+                        sessionTokens.onRevoked(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(SessionTokens.REVOCATION_CHANNEL));
+        return container;
+    }
+}
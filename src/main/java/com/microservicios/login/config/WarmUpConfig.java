@@ -0,0 +1,59 @@
+package com.microservicios.login.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.microservicios.login.http.InstrumentedConnectionManager;
+import com.microservicios.login.ratelimit.RateLimits;
+import com.microservicios.login.session.LoginSessions;
+import com.microservicios.login.token.SessionTokens;
+import com.microservicios.login.warmup.WarmUp;
+import com.netflix.appinfo.ApplicationInfoManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Warm-up de la réplica antes de pasar a UP en Eureka y en el health (ver WarmUp).
+ * Con login.warmup.enabled=false pasa a UP apenas termina el arranque.
+ */
+@Configuration
+public class WarmUpConfig {
+
+    @Bean
+    public WarmUp warmUp(RedisConnectionFactory redisConnectionFactory,
+                         RestTemplate restTemplate,
+                         HttpTransport googleHttpTransport,
+                         InstrumentedConnectionManager outboundConnectionManager,
+                         @Nullable WebClient outboundWebClient,
+                         SessionRepository<? extends Session> sessionRepository,
+                         LoginSessions loginSessions,
+                         JsonFactory googleJsonFactory,
+                         ObjectMapper objectMapper,
+                         @Nullable SessionTokens sessionTokens,
+                         @Nullable RateLimits rateLimits,
+                         @Nullable ApplicationInfoManager applicationInfoManager,
+                         MeterRegistry meterRegistry,
+                         @Value("${login.warmup.enabled:true}") boolean enabled,
+                         @Value("${login.warmup.phases:redis,http,callback,me}") List<String> phases,
+                         @Value("${login.warmup.iterations:2000}") int iterations,
+                         @Value("${login.warmup.requests:500}") int requests,
+                         @Value("${login.warmup.http.connections:4}") int connectionsPerHost,
+                         @Value("${login.warmup.http.urls:}") List<String> urls,
+                         @Value("${login.warmup.timeout:30s}") Duration timeout) {
+        return new WarmUp(enabled, phases, iterations, requests, connectionsPerHost, urls, timeout,
+                redisConnectionFactory, restTemplate, googleHttpTransport, outboundConnectionManager, outboundWebClient,
+                sessionRepository, loginSessions, googleJsonFactory, objectMapper, sessionTokens, rateLimits,
+                applicationInfoManager, meterRegistry);
+    }
+}
@@ -2,32 +2,57 @@ package com.microservicios.login.controller;
 
 import com.google.api.client.auth.oauth2.TokenResponse;
 import com.microservicios.login.exception.MailInvalidoException;
+import com.microservicios.login.google.GoogleTokenBroker;
+import com.microservicios.login.logging.LogMarkers;
+import com.microservicios.login.metrics.LoginStages;
+import com.microservicios.login.ratelimit.RateLimits;
+import com.microservicios.login.ratelimit.TokenBucket;
 import com.microservicios.login.service.LoginService;
+import com.microservicios.login.session.LoginSession;
+import com.microservicios.login.session.LoginSessions;
+import com.microservicios.login.session.SessionIndex;
+import com.microservicios.login.token.SessionTokenCookie;
+import com.microservicios.login.token.SessionTokens;
 
 import coms.dto.UserDTO;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
+import io.micrometer.observation.Observation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.HttpHeaders;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.logging.Logger;
+import java.time.Instant;
 
 @RestController
 @RequestMapping("/api/auth")
+@ConditionalOnProperty(name = "login.reactive.enabled", havingValue = "false", matchIfMissing = true)
 public class LoginController {
 
-    private static final Logger logger = Logger.getLogger(LoginController.class.getName());
+    private static final Logger logger = LoggerFactory.getLogger(LoginController.class);
 
     private final LoginService service;
     private final ReactiveStringRedisTemplate redisTemplate;
+    private final GoogleTokenBroker tokenBroker;
+    private final LoginStages stages;
+    private final LoginSessions loginSessions;
+    // Sólo con session.index.enabled=true (default)
+    private final SessionIndex sessionIndex;
+    // Sólo con login.rate-limit.enabled=true (default)
+    private final RateLimits rateLimits;
+    // Sólo con auth.token.enabled=true
+    private final SessionTokens sessionTokens;
+    private final SessionTokenCookie sessionTokenCookie;
 
     @Value("${GOOGLE_REDIRECT_URI}")
     private String googleRedirectUri;
@@ -37,57 +62,87 @@ public class LoginController {
 
 
     @Autowired
-    public LoginController(LoginService service, ReactiveStringRedisTemplate redisTemplate) {
+    public LoginController(LoginService service, ReactiveStringRedisTemplate redisTemplate, GoogleTokenBroker tokenBroker,
+                           LoginStages stages, LoginSessions loginSessions, @Nullable SessionIndex sessionIndex, @Nullable RateLimits rateLimits,
+                           @Nullable SessionTokens sessionTokens, @Nullable SessionTokenCookie sessionTokenCookie) {
         this.service = service;
         this.redisTemplate = redisTemplate;
+        this.tokenBroker = tokenBroker;
+        this.stages = stages;
+        this.loginSessions = loginSessions;
+        this.sessionIndex = sessionIndex;
+        this.rateLimits = rateLimits;
+        this.sessionTokens = sessionTokens;
+        this.sessionTokenCookie = sessionTokenCookie;
     }
 
     @GetMapping("/google/callback")
     public ResponseEntity<String> handleGoogleCallback(@RequestParam("code") String code,
                                                        @RequestParam(value = "error", required = false) String error,
                                                        @RequestParam(value = "state", required = false) String state,
-                                                       HttpServletRequest httpRequest)
+                                                       HttpServletRequest httpRequest,
+                                                       HttpServletResponse httpResponse)
     throws MailInvalidoException, IOException, GeneralSecurityException
     {
         if (error != null) {
-            logger.warning("Error en callback de Google: " + error);
+            logger.warn("Error en callback de Google: {}", error);
             return ResponseEntity.badRequest().body("Error de autenticación: " + error);
         }
 
-            logger.info("Callback recibido - Procesando autenticación");
+        // login.callback{outcome} + span raíz del login; las etapas cuelgan de acá
+        Observation callback = stages.startCallback();
+        Observation.Scope scope = callback.openScope();
+        try {
+            ResponseEntity<String> response = processCallback(code, httpRequest, httpResponse);
+            String location = response.getHeaders().getFirst(HttpHeaders.LOCATION);
+            stages.stop(callback, location != null && location.contains("auth=success")
+                    ? LoginStages.SUCCESS : LoginStages.SERVER_ERROR);
+            return response;
+        } catch (MailInvalidoException | IOException | GeneralSecurityException | RuntimeException e) {
+            stages.stop(callback, e);
+            throw e;
+        } finally {
+            scope.close();
+        }
+    }
+
+    private ResponseEntity<String> processCallback(String code, HttpServletRequest httpRequest, HttpServletResponse httpResponse)
+    throws MailInvalidoException, IOException, GeneralSecurityException
+    {
+            logger.info(LogMarkers.SAMPLED, "Callback recibido - Procesando autenticación");
             String redirectUri = googleRedirectUri;
             TokenResponse tokenResponse = service.exchangeCodeForTokens(code, redirectUri);
             String accessToken = tokenResponse.getAccessToken();
             String refreshToken = tokenResponse.getRefreshToken();
-            String idTokenString = tokenResponse.get("id_token").toString();
-            logger.info("Tengo token " + accessToken);
-
-            Map<String, String> tokens = new HashMap<>();
-            tokens.put("accessToken", accessToken);
-            tokens.put("refreshToken", refreshToken);
+            Object idToken = tokenResponse.get("id_token");
+            String idTokenString = idToken != null ? idToken.toString() : null;
 
             if (accessToken != null) {
 
               UserDTO user = service.authenticateUser(idTokenString, accessToken, refreshToken);
            
                 // Se usa Spring Session automático
-                HttpSession session = httpRequest.getSession(true);
-
-                // Guardamos los tokens en la sesión (automáticamente en Redis)
-                session.setAttribute("tokens", tokens);
-                session.setAttribute("accessToken", accessToken);
-                session.setAttribute("refreshToken", refreshToken);
-                session.setAttribute("user", user);
-                logger.info("Sesión automática creada con ID: " + session.getId());
+                // Guardamos usuario y tokens en un único atributo (automáticamente en Redis)
+                Long expiresIn = tokenResponse.getExpiresInSeconds();
+                Long expiresAt = expiresIn != null ? System.currentTimeMillis() + expiresIn * 1000 : null;
+                HttpSession session = stages.observe("session", () -> {
+                    HttpSession created = httpRequest.getSession(true);
+                    loginSessions.write(created, LoginSession.of(user, accessToken, refreshToken, expiresAt));
+                    if (sessionIndex != null) {
+                        sessionIndex.add(user.getEmail(), created.getId());
+                    }
+                    return created;
+                });
+                issueSessionToken(httpResponse, user, session.getId());
 
                 // Ya no enviamos sessionId en la URL, la cookie se envía automáticamente
                 String finalRedirectUrl = loginRedirectUri + "/home?auth=success";
                 HttpHeaders headers = new HttpHeaders();
                 headers.add("Location", finalRedirectUrl);
-                logger.info("Redireccionando a: " + finalRedirectUrl);
+                logger.info(LogMarkers.SAMPLED, "Redireccionando a: {}", finalRedirectUrl);
                 return ResponseEntity.status(HttpStatus.FOUND).headers(headers).build();
             } else {
-                logger.warning("Fallo en la obtención del Access Token");
+                logger.warn("Fallo en la obtención del Access Token");
                 return ResponseEntity.status(HttpStatus.FOUND)
                         .header("Location", loginRedirectUri + "/login?auth=error&message=token_not_received")
                         .build();
@@ -96,15 +151,36 @@ public class LoginController {
 
     @GetMapping("/me")
     public ResponseEntity<?> getMe(
-            @SessionAttribute(name = "user", required = false) UserDTO user,
             @RequestHeader(value = "Authorization", required = false) String authorizationHeader,
-            HttpSession session
+            HttpServletRequest httpRequest,
+            HttpServletResponse httpResponse
     ) {
+        // 0) Token firmado vigente: se responde sin ir a Redis
+        if (sessionTokens != null) {
+            SessionTokens.Verified verified = sessionTokens.verify(sessionTokenCookie.read(httpRequest));
+            if (verified != null) {
+                TokenBucket.Decision decision = checkRateLimit(verified.user());
+                return decision.allowed() ? ResponseEntity.ok(verified.user()) : RateLimits.tooManyRequests(decision);
+            }
+        }
+
+        // No crear una sesión vacía en Redis para cada /me anónimo
+        HttpSession session = httpRequest.getSession(false);
+        LoginSession login = session != null ? loginSessions.read(session) : null;
+        if (login != null && login.isProvisional()) {
+            login = withMigratedUser(session, login);
+        }
+        UserDTO user = login != null ? login.user() : null;
+
         // 1) Si la sesión tiene user, lo devolvemos (ignora Bearer)
         if (user != null) {
-            // opcional: log para ver que estás leyendo la misma sesión
-            Logger.getLogger(LoginController.class.getName())
-                    .info("Leyendo user desde sesión id=" + session.getId());
+            TokenBucket.Decision decision = checkRateLimit(user);
+            if (!decision.allowed()) {
+                return RateLimits.tooManyRequests(decision);
+            }
+            logger.info(LogMarkers.SAMPLED, "Leyendo user desde sesión");
+            // El token venció (o no había): se emite uno nuevo para los próximos /me
+            issueSessionToken(httpResponse, user, session.getId());
             return ResponseEntity.ok(user); // Jackson lo serializa a JSON
         }
 
@@ -119,11 +195,70 @@ public class LoginController {
                 .body("No hay sesión activa.");
     }
 
+    /**
+     * Primer login con la migración en cola: en cuanto terminó, la sesión pasa al usuario definitivo.
+     */
+    private LoginSession withMigratedUser(HttpSession session, LoginSession login) {
+        UserDTO migrated = service.migratedUser(login.user().getEmail());
+        if (migrated == null) {
+            return login;
+        }
+        LoginSession updated = login.withUser(migrated);
+        loginSessions.write(session, updated);
+        return updated;
+    }
+
+    /**
+     * Límite por mail de /me (el de IP ya lo aplicó el filtro).
+     */
+    private TokenBucket.Decision checkRateLimit(UserDTO user) {
+        return rateLimits != null ? rateLimits.checkEmail(RateLimits.ME, user.getEmail()) : TokenBucket.Decision.ALLOWED;
+    }
+
+    /**
+     * Access token de Google vigente para la sesión actual, para los servicios que usan Calendar/Drive/Tasks.
+     * El refresh lo hace este servicio (en background, antes del vencimiento).
+     */
+    @GetMapping("/google/token")
+    public ResponseEntity<?> getGoogleAccessToken(HttpServletRequest httpRequest) throws IOException {
+        HttpSession session = httpRequest.getSession(false);
+        LoginSession login = session != null ? loginSessions.read(session) : null;
+        if (login == null || login.user() == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("No hay sesión activa.");
+        }
+        GoogleTokenBroker.BrokeredToken token = tokenBroker.getAccessToken(login.user().getEmail(),
+                login.refreshToken(), sessionToken(login));
+        if (token == null) {
+            // Sin refresh token (Google no lo entregó o lo rechazó) y el access token venció: hay que volver a loguearse
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("El token de Google venció, volvé a iniciar sesión.");
+        }
+        return ResponseEntity.ok(token);
+    }
+
     @PostMapping("/logout")
-    public ResponseEntity<String> logout(HttpServletRequest httpRequest) {
+    public ResponseEntity<String> logout(HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
         HttpSession session = httpRequest.getSession(false); // No crear nueva si no existe
 
+        if (sessionTokens != null) {
+            sessionTokenCookie.clear(httpResponse);
+        }
         if (session != null) {
+            LoginSession login = loginSessions.read(session);
+            if (login != null && login.user() != null) {
+                String email = login.user().getEmail();
+                if (sessionIndex != null) {
+                    sessionIndex.remove(email, session.getId());
+                }
+                // Con otras sesiones abiertas (otro dispositivo) el token de Google se sigue refrescando;
+                // si nadie más lo pide, el broker lo suelta por inactividad
+                if (sessionIndex == null || !sessionIndex.hasLiveSessions(email)) {
+                    tokenBroker.forget(email);
+                }
+            }
+            if (sessionTokens != null) {
+                // Los tokens ya emitidos para esta sesión dejan de valer en todas las réplicas
+                sessionTokens.revokeSession(session.getId());
+            }
             // Spring Session elimina automáticamente de Redis
             session.invalidate(); // Esto elimina la sesion de Redis automáticamente
             logger.info("Sesión invalidada correctamente");
@@ -134,4 +269,16 @@ public class LoginController {
         }
     }
 
-}
\ No newline at end of file
+    private static GoogleTokenBroker.BrokeredToken sessionToken(LoginSession login) {
+        if (login.accessToken() == null || login.accessTokenExpiresAt() == null) {
+            return null;
+        }
+        return new GoogleTokenBroker.BrokeredToken(login.accessToken(), Instant.ofEpochMilli(login.accessTokenExpiresAt()));
+    }
+
+    private void issueSessionToken(HttpServletResponse httpResponse, UserDTO user, String sessionId) {
+        if (sessionTokens != null) {
+            sessionTokenCookie.write(httpResponse, sessionTokens.issue(user, sessionId), sessionTokens.ttl());
+        }
+    }
+}
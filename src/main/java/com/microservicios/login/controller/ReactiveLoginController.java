@@ -0,0 +1,341 @@
+package com.microservicios.login.controller;
+
+import com.microservicios.login.dto.GoogleTokenResponse;
+import com.microservicios.login.google.GoogleTokenBroker;
+import com.microservicios.login.logging.LogMarkers;
+import com.microservicios.login.ratelimit.RateLimits;
+import com.microservicios.login.ratelimit.TokenBucket;
+import com.microservicios.login.service.ReactiveLoginService;
+import com.microservicios.login.session.LoginSession;
+import com.microservicios.login.session.LoginSessions;
+import com.microservicios.login.session.SessionIndex;
+import com.microservicios.login.token.SessionTokenCookie;
+import com.microservicios.login.token.SessionTokens;
+import coms.dto.UserDTO;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
+import org.springframework.session.ReactiveSessionRepository;
+import org.springframework.session.Session;
+import org.springframework.session.data.redis.ReactiveRedisSessionRepository;
+import org.springframework.session.web.http.CookieSerializer;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Modo reactivo de /api/auth (login.reactive.enabled=true). Reemplaza a {@link LoginController}.
+ *
+ * Los handlers devuelven {@link Mono}: el hilo de Tomcat se libera mientras se espera a Google,
+ * al microservicio de usuarios y a Redis, y la respuesta se completa cuando llega el resultado.
+ * La sesión se lee y escribe con el repositorio reactivo sobre las mismas claves y la misma cookie
+ * que Spring Session, así que ambos modos son intercambiables sin desloguear a nadie.
+ */
+@RestController
+@RequestMapping("/api/auth")
+@ConditionalOnProperty(name = "login.reactive.enabled", havingValue = "true")
+public class ReactiveLoginController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveLoginController.class);
+
+    private final ReactiveLoginService service;
+    private final ReactiveSessionRepository<Session> sessionRepository;
+    private final CookieSerializer cookieSerializer;
+    private final GoogleTokenBroker tokenBroker;
+    private final LoginSessions loginSessions;
+    // Sólo con session.index.enabled=true (default)
+    private final SessionIndex sessionIndex;
+    // Sólo con login.rate-limit.enabled=true (default)
+    private final RateLimits rateLimits;
+    // Sólo con auth.token.enabled=true
+    private final SessionTokens sessionTokens;
+    private final SessionTokenCookie sessionTokenCookie;
+
+    @Value("${GOOGLE_REDIRECT_URI}")
+    private String googleRedirectUri;
+
+    @Value("${LOGIN_REDIRECT}")
+    private String loginRedirectUri;
+
+    // Mismo throttle de lastAccessedTime que CoalescingSessionRepository en modo servlet
+    @Value("${session.coalescing.enabled:false}")
+    private boolean sessionCoalescing;
+
+    @Value("${session.coalescing.touch-interval:60s}")
+    private Duration touchInterval;
+
+    @Autowired
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ReactiveLoginController(ReactiveLoginService service,
+                                   ReactiveRedisSessionRepository sessionRepository,
+                                   CookieSerializer cookieSerializer,
+                                   GoogleTokenBroker tokenBroker,
+                                   LoginSessions loginSessions,
+                                   @Nullable SessionIndex sessionIndex,
+                                   @Nullable RateLimits rateLimits,
+                                   @Nullable SessionTokens sessionTokens,
+                                   @Nullable SessionTokenCookie sessionTokenCookie) {
+        this.service = service;
+        // RedisSession no es pública: trabajamos contra la interfaz con el tipo base Session
+        this.sessionRepository = (ReactiveSessionRepository) sessionRepository;
+        this.cookieSerializer = cookieSerializer;
+        this.tokenBroker = tokenBroker;
+        this.loginSessions = loginSessions;
+        this.sessionIndex = sessionIndex;
+        this.rateLimits = rateLimits;
+        this.sessionTokens = sessionTokens;
+        this.sessionTokenCookie = sessionTokenCookie;
+    }
+
+    @GetMapping("/google/callback")
+    public Mono<ResponseEntity<String>> handleGoogleCallback(@RequestParam("code") String code,
+                                                             @RequestParam(value = "error", required = false) String error,
+                                                             @RequestParam(value = "state", required = false) String state,
+                                                             HttpServletRequest httpRequest,
+                                                             HttpServletResponse httpResponse) {
+        if (error != null) {
+            logger.warn("Error en callback de Google: {}", error);
+            return Mono.just(ResponseEntity.badRequest().body("Error de autenticación: " + error));
+        }
+
+        logger.info(LogMarkers.SAMPLED, "Callback recibido - Procesando autenticación (reactivo)");
+        return service.login(code, googleRedirectUri)
+                .flatMap(result -> createSession(result.tokens(), result.user())
+                        .doOnNext(sessionId -> issueSessionToken(httpResponse, result.user(), sessionId)))
+                .map(sessionId -> {
+                    cookieSerializer.writeCookieValue(new CookieSerializer.CookieValue(httpRequest, httpResponse, sessionId));
+                    String finalRedirectUrl = loginRedirectUri + "/home?auth=success";
+                    logger.info(LogMarkers.SAMPLED, "Redireccionando a: {}", finalRedirectUrl);
+                    return ResponseEntity.status(HttpStatus.FOUND)
+                            .header(HttpHeaders.LOCATION, finalRedirectUrl)
+                            .<String>build();
+                })
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    logger.warn("Fallo en la obtención del Access Token");
+                    return ResponseEntity.status(HttpStatus.FOUND)
+                            .header(HttpHeaders.LOCATION, loginRedirectUri + "/login?auth=error&message=token_not_received")
+                            .build();
+                }));
+    }
+
+    @GetMapping("/me")
+    public Mono<ResponseEntity<?>> getMe(@RequestHeader(value = "Authorization", required = false) String authorizationHeader,
+                                         HttpServletRequest httpRequest,
+                                         HttpServletResponse httpResponse) {
+        // Token firmado vigente: se responde sin ir a Redis
+        if (sessionTokens != null) {
+            SessionTokens.Verified verified = sessionTokens.verify(sessionTokenCookie.read(httpRequest));
+            if (verified != null) {
+                // Este hilo es de Tomcat: el check puede bloquear si se acabaron los tokens locales
+                TokenBucket.Decision decision = rateLimits != null
+                        ? rateLimits.checkEmail(RateLimits.ME, verified.user().getEmail()) : TokenBucket.Decision.ALLOWED;
+                return Mono.just(decision.allowed() ? ResponseEntity.ok(verified.user()) : RateLimits.tooManyRequests(decision));
+            }
+        }
+        return findSession(httpRequest)
+                .flatMap(session -> {
+                    LoginSession login = loginSessions.read(session);
+                    if (login == null || login.user() == null) {
+                        return Mono.empty();
+                    }
+                    return withMigratedUser(session, login)
+                            .flatMap(current -> sessionResponse(session, current.user(), httpResponse));
+                })
+                .<ResponseEntity<?>>map(response -> response)
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN).body("No hay sesión (solo llegó Bearer).");
+                    }
+                    return ResponseEntity.status(HttpStatus.FORBIDDEN).body("No hay sesión activa.");
+                }));
+    }
+
+    /**
+     * /me con la sesión de Redis: rate limit por mail, token firmado nuevo y renovación de la expiración.
+     */
+    private Mono<ResponseEntity<?>> sessionResponse(Session session, UserDTO user, HttpServletResponse httpResponse) {
+        return checkRateLimit(user).flatMap(decision -> {
+            if (!decision.allowed()) {
+                return Mono.<ResponseEntity<?>>just(RateLimits.tooManyRequests(decision));
+            }
+            issueSessionToken(httpResponse, user, session.getId());
+            // Igual que en modo servlet, leer la sesión renueva su expiración (con session.coalescing,
+            // como mucho una vez por touch-interval)
+            Instant now = Instant.now();
+            if (sessionCoalescing && Duration.between(session.getLastAccessedTime(), now).compareTo(touchInterval) < 0) {
+                return Mono.<ResponseEntity<?>>just(ResponseEntity.ok(user));
+            }
+            session.setLastAccessedTime(now);
+            return sessionRepository.save(session).<ResponseEntity<?>>thenReturn(ResponseEntity.ok(user));
+        });
+    }
+
+    /**
+     * Primer login con la migración en cola: en cuanto terminó, la sesión pasa al usuario definitivo.
+     */
+    private Mono<LoginSession> withMigratedUser(Session session, LoginSession login) {
+        if (!login.isProvisional()) {
+            return Mono.just(login);
+        }
+        return service.migratedUser(login.user().getEmail())
+                .flatMap(migrated -> {
+                    LoginSession updated = login.withUser(migrated);
+                    loginSessions.write(session, updated);
+                    return sessionRepository.save(session).thenReturn(updated);
+                })
+                .defaultIfEmpty(login);
+    }
+
+    /**
+     * Límite por mail de /me (el de IP ya lo aplicó el filtro). El check puede ir a Redis con el cliente
+     * bloqueante, así que no corre en el hilo del cliente reactivo.
+     */
+    private Mono<TokenBucket.Decision> checkRateLimit(UserDTO user) {
+        if (rateLimits == null) {
+            return Mono.just(TokenBucket.Decision.ALLOWED);
+        }
+        return Mono.fromCallable(() -> rateLimits.checkEmail(RateLimits.ME, user.getEmail()))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Access token de Google vigente para la sesión actual. Un refresh on-demand es bloqueante
+     * (cliente de Google + lock en Redis), así que el broker corre en un scheduler elástico.
+     */
+    @GetMapping("/google/token")
+    public Mono<ResponseEntity<?>> getGoogleAccessToken(HttpServletRequest httpRequest) {
+        return findSession(httpRequest)
+                .mapNotNull(loginSessions::read)
+                .filter(login -> login.user() != null)
+                .flatMap(login -> Mono.fromCallable(() -> {
+                            GoogleTokenBroker.BrokeredToken token = tokenBroker.getAccessToken(login.user().getEmail(),
+                                    login.refreshToken(), sessionToken(login));
+                            if (token == null) {
+                                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                                        .body("El token de Google venció, volvé a iniciar sesión.");
+                            }
+                            return ResponseEntity.ok(token);
+                        })
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .<ResponseEntity<?>>map(response -> response)
+                .switchIfEmpty(Mono.fromSupplier(() -> ResponseEntity.status(HttpStatus.FORBIDDEN).body("No hay sesión activa.")));
+    }
+
+    @PostMapping("/logout")
+    public Mono<ResponseEntity<String>> logout(HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
+        if (sessionTokens != null) {
+            sessionTokenCookie.clear(httpResponse);
+        }
+        return findSession(httpRequest)
+                .flatMap(session -> {
+                    LoginSession login = loginSessions.read(session);
+                    String email = login != null && login.user() != null ? login.user().getEmail() : null;
+                    return sessionRepository.deleteById(session.getId())
+                            .then(revokeSessionTokens(session.getId()))
+                            .then(unindexSession(email, session.getId()))
+                            .then(forgetIfLastSession(email))
+                            .then(Mono.fromSupplier(() -> {
+                                // Cookie vacía = el navegador la borra
+                                cookieSerializer.writeCookieValue(new CookieSerializer.CookieValue(httpRequest, httpResponse, ""));
+                                logger.info("Sesión invalidada correctamente");
+                                return ResponseEntity.ok("Cierre de sesión realizado correctamente.");
+                            }));
+                })
+                .switchIfEmpty(Mono.fromSupplier(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body("No hay sesión activa para cerrar.")));
+    }
+
+    private Mono<String> createSession(GoogleTokenResponse tokens, UserDTO user) {
+        Long expiresAt = tokens.getExpiresIn() != null ? System.currentTimeMillis() + tokens.getExpiresIn() * 1000 : null;
+        LoginSession login = LoginSession.of(user, tokens.getAccessToken(), tokens.getRefreshToken(), expiresAt);
+        return sessionRepository.createSession()
+                .flatMap(session -> {
+                    loginSessions.write(session, login);
+                    return sessionRepository.save(session)
+                            .then(indexSession(user.getEmail(), session.getId()))
+                            .thenReturn(session.getId());
+                });
+    }
+
+    private static GoogleTokenBroker.BrokeredToken sessionToken(LoginSession login) {
+        if (login.accessToken() == null || login.accessTokenExpiresAt() == null) {
+            return null;
+        }
+        return new GoogleTokenBroker.BrokeredToken(login.accessToken(), Instant.ofEpochMilli(login.accessTokenExpiresAt()));
+    }
+
+    private void issueSessionToken(HttpServletResponse httpResponse, UserDTO user, String sessionId) {
+        if (sessionTokens != null) {
+            sessionTokenCookie.write(httpResponse, sessionTokens.issue(user, sessionId), sessionTokens.ttl());
+        }
+    }
+
+    /**
+     * Publicar la revocación es una llamada bloqueante a Redis: no corre en el event loop.
+     */
+    private Mono<Void> revokeSessionTokens(String sessionId) {
+        if (sessionTokens == null) {
+            return Mono.empty();
+        }
+        return Mono.<Void>fromRunnable(() -> sessionTokens.revokeSession(sessionId))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * El índice por usuario usa el cliente bloqueante (pipeline): tampoco corre en el event loop.
+     */
+    private Mono<Void> indexSession(String email, String sessionId) {
+        if (sessionIndex == null) {
+            return Mono.empty();
+        }
+        return Mono.<Void>fromRunnable(() -> sessionIndex.add(email, sessionId))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<Void> unindexSession(String email, String sessionId) {
+        if (sessionIndex == null || email == null) {
+            return Mono.empty();
+        }
+        return Mono.<Void>fromRunnable(() -> sessionIndex.remove(email, sessionId))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Con otras sesiones abiertas (otro dispositivo) el token de Google se sigue refrescando;
+     * si nadie más lo pide, el broker lo suelta por inactividad.
+     */
+    private Mono<Void> forgetIfLastSession(String email) {
+        if (email == null) {
+            return Mono.empty();
+        }
+        if (sessionIndex == null) {
+            return Mono.fromRunnable(() -> tokenBroker.forget(email));
+        }
+        return Mono.<Void>fromRunnable(() -> {
+                    if (!sessionIndex.hasLiveSessions(email)) {
+                        tokenBroker.forget(email);
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<Session> findSession(HttpServletRequest httpRequest) {
+        List<String> sessionIds = cookieSerializer.readCookieValues(httpRequest);
+        if (sessionIds.isEmpty()) {
+            return Mono.empty();
+        }
+        return sessionRepository.findById(sessionIds.get(0));
+    }
+}
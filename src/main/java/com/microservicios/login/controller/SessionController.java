@@ -0,0 +1,182 @@
+package com.microservicios.login.controller;
+
+import com.microservicios.login.google.GoogleTokenBroker;
+import com.microservicios.login.session.LoginSession;
+import com.microservicios.login.session.LoginSessions;
+import com.microservicios.login.session.SessionIndex;
+import com.microservicios.login.token.SessionTokenCookie;
+import com.microservicios.login.token.SessionTokens;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sesiones de un usuario en todos los dispositivos, a partir de {@link SessionIndex}.
+ *
+ * - /sessions: las del usuario logueado (listar, cerrar todas, cerrar una).
+ * - /admin/sessions?email=: lo mismo para cualquier mail (bajas, incidentes de seguridad). Requiere el header
+ *   X-Admin-Key igual a session.admin.key; si no está configurada estos endpoints no existen (404).
+ *
+ * Funciona en los dos modos (servlet y reactivo): la sesión actual se lee con el filtro de Spring Session.
+ */
+@RestController
+@RequestMapping("/api/auth")
+@ConditionalOnProperty(name = "session.index.enabled", havingValue = "true", matchIfMissing = true)
+public class SessionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionController.class);
+
+    /**
+     * Sesión listada; {@code current} marca la del request.
+     */
+    public record SessionView(String id, Instant createdAt, Instant lastAccessedAt, Instant expiresAt, boolean current) {
+    }
+
+    private final SessionIndex sessionIndex;
+    private final GoogleTokenBroker tokenBroker;
+    private final LoginSessions loginSessions;
+    // Sólo con auth.token.enabled=true
+    private final SessionTokens sessionTokens;
+    private final SessionTokenCookie sessionTokenCookie;
+
+    @Value("${session.admin.key:}")
+    private String adminKey;
+
+    @Autowired
+    public SessionController(SessionIndex sessionIndex, GoogleTokenBroker tokenBroker, LoginSessions loginSessions,
+                             @Nullable SessionTokens sessionTokens, @Nullable SessionTokenCookie sessionTokenCookie) {
+        this.sessionIndex = sessionIndex;
+        this.tokenBroker = tokenBroker;
+        this.loginSessions = loginSessions;
+        this.sessionTokens = sessionTokens;
+        this.sessionTokenCookie = sessionTokenCookie;
+    }
+
+    @GetMapping("/sessions")
+    public ResponseEntity<?> listSessions(HttpServletRequest httpRequest) {
+        HttpSession session = httpRequest.getSession(false);
+        String email = email(session);
+        if (email == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("No hay sesión activa.");
+        }
+        return ResponseEntity.ok(views(email, SessionTokens.sessionHash(session.getId())));
+    }
+
+    /**
+     * Cerrar sesión en todos los dispositivos, incluido este.
+     */
+    @DeleteMapping("/sessions")
+    public ResponseEntity<?> revokeAllSessions(HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
+        HttpSession session = httpRequest.getSession(false);
+        String email = email(session);
+        if (email == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("No hay sesión activa.");
+        }
+        int revoked = revokeAll(email);
+        if (sessionTokens != null) {
+            sessionTokenCookie.clear(httpResponse);
+        }
+        // Que el filtro de Spring Session no vuelva a guardar la sesión que acabamos de borrar
+        session.invalidate();
+        return ResponseEntity.ok(Map.of("revoked", revoked));
+    }
+
+    @DeleteMapping("/sessions/{id}")
+    public ResponseEntity<?> revokeSession(@PathVariable("id") String id, HttpServletRequest httpRequest) {
+        HttpSession session = httpRequest.getSession(false);
+        String email = email(session);
+        if (email == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("No hay sesión activa.");
+        }
+        String sessionId = sessionIndex.revoke(email, id);
+        if (sessionId == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No existe esa sesión.");
+        }
+        revokeSessionTokens(sessionId);
+        if (sessionId.equals(session.getId())) {
+            session.invalidate();
+        }
+        return ResponseEntity.ok(Map.of("revoked", 1));
+    }
+
+    @GetMapping("/admin/sessions")
+    public ResponseEntity<?> listUserSessions(@RequestParam("email") String email,
+                                              @RequestHeader(value = "X-Admin-Key", required = false) String key) {
+        ResponseEntity<?> denied = checkAdmin(key);
+        if (denied != null) {
+            return denied;
+        }
+        return ResponseEntity.ok(views(email, null));
+    }
+
+    @DeleteMapping("/admin/sessions")
+    public ResponseEntity<?> revokeUserSessions(@RequestParam("email") String email,
+                                                @RequestHeader(value = "X-Admin-Key", required = false) String key) {
+        ResponseEntity<?> denied = checkAdmin(key);
+        if (denied != null) {
+            return denied;
+        }
+        int revoked = revokeAll(email);
+        logger.info("Sesiones cerradas por administración: {}", revoked);
+        return ResponseEntity.ok(Map.of("revoked", revoked));
+    }
+
+    private List<SessionView> views(String email, String currentId) {
+        return sessionIndex.list(email).stream()
+                .map(s -> new SessionView(s.id(), s.createdAt(), s.lastAccessedAt(), s.expiresAt(), s.id().equals(currentId)))
+                .toList();
+    }
+
+    /**
+     * Borra las sesiones y lo que cuelga de ellas: tokens firmados (en todas las réplicas) y el access token
+     * de Google que el broker mantiene refrescado.
+     */
+    private int revokeAll(String email) {
+        List<String> sessionIds = sessionIndex.revokeAll(email);
+        sessionIds.forEach(this::revokeSessionTokens);
+        tokenBroker.forget(email);
+        return sessionIds.size();
+    }
+
+    private void revokeSessionTokens(String sessionId) {
+        if (sessionTokens != null) {
+            sessionTokens.revokeSession(sessionId);
+        }
+    }
+
+    private ResponseEntity<?> checkAdmin(String key) {
+        if (adminKey == null || adminKey.isBlank()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (key == null || !MessageDigest.isEqual(adminKey.getBytes(StandardCharsets.UTF_8), key.getBytes(StandardCharsets.UTF_8))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Clave de administración inválida.");
+        }
+        return null;
+    }
+
+    private String email(HttpSession session) {
+        LoginSession login = session != null ? loginSessions.read(session) : null;
+        return login != null && login.user() != null ? login.user().getEmail() : null;
+    }
+}
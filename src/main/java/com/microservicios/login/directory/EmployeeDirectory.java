@@ -0,0 +1,283 @@
+package com.microservicios.login.directory;
+
+import com.microservicios.login.cache.UserProfileCache;
+import com.microservicios.login.dto.AirtableMapper;
+import com.microservicios.login.dto.AirtableUserPage;
+import com.microservicios.login.dto.AirtableUserResponse;
+import coms.dto.UserDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Réplica en memoria del directorio de empleados (user.directory.enabled=true).
+ *
+ * - Al arrancar baja todos los usuarios del microservicio de usuarios en páginas de {@code pageSize}.
+ * - Cada {@code syncInterval} pide sólo los modificados desde la última sincronización (menos {@code overlap},
+ *   por diferencias de reloj), y cada {@code fullReloadInterval} recarga todo para sacar a los que se dieron de baja.
+ * - El índice es por mail normalizado y guarda sólo nombre, mail y foto; cada consulta devuelve un {@link UserDTO} nuevo.
+ *
+ * Hasta que termina la primera carga no responde nada y el login sigue por el lookup remoto.
+ * Un mail que no está (empleado nuevo) también sigue por el lookup y la migración, y el resultado se agrega acá.
+ */
+public class EmployeeDirectory implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmployeeDirectory.class);
+
+    /**
+     * Entrada compacta del índice. Si el mail del registro coincide con la clave se comparte el mismo String.
+     */
+    record Employee(String email, String name, String profilePicture) {
+    }
+
+    private final RestTemplate restTemplate;
+    private final String listUrl;
+    private final int pageSize;
+    private final Duration syncInterval;
+    private final Duration fullReloadInterval;
+    private final Duration overlap;
+    private final Clock clock;
+    private final AirtableMapper airtableMapper = new AirtableMapper();
+    private final ScheduledExecutorService scheduler;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final MeterRegistry meterRegistry;
+
+    private volatile Map<String, Employee> employees = new ConcurrentHashMap<>();
+    // Índice nuevo mientras dura una carga completa: lo que se agrega con put también va ahí para no perderlo al reemplazar
+    private volatile Map<String, Employee> reloading;
+    private volatile boolean loaded;
+    private final AtomicLong estimatedBytes = new AtomicLong();
+    private volatile long lastSyncMillis;
+    private Instant lastSyncStart;
+    private Instant lastFullReload;
+
+    /**
+     * @param listUrl listado paginado de usuarios: acepta pageSize, offset y modifiedSince (ISO-8601)
+     */
+    public EmployeeDirectory(RestTemplate restTemplate, String listUrl, int pageSize, Duration syncInterval,
+                             Duration fullReloadInterval, Duration overlap, Clock clock, MeterRegistry meterRegistry) {
+        this.restTemplate = restTemplate;
+        this.listUrl = listUrl;
+        this.pageSize = pageSize;
+        this.syncInterval = syncInterval;
+        this.fullReloadInterval = fullReloadInterval;
+        this.overlap = overlap;
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-directory-sync");
+            t.setDaemon(true);
+            return t;
+        });
+
+        this.hits = Counter.builder("login.directory.lookups").tag("result", "hit")
+                .description("Logins resueltos con el directorio en memoria")
+                .register(meterRegistry);
+        this.misses = Counter.builder("login.directory.lookups").tag("result", "miss")
+                .description("Logins de mails que no están en el directorio (van al lookup remoto)")
+                .register(meterRegistry);
+        Gauge.builder("login.directory.size", this, d -> d.employees.size())
+                .register(meterRegistry);
+        Gauge.builder("login.directory.memory", estimatedBytes, AtomicLong::get)
+                .description("Memoria estimada del índice")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("login.directory.sync.lag", this, EmployeeDirectory::syncLagSeconds)
+                .description("Segundos desde la última sincronización exitosa")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Dispara la carga inicial en background y agenda las sincronizaciones.
+     */
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::backgroundSync, 0, syncInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return el usuario, o null si el directorio no lo tiene o todavía no terminó la primera carga
+     */
+    public UserDTO find(String email) {
+        if (!loaded) {
+            return null;
+        }
+        Employee employee = employees.get(UserProfileCache.normalize(email));
+        if (employee == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        UserDTO user = new UserDTO();
+        user.setEmail(employee.email());
+        user.setName(employee.name());
+        user.setProfilePicture(employee.profilePicture());
+        return user;
+    }
+
+    /**
+     * Agrega un usuario resuelto por el lookup remoto o recién migrado, sin esperar al próximo delta.
+     * No toma el lock de {@link #sync}: un login no espera una carga completa.
+     */
+    public void put(String email, UserDTO user) {
+        if (user == null || user.getEmail() == null) {
+            return;
+        }
+        String key = UserProfileCache.normalize(email);
+        Employee employee = compact(key, user);
+        // Primero el índice en construcción: si ya no hay, sync ya publicó el nuevo en employees
+        Map<String, Employee> next = reloading;
+        if (next != null) {
+            next.put(key, employee);
+        }
+        if (employees.put(key, employee) == null) {
+            estimatedBytes.addAndGet(estimateBytes(key, employee));
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public int size() {
+        return employees.size();
+    }
+
+    private void backgroundSync() {
+        boolean full = !loaded || !clock.instant().isBefore(lastFullReload.plus(fullReloadInterval));
+        try {
+            sync(full);
+        } catch (RuntimeException e) {
+            logger.warn("No se pudo sincronizar el directorio ({}), se reintenta en {}s: {}",
+                    full ? "completa" : "delta", syncInterval.toSeconds(), e.getMessage());
+        }
+    }
+
+    /**
+     * Carga completa (índice nuevo que reemplaza al anterior) o delta (modificados desde la última sincronización).
+     */
+    synchronized void sync(boolean full) {
+        String type = full ? "full" : "delta";
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            Instant start = clock.instant();
+            Map<String, Employee> target = employees;
+            if (full) {
+                target = new ConcurrentHashMap<>(Math.max(16, employees.size() * 4 / 3));
+                reloading = target;
+            }
+            int changed = fetchAll(full ? null : lastSyncStart.minus(overlap), target);
+            if (full) {
+                employees = target;
+                lastFullReload = start;
+                loaded = true;
+            }
+            lastSyncStart = start;
+            lastSyncMillis = clock.millis();
+            estimatedBytes.set(estimateBytes(employees));
+            outcome = "success";
+            if (full) {
+                logger.info("Directorio cargado: {} usuarios, ~{} KB", employees.size(), estimatedBytes.get() / 1024);
+            } else if (changed > 0) {
+                logger.info("Directorio sincronizado: {} usuarios modificados", changed);
+            }
+        } finally {
+            reloading = null;
+            sample.stop(Timer.builder("login.directory.sync")
+                    .tag("type", type)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Recorre todas las páginas del listado.
+     *
+     * @return cantidad de registros aplicados
+     */
+    private int fetchAll(Instant modifiedSince, Map<String, Employee> target) {
+        int count = 0;
+        String offset = null;
+        do {
+            UriComponentsBuilder uri = UriComponentsBuilder.fromHttpUrl(listUrl).queryParam("pageSize", pageSize);
+            if (offset != null) {
+                uri.queryParam("offset", offset);
+            }
+            if (modifiedSince != null) {
+                uri.queryParam("modifiedSince", modifiedSince.toString());
+            }
+            AirtableUserPage page = restTemplate.getForObject(uri.build().encode().toUri(), AirtableUserPage.class);
+            if (page == null || page.getRecords() == null) {
+                break;
+            }
+            for (AirtableUserResponse record : page.getRecords()) {
+                UserDTO user = airtableMapper.fromAirtable(record);
+                if (user.getEmail() != null) {
+                    String key = UserProfileCache.normalize(user.getEmail());
+                    target.put(key, compact(key, user));
+                    count++;
+                }
+            }
+            offset = page.getOffset();
+        } while (offset != null && !offset.isEmpty());
+        return count;
+    }
+
+    private static Employee compact(String key, UserDTO user) {
+        String email = key.equals(user.getEmail()) ? key : user.getEmail();
+        return new Employee(email, user.getName(), user.getProfilePicture());
+    }
+
+    private static long estimateBytes(Map<String, Employee> employees) {
+        long total = 0;
+        for (Map.Entry<String, Employee> entry : employees.entrySet()) {
+            total += estimateBytes(entry.getKey(), entry.getValue());
+        }
+        return total;
+    }
+
+    /**
+     * Estimación con punteros comprimidos y Strings Latin-1: nodo del mapa (32) + record (24)
+     * + cada String distinto (24 de objeto + 16 de cabecera del array + 1 byte por carácter).
+     */
+    static long estimateBytes(String key, Employee employee) {
+        long bytes = 32 + 24 + stringBytes(key);
+        if (employee.email() != key) {
+            bytes += stringBytes(employee.email());
+        }
+        return bytes + stringBytes(employee.name()) + stringBytes(employee.profilePicture());
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : 40 + value.length();
+    }
+
+    private double syncLagSeconds() {
+        long last = lastSyncMillis;
+        return last == 0 ? Double.NaN : (clock.millis() - last) / 1000.0;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
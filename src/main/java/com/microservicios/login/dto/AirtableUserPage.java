@@ -0,0 +1,21 @@
+package com.microservicios.login.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Página del listado de usuarios del microservicio de usuarios (mismo formato que el list de Airtable):
+ * {@code offset} viene mientras queden páginas.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@Getter
+@ToString(onlyExplicitlyIncluded = true)
+public class AirtableUserPage {
+    private List<AirtableUserResponse> records;
+
+    @ToString.Include
+    private String offset;
+}
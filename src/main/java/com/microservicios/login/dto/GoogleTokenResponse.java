@@ -0,0 +1,31 @@
+package com.microservicios.login.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Respuesta del token endpoint de Google (https://oauth2.googleapis.com/token).
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@Getter
+@ToString(onlyExplicitlyIncluded = true)
+public class GoogleTokenResponse {
+    @JsonProperty("access_token")
+    private String accessToken;
+
+    @JsonProperty("refresh_token")
+    private String refreshToken;
+
+    @JsonProperty("id_token")
+    private String idToken;
+
+    @JsonProperty("expires_in")
+    @ToString.Include
+    private Long expiresIn;
+
+    @JsonProperty("scope")
+    @ToString.Include
+    private String scope;
+}
@@ -0,0 +1,22 @@
+package com.microservicios.login.dto;
+
+import coms.dto.UserDTO;
+
+/**
+ * Usuario de un primer login armado con los datos del ID token de Google, mientras su migración a la tabla
+ * de usuarios espera en la cola (user.migration.async.enabled=true). Se serializa igual que un {@link UserDTO};
+ * el tipo sólo sirve para que el callback marque la sesión como provisoria.
+ */
+public class ProvisionalUserDTO extends UserDTO {
+
+    public static ProvisionalUserDTO of(String email, String name, String lastName, String pictureUrl) {
+        ProvisionalUserDTO user = new ProvisionalUserDTO();
+        user.setEmail(email);
+        String fullName = ((name != null ? name : "") + " " + (lastName != null ? lastName : "")).trim();
+        if (!fullName.isEmpty()) {
+            user.setName(fullName);
+        }
+        user.setProfilePicture(pictureUrl);
+        return user;
+    }
+}
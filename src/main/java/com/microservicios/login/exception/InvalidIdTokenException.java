@@ -0,0 +1,12 @@
+package com.microservicios.login.exception;
+
+/**
+ * El ID token de Google no llegó, o su firma o sus claims (issuer, audience, vencimiento) no son válidos.
+ */
+public class InvalidIdTokenException extends RuntimeException {
+
+    public InvalidIdTokenException(String message) {
+        super(message);
+    }
+
+}
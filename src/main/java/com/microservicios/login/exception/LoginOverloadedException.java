@@ -0,0 +1,9 @@
+package com.microservicios.login.exception;
+
+public class LoginOverloadedException extends RuntimeException {
+
+    public LoginOverloadedException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,9 @@
+package com.microservicios.login.exception;
+
+public class LoginRateLimitedException extends RuntimeException {
+
+    public LoginRateLimitedException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,9 @@
+package com.microservicios.login.exception;
+
+public class LoginTimeoutException extends RuntimeException {
+
+    public LoginTimeoutException(String message) {
+        super(message);
+    }
+
+}
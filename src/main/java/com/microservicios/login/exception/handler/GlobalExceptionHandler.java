@@ -1,6 +1,12 @@
 package com.microservicios.login.exception.handler;
 
+import com.microservicios.login.exception.InvalidIdTokenException;
+import com.microservicios.login.exception.LoginOverloadedException;
+import com.microservicios.login.exception.LoginRateLimitedException;
+import com.microservicios.login.exception.LoginTimeoutException;
 import com.microservicios.login.exception.MailInvalidoException;
+import com.microservicios.login.metrics.LoginStages;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -17,20 +23,69 @@ public class GlobalExceptionHandler {
     @Value("${LOGIN_REDIRECT}")
     private String loginRedirectUri;
 
+    private final MeterRegistry meterRegistry;
+
+    public GlobalExceptionHandler(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     @ExceptionHandler(MailInvalidoException.class)
     public ResponseEntity<String> handleMailInvalido(MailInvalidoException ex) {
         logger.error(ex.getMessage());
+        countRedirect(LoginStages.INVALID_EMAIL);
         return ResponseEntity.status(HttpStatus.FOUND)
                 .header(HttpHeaders.LOCATION,loginRedirectUri + "/login?auth=error&type=invalid_email")
                 .build();
     }
 
+    @ExceptionHandler(InvalidIdTokenException.class)
+    public ResponseEntity<String> handleInvalidIdToken(InvalidIdTokenException ex) {
+        logger.warn(ex.getMessage());
+        countRedirect(LoginStages.INVALID_TOKEN);
+        return ResponseEntity.status(HttpStatus.FOUND)
+                .header(HttpHeaders.LOCATION,loginRedirectUri + "/login?auth=error&type=invalid_token")
+                .build();
+    }
+
+    @ExceptionHandler(LoginTimeoutException.class)
+    public ResponseEntity<String> handleLoginTimeout(LoginTimeoutException ex) {
+        logger.error(ex.getMessage());
+        countRedirect(LoginStages.TIMEOUT);
+        return ResponseEntity.status(HttpStatus.FOUND)
+                .header(HttpHeaders.LOCATION,loginRedirectUri + "/login?auth=error&type=timeout")
+                .build();
+    }
+
+    @ExceptionHandler(LoginOverloadedException.class)
+    public ResponseEntity<String> handleLoginOverloaded(LoginOverloadedException ex) {
+        logger.warn(ex.getMessage());
+        countRedirect(LoginStages.OVERLOADED);
+        return ResponseEntity.status(HttpStatus.FOUND)
+                .header(HttpHeaders.LOCATION,loginRedirectUri + "/login?auth=error&type=overloaded")
+                .build();
+    }
+
+    @ExceptionHandler(LoginRateLimitedException.class)
+    public ResponseEntity<String> handleLoginRateLimited(LoginRateLimitedException ex) {
+        logger.warn(ex.getMessage());
+        countRedirect(LoginStages.RATE_LIMITED);
+        return ResponseEntity.status(HttpStatus.FOUND)
+                .header(HttpHeaders.LOCATION,loginRedirectUri + "/login?auth=error&type=rate_limited")
+                .build();
+    }
+
     @ExceptionHandler(Exception.class)
         public ResponseEntity<Void> handleException(Exception ex) {
         logger.error(ex.getMessage());
+        countRedirect(LoginStages.SERVER_ERROR);
         return ResponseEntity.status(HttpStatus.FOUND)
                 .header(HttpHeaders.LOCATION,loginRedirectUri + "/login?auth=error&type=server_error")
                 .build();
     }
 
+    // login.error.redirects{type}: a qué pantalla de error mandamos al usuario
+    private void countRedirect(String type) {
+        meterRegistry.counter("login.error.redirects", "type", type).increment();
+    }
+
 }
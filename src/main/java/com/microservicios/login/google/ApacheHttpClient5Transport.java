@@ -0,0 +1,141 @@
+package com.microservicios.login.google;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.EntityTemplate;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * {@link HttpTransport} de Google montado sobre el mismo HttpClient 5 con pool que usa el RestTemplate.
+ *
+ * Así las llamadas a Google (certificados, token endpoint) reutilizan conexiones keep-alive
+ * en lugar de abrir un TLS nuevo por request como hacía {@code NetHttpTransport}.
+ */
+public class ApacheHttpClient5Transport extends HttpTransport {
+
+    private final CloseableHttpClient httpClient;
+
+    public ApacheHttpClient5Transport(CloseableHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    @Override
+    public boolean supportsMethod(String method) {
+        return true;
+    }
+
+    @Override
+    protected LowLevelHttpRequest buildRequest(String method, String url) {
+        return new Request(method, url);
+    }
+
+    private final class Request extends LowLevelHttpRequest {
+
+        private final BasicClassicHttpRequest request;
+
+        Request(String method, String url) {
+            this.request = new BasicClassicHttpRequest(method, URI.create(url));
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            request.addHeader(name, value);
+        }
+
+        @Override
+        public LowLevelHttpResponse execute() throws IOException {
+            if (getStreamingContent() != null) {
+                // El body (form del token endpoint) se escribe directo en la conexión; largo -1 = chunked
+                ContentType contentType = getContentType() != null ? ContentType.parse(getContentType()) : null;
+                request.setEntity(new EntityTemplate(getContentLength(), contentType, getContentEncoding(),
+                        getStreamingContent()::writeTo));
+            }
+            return new Response(httpClient.executeOpen(null, request, null));
+        }
+    }
+
+    private static final class Response extends LowLevelHttpResponse {
+
+        private final ClassicHttpResponse response;
+        private final Header[] headers;
+
+        Response(ClassicHttpResponse response) {
+            this.response = response;
+            this.headers = response.getHeaders();
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            HttpEntity entity = response.getEntity();
+            return entity != null ? entity.getContent() : null;
+        }
+
+        @Override
+        public String getContentEncoding() {
+            HttpEntity entity = response.getEntity();
+            return entity != null ? entity.getContentEncoding() : null;
+        }
+
+        @Override
+        public long getContentLength() {
+            HttpEntity entity = response.getEntity();
+            return entity != null ? entity.getContentLength() : 0;
+        }
+
+        @Override
+        public String getContentType() {
+            HttpEntity entity = response.getEntity();
+            return entity != null ? entity.getContentType() : null;
+        }
+
+        @Override
+        public String getStatusLine() {
+            return response.getVersion() + " " + response.getCode() + " " + response.getReasonPhrase();
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.getCode();
+        }
+
+        @Override
+        public String getReasonPhrase() {
+            return response.getReasonPhrase();
+        }
+
+        @Override
+        public int getHeaderCount() {
+            return headers.length;
+        }
+
+        @Override
+        public String getHeaderName(int index) {
+            return headers[index].getName();
+        }
+
+        @Override
+        public String getHeaderValue(int index) {
+            return headers[index].getValue();
+        }
+
+        /**
+         * Consume lo que quede del body para que la conexión vuelva al pool en vez de descartarse.
+         */
+        @Override
+        public void disconnect() throws IOException {
+            EntityUtils.consume(response.getEntity());
+            response.close();
+        }
+    }
+}
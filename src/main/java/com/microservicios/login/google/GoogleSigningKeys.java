@@ -0,0 +1,233 @@
+package com.microservicios.login.google;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpTransport;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cache en memoria de las claves públicas con las que Google firma los ID tokens (JWKS).
+ *
+ * - Las claves se indexan por "kid" y viven mientras lo indique el Cache-Control de Google.
+ * - Un hilo en background las refresca un rato antes de que expiren, así ningún login
+ *   paga el fetch de los certificados.
+ * - Si llega un token con un "kid" desconocido (rotación de claves) se hace UN refetch,
+ *   como mucho una vez cada {@code minRefetchInterval}, para no martillar a Google con tokens falsos.
+ */
+public class GoogleSigningKeys implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(GoogleSigningKeys.class);
+
+    private static final Pattern MAX_AGE = Pattern.compile("max-age\\s*=\\s*(\\d+)");
+    private static final Duration DEFAULT_MAX_AGE = Duration.ofHours(1);
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(30);
+
+    private final HttpTransport transport;
+    private final String certsUrl;
+    private final Duration refreshAhead;
+    private final Duration minRefetchInterval;
+    private final Clock clock;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledExecutorService scheduler;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter scheduledRefreshes;
+    private final Counter unknownKidRefreshes;
+    private final Counter failedRefreshes;
+
+    private volatile Map<String, PublicKey> keys = Collections.emptyMap();
+    private volatile long expiresAtMillis;
+    private volatile long lastFetchMillis;
+    private ScheduledFuture<?> nextRefresh;
+
+    public GoogleSigningKeys(HttpTransport transport, String certsUrl, Duration refreshAhead,
+                             Duration minRefetchInterval, Clock clock, MeterRegistry meterRegistry) {
+        this.transport = transport;
+        this.certsUrl = certsUrl;
+        this.refreshAhead = refreshAhead;
+        this.minRefetchInterval = minRefetchInterval;
+        this.clock = clock;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "google-keys-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+
+        this.hits = Counter.builder("login.google.keys.lookups").tag("result", "hit")
+                .description("Verificaciones de ID token resueltas con las claves en memoria")
+                .register(meterRegistry);
+        this.misses = Counter.builder("login.google.keys.lookups").tag("result", "miss")
+                .description("Verificaciones de ID token que no encontraron la clave en memoria")
+                .register(meterRegistry);
+        this.scheduledRefreshes = Counter.builder("login.google.keys.refreshes").tag("trigger", "scheduled")
+                .register(meterRegistry);
+        this.unknownKidRefreshes = Counter.builder("login.google.keys.refreshes").tag("trigger", "unknown_kid")
+                .register(meterRegistry);
+        this.failedRefreshes = Counter.builder("login.google.keys.refreshes").tag("trigger", "failed")
+                .register(meterRegistry);
+        Gauge.builder("login.google.keys.count", this, k -> k.keys.size())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Dispara la primera carga en background. Si falla, el primer login la reintenta de forma síncrona.
+     */
+    public void start() {
+        schedule(Duration.ZERO);
+    }
+
+    /**
+     * Devuelve la clave para el "kid" indicado, o null si Google no la publica.
+     * Sólo sale a la red si la caché está vacía o si el kid es desconocido.
+     */
+    public PublicKey getKey(String kid) throws IOException, GeneralSecurityException {
+        Map<String, PublicKey> current = keys;
+        PublicKey key = current.get(kid);
+        if (key != null) {
+            hits.increment();
+            return key;
+        }
+        misses.increment();
+        refetch(current);
+        return keys.get(kid);
+    }
+
+    /**
+     * Todas las claves vigentes. Se usa cuando el token no trae "kid".
+     */
+    public Collection<PublicKey> getKeys() throws IOException, GeneralSecurityException {
+        Map<String, PublicKey> current = keys;
+        if (current.isEmpty()) {
+            misses.increment();
+            refetch(current);
+            current = keys;
+        }
+        return current.values();
+    }
+
+    /**
+     * Refetch por kid desconocido. Si otro hilo ya trajo claves nuevas mientras esperábamos el lock
+     * no se vuelve a salir a la red.
+     */
+    private synchronized void refetch(Map<String, PublicKey> observed) throws IOException, GeneralSecurityException {
+        if (keys != observed) {
+            return;
+        }
+        if (!keys.isEmpty() && clock.millis() - lastFetchMillis < minRefetchInterval.toMillis()) {
+            return;
+        }
+        unknownKidRefreshes.increment();
+        refresh();
+    }
+
+    /**
+     * Descarga el JWKS, reemplaza las claves en memoria y agenda el próximo refresco.
+     */
+    public synchronized void refresh() throws IOException, GeneralSecurityException {
+        HttpResponse response = transport.createRequestFactory()
+                .buildGetRequest(new GenericUrl(certsUrl))
+                .execute();
+        Map<String, PublicKey> fetched;
+        Duration maxAge;
+        try (InputStream content = response.getContent()) {
+            fetched = parseJwks(objectMapper.readTree(content));
+            maxAge = maxAge(response.getHeaders().getCacheControl());
+        } finally {
+            response.disconnect();
+        }
+
+        long now = clock.millis();
+        keys = Collections.unmodifiableMap(fetched);
+        lastFetchMillis = now;
+        expiresAtMillis = now + maxAge.toMillis();
+
+        Duration delay = maxAge.minus(refreshAhead);
+        if (delay.compareTo(minRefetchInterval) < 0) {
+            delay = minRefetchInterval;
+        }
+        schedule(delay);
+        logger.info("Claves de Google actualizadas: {} claves, próximo refresco en {}s", fetched.size(), delay.toSeconds());
+    }
+
+    private synchronized void schedule(Duration delay) {
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+        }
+        nextRefresh = scheduler.schedule(this::backgroundRefresh, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void backgroundRefresh() {
+        try {
+            scheduledRefreshes.increment();
+            refresh();
+        } catch (Exception e) {
+            failedRefreshes.increment();
+            logger.warn("No se pudieron refrescar las claves de Google, se reintenta en {}s: {}",
+                    RETRY_DELAY.toSeconds(), e.getMessage());
+            schedule(RETRY_DELAY);
+        }
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    static Duration maxAge(String cacheControl) {
+        if (cacheControl != null) {
+            Matcher m = MAX_AGE.matcher(cacheControl);
+            if (m.find()) {
+                return Duration.ofSeconds(Long.parseLong(m.group(1)));
+            }
+        }
+        return DEFAULT_MAX_AGE;
+    }
+
+    private static Map<String, PublicKey> parseJwks(JsonNode jwks) throws GeneralSecurityException {
+        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+        Base64.Decoder decoder = Base64.getUrlDecoder();
+        Map<String, PublicKey> result = new HashMap<>();
+        for (JsonNode jwk : jwks.path("keys")) {
+            if (!"RSA".equals(jwk.path("kty").asText())) {
+                continue;
+            }
+            BigInteger modulus = new BigInteger(1, decoder.decode(jwk.path("n").asText()));
+            BigInteger exponent = new BigInteger(1, decoder.decode(jwk.path("e").asText()));
+            result.put(jwk.path("kid").asText(), keyFactory.generatePublic(new RSAPublicKeySpec(modulus, exponent)));
+        }
+        return result;
+    }
+}
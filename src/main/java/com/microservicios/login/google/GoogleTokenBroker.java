@@ -0,0 +1,374 @@
+package com.microservicios.login.google;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.google.api.client.auth.oauth2.TokenResponse;
+import com.google.api.client.auth.oauth2.TokenResponseException;
+import com.google.api.client.googleapis.auth.oauth2.GoogleRefreshTokenRequest;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.microservicios.login.cache.UserProfileCache;
+import com.microservicios.login.concurrency.RedisLeaseLock;
+import com.microservicios.login.concurrency.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Broker de access tokens de Google para los demás servicios de la plataforma (Calendar, Drive, Tasks).
+ *
+ * - El token vigente de cada usuario se cachea en memoria y en Redis (compartido entre réplicas).
+ * - Los usuarios que piden tokens quedan "seguidos": un scheduler ordenado por vencimiento refresca su
+ *   token {@code refreshAhead} antes de que expire, así el refresh no cae en el camino del request.
+ * - Un usuario deja de seguirse si no pide tokens durante {@code idle}, o si Google rechaza su refresh token
+ *   (invalid_grant: revocado o vencido), porque reintentar no sirve.
+ * - Un solo refresh por usuario: {@link SingleFlight} dentro de la JVM y lock en Redis entre réplicas;
+ *   la réplica que no tiene el lock espera el token que deja la otra en Redis.
+ */
+public class GoogleTokenBroker implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(GoogleTokenBroker.class);
+
+    static final String KEY_PREFIX = "login:gtoken:";
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(30);
+
+    /**
+     * Access token de Google y su vencimiento.
+     */
+    public record BrokeredToken(String accessToken, Instant expiresAt) {
+    }
+
+    /**
+     * Estado de un usuario seguido. El refresh token no sale de la memoria de la réplica
+     * (en Redis ya está dentro de la sesión).
+     */
+    private static final class Tracked {
+        volatile String refreshToken;
+        volatile BrokeredToken token;
+        volatile long lastRequestedMillis;
+        volatile ScheduledFuture<?> nextRefresh;
+    }
+
+    private final HttpTransport transport;
+    private final JsonFactory jsonFactory;
+    private final String tokenUrl;
+    private final String clientId;
+    private final String clientSecret;
+    private final StringRedisTemplate redis;
+    private final RedisLeaseLock lock;
+    private final Duration refreshAhead;
+    private final Duration idle;
+    private final Duration lockLease;
+    private final Duration lockWait;
+    private final Clock clock;
+    private final Cache<String, Tracked> tracked;
+    private final SingleFlight<String, BrokeredToken> inFlight;
+    private final ScheduledExecutorService scheduler;
+
+    private final Counter servedCached;
+    private final Counter servedShared;
+    private final Counter servedRefreshed;
+    private final Counter scheduledRefreshes;
+    private final Counter onDemandRefreshes;
+    private final Counter failedRefreshes;
+    private final Counter revokedRefreshes;
+
+    /**
+     * @param redis nivel compartido; si es null cada réplica refresca por su cuenta
+     * @param lock  lock entre réplicas; si es null el refresh sólo se coordina dentro de la JVM
+     */
+    public GoogleTokenBroker(HttpTransport transport, JsonFactory jsonFactory, String tokenUrl,
+                             String clientId, String clientSecret,
+                             StringRedisTemplate redis, RedisLeaseLock lock,
+                             Duration refreshAhead, Duration idle, long maxUsers, int threads,
+                             Duration lockLease, Duration lockWait, Clock clock, MeterRegistry meterRegistry) {
+        this.transport = transport;
+        this.jsonFactory = jsonFactory;
+        this.tokenUrl = tokenUrl;
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+        this.redis = redis;
+        this.lock = lock;
+        this.refreshAhead = refreshAhead;
+        this.idle = idle;
+        this.lockLease = lockLease;
+        this.lockWait = lockWait;
+        this.clock = clock;
+        this.tracked = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .removalListener((String email, Tracked user, RemovalCause cause) -> {
+                    if (user != null && user.nextRefresh != null) {
+                        user.nextRefresh.cancel(false);
+                    }
+                })
+                .build();
+        this.inFlight = new SingleFlight<>(meterRegistry, "google_token_refresh");
+        AtomicInteger count = new AtomicInteger();
+        // ScheduledThreadPoolExecutor: cola ordenada por el momento del próximo refresh
+        this.scheduler = Executors.newScheduledThreadPool(threads, r -> {
+            Thread t = new Thread(r, "google-token-refresh-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        this.servedCached = served(meterRegistry, "cached");
+        this.servedShared = served(meterRegistry, "shared");
+        this.servedRefreshed = served(meterRegistry, "refreshed");
+        this.scheduledRefreshes = Counter.builder("login.google.token.refreshes").tag("trigger", "scheduled")
+                .register(meterRegistry);
+        this.onDemandRefreshes = Counter.builder("login.google.token.refreshes").tag("trigger", "on_demand")
+                .register(meterRegistry);
+        this.failedRefreshes = Counter.builder("login.google.token.refreshes").tag("trigger", "failed")
+                .register(meterRegistry);
+        this.revokedRefreshes = Counter.builder("login.google.token.refreshes").tag("trigger", "revoked")
+                .register(meterRegistry);
+        Gauge.builder("login.google.token.tracked", tracked, Cache::estimatedSize).register(meterRegistry);
+    }
+
+    private static Counter served(MeterRegistry meterRegistry, String source) {
+        return Counter.builder("login.google.token.requests").tag("source", source).register(meterRegistry);
+    }
+
+    /**
+     * Devuelve un access token vigente para el usuario y lo deja seguido para el refresh en background.
+     *
+     * @param refreshToken  refresh token de la sesión (puede ser null si Google no lo entregó)
+     * @param sessionToken  access token guardado en la sesión, como valor inicial
+     * @return el token, o null si venció y no hay refresh token para renovarlo o Google lo rechazó
+     *         (hay que volver a loguearse)
+     */
+    public BrokeredToken getAccessToken(String email, String refreshToken, BrokeredToken sessionToken) throws IOException {
+        String key = UserProfileCache.normalize(email);
+        Tracked user = tracked.get(key, k -> new Tracked());
+        user.lastRequestedMillis = clock.millis();
+        if (refreshToken != null) {
+            user.refreshToken = refreshToken;
+        }
+        if (user.token == null && isFresh(sessionToken)) {
+            user.token = sessionToken;
+        }
+
+        BrokeredToken current = user.token;
+        if (isFresh(current)) {
+            servedCached.increment();
+            scheduleIfNeeded(key, user);
+            return current;
+        }
+        BrokeredToken shared = readShared(key);
+        if (isFresh(shared)) {
+            user.token = shared;
+            servedShared.increment();
+            scheduleIfNeeded(key, user);
+            return shared;
+        }
+        if (user.refreshToken == null) {
+            return null;
+        }
+        onDemandRefreshes.increment();
+        BrokeredToken refreshed;
+        try {
+            refreshed = refresh(key, user);
+        } catch (TokenResponseException e) {
+            if (!isRevoked(e)) {
+                throw e;
+            }
+            revoked(key, user);
+            return null;
+        }
+        servedRefreshed.increment();
+        return refreshed;
+    }
+
+    /**
+     * Un token sirve si le queda más vida que el margen de refresh.
+     */
+    private boolean isFresh(BrokeredToken token) {
+        return token != null && token.expiresAt().isAfter(clock.instant().plus(refreshAhead));
+    }
+
+    private BrokeredToken refresh(String key, Tracked user) throws IOException {
+        BrokeredToken token = inFlight.execute(key, () -> refreshOnce(key, user));
+        user.token = token;
+        schedule(key, user, token);
+        return token;
+    }
+
+    /**
+     * Refresca una sola vez entre réplicas. Si otra réplica tiene el lock, espera el token que deja en Redis.
+     */
+    private BrokeredToken refreshOnce(String key, Tracked user) throws IOException {
+        if (lock == null) {
+            return callGoogle(key, user);
+        }
+        String lockName = "gtoken:" + key;
+        long deadline = System.nanoTime() + lockWait.toNanos();
+        while (true) {
+            String lockToken = lock.tryAcquire(lockName, lockLease);
+            if (lockToken != null) {
+                try {
+                    BrokeredToken shared = readShared(key);
+                    if (isFresh(shared)) {
+                        return shared;
+                    }
+                    return callGoogle(key, user);
+                } finally {
+                    lock.release(lockName, lockToken);
+                }
+            }
+            BrokeredToken shared = readShared(key);
+            if (isFresh(shared)) {
+                return shared;
+            }
+            if (System.nanoTime() > deadline) {
+                logger.warn("Timeout esperando el refresh de otra réplica, se refresca igual");
+                return callGoogle(key, user);
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrumpido esperando el refresh de otra réplica", e);
+            }
+        }
+    }
+
+    private BrokeredToken callGoogle(String key, Tracked user) throws IOException {
+        TokenResponse response = new GoogleRefreshTokenRequest(transport, jsonFactory, user.refreshToken, clientId, clientSecret)
+                .setTokenServerUrl(new GenericUrl(tokenUrl))
+                .execute();
+        Long expiresIn = response.getExpiresInSeconds();
+        BrokeredToken token = new BrokeredToken(response.getAccessToken(),
+                clock.instant().plusSeconds(expiresIn != null ? expiresIn : 3600));
+        // Google puede rotar el refresh token
+        if (response.getRefreshToken() != null) {
+            user.refreshToken = response.getRefreshToken();
+        }
+        writeShared(key, token);
+        return token;
+    }
+
+    private void scheduleIfNeeded(String key, Tracked user) {
+        ScheduledFuture<?> next = user.nextRefresh;
+        if ((next == null || next.isDone()) && user.refreshToken != null) {
+            schedule(key, user, user.token);
+        }
+    }
+
+    private synchronized void schedule(String key, Tracked user, BrokeredToken token) {
+        Duration delay = Duration.between(clock.instant(), token.expiresAt().minus(refreshAhead));
+        schedule(key, user, delay.isNegative() ? Duration.ZERO : delay);
+    }
+
+    private synchronized void schedule(String key, Tracked user, Duration delay) {
+        if (user.nextRefresh != null) {
+            user.nextRefresh.cancel(false);
+        }
+        user.nextRefresh = scheduler.schedule(() -> backgroundRefresh(key), delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void backgroundRefresh(String key) {
+        // getIfPresentQuietly: el scheduler no cuenta como uso del usuario
+        Tracked user = tracked.policy().getIfPresentQuietly(key);
+        if (user == null) {
+            return;
+        }
+        if (clock.millis() - user.lastRequestedMillis > idle.toMillis()) {
+            tracked.invalidate(key);
+            return;
+        }
+        try {
+            scheduledRefreshes.increment();
+            refresh(key, user);
+        } catch (Exception e) {
+            failedRefreshes.increment();
+            if (isRevoked(e)) {
+                revoked(key, user);
+                return;
+            }
+            logger.warn("No se pudo refrescar el token de Google de un usuario, se reintenta en {}s: {}",
+                    RETRY_DELAY.toSeconds(), e.getMessage());
+            schedule(key, user, RETRY_DELAY);
+        }
+    }
+
+    /**
+     * Google rechazó el refresh token (el usuario revocó el acceso, o venció por inactividad).
+     */
+    private static boolean isRevoked(Exception e) {
+        return e instanceof TokenResponseException response && response.getDetails() != null
+                && "invalid_grant".equals(response.getDetails().getError());
+    }
+
+    /**
+     * Deja de seguir a un usuario cuyo refresh token ya no sirve. Con el access token vencido,
+     * el próximo pedido devuelve null y el usuario vuelve a loguearse.
+     */
+    private void revoked(String key, Tracked user) {
+        revokedRefreshes.increment();
+        logger.info("Google rechazó el refresh token de un usuario (invalid_grant), deja de refrescarse");
+        user.refreshToken = null;
+        tracked.invalidate(key);
+    }
+
+    private BrokeredToken readShared(String key) {
+        if (redis == null) {
+            return null;
+        }
+        try {
+            String value = redis.opsForValue().get(KEY_PREFIX + key);
+            if (value == null) {
+                return null;
+            }
+            int separator = value.indexOf('|');
+            return new BrokeredToken(value.substring(separator + 1),
+                    Instant.ofEpochMilli(Long.parseLong(value.substring(0, separator))));
+        } catch (RuntimeException e) {
+            logger.warn("No se pudo leer el token de Google desde Redis: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeShared(String key, BrokeredToken token) {
+        if (redis == null) {
+            return;
+        }
+        Duration ttl = Duration.between(clock.instant(), token.expiresAt());
+        if (ttl.isNegative() || ttl.isZero()) {
+            return;
+        }
+        try {
+            redis.opsForValue().set(KEY_PREFIX + key, token.expiresAt().toEpochMilli() + "|" + token.accessToken(), ttl);
+        } catch (RuntimeException e) {
+            logger.warn("No se pudo guardar el token de Google en Redis: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Deja de seguir al usuario (logout de su última sesión).
+     */
+    public void forget(String email) {
+        tracked.invalidate(UserProfileCache.normalize(email));
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
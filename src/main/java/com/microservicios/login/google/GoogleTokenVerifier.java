@@ -0,0 +1,48 @@
+package com.microservicios.login.google;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.Collections;
+
+/**
+ * Verificador de ID tokens de Google compartido por todo el proceso.
+ *
+ * Reutiliza las validaciones de payload de {@link GoogleIdTokenVerifier} (issuer, audience, expiración)
+ * pero toma la clave de firma de {@link GoogleSigningKeys} por "kid", en lugar de bajar los certificados
+ * de Google en cada login.
+ */
+public class GoogleTokenVerifier extends GoogleIdTokenVerifier {
+
+    private final GoogleSigningKeys signingKeys;
+
+    public GoogleTokenVerifier(HttpTransport transport, JsonFactory jsonFactory,
+                               GoogleSigningKeys signingKeys, String clientId) {
+        super(new GoogleIdTokenVerifier.Builder(transport, jsonFactory)
+                .setAudience(Collections.singletonList(clientId)));
+        this.signingKeys = signingKeys;
+    }
+
+    @Override
+    public boolean verify(GoogleIdToken idToken) throws GeneralSecurityException, IOException {
+        if (!verifyPayload(idToken)) {
+            return false;
+        }
+        String kid = idToken.getHeader().getKeyId();
+        if (kid == null) {
+            for (PublicKey key : signingKeys.getKeys()) {
+                if (idToken.verifySignature(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        PublicKey key = signingKeys.getKey(kid);
+        return key != null && idToken.verifySignature(key);
+    }
+}
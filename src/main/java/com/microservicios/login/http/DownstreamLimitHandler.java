@@ -0,0 +1,61 @@
+package com.microservicios.login.http;
+
+import com.microservicios.login.concurrency.AdaptiveLimiter;
+import com.microservicios.login.concurrency.DownstreamLimiters;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpException;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+/**
+ * Interceptor del HttpClient saliente: cada request a una dependencia limitada toma un permiso de su
+ * {@link AdaptiveLimiter} o falla en el acto con LoginOverloadedException, sin esperar una conexión del pool.
+ *
+ * Va primero en la cadena, así un reintento o un redirect del cliente cuenta como una sola llamada.
+ * La latencia que se mide es hasta los headers de la respuesta.
+ */
+public class DownstreamLimitHandler implements ExecChainHandler {
+
+    private final DownstreamLimiters limiters;
+
+    public DownstreamLimitHandler(DownstreamLimiters limiters) {
+        this.limiters = limiters;
+    }
+
+    @Override
+    public ClassicHttpResponse execute(ClassicHttpRequest request, ExecChain.Scope scope, ExecChain chain)
+            throws IOException, HttpException {
+        AdaptiveLimiter limiter = limiterFor(request);
+        if (limiter == null) {
+            return chain.proceed(request, scope);
+        }
+        AdaptiveLimiter.Permit permit = limiter.tryAcquire();
+        if (permit == null) {
+            throw DownstreamLimiters.rejected(limiter);
+        }
+        try {
+            ClassicHttpResponse response = chain.proceed(request, scope);
+            if (response.getCode() >= 500) {
+                permit.dropped();
+            } else {
+                permit.success();
+            }
+            return response;
+        } catch (IOException | HttpException | RuntimeException e) {
+            permit.dropped();
+            throw e;
+        }
+    }
+
+    private AdaptiveLimiter limiterFor(ClassicHttpRequest request) {
+        try {
+            return limiters.forUrl(request.getUri().toString());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.microservicios.login.http;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.client5.http.io.LeaseRequest;
+import org.apache.hc.core5.util.Timeout;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Pool de conexiones salientes que además mide cuánto espera cada request por una conexión libre.
+ *
+ * Las métricas de ocupación (leased, available, pending, max) las publica
+ * {@code PoolingHttpClientConnectionManagerMetricsBinder}; acá sólo agregamos el tiempo de espera,
+ * que es lo que se traduce directamente en latencia cuando el pool está saturado.
+ */
+public class InstrumentedConnectionManager extends PoolingHttpClientConnectionManager {
+
+    private final Timer leaseWait;
+    private final Timer leaseTimeouts;
+
+    public InstrumentedConnectionManager(MeterRegistry meterRegistry, String poolName) {
+        this.leaseWait = Timer.builder("http.client.pool.wait")
+                .tag("pool", poolName)
+                .tag("outcome", "leased")
+                .description("Tiempo esperando una conexión libre del pool")
+                .register(meterRegistry);
+        this.leaseTimeouts = Timer.builder("http.client.pool.wait")
+                .tag("pool", poolName)
+                .tag("outcome", "timeout")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public LeaseRequest lease(String id, HttpRoute route, Timeout requestTimeout, Object state) {
+        LeaseRequest delegate = super.lease(id, route, requestTimeout, state);
+        long start = System.nanoTime();
+        return new LeaseRequest() {
+            @Override
+            public ConnectionEndpoint get(Timeout timeout) throws InterruptedException, ExecutionException, TimeoutException {
+                try {
+                    ConnectionEndpoint endpoint = delegate.get(timeout);
+                    leaseWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    return endpoint;
+                } catch (TimeoutException e) {
+                    leaseTimeouts.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    throw e;
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return delegate.cancel();
+            }
+        };
+    }
+}
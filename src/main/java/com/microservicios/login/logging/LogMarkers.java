@@ -0,0 +1,16 @@
+package com.microservicios.login.logging;
+
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+public final class LogMarkers {
+
+    /**
+     * Líneas INFO de alto volumen (una o más por login o por /me): se escribe una de cada
+     * logging.sampling.rate por mensaje (ver {@link SamplingTurboFilter}).
+     */
+    public static final Marker SAMPLED = MarkerFactory.getMarker("SAMPLED");
+
+    private LogMarkers() {
+    }
+}
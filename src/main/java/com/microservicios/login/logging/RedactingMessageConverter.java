@@ -0,0 +1,16 @@
+package com.microservicios.login.logging;
+
+import ch.qos.logback.classic.pattern.MessageConverter;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * %m / %msg / %message de logback-spring.xml con los tokens y secretos enmascarados (ver {@link Redaction}).
+ * Detrás del AsyncAppender corre en el hilo del appender, no en el del request.
+ */
+public class RedactingMessageConverter extends MessageConverter {
+
+    @Override
+    public String convert(ILoggingEvent event) {
+        return Redaction.redact(super.convert(event));
+    }
+}
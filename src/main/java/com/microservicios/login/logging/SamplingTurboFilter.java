@@ -0,0 +1,37 @@
+package com.microservicios.login.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Muestreo de los eventos con {@link LogMarkers#SAMPLED}: de cada mensaje (formato) pasa el primero y después
+ * uno de cada {@code rate}. WARN y ERROR pasan siempre.
+ *
+ * Es un turbo filter: decide antes de crear el evento, así lo descartado no arma el mensaje ni aloca el evento.
+ */
+public class SamplingTurboFilter extends TurboFilter {
+
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private int rate = 100;
+
+    public void setRate(int rate) {
+        this.rate = rate;
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (marker == null || format == null || rate <= 1 || level.isGreaterOrEqual(Level.WARN)
+                || !marker.contains(LogMarkers.SAMPLED)) {
+            return FilterReply.NEUTRAL;
+        }
+        long n = counters.computeIfAbsent(format, f -> new AtomicLong()).getAndIncrement();
+        return n % rate == 0 ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+}
@@ -0,0 +1,128 @@
+package com.microservicios.login.metrics;
+
+import com.microservicios.login.exception.InvalidIdTokenException;
+import com.microservicios.login.exception.LoginOverloadedException;
+import com.microservicios.login.exception.LoginRateLimitedException;
+import com.microservicios.login.exception.LoginTimeoutException;
+import com.microservicios.login.exception.MailInvalidoException;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Observaciones de Micrometer para el callback de Google y cada una de sus etapas.
+ *
+ * Cada observación genera a la vez un timer (login.callback / login.callback.stage, con histograma de
+ * percentiles configurado en application.properties) y un span de tracing. Los spans de las llamadas HTTP
+ * del RestTemplate/WebClient cuelgan de la etapa en curso, así el trace propaga al microservicio de usuarios.
+ *
+ * Tags: stage (exchange, verify, lookup, nomina, migrate, enqueue, session) y outcome
+ * (success, not_found, invalid_email, invalid_token, timeout, overloaded, rate_limited, server_error).
+ */
+public class LoginStages {
+
+    public static final String CALLBACK = "login.callback";
+    public static final String STAGE = "login.callback.stage";
+
+    public static final String SUCCESS = "success";
+    public static final String NOT_FOUND = "not_found";
+    public static final String INVALID_EMAIL = "invalid_email";
+    public static final String INVALID_TOKEN = "invalid_token";
+    public static final String TIMEOUT = "timeout";
+    public static final String OVERLOADED = "overloaded";
+    public static final String RATE_LIMITED = "rate_limited";
+    public static final String SERVER_ERROR = "server_error";
+
+    @FunctionalInterface
+    public interface Stage<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    private final ObservationRegistry registry;
+
+    public LoginStages(ObservationRegistry registry) {
+        this.registry = registry;
+    }
+
+    public <T, E extends Exception> T observe(String stage, Stage<T, E> call) throws E {
+        return observe(stage, call, result -> SUCCESS);
+    }
+
+    /**
+     * @param outcome outcome a partir del resultado (ej: null → not_found en el lookup)
+     */
+    public <T, E extends Exception> T observe(String stage, Stage<T, E> call, Function<T, String> outcome) throws E {
+        Observation observation = start(stage);
+        try {
+            // scopedChecked ya registra el error en la observación
+            T result = observation.scopedChecked(call::run);
+            observation.lowCardinalityKeyValue("outcome", outcome.apply(result));
+            return result;
+        } catch (Exception | Error e) {
+            observation.lowCardinalityKeyValue("outcome", outcome(e));
+            throw e;
+        } finally {
+            observation.stop();
+        }
+    }
+
+    /**
+     * Para etapas que no entran en {@link #observe} (ej: varias excepciones checked). Se cierra con {@link #stop}
+     * y mientras tanto hay que abrir su scope.
+     */
+    public Observation start(String stage) {
+        return Observation.createNotStarted(STAGE, registry)
+                .contextualName("login " + stage)
+                .lowCardinalityKeyValue("stage", stage)
+                .start();
+    }
+
+    /**
+     * Observación de todo el callback. Se cierra con {@link #stop(Observation, String)} o {@link #stop(Observation, Throwable)}.
+     */
+    public Observation startCallback() {
+        return Observation.createNotStarted(CALLBACK, registry)
+                .contextualName("login google callback")
+                .start();
+    }
+
+    public void stop(Observation observation, String outcome) {
+        observation.lowCardinalityKeyValue("outcome", outcome);
+        observation.stop();
+    }
+
+    public void stop(Observation observation, Throwable error) {
+        observation.lowCardinalityKeyValue("outcome", outcome(error));
+        observation.error(error);
+        observation.stop();
+    }
+
+    /**
+     * Para tareas que corren en otro hilo (modo paralelo): las deja colgando de la observación actual.
+     */
+    public <T> Supplier<T> inCurrentObservation(Supplier<T> call) {
+        Observation parent = registry.getCurrentObservation();
+        return parent == null ? call : () -> parent.scoped(call);
+    }
+
+    public static String outcome(Throwable error) {
+        if (error instanceof MailInvalidoException) {
+            return INVALID_EMAIL;
+        }
+        if (error instanceof InvalidIdTokenException) {
+            return INVALID_TOKEN;
+        }
+        if (error instanceof LoginTimeoutException) {
+            return TIMEOUT;
+        }
+        if (error instanceof LoginOverloadedException) {
+            return OVERLOADED;
+        }
+        if (error instanceof LoginRateLimitedException) {
+            return RATE_LIMITED;
+        }
+        return SERVER_ERROR;
+    }
+}
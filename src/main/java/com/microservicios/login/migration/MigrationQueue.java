@@ -0,0 +1,79 @@
+package com.microservicios.login.migration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cola de migraciones de usuarios nuevos sobre un Redis Stream ({@code login:migrations}),
+ * con user.migration.async.enabled=true.
+ *
+ * El callback valida la nómina, deja el trabajo con un XADD y sigue con un usuario provisorio;
+ * {@link MigrationWorker} hace el POST a migrateUser desde un consumer group. El stream no se recorta por
+ * largo: un trabajo sale sólo cuando se migró o cuando pasó al dead-letter.
+ */
+public class MigrationQueue {
+
+    static final String STREAM_KEY = "login:migrations";
+    static final String DEAD_LETTER_KEY = "login:migrations:dead";
+    static final String GROUP = "login-migration";
+
+    // Campos del mensaje
+    static final String EMAIL = "email";
+    static final String NAME = "nombre";
+    static final String LAST_NAME = "apellido";
+    static final String PICTURE = "foto";
+
+    /**
+     * Datos de Google con los que se crea el usuario (los mismos del POST migrateUser).
+     */
+    public record Job(String email, String name, String lastName, String pictureUrl) {
+
+        Map<String, String> toFields() {
+            Map<String, String> fields = new HashMap<>();
+            fields.put(EMAIL, email);
+            // Un stream no guarda nulls: el campo se omite
+            putIfPresent(fields, NAME, name);
+            putIfPresent(fields, LAST_NAME, lastName);
+            putIfPresent(fields, PICTURE, pictureUrl);
+            return fields;
+        }
+
+        static Job fromFields(Map<?, ?> fields) {
+            return new Job((String) fields.get(EMAIL), (String) fields.get(NAME),
+                    (String) fields.get(LAST_NAME), (String) fields.get(PICTURE));
+        }
+
+        private static void putIfPresent(Map<String, String> fields, String field, String value) {
+            if (value != null) {
+                fields.put(field, value);
+            }
+        }
+    }
+
+    private final StringRedisTemplate redis;
+    private final Counter enqueued;
+
+    public MigrationQueue(StringRedisTemplate redis, MeterRegistry meterRegistry) {
+        this.redis = redis;
+        this.enqueued = Counter.builder("login.user.migration.jobs").tag("outcome", "enqueued")
+                .description("Migraciones de primer login encoladas")
+                .register(meterRegistry);
+    }
+
+    /**
+     * XADD del trabajo. Si Redis falla la excepción sube: el que llama decide (migrar en el momento).
+     *
+     * @return el ID del mensaje en el stream
+     */
+    public String enqueue(Job job) {
+        RecordId id = redis.opsForStream().add(StreamRecords.string(job.toFields()).withStreamKey(STREAM_KEY));
+        enqueued.increment();
+        return id != null ? id.getValue() : null;
+    }
+}
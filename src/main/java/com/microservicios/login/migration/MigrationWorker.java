@@ -0,0 +1,318 @@
+package com.microservicios.login.migration;
+
+import com.microservicios.login.exception.MailInvalidoException;
+import com.microservicios.login.session.LoginSession;
+import com.microservicios.login.session.LoginSessions;
+import com.microservicios.login.session.SessionIndex;
+import com.microservicios.login.token.SessionTokens;
+import coms.dto.UserDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consumidor de {@link MigrationQueue}: cada réplica es un consumidor del grupo {@code login-migration}.
+ *
+ * - Cada {@code pollInterval} lee hasta {@code batchSize} trabajos nuevos (XREADGROUP sin BLOCK, sobre la
+ *   conexión compartida).
+ * - Un trabajo que falla queda pendiente, sin XACK. Se reintenta reclamándolo (XCLAIM) cuando lleva quieto el
+ *   backoff de su intento: initial * 2^(intentos-1), hasta max. Así también se retoman los trabajos de una
+ *   réplica que se cayó a mitad de camino. Se recorre toda la lista de pendientes, no sólo los más viejos.
+ * - Con {@code maxAttempts} intentos fallidos, o un error que no se arregla reintentando (4xx, mail fuera de
+ *   nómina), pasa al stream {@code login:migrations:dead} con el error y sale de la cola.
+ * - Al terminar, la migración ya dejó el usuario definitivo en la caché de perfiles. Las sesiones del usuario
+ *   que están en {@link SessionIndex} pasan a tenerlo y sus tokens firmados se revocan, así el próximo /me
+ *   lo lee de la sesión. Las que no están en el índice se corrigen en su próximo /me (usuario provisorio).
+ *
+ * Los trabajos terminados se borran del stream (XDEL): la cola sólo tiene lo pendiente.
+ */
+public class MigrationWorker implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MigrationWorker.class);
+
+    // Mensajes nuevos del grupo. read() es un varargs genérico sin @SafeVarargs: el array se arma una sola vez
+    // acá en lugar de en cada llamada, y read() sólo lo recorre
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final StreamOffset<String>[] NEW_JOBS =
+            new StreamOffset[]{StreamOffset.create(MigrationQueue.STREAM_KEY, ReadOffset.lastConsumed())};
+
+    /**
+     * La migración en sí. Tiene que ser idempotente: un trabajo se puede ejecutar más de una vez.
+     */
+    @FunctionalInterface
+    public interface Migration {
+        UserDTO migrate(MigrationQueue.Job job) throws Exception;
+    }
+
+    private final StringRedisTemplate redis;
+    private final Migration migration;
+    private final SessionRepository<Session> sessionRepository;
+    private final LoginSessions loginSessions;
+    private final SessionIndex sessionIndex;
+    private final SessionTokens sessionTokens;
+    private final Consumer consumer;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration pollInterval;
+    private final Clock clock;
+    private final ScheduledExecutorService scheduler;
+
+    private final Counter migrated;
+    private final Counter retried;
+    private final Counter deadLettered;
+    private final Timer lag;
+
+    private volatile boolean groupReady;
+
+    /**
+     * @param sessionIndex  sesiones del usuario a actualizar; si es null sólo se corrigen en su próximo /me
+     * @param sessionTokens tokens firmados a revocar (puede ser null)
+     * @param consumerName  único por réplica
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public MigrationWorker(StringRedisTemplate redis, Migration migration, SessionRepository<? extends Session> sessionRepository,
+                           LoginSessions loginSessions, SessionIndex sessionIndex, SessionTokens sessionTokens, String consumerName,
+                           int batchSize, int maxAttempts, Duration initialBackoff, Duration maxBackoff,
+                           Duration pollInterval, Clock clock, MeterRegistry meterRegistry) {
+        this.redis = redis;
+        this.migration = migration;
+        // Sólo se lee y se vuelve a guardar la misma sesión
+        this.sessionRepository = (SessionRepository) sessionRepository;
+        this.loginSessions = loginSessions;
+        this.sessionIndex = sessionIndex;
+        this.sessionTokens = sessionTokens;
+        this.consumer = Consumer.from(MigrationQueue.GROUP, consumerName);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.pollInterval = pollInterval;
+        this.clock = clock;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-migration-worker");
+            t.setDaemon(true);
+            return t;
+        });
+
+        this.migrated = outcome(meterRegistry, "migrated", "Migraciones terminadas desde la cola");
+        this.retried = outcome(meterRegistry, "retried", "Trabajos reclamados para reintentar");
+        this.deadLettered = outcome(meterRegistry, "dead", "Trabajos pasados al dead-letter (login:migrations:dead)");
+        this.lag = Timer.builder("login.user.migration.lag")
+                .description("Desde que el login encoló la migración hasta que terminó")
+                .register(meterRegistry);
+    }
+
+    private static Counter outcome(MeterRegistry meterRegistry, String outcome, String description) {
+        return Counter.builder("login.user.migration.jobs").tag("outcome", outcome)
+                .description(description)
+                .register(meterRegistry);
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::poll, 0, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Una vuelta: trabajos nuevos y después los pendientes que ya cumplieron su backoff.
+     */
+    void poll() {
+        try {
+            if (!groupReady) {
+                createGroup();
+            }
+            List<MapRecord<String, Object, Object>> fresh = redis.opsForStream().read(consumer,
+                    StreamReadOptions.empty().count(batchSize), NEW_JOBS);
+            if (fresh != null) {
+                fresh.forEach(record -> process(record, 1));
+            }
+            retryPending();
+        } catch (RuntimeException e) {
+            logger.warn("Error leyendo la cola de migraciones: {}", e.getMessage());
+        }
+    }
+
+    private void createGroup() {
+        try {
+            // Crea el stream si no existe (MKSTREAM)
+            redis.opsForStream().createGroup(MigrationQueue.STREAM_KEY, ReadOffset.from("0"), MigrationQueue.GROUP);
+        } catch (RuntimeException e) {
+            if (!isBusyGroup(e)) {
+                throw e;
+            }
+        }
+        groupReady = true;
+    }
+
+    private static boolean isBusyGroup(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("BUSYGROUP")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Recorre la lista de pendientes del grupo de a {@code batchSize} (XPENDING con el rango a partir del último ID
+     * visto), así los trabajos huérfanos que quedan detrás de otros en backoff también se reclaman. Reclama como
+     * mucho {@code batchSize} por vuelta.
+     */
+    private void retryPending() {
+        Range<String> page = Range.unbounded();
+        int claimedCount = 0;
+        while (claimedCount < batchSize) {
+            PendingMessages pending = redis.opsForStream().pending(MigrationQueue.STREAM_KEY, MigrationQueue.GROUP,
+                    page, batchSize);
+            for (PendingMessage message : pending) {
+                long attempts = message.getTotalDeliveryCount();
+                Duration backoff = backoff(attempts);
+                if (message.getElapsedTimeSinceLastDelivery().compareTo(backoff) < 0) {
+                    continue;
+                }
+                // Con minIdle sólo una réplica se lo queda; cuenta como una entrega más
+                List<MapRecord<String, Object, Object>> claimed = redis.opsForStream().claim(MigrationQueue.STREAM_KEY,
+                        MigrationQueue.GROUP, consumer.getName(), backoff, message.getId());
+                for (MapRecord<String, Object, Object> record : claimed) {
+                    retried.increment();
+                    claimedCount++;
+                    process(record, attempts + 1);
+                }
+                if (claimedCount >= batchSize) {
+                    return;
+                }
+            }
+            if (pending.size() < batchSize) {
+                return;
+            }
+            page = Range.rightUnbounded(Range.Bound.exclusive(pending.get(pending.size() - 1).getIdAsString()));
+        }
+    }
+
+    /**
+     * Espera antes del intento siguiente a {@code attempts}: initial, 2x, 4x... hasta max.
+     */
+    Duration backoff(long attempts) {
+        long factor = 1L << Math.min(Math.max(attempts - 1, 0), 20);
+        Duration backoff = initialBackoff.multipliedBy(factor);
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+
+    private void process(MapRecord<String, Object, Object> record, long attempt) {
+        MigrationQueue.Job job = MigrationQueue.Job.fromFields(record.getValue());
+        UserDTO user;
+        try {
+            user = migration.migrate(job);
+        } catch (Exception e) {
+            if (isPermanent(e) || attempt >= maxAttempts) {
+                logger.error("Migración descartada al dead-letter tras {} intento(s): {}", attempt, e.getMessage());
+                deadLetter(record, attempt, e);
+            } else {
+                logger.warn("Falló la migración (intento {} de {}), se reintenta: {}", attempt, maxAttempts, e.getMessage());
+            }
+            return;
+        }
+        done(record);
+        migrated.increment();
+        lag.record(Math.max(clock.millis() - record.getId().getTimestamp(), 0), TimeUnit.MILLISECONDS);
+        updateSessions(job.email(), user);
+    }
+
+    /**
+     * Un 4xx (salvo 408/429) o un mail fuera de nómina van a fallar igual en cada reintento.
+     */
+    private static boolean isPermanent(Exception e) {
+        if (e instanceof MailInvalidoException) {
+            return true;
+        }
+        if (e instanceof HttpClientErrorException http) {
+            return http.getStatusCode() != HttpStatus.REQUEST_TIMEOUT && http.getStatusCode() != HttpStatus.TOO_MANY_REQUESTS;
+        }
+        return false;
+    }
+
+    private void deadLetter(MapRecord<String, Object, Object> record, long attempts, Exception error) {
+        Map<String, String> fields = new HashMap<>();
+        record.getValue().forEach((field, value) -> fields.put(field.toString(), value.toString()));
+        fields.put("id", record.getId().getValue());
+        fields.put("attempts", Long.toString(attempts));
+        fields.put("error", String.valueOf(error.getMessage()));
+        redis.opsForStream().add(StreamRecords.string(fields).withStreamKey(MigrationQueue.DEAD_LETTER_KEY));
+        done(record);
+        deadLettered.increment();
+    }
+
+    private void done(MapRecord<String, Object, Object> record) {
+        redis.opsForStream().acknowledge(MigrationQueue.GROUP, record);
+        redis.opsForStream().delete(record);
+    }
+
+    /**
+     * Reemplaza el usuario provisorio de las sesiones del usuario. Best effort: una sesión que no se pudo
+     * actualizar se corrige en su próximo /me.
+     */
+    private void updateSessions(String email, UserDTO user) {
+        if (sessionIndex == null) {
+            return;
+        }
+        try {
+            for (String sessionId : sessionIndex.sessionIds(email)) {
+                Session session = sessionRepository.findById(sessionId);
+                LoginSession login = session != null ? loginSessions.read(session) : null;
+                if (login == null || !login.isProvisional()) {
+                    continue;
+                }
+                loginSessions.write(session, login.withUser(user));
+                sessionRepository.save(session);
+                if (sessionTokens != null) {
+                    sessionTokens.revokeSession(sessionId);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.warn("No se pudieron actualizar las sesiones del usuario migrado: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Un trabajo a medias queda pendiente y lo retoma otra réplica. El consumidor se borra del grupo sólo si
+     * no tiene pendientes (borrarlo con pendientes los perdería).
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            if (groupReady && redis.opsForStream().pending(MigrationQueue.STREAM_KEY, consumer, Range.unbounded(), 1).isEmpty()) {
+                redis.opsForStream().deleteConsumer(MigrationQueue.STREAM_KEY, consumer);
+            }
+        } catch (RuntimeException e) {
+            logger.debug("No se pudo sacar el consumidor del grupo: {}", e.getMessage());
+        }
+    }
+}
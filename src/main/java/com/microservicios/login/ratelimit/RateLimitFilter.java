@@ -0,0 +1,66 @@
+package com.microservicios.login.ratelimit;
+
+import com.microservicios.login.concurrency.LoadSheddingFilter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Rate limit por IP del callback de Google y de /me.
+ *
+ * - Callback: redirect a /login?auth=error&type=rate_limited, como el resto de los errores del login.
+ * - /me: 429 con Retry-After.
+ *
+ * Corre antes de {@link LoadSheddingFilter}: un cliente que excede su límite no ocupa lugar en el límite
+ * de concurrencia de los demás. La IP es {@code getRemoteAddr()}: con server.forward-headers-strategy=native
+ * el RemoteIpValve de Tomcat ya la resolvió desde X-Forwarded-For, tomando la que agregó el último proxy de
+ * confianza y no la que manda el cliente (ver application.properties).
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    /** Requests del warm-up de la réplica: con una clave exenta en {@link RateLimits} no pasan por el límite. */
+    public static final String WARMUP_HEADER = "X-Login-Warmup";
+
+    private static final String ME_PATH = "/api/auth/me";
+
+    private final RateLimits rateLimits;
+    private final String rateLimitedRedirect;
+
+    public RateLimitFilter(RateLimits rateLimits, String rateLimitedRedirect) {
+        this.rateLimits = rateLimits;
+        this.rateLimitedRedirect = rateLimitedRedirect;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        boolean callback = LoadSheddingFilter.CALLBACK_PATH.equals(path);
+        if (!callback && !ME_PATH.equals(path) || rateLimits.isExempt(request.getHeader(WARMUP_HEADER))) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        TokenBucket.Decision decision = rateLimits.checkIp(callback ? RateLimits.CALLBACK : RateLimits.ME,
+                request.getRemoteAddr());
+        if (decision.allowed()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (callback) {
+            response.setStatus(HttpStatus.FOUND.value());
+            response.setHeader(HttpHeaders.LOCATION, rateLimitedRedirect);
+            return;
+        }
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(RateLimits.retryAfterSeconds(decision)));
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getWriter().write("Demasiados requests, reintentá en unos segundos.");
+    }
+}
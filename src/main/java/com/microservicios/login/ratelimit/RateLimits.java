@@ -0,0 +1,78 @@
+package com.microservicios.login.ratelimit;
+
+import com.microservicios.login.cache.UserProfileCache;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rate limits del login por endpoint y dimensión (IP del cliente, mail del usuario).
+ * Un endpoint/dimensión sin bucket configurado (capacidad 0) no tiene límite.
+ *
+ * - callback: por IP en {@link RateLimitFilter}; por mail después de verificar el ID token de Google,
+ *   antes de llamar al microservicio de usuarios.
+ * - me: por IP en {@link RateLimitFilter}; por mail en el controller, una vez que se sabe de quién es la sesión.
+ *
+ * Las claves exentas no consumen tokens: las usa el warm-up de la réplica (un mail y un valor del header
+ * {@link RateLimitFilter#WARMUP_HEADER} aleatorios) sólo mientras dura.
+ */
+public class RateLimits {
+
+    public static final String CALLBACK = "callback";
+    public static final String ME = "me";
+    public static final String IP = "ip";
+    public static final String EMAIL = "email";
+
+    /** Clave: "endpoint:dimensión". */
+    private final Map<String, TokenBucket> buckets;
+    private final Set<String> exempt = ConcurrentHashMap.newKeySet();
+
+    public RateLimits(Map<String, TokenBucket> buckets) {
+        this.buckets = buckets;
+    }
+
+    public TokenBucket.Decision checkIp(String endpoint, String ip) {
+        return check(endpoint, IP, ip);
+    }
+
+    public TokenBucket.Decision checkEmail(String endpoint, String email) {
+        return email == null ? TokenBucket.Decision.ALLOWED : check(endpoint, EMAIL, UserProfileCache.normalize(email));
+    }
+
+    public void exempt(String key) {
+        exempt.add(key);
+    }
+
+    public void removeExemption(String key) {
+        exempt.remove(key);
+    }
+
+    public boolean isExempt(String key) {
+        return key != null && exempt.contains(key);
+    }
+
+    private TokenBucket.Decision check(String endpoint, String dimension, String key) {
+        if (!exempt.isEmpty() && exempt.contains(key)) {
+            return TokenBucket.Decision.ALLOWED;
+        }
+        TokenBucket bucket = buckets.get(endpoint + ":" + dimension);
+        return bucket == null ? TokenBucket.Decision.ALLOWED : bucket.tryAcquire(key);
+    }
+
+    /**
+     * 429 con Retry-After en segundos (redondeado para arriba).
+     */
+    public static ResponseEntity<String> tooManyRequests(TokenBucket.Decision decision) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds(decision)))
+                .body("Demasiados requests, reintentá en unos segundos.");
+    }
+
+    public static long retryAfterSeconds(TokenBucket.Decision decision) {
+        return Math.max(1, (decision.retryAfterMillis() + 999) / 1000);
+    }
+}
@@ -0,0 +1,186 @@
+package com.microservicios.login.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Token bucket distribuido: el estado vive en Redis ({@code login:ratelimit:<nombre>:<clave>}) y se actualiza
+ * de forma atómica con un script Lua, así todas las réplicas comparten el mismo límite.
+ *
+ * Pre-check local: cada réplica toma de Redis varios tokens de una vez ({@code leaseSize}) y los gasta en memoria
+ * durante {@code leaseTtl}; sólo va a Redis cuando se le acaban. Un rechazo también se recuerda localmente
+ * hasta el Retry-After, así un cliente que insiste no genera un round-trip por request.
+ * El lease es lo que el bucket recupera en {@code leaseTtl} ({@link #leaseSize}), y lo que no se usó se devuelve
+ * en el próximo round-trip de esa clave: el límite global nunca se supera y lo retenido por las réplicas no
+ * pasa de un lease por réplica, que el bucket repone en {@code leaseTtl}.
+ *
+ * Si Redis falla se deja pasar (fail-open): el rate limit protege dependencias, no debe tirar el login.
+ */
+public class TokenBucket {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenBucket.class);
+
+    static final String KEY_PREFIX = "login:ratelimit:";
+
+    /**
+     * KEYS[1] = bucket; ARGV = capacidad, tokens por ms, tokens pedidos, ahora (epoch ms de la réplica),
+     * tokens devueltos (sin usar del lease anterior).
+     * Devuelve los tokens otorgados o, si no otorgó ninguno, -(ms hasta el próximo token).
+     * La clave vence cuando el bucket se volvería a llenar: sin estado es lo mismo que lleno.
+     */
+    private static final RedisScript<Long> ACQUIRE = new DefaultRedisScript<>(
+            "-- login token bucket\n"
+                    + "local capacity = tonumber(ARGV[1])\n"
+                    + "local rate = tonumber(ARGV[2])\n"
+                    + "local requested = tonumber(ARGV[3])\n"
+                    + "local now = tonumber(ARGV[4])\n"
+                    + "local returned = tonumber(ARGV[5]) or 0\n"
+                    + "local bucket = redis.call('hmget', KEYS[1], 't', 'ts')\n"
+                    + "local tokens = tonumber(bucket[1])\n"
+                    + "local ts = tonumber(bucket[2])\n"
+                    + "if tokens == nil or ts == nil then tokens = capacity; ts = now end\n"
+                    + "tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate + returned)\n"
+                    + "local granted = math.min(math.floor(tokens), requested)\n"
+                    + "tokens = tokens - granted\n"
+                    + "redis.call('hset', KEYS[1], 't', tostring(tokens), 'ts', tostring(math.max(now, ts)))\n"
+                    + "redis.call('pexpire', KEYS[1], math.ceil((capacity - tokens) / rate) + 1000)\n"
+                    + "if granted == 0 then return -math.ceil((1 - tokens) / rate) end\n"
+                    + "return granted",
+            Long.class);
+
+    /**
+     * @param retryAfterMillis si no se permitió, cuánto falta para el próximo token
+     */
+    public record Decision(boolean allowed, long retryAfterMillis) {
+        public static final Decision ALLOWED = new Decision(true, 0);
+    }
+
+    /**
+     * Tokens tomados de Redis por esta réplica para una clave.
+     */
+    private static final class Lease {
+        int remaining;
+        long expiresAtNanos;
+        long deniedUntilNanos;
+    }
+
+    private final String name;
+    private final int capacity;
+    private final double tokensPerMilli;
+    private final int leaseSize;
+    private final long leaseTtlNanos;
+    private final StringRedisTemplate redis;
+    private final Clock clock;
+    private final Cache<String, Lease> leases;
+
+    private final Counter localChecks;
+    private final Counter redisChecks;
+    private final Counter denied;
+    private final Counter errors;
+
+    /**
+     * @param name      endpoint y dimensión, ej: "callback:ip"
+     * @param capacity  ráfaga máxima
+     * @param period    tiempo en que el bucket vacío se vuelve a llenar (capacity / period = tasa sostenida)
+     * @param leaseSize tokens que la réplica toma de Redis por round-trip (1 = sin pre-check local), ver {@link #leaseSize}
+     */
+    public TokenBucket(String name, int capacity, Duration period, int leaseSize, Duration leaseTtl,
+                       StringRedisTemplate redis, Clock clock, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.capacity = capacity;
+        this.tokensPerMilli = (double) capacity / period.toMillis();
+        this.leaseSize = Math.max(1, Math.min(leaseSize, capacity));
+        this.leaseTtlNanos = leaseTtl.toNanos();
+        this.redis = redis;
+        this.clock = clock;
+        this.leases = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterAccess(period)
+                .build();
+
+        String[] parts = name.split(":", 2);
+        this.localChecks = Counter.builder("login.ratelimit.checks")
+                .tag("endpoint", parts[0]).tag("dimension", parts[1]).tag("source", "local")
+                .register(meterRegistry);
+        this.redisChecks = Counter.builder("login.ratelimit.checks")
+                .tag("endpoint", parts[0]).tag("dimension", parts[1]).tag("source", "redis")
+                .register(meterRegistry);
+        this.denied = Counter.builder("login.ratelimit.denied")
+                .description("Requests rechazados por rate limit")
+                .tag("endpoint", parts[0]).tag("dimension", parts[1])
+                .register(meterRegistry);
+        this.errors = Counter.builder("login.ratelimit.errors")
+                .tag("endpoint", parts[0]).tag("dimension", parts[1])
+                .register(meterRegistry);
+    }
+
+    /**
+     * Tokens por lease: los que el bucket recupera en {@code leaseTtl} (al menos 1, como mucho la capacidad).
+     * Así una réplica nunca retiene más de lo que se repone mientras dura su lease.
+     */
+    public static int leaseSize(int capacity, Duration period, Duration leaseTtl) {
+        long size = (long) capacity * leaseTtl.toMillis() / period.toMillis();
+        return (int) Math.max(1, Math.min(capacity, size));
+    }
+
+    public Decision tryAcquire(String key) {
+        Lease lease = leases.get(key, k -> new Lease());
+        // Un round-trip por clave a la vez: los requests concurrentes de la misma IP/mail esperan el resultado
+        synchronized (lease) {
+            long now = System.nanoTime();
+            if (lease.remaining > 0 && now < lease.expiresAtNanos) {
+                lease.remaining--;
+                localChecks.increment();
+                return Decision.ALLOWED;
+            }
+            if (now < lease.deniedUntilNanos) {
+                localChecks.increment();
+                denied.increment();
+                return new Decision(false, Math.max(1, (lease.deniedUntilNanos - now) / 1_000_000));
+            }
+
+            // Lo que quedó del lease vencido vuelve al bucket en el mismo round-trip
+            long[] grant = acquire(key, lease.remaining);
+            lease.remaining = 0;
+            if (grant == null) {
+                return Decision.ALLOWED;
+            }
+            if (grant[0] > 0) {
+                lease.remaining = (int) grant[0] - 1;
+                lease.expiresAtNanos = now + leaseTtlNanos;
+                return Decision.ALLOWED;
+            }
+            lease.deniedUntilNanos = now + grant[1] * 1_000_000;
+            denied.increment();
+            return new Decision(false, Math.max(1, grant[1]));
+        }
+    }
+
+    /**
+     * @return {otorgados, retry ms}, o null si Redis no respondió
+     */
+    private long[] acquire(String key, int returned) {
+        redisChecks.increment();
+        try {
+            long result = redis.execute(ACQUIRE, List.of(KEY_PREFIX + name + ":" + key),
+                    Integer.toString(capacity), Double.toString(tokensPerMilli),
+                    Integer.toString(leaseSize), Long.toString(clock.millis()), Integer.toString(returned));
+            return result > 0 ? new long[]{result, 0} : new long[]{0, -result};
+        } catch (RuntimeException e) {
+            errors.increment();
+            logger.warn("No se pudo consultar el rate limit {} en Redis, se deja pasar: {}", name, e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.microservicios.login.service;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.microservicios.login.cache.UserProfileCache;
+import com.microservicios.login.directory.EmployeeDirectory;
+import com.microservicios.login.dto.AirtableMapper;
+import com.microservicios.login.dto.AirtableUserResponse;
+import com.microservicios.login.dto.GoogleTokenResponse;
+import coms.dto.UserDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+
+/**
+ * Versión no bloqueante del login con Google (login.reactive.enabled=true).
+ *
+ * El camino caliente (usuario que ya existe) no bloquea ningún hilo: intercambio del código con WebClient,
+ * verificación con las claves ya cacheadas en memoria, caché de usuarios sobre Redis reactivo y lookup
+ * con WebClient. El primer login (nómina + migración) es poco frecuente y necesita el single-flight y el
+ * lock entre réplicas de {@link UserProfileService}, así que se delega a él en un scheduler elástico.
+ */
+@Service
+@ConditionalOnProperty(name = "login.reactive.enabled", havingValue = "true")
+public class ReactiveLoginService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveLoginService.class);
+
+    /**
+     * Resultado del callback: tokens de Google + usuario resuelto.
+     */
+    public record LoginResult(GoogleTokenResponse tokens, UserDTO user) {
+    }
+
+    @Value("${google.client.id}")
+    private String googleClientId;
+
+    @Value("${google.client.secret}")
+    private String googleClientSecret;
+
+    @Value("${google.token.url:https://oauth2.googleapis.com/token}")
+    private String googleTokenUrl;
+
+    @Value("${URL_BASE}")
+    private String urlBase;
+
+    private final WebClient webClient;
+    private final LoginService loginService;
+    private final UserProfileService userProfileService;
+    private final UserProfileCache userProfileCache;
+    private final EmployeeDirectory directory;
+    private final AirtableMapper airtableMapper = new AirtableMapper();
+
+    @Autowired
+    public ReactiveLoginService(WebClient outboundWebClient, LoginService loginService,
+                                UserProfileService userProfileService, UserProfileCache userProfileCache,
+                                @Nullable EmployeeDirectory directory) {
+        this.webClient = outboundWebClient;
+        this.loginService = loginService;
+        this.userProfileService = userProfileService;
+        this.userProfileCache = userProfileCache;
+        this.directory = directory;
+    }
+
+    public Mono<LoginResult> login(String code, String redirectUri) {
+        return exchangeCodeForTokens(code, redirectUri)
+                .flatMap(tokens -> {
+                    if (tokens.getAccessToken() == null || tokens.getIdToken() == null) {
+                        return Mono.empty();
+                    }
+                    return verifyIdToken(tokens.getIdToken())
+                            .flatMap(this::resolveUser)
+                            .map(user -> new LoginResult(tokens, user));
+                });
+    }
+
+    public Mono<GoogleTokenResponse> exchangeCodeForTokens(String code, String redirectUri) {
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("code", code);
+        form.add("client_id", googleClientId);
+        form.add("client_secret", googleClientSecret);
+        form.add("redirect_uri", redirectUri);
+        form.add("grant_type", "authorization_code");
+        return webClient.post()
+                .uri(googleTokenUrl)
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .body(BodyInserters.fromFormData(form))
+                .retrieve()
+                .bodyToMono(GoogleTokenResponse.class)
+                .doOnError(e -> logger.error("Error al intercambiar código por tokens: {}", e.getMessage()));
+    }
+
+    /**
+     * La verificación es CPU con las claves en memoria, pero un kid desconocido dispara un fetch
+     * bloqueante de los certificados, así que no corre en el event loop.
+     */
+    private Mono<GoogleIdToken.Payload> verifyIdToken(String idToken) {
+        return Mono.fromCallable(() -> loginService.verifyIdToken(idToken))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<UserDTO> resolveUser(GoogleIdToken.Payload payload) {
+        String email = payload.getEmail();
+        UserDTO known = directory != null ? directory.find(email) : null;
+        if (known != null) {
+            return Mono.just(known);
+        }
+        return userProfileCache.getReactive(email)
+                .flatMap(entry -> entry.isNotFound() ? migrateUser(payload) : Mono.just(entry.user()))
+                .switchIfEmpty(Mono.defer(() -> findUser(payload)));
+    }
+
+    private Mono<UserDTO> findUser(GoogleIdToken.Payload payload) {
+        String email = payload.getEmail();
+        return webClient.get()
+                .uri(urlBase + "user?email={email}", email)
+                .retrieve()
+                .bodyToMono(AirtableUserResponse.class)
+                .map(airtableMapper::fromAirtable)
+                .doOnNext(user -> {
+                    if (directory != null) {
+                        directory.put(email, user);
+                    }
+                })
+                .flatMap(user -> userProfileCache.putReactive(email, user).thenReturn(user))
+                .onErrorResume(WebClientResponseException.NotFound.class, e -> {
+                    logger.warn("Usuario NO encontrado en la tabla de usuarios. Iniciando proceso de migración para: {}", email);
+                    return userProfileCache.putNotFoundReactive(email).then(migrateUser(payload));
+                });
+    }
+
+    /**
+     * Usuario definitivo de una sesión con el usuario provisorio, si su migración ya terminó (si no, vacío).
+     */
+    public Mono<UserDTO> migratedUser(String email) {
+        return userProfileCache.getReactive(email)
+                .filter(entry -> !entry.isNotFound())
+                .map(UserProfileCache.Entry::user);
+    }
+
+    private Mono<UserDTO> migrateUser(GoogleIdToken.Payload payload) {
+        return Mono.fromCallable(() -> userProfileService.resolve(payload.getEmail(),
+                        (String) payload.get("given_name"),
+                        (String) payload.get("family_name"),
+                        (String) payload.get("picture")))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
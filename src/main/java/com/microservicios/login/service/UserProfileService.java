@@ -0,0 +1,438 @@
+package com.microservicios.login.service;
+
+import com.microservicios.login.cache.UserProfileCache;
+import com.microservicios.login.concurrency.ParallelLookup;
+import com.microservicios.login.concurrency.RedisLeaseLock;
+import com.microservicios.login.concurrency.SingleFlight;
+import com.microservicios.login.directory.EmployeeDirectory;
+import com.microservicios.login.dto.AirtableMapper;
+import com.microservicios.login.dto.AirtableUserResponse;
+import com.microservicios.login.dto.ProvisionalUserDTO;
+import com.microservicios.login.exception.LoginTimeoutException;
+import com.microservicios.login.exception.MailInvalidoException;
+import com.microservicios.login.logging.LogMarkers;
+import com.microservicios.login.metrics.LoginStages;
+import com.microservicios.login.migration.MigrationQueue;
+import coms.dto.UserDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Resuelve el {@link UserDTO} de un mail ya validado contra Google: caché, microservicio de usuarios
+ * y, si es el primer login, check de nómina + migración.
+ *
+ * Los lookups y migraciones concurrentes del mismo mail se juntan en una sola operación por JVM
+ * ({@link SingleFlight}) y la migración se serializa entre réplicas con un lock en Redis;
+ * las réplicas que pierden el lock reciben el usuario que escribió la ganadora en la caché compartida.
+ *
+ * Con {@link ParallelLookup} (user.resolve.parallel.enabled=true) el check de nómina se lanza
+ * especulativamente junto con el lookup, el lookup tiene hedging y todo el proceso tiene un tiempo máximo.
+ *
+ * Con {@link EmployeeDirectory} (user.directory.enabled=true) los usuarios que ya existen se resuelven en memoria
+ * y sólo los mails desconocidos pasan por todo lo anterior.
+ *
+ * Con {@link MigrationQueue} (user.migration.async.enabled=true) el primer login no espera la migración: pasada
+ * la nómina se encola y el login sigue con un {@link ProvisionalUserDTO} armado con los datos de Google.
+ */
+@Service
+public class UserProfileService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserProfileService.class);
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+
+    private final RestTemplate restTemplate;
+    private final UserProfileCache userProfileCache;
+    private final RedisLeaseLock migrationLock;
+    private final String urlBase;
+    private final String mailCheckUri;
+    private final Duration lockLease;
+    private final Duration lockWait;
+    private final AirtableMapper airtableMapper = new AirtableMapper();
+    private final SingleFlight<String, UserDTO> inFlight;
+    private final Counter coalescedAcrossReplicas;
+    private final ParallelLookup parallel;
+    private final EmployeeDirectory directory;
+    private final MigrationQueue migrationQueue;
+    private final LoginStages stages;
+    private final Counter speculativeDiscarded;
+    private final Counter deadlineExceeded;
+
+    /**
+     * @param migrationLock lock entre réplicas; si es null la migración sólo se coordina dentro de la JVM
+     * @param parallel      modo paralelo; si es null los pasos corren uno detrás del otro
+     * @param directory     directorio en memoria; si es null cada login consulta la caché y el microservicio
+     * @param migrationQueue migración asíncrona; si es null el primer login espera el POST a migrateUser
+     * @param connectTimeout timeouts del cliente HTTP saliente (ver HttpClientConfig), para el lease del lock
+     * @param lockWait       cuánto se espera a la réplica que tiene el lock; si es null, lo que dura el lease
+     */
+    @Autowired
+    public UserProfileService(RestTemplate restTemplate,
+                              UserProfileCache userProfileCache,
+                              @Nullable RedisLeaseLock migrationLock,
+                              @Nullable ParallelLookup parallel,
+                              @Nullable EmployeeDirectory directory,
+                              @Nullable MigrationQueue migrationQueue,
+                              MeterRegistry meterRegistry,
+                              LoginStages stages,
+                              @Value("${URL_BASE}") String urlBase,
+                              @Value("${MAIL_CHECK}") String mailCheckUri,
+                              @Value("${http.client.connect-timeout:2s}") Duration connectTimeout,
+                              @Value("${http.client.read-timeout:5s}") Duration readTimeout,
+                              @Value("${http.client.pool-timeout:1s}") Duration poolTimeout,
+                              @Value("${user.migration.lock.margin:2s}") Duration lockMargin,
+                              @Value("${user.migration.lock.wait:#{null}}") @Nullable Duration lockWait) {
+        this.restTemplate = restTemplate;
+        this.userProfileCache = userProfileCache;
+        this.migrationLock = migrationLock;
+        this.urlBase = urlBase;
+        this.mailCheckUri = mailCheckUri;
+        this.lockLease = migrationLockLease(connectTimeout, readTimeout, poolTimeout, lockMargin);
+        this.lockWait = lockWait != null ? lockWait : lockLease;
+        this.inFlight = new SingleFlight<>(meterRegistry, "user_resolve");
+        this.coalescedAcrossReplicas = Counter.builder("login.user.migration.coalesced")
+                .description("Migraciones que usaron el resultado de otra réplica en lugar de ejecutarse")
+                .register(meterRegistry);
+        this.parallel = parallel;
+        this.directory = directory;
+        this.migrationQueue = migrationQueue;
+        this.stages = stages;
+        this.speculativeDiscarded = Counter.builder("login.user.nomina.speculative.discarded")
+                .description("Checks de nómina lanzados en paralelo que no hicieron falta (el usuario ya existía)")
+                .register(meterRegistry);
+        this.deadlineExceeded = Counter.builder("login.user.resolve.deadline.exceeded").register(meterRegistry);
+    }
+
+    /**
+     * Lo que puede tardar como máximo quien tiene el lock de migración: check de nómina y POST a migrateUser,
+     * cada uno con la espera del pool y los timeouts de conexión y lectura, más el margen (lecturas de Redis).
+     * Si el lease venciera con la migración en curso, otra réplica migraría el mismo usuario.
+     */
+    static Duration migrationLockLease(Duration connectTimeout, Duration readTimeout, Duration poolTimeout,
+                                       Duration margin) {
+        return poolTimeout.plus(connectTimeout).plus(readTimeout).multipliedBy(2).plus(margin);
+    }
+
+    public UserDTO resolve(String email, String name, String lastName, String pictureUrl) throws MailInvalidoException {
+        UserDTO known = directory != null ? directory.find(email) : null;
+        if (known != null) {
+            return known;
+        }
+        return inFlight.execute(UserProfileCache.normalize(email), () -> parallel != null
+                ? resolveParallel(email, name, lastName, pictureUrl)
+                : resolveSequential(email, name, lastName, pictureUrl));
+    }
+
+    private UserDTO resolveSequential(String email, String name, String lastName, String pictureUrl) throws MailInvalidoException {
+        UserDTO user = findUser(email);
+        if (user != null) {
+            return user;
+        }
+        if (migrationQueue != null) {
+            return enqueueMigration(email, name, lastName, pictureUrl, false);
+        }
+        return migrateOnce(email, name, lastName, pictureUrl, false);
+    }
+
+    /**
+     * Lookup (con hedging) y check de nómina al mismo tiempo: para un usuario nuevo la nómina ya está
+     * resuelta cuando vuelve el 404, y para uno existente el resultado de la nómina se descarta.
+     */
+    private UserDTO resolveParallel(String email, String name, String lastName, String pictureUrl) throws MailInvalidoException {
+        long deadline = System.nanoTime() + parallel.deadline().toNanos();
+        UserProfileCache.Entry cached = userProfileCache.get(email);
+        if (cached != null && !cached.isNotFound()) {
+            logger.info(LogMarkers.SAMPLED, "Usuario resuelto desde caché. Email: {}", email);
+            return cached.user();
+        }
+
+        // Future del executor (no CompletableFuture): cancel(true) interrumpe el check si ya está corriendo
+        Supplier<Boolean> check = stages.inCurrentObservation(() -> checkNomina(email));
+        Future<Boolean> nomina = parallel.executor().submit(check::get);
+        boolean nominaNeeded = false;
+        try {
+            if (cached == null) {
+                CompletableFuture<UserDTO> lookup = parallel.userLookup().submit(stages.inCurrentObservation(() -> lookupUser(email)));
+                UserDTO user = await(lookup, deadline, "lookup");
+                if (user != null) {
+                    speculativeDiscarded.increment();
+                    return user;
+                }
+            }
+            nominaNeeded = true;
+        } finally {
+            // Usuario existente, o el lookup falló o se pasó del tiempo: el check ya no sirve y no debe seguir
+            // ocupando un hilo del pool ni un permiso del límite de la nómina
+            if (!nominaNeeded) {
+                nomina.cancel(true);
+            }
+        }
+
+        if (!await(nomina, deadline, "nomina")) {
+            throw new MailInvalidoException("El mail no está habilitado en la nómina activa.");
+        }
+        if (migrationQueue != null) {
+            return enqueueMigration(email, name, lastName, pictureUrl, true);
+        }
+        CompletableFuture<UserDTO> migration = CompletableFuture.supplyAsync(stages.inCurrentObservation(() -> {
+            try {
+                return migrateOnce(email, name, lastName, pictureUrl, true);
+            } catch (MailInvalidoException e) {
+                throw new CompletionException(e);
+            }
+        }), parallel.executor());
+        return await(migration, deadline, "migrate");
+    }
+
+    private <T> T await(Future<T> future, long deadline, String step) throws MailInvalidoException {
+        try {
+            return future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            deadlineExceeded.increment();
+            logger.warn("Se superó el tiempo máximo del login esperando el paso: {}", step);
+            throw new LoginTimeoutException("Se superó el tiempo máximo del login (" + step + ")");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido esperando el paso " + step, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof MailInvalidoException mailInvalido) {
+                throw mailInvalido;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Valida la nómina (salvo que ya se haya hecho), encola la migración y devuelve el usuario provisorio.
+     * Si no se puede encolar se migra en el momento, como sin la cola: la migración no se pierde.
+     */
+    private UserDTO enqueueMigration(String email, String name, String lastName, String pictureUrl,
+                                     boolean nominaChecked) throws MailInvalidoException {
+        if (!nominaChecked && !checkNomina(email)) {
+            throw new MailInvalidoException("El mail no está habilitado en la nómina activa.");
+        }
+        MigrationQueue.Job job = new MigrationQueue.Job(email, name, lastName, pictureUrl);
+        try {
+            stages.observe("enqueue", () -> migrationQueue.enqueue(job));
+        } catch (RuntimeException e) {
+            logger.warn("No se pudo encolar la migración, se migra en el momento: {}", e.getMessage());
+            return migrateOnce(email, name, lastName, pictureUrl, true);
+        }
+        return ProvisionalUserDTO.of(email, name, lastName, pictureUrl);
+    }
+
+    /**
+     * Trabajo de la cola de migraciones (la nómina se validó en el login). Idempotente: si el usuario ya existe
+     * (otro trabajo del mismo mail, o un reintento de un POST que sí llegó) no se vuelve a crear.
+     * En los dos casos el usuario definitivo queda en la caché y en el directorio.
+     */
+    public UserDTO completeMigration(MigrationQueue.Job job) throws MailInvalidoException {
+        UserDTO existing = lookupUser(job.email());
+        if (existing != null) {
+            return existing;
+        }
+        return migrateOnce(job.email(), job.name(), job.lastName(), job.pictureUrl(), true);
+    }
+
+    /**
+     * Usuario definitivo de un mail que entró con el provisorio, si su migración ya terminó.
+     *
+     * @return null si la migración sigue pendiente
+     */
+    public UserDTO migratedUser(String email) {
+        UserProfileCache.Entry cached = userProfileCache.get(email);
+        return cached != null && !cached.isNotFound() ? cached.user() : null;
+    }
+
+    /**
+     * Migra el usuario una sola vez entre todas las réplicas. Si otra réplica tiene el lock,
+     * espera a que deje el usuario en la caché compartida (o a que el lock se libere o venza, y lo toma).
+     * Sin el lock nunca se migra: pasado {@code lockWait} el login falla con {@link LoginTimeoutException}.
+     */
+    private UserDTO migrateOnce(String email, String name, String lastName, String pictureUrl,
+                                boolean nominaChecked) throws MailInvalidoException {
+        if (migrationLock == null) {
+            return migrateUser(email, name, lastName, pictureUrl, nominaChecked);
+        }
+        String lockName = "migrate:" + UserProfileCache.normalize(email);
+        long deadline = System.nanoTime() + lockWait.toNanos();
+        while (true) {
+            String token = migrationLock.tryAcquire(lockName, lockLease);
+            if (token != null) {
+                try {
+                    // Puede que la réplica anterior haya terminado justo antes de soltar el lock
+                    UserProfileCache.Entry shared = userProfileCache.getShared(email);
+                    if (shared != null && !shared.isNotFound()) {
+                        coalescedAcrossReplicas.increment();
+                        return shared.user();
+                    }
+                    return migrateUser(email, name, lastName, pictureUrl, nominaChecked);
+                } finally {
+                    migrationLock.release(lockName, token);
+                }
+            }
+
+            UserProfileCache.Entry shared = userProfileCache.getShared(email);
+            if (shared != null && !shared.isNotFound()) {
+                logger.info("Usuario migrado por otra réplica. Email: {}", email);
+                coalescedAcrossReplicas.increment();
+                return shared.user();
+            }
+            if (System.nanoTime() > deadline) {
+                logger.warn("Timeout esperando la migración de otra réplica. Email: {}", email);
+                throw new LoginTimeoutException("Timeout esperando la migración de otra réplica");
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrumpido esperando la migración de otra réplica", e);
+            }
+        }
+    }
+
+    /**
+     * Busca el usuario primero en la caché y después en el microservicio de usuarios.
+     *
+     * @return el usuario, o null si no existe en la tabla de usuarios (404)
+     */
+    private UserDTO findUser(String email) {
+        UserProfileCache.Entry cached = userProfileCache.get(email);
+        if (cached != null) {
+            logger.info(LogMarkers.SAMPLED, "Usuario resuelto desde caché. Email: {}", email);
+            return cached.user();
+        }
+        return lookupUser(email);
+    }
+
+    /**
+     * GET user?email= al microservicio de usuarios. Idempotente: el modo paralelo lo puede repetir (hedging).
+     *
+     * @return el usuario, o null si no existe en la tabla de usuarios (404)
+     */
+    private UserDTO lookupUser(String email) {
+        return stages.observe("lookup", () -> fetchUser(email),
+                user -> user != null ? LoginStages.SUCCESS : LoginStages.NOT_FOUND);
+    }
+
+    private UserDTO fetchUser(String email) {
+        // La URL debe apuntar al endpoint de búsqueda por query parameter: /user?email={email}
+        String urlUser = urlBase + "user?email={email}";
+        try {
+            AirtableUserResponse response = restTemplate.getForObject(urlUser, AirtableUserResponse.class, email);
+            logger.info(LogMarkers.SAMPLED, "Usuario encontrado en la tabla de Usuarios. Email: {}", email);
+            UserDTO user = airtableMapper.fromAirtable(response);
+            userProfileCache.put(email, user);
+            addToDirectory(email, user);
+            return user;
+
+        } catch (HttpClientErrorException exU) {
+            // Si el usuario NO existe en la nueva tabla (404 NOT FOUND)
+            if (exU.getStatusCode() == HttpStatus.NOT_FOUND) {
+                logger.warn("Usuario NO encontrado en la tabla de usuarios. Iniciando proceso de migración para: {}", email);
+                userProfileCache.putNotFound(email);
+                return null;
+            }
+            // Manejar otros errores HTTP (401, 403, 500, etc.)
+            logger.error("Error HTTP inesperado al buscar usuario: {}", exU.getStatusCode());
+            throw exU;
+        } catch (RuntimeException e) {
+            // Capturar errores de conexión u otros errores inesperados
+            logger.error("Error general al comunicarse con microservicio: {}", e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Verifica la existencia en la nómina activa.
+     *
+     * @return false si el mail no existe o está inactivo en la nómina
+     */
+    private boolean checkNomina(String email) {
+        return stages.observe("nomina", () -> {
+            // Usaremos el endpoint que devuelve TRUE/FALSE si está activo en la nómina antigua.
+            // Endpoint: /api/records/checkEmail?email={email}
+            String urlCheckNomina = mailCheckUri + email;
+            Boolean exists;
+            try {
+                // restTemplate.getForObject maneja el 404/400 aquí, si el endpoint de JS devuelve TRUE/FALSE o lanza 404/400.
+                exists = restTemplate.getForObject(urlCheckNomina, Boolean.class);
+            } catch (HttpClientErrorException exN) {
+                // Si checkEmail falla con 404/400 (no existe en nómina), capturamos.
+                logger.warn("El mail no existe en nómina activa. Status: {}", exN.getStatusCode());
+                return false;
+            }
+            if (Boolean.FALSE.equals(exists)) {
+                logger.warn("El mail está inactivo en la nómina antigua. Email: {}", email);
+                return false;
+            }
+            return true;
+        }, active -> active ? LoginStages.SUCCESS : LoginStages.INVALID_EMAIL);
+    }
+
+    /**
+     * Valida el mail contra la nómina activa (salvo que ya se haya hecho) y crea el usuario en la tabla de usuarios.
+     */
+    private UserDTO migrateUser(String email, String name, String lastName, String pictureUrl,
+                                boolean nominaChecked) throws MailInvalidoException {
+        if (!nominaChecked && !checkNomina(email)) {
+            throw new MailInvalidoException("El mail no está habilitado en la nómina activa.");
+        }
+
+        // Si existe y está activo en la nómina antigua, llamamos al endpoint de migración.
+        // Payload final con datos de Google
+        Map<String, Object> migrationPayload = new HashMap<>();
+        migrationPayload.put("email", email);
+        migrationPayload.put("nombre", name);
+        migrationPayload.put("apellido", lastName);
+        migrationPayload.put("foto", pictureUrl);
+
+        HttpEntity<Map<String, Object>> requestEntity = new HttpEntity<>(migrationPayload);
+
+        // URL al endpoint de migración: /api/records/migrateUser
+        String urlMigrate = urlBase + "migrateUser";
+        AirtableUserResponse response = stages.observe("migrate",
+                () -> restTemplate.postForObject(urlMigrate, requestEntity, AirtableUserResponse.class));
+        UserDTO user = airtableMapper.fromAirtable(response);
+        // El registro nuevo reemplaza el 404 cacheado
+        userProfileCache.put(email, user);
+        addToDirectory(email, user);
+        return user;
+    }
+
+    private void addToDirectory(String email, UserDTO user) {
+        if (directory != null) {
+            directory.put(email, user);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.microservicios.login.session;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScriptOutputType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.session.MapSession;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+import org.springframework.session.data.redis.RedisSessionMapper;
+import org.springframework.session.data.redis.RedisSessionRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Repositorio de sesiones sobre las mismas claves y el mismo hash que {@link RedisSessionRepository}
+ * ({@code spring:session:sessions:<id>}), así se puede activar y desactivar sin desloguear a nadie.
+ *
+ * Diferencias con el de Spring Session:
+ * - Todos los cambios del request (atributos, lastAccessedTime, expiración) se mandan en un solo pipeline
+ *   al final del request: HSET + PEXPIREAT (+ HDEL de atributos borrados) en un round-trip en vez de uno por comando,
+ *   sobre la conexión compartida ({@link SharedConnectionPipeline}).
+ * - lastAccessedTime sólo se escribe si pasó {@code touchInterval} desde la última escritura. Un /me que no
+ *   cambia nada no escribe en Redis; a cambio la sesión puede vencer hasta touchInterval antes del timeout
+ *   de inactividad. Si el request escribe otra cosa, el acceso y la expiración viajan en el mismo pipeline.
+ *
+ * Equivale a save-mode=on_set_attribute y flush-mode=on_save: sólo se escriben los atributos seteados.
+ *
+ * Una sesión ya existente sólo se actualiza si la clave sigue en Redis ({@link #UPDATE_SCRIPT}): si entre la lectura
+ * y el save la borró un logout, un revoke-all o el vencimiento, el save no la recrea como un hash sin creationTime.
+ * Un hash incompleto se trata como sesión inexistente.
+ */
+public class CoalescingSessionRepository implements SessionRepository<CoalescingSessionRepository.CoalescingSession> {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoalescingSessionRepository.class);
+
+    static final String SESSION_KEY_PREFIX = RedisSessionRepository.DEFAULT_KEY_NAMESPACE + ":sessions:";
+    // Campos del hash de Spring Session (RedisSessionMapper)
+    private static final String CREATION_TIME = "creationTime";
+    private static final String LAST_ACCESSED_TIME = "lastAccessedTime";
+    private static final String MAX_INACTIVE_INTERVAL = "maxInactiveInterval";
+    private static final String ATTRIBUTE_PREFIX = "sessionAttr:";
+
+    /**
+     * KEYS[1] = clave de la sesión; ARGV[1] = expiración en epoch ms (-1 = sin expiración), ARGV[2] = cantidad n
+     * de campos a escribir, después n pares campo/valor y al final los campos a borrar.
+     * Devuelve 0 sin escribir nada si la clave ya no existe.
+     */
+    static final String UPDATE_SCRIPT = """
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+              return 0
+            end
+            local sets = tonumber(ARGV[2])
+            for i = 3, 2 + sets * 2, 2 do
+              redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+            end
+            for i = 3 + sets * 2, #ARGV do
+              redis.call('HDEL', KEYS[1], ARGV[i])
+            end
+            if ARGV[1] == '-1' then
+              redis.call('PERSIST', KEYS[1])
+            else
+              redis.call('PEXPIREAT', KEYS[1], ARGV[1])
+            end
+            return 1
+            """;
+
+    private final RedisTemplate<String, Object> redis;
+    private final RedisSerializer<Object> valueSerializer;
+    private final Duration defaultMaxInactiveInterval;
+    private final Duration touchInterval;
+    private final RedisSessionMapper mapper = new RedisSessionMapper();
+
+    private final Counter writes;
+    private final Counter touchesSkipped;
+    private final Counter invalidated;
+
+    /**
+     * @param redis         template con el serializador de sesión (springSessionDefaultRedisSerializer) para los valores del hash
+     * @param touchInterval mínimo entre escrituras de lastAccessedTime (0 = en cada request, como Spring Session)
+     */
+    @SuppressWarnings("unchecked")
+    public CoalescingSessionRepository(RedisTemplate<String, Object> redis, Duration defaultMaxInactiveInterval,
+                                       Duration touchInterval, MeterRegistry meterRegistry) {
+        this.redis = redis;
+        this.valueSerializer = (RedisSerializer<Object>) redis.getHashValueSerializer();
+        this.defaultMaxInactiveInterval = defaultMaxInactiveInterval;
+        this.touchInterval = touchInterval;
+        this.writes = Counter.builder("login.session.writes")
+                .description("Pipelines de escritura de sesión a Redis (uno por request que cambió la sesión)")
+                .register(meterRegistry);
+        this.touchesSkipped = Counter.builder("login.session.touch.skipped")
+                .description("Requests cuyo lastAccessedTime no se escribió por estar dentro de session.coalescing.touch-interval")
+                .register(meterRegistry);
+        this.invalidated = Counter.builder("login.session.save.invalidated")
+                .description("Saves descartados porque la sesión ya no estaba en Redis (logout, revoke o vencimiento)")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public CoalescingSession createSession() {
+        MapSession cached = new MapSession();
+        cached.setMaxInactiveInterval(defaultMaxInactiveInterval);
+        CoalescingSession session = new CoalescingSession(cached, true);
+        session.delta.put(CREATION_TIME, cached.getCreationTime().toEpochMilli());
+        session.delta.put(MAX_INACTIVE_INTERVAL, (int) cached.getMaxInactiveInterval().getSeconds());
+        session.delta.put(LAST_ACCESSED_TIME, cached.getLastAccessedTime().toEpochMilli());
+        return session;
+    }
+
+    @Override
+    public void save(CoalescingSession session) {
+        if (!session.isNew && !session.id.equals(session.originalId)) {
+            redis.rename(key(session.originalId), key(session.id));
+            session.originalId = session.id;
+        }
+        if (session.delta.isEmpty()) {
+            touchesSkipped.increment();
+            return;
+        }
+        // Lo que se escriba, se escribe con el acceso actual y la expiración que le corresponde
+        session.delta.put(LAST_ACCESSED_TIME, session.cached.getLastAccessedTime().toEpochMilli());
+        byte[] key = bytes(key(session.id));
+        Map<byte[], byte[]> values = new HashMap<>();
+        List<byte[]> removed = new ArrayList<>();
+        session.delta.forEach((field, value) -> {
+            if (value == null) {
+                removed.add(bytes(field));
+            } else {
+                values.put(bytes(field), valueSerializer.serialize(value));
+            }
+        });
+        Duration maxInactive = session.cached.getMaxInactiveInterval();
+        long expiresAt = maxInactive.isNegative() ? -1
+                : session.cached.getLastAccessedTime().plus(maxInactive).toEpochMilli();
+
+        if (session.isNew) {
+            SharedConnectionPipeline.execute(redis, c -> List.of(
+                    c.hset(key, values),
+                    expiresAt < 0 ? c.persist(key) : c.pexpireat(key, expiresAt)));
+        } else {
+            List<byte[]> args = new ArrayList<>(2 + values.size() * 2 + removed.size());
+            args.add(bytes(Long.toString(expiresAt)));
+            args.add(bytes(Integer.toString(values.size())));
+            values.forEach((field, value) -> {
+                args.add(field);
+                args.add(value);
+            });
+            args.addAll(removed);
+            List<Object> result = SharedConnectionPipeline.execute(redis, c -> List.<RedisFuture<?>>of(
+                    c.eval(UPDATE_SCRIPT, ScriptOutputType.INTEGER, new byte[][]{key}, args.toArray(byte[][]::new))));
+            if (Long.valueOf(0).equals(result.get(0))) {
+                logger.debug("Sesión {} borrada antes del save, no se recrea", session.id);
+                invalidated.increment();
+                session.delta.clear();
+                return;
+            }
+        }
+        writes.increment();
+        session.delta.clear();
+        session.isNew = false;
+        session.persistedLastAccessedTime = session.cached.getLastAccessedTime();
+    }
+
+    @Override
+    public CoalescingSession findById(String id) {
+        Map<String, Object> entries = redis.<String, Object>opsForHash().entries(key(id));
+        if (entries.isEmpty()) {
+            return null;
+        }
+        if (!entries.containsKey(CREATION_TIME) || !entries.containsKey(LAST_ACCESSED_TIME)
+                || !entries.containsKey(MAX_INACTIVE_INTERVAL)) {
+            // Hash parcial (p. ej. escrito por un save sin chequeo sobre una sesión ya borrada): no es una sesión
+            logger.debug("Sesión {} incompleta en Redis, se descarta", id);
+            deleteById(id);
+            return null;
+        }
+        MapSession loaded = mapper.apply(id, entries);
+        if (loaded.isExpired()) {
+            deleteById(id);
+            return null;
+        }
+        return new CoalescingSession(loaded, false);
+    }
+
+    @Override
+    public void deleteById(String id) {
+        redis.delete(key(id));
+    }
+
+    private static String key(String sessionId) {
+        return SESSION_KEY_PREFIX + sessionId;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sesión con los cambios pendientes del request ({@code delta}, campo del hash → valor; null = borrar).
+     */
+    public final class CoalescingSession implements Session {
+
+        private final MapSession cached;
+        private final Map<String, Object> delta = new HashMap<>();
+        private String id;
+        private String originalId;
+        private boolean isNew;
+        private Instant persistedLastAccessedTime;
+
+        CoalescingSession(MapSession cached, boolean isNew) {
+            this.cached = cached;
+            this.id = cached.getId();
+            this.originalId = id;
+            this.isNew = isNew;
+            this.persistedLastAccessedTime = cached.getLastAccessedTime();
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String changeSessionId() {
+            id = cached.changeSessionId();
+            return id;
+        }
+
+        @Override
+        public <T> T getAttribute(String attributeName) {
+            return cached.getAttribute(attributeName);
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            return cached.getAttributeNames();
+        }
+
+        @Override
+        public void setAttribute(String attributeName, Object attributeValue) {
+            cached.setAttribute(attributeName, attributeValue);
+            delta.put(ATTRIBUTE_PREFIX + attributeName, attributeValue);
+        }
+
+        @Override
+        public void removeAttribute(String attributeName) {
+            setAttribute(attributeName, null);
+        }
+
+        @Override
+        public Instant getCreationTime() {
+            return cached.getCreationTime();
+        }
+
+        /**
+         * Sólo queda pendiente de escritura si pasó touchInterval desde la última; si no, se actualiza en memoria
+         * y viaja únicamente si el request escribe otra cosa.
+         */
+        @Override
+        public void setLastAccessedTime(Instant lastAccessedTime) {
+            cached.setLastAccessedTime(lastAccessedTime);
+            if (isNew || Duration.between(persistedLastAccessedTime, lastAccessedTime).compareTo(touchInterval) >= 0) {
+                delta.put(LAST_ACCESSED_TIME, lastAccessedTime.toEpochMilli());
+            }
+        }
+
+        @Override
+        public Instant getLastAccessedTime() {
+            return cached.getLastAccessedTime();
+        }
+
+        @Override
+        public void setMaxInactiveInterval(Duration interval) {
+            cached.setMaxInactiveInterval(interval);
+            delta.put(MAX_INACTIVE_INTERVAL, (int) interval.getSeconds());
+        }
+
+        @Override
+        public Duration getMaxInactiveInterval() {
+            return cached.getMaxInactiveInterval();
+        }
+
+        @Override
+        public boolean isExpired() {
+            return cached.isExpired();
+        }
+    }
+}
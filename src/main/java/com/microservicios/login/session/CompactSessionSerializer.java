@@ -0,0 +1,61 @@
+package com.microservicios.login.session;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+
+/**
+ * Serializador de los valores de la sesión en Redis.
+ *
+ * - {@link LoginSession}: un byte de versión + JSON con nombres cortos y sin nombres de clase.
+ * - Todo lo demás (metadatos de Spring Session y atributos de sesiones viejas): JSON de
+ *   {@link GenericJackson2JsonRedisSerializer}, igual que antes.
+ *
+ * Un valor JSON nunca empieza con el byte de versión, así que al leer se distinguen solos
+ * y las sesiones existentes se siguen pudiendo leer.
+ */
+public class CompactSessionSerializer implements RedisSerializer<Object> {
+
+    static final byte FORMAT_V1 = 0x01;
+
+    private final GenericJackson2JsonRedisSerializer fallback = new GenericJackson2JsonRedisSerializer();
+    private final ObjectMapper compactMapper = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (!(value instanceof LoginSession login)) {
+            return fallback.serialize(value);
+        }
+        try {
+            byte[] json = compactMapper.writeValueAsBytes(login);
+            byte[] bytes = new byte[json.length + 1];
+            bytes[0] = FORMAT_V1;
+            System.arraycopy(json, 0, bytes, 1, json.length);
+            return bytes;
+        } catch (IOException e) {
+            throw new SerializationException("No se pudo serializar la sesión de login", e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != FORMAT_V1) {
+            return fallback.deserialize(bytes);
+        }
+        try {
+            return compactMapper.readValue(bytes, 1, bytes.length - 1, LoginSession.class);
+        } catch (IOException e) {
+            throw new SerializationException("No se pudo leer la sesión de login", e);
+        }
+    }
+}
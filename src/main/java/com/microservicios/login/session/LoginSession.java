@@ -0,0 +1,51 @@
+package com.microservicios.login.session;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.microservicios.login.dto.ProvisionalUserDTO;
+import coms.dto.UserDTO;
+
+import java.io.Serializable;
+
+/**
+ * Todo lo que el login guarda en la sesión, en un único atributo ({@link LoginSessions#ATTRIBUTE}).
+ *
+ * Reemplaza a los atributos sueltos "tokens", "accessToken", "refreshToken" y "user",
+ * que duplicaban los tokens y se serializaban cada uno con su nombre de clase.
+ * Los nombres cortos de las propiedades son parte del formato guardado en Redis: no cambiarlos.
+ *
+ * @param accessTokenExpiresAt epoch millis en que vence el access token de Google (puede ser null)
+ * @param provisional          true si {@code user} es el provisorio de un primer login con la migración en cola
+ *                             (null en cualquier otro caso, así no ocupa lugar)
+ */
+public record LoginSession(
+        @JsonProperty("u") UserDTO user,
+        @JsonProperty("at") String accessToken,
+        @JsonProperty("rt") String refreshToken,
+        @JsonProperty("exp") Long accessTokenExpiresAt,
+        @JsonProperty("pv") Boolean provisional) implements Serializable {
+
+    public LoginSession(UserDTO user, String accessToken, String refreshToken, Long accessTokenExpiresAt) {
+        this(user, accessToken, refreshToken, accessTokenExpiresAt, null);
+    }
+
+    /**
+     * Login recién creado por el callback: queda marcado si el usuario es el provisorio.
+     */
+    public static LoginSession of(UserDTO user, String accessToken, String refreshToken, Long accessTokenExpiresAt) {
+        return new LoginSession(user, accessToken, refreshToken, accessTokenExpiresAt,
+                user instanceof ProvisionalUserDTO ? Boolean.TRUE : null);
+    }
+
+    @JsonIgnore
+    public boolean isProvisional() {
+        return Boolean.TRUE.equals(provisional);
+    }
+
+    /**
+     * El mismo login con el usuario definitivo (migración terminada).
+     */
+    public LoginSession withUser(UserDTO migrated) {
+        return new LoginSession(migrated, accessToken, refreshToken, accessTokenExpiresAt);
+    }
+}
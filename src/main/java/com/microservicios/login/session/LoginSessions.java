@@ -0,0 +1,131 @@
+package com.microservicios.login.session;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import coms.dto.UserDTO;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.session.Session;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Lectura y escritura de {@link LoginSession} en la sesión HTTP.
+ *
+ * Se leen los dos formatos: el compacto (un atributo {@value #ATTRIBUTE}) y el de antes (atributos sueltos
+ * "tokens", "accessToken", "refreshToken" y "user"). Cuál se escribe depende de session.compact-login.enabled:
+ * - false: el formato de antes, que entienden las réplicas de la versión anterior. El vencimiento del access token
+ *   y la marca de usuario provisorio van en dos atributos más que esas réplicas ignoran.
+ * - true: el compacto; las sesiones del formato de antes se reescriben al leerlas y se van migrando solas.
+ *   Una réplica de la versión anterior no puede cargar una sesión así (el valor no es JSON).
+ *
+ * Orden de deploy: primero esta versión con compact-login apagado en todas las réplicas, y recién cuando no
+ * queda ninguna de la versión anterior, compact-login encendido. Para volver a la versión anterior, primero
+ * apagarlo.
+ */
+public class LoginSessions {
+
+    public static final String ATTRIBUTE = "login";
+
+    static final String LEGACY_TOKENS = "tokens";
+    static final String LEGACY_ACCESS_TOKEN = "accessToken";
+    static final String LEGACY_REFRESH_TOKEN = "refreshToken";
+    static final String LEGACY_USER = "user";
+    static final String LEGACY_EXPIRES_AT = "accessTokenExpiresAt";
+    static final String LEGACY_PROVISIONAL = "provisional";
+
+    // Para guardar un usuario provisorio como UserDTO: las réplicas anteriores no tienen su clase
+    private static final ObjectMapper USER_MAPPER = new ObjectMapper();
+
+    private final boolean compact;
+
+    /**
+     * @param compact true para escribir el formato compacto y migrar a él las sesiones del formato anterior
+     */
+    public LoginSessions(boolean compact) {
+        this.compact = compact;
+    }
+
+    public void write(HttpSession session, LoginSession login) {
+        write(session::getAttribute, session::setAttribute, login);
+    }
+
+    public void write(Session session, LoginSession login) {
+        write(session::getAttribute, session::setAttribute, login);
+    }
+
+    /**
+     * @return el login de la sesión, o null si la sesión no tiene usuario
+     */
+    public LoginSession read(HttpSession session) {
+        return read(session::getAttribute, session::setAttribute);
+    }
+
+    public LoginSession read(Session session) {
+        return read(session::getAttribute, session::setAttribute);
+    }
+
+    /**
+     * @param get lectura de un atributo de la sesión
+     * @param set escritura de un atributo (null lo borra)
+     */
+    private LoginSession read(Function<String, Object> get, BiConsumer<String, Object> set) {
+        if (get.apply(ATTRIBUTE) instanceof LoginSession login) {
+            return login;
+        }
+        LoginSession legacy = fromLegacy(get);
+        if (legacy != null && compact) {
+            write(get, set, legacy);
+        }
+        return legacy;
+    }
+
+    private void write(Function<String, Object> get, BiConsumer<String, Object> set, LoginSession login) {
+        if (compact) {
+            set.accept(ATTRIBUTE, login);
+            removeIfPresent(get, set, LEGACY_TOKENS, LEGACY_ACCESS_TOKEN, LEGACY_REFRESH_TOKEN, LEGACY_USER,
+                    LEGACY_EXPIRES_AT, LEGACY_PROVISIONAL);
+            return;
+        }
+        Map<String, String> tokens = new HashMap<>();
+        tokens.put("accessToken", login.accessToken());
+        tokens.put("refreshToken", login.refreshToken());
+        set.accept(LEGACY_TOKENS, tokens);
+        set.accept(LEGACY_ACCESS_TOKEN, login.accessToken());
+        set.accept(LEGACY_REFRESH_TOKEN, login.refreshToken());
+        set.accept(LEGACY_USER, login.user() == null || login.user().getClass() == UserDTO.class
+                ? login.user() : USER_MAPPER.convertValue(login.user(), UserDTO.class));
+        set.accept(LEGACY_EXPIRES_AT, login.accessTokenExpiresAt());
+        set.accept(LEGACY_PROVISIONAL, login.provisional());
+        // Una sesión ya escrita en el formato compacto (compact-login encendido y vuelto a apagar)
+        removeIfPresent(get, set, ATTRIBUTE);
+    }
+
+    private static void removeIfPresent(Function<String, Object> get, BiConsumer<String, Object> set, String... attributes) {
+        for (String attribute : attributes) {
+            if (get.apply(attribute) != null) {
+                set.accept(attribute, null);
+            }
+        }
+    }
+
+    private static LoginSession fromLegacy(Function<String, Object> get) {
+        if (!(get.apply(LEGACY_USER) instanceof UserDTO legacyUser)) {
+            return null;
+        }
+        String access = get.apply(LEGACY_ACCESS_TOKEN) instanceof String s ? s : null;
+        String refresh = get.apply(LEGACY_REFRESH_TOKEN) instanceof String s ? s : null;
+        if (get.apply(LEGACY_TOKENS) instanceof Map<?, ?> map) {
+            if (access == null && map.get("accessToken") instanceof String s) {
+                access = s;
+            }
+            if (refresh == null && map.get("refreshToken") instanceof String s) {
+                refresh = s;
+            }
+        }
+        Long expiresAt = get.apply(LEGACY_EXPIRES_AT) instanceof Number n ? n.longValue() : null;
+        Boolean provisional = Boolean.TRUE.equals(get.apply(LEGACY_PROVISIONAL)) ? Boolean.TRUE : null;
+        return new LoginSession(legacyUser, access, refresh, expiresAt, provisional);
+    }
+}
@@ -0,0 +1,236 @@
+package com.microservicios.login.session;
+
+import com.microservicios.login.cache.UserProfileCache;
+import com.microservicios.login.token.SessionTokens;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.Range;
+import io.lettuce.core.RedisFuture;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.session.data.redis.RedisSessionRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Índice de sesiones por usuario: un ZSET {@code login:sessions:<email>} con los IDs de sesión
+ * (score = momento del login). Todas las operaciones cuestan lo mismo que las sesiones de ese usuario,
+ * nunca un SCAN del keyspace.
+ *
+ * Limpieza sin keyspace notifications (ConfigureRedisAction.NO_OP):
+ * - Al listar, las sesiones cuyo hash ya no existe (expiraron por inactividad) se sacan del índice.
+ * - Cada login descarta las entradas más viejas que {@code indexTtl} y renueva el TTL de la clave,
+ *   así el índice de un usuario que no vuelve a entrar desaparece solo.
+ *
+ * Si Redis falla el login sigue igual (fail-open): una sesión sin indexar expira por su cuenta.
+ */
+public class SessionIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionIndex.class);
+
+    static final String KEY_PREFIX = "login:sessions:";
+    /** Claves de {@link RedisSessionRepository} (y del repositorio reactivo, que usa las mismas). */
+    static final String SESSION_KEY_PREFIX = RedisSessionRepository.DEFAULT_KEY_NAMESPACE + ":sessions:";
+    // Campos del hash de Spring Session (RedisSessionMapper)
+    private static final String CREATION_TIME = "creationTime";
+    private static final String LAST_ACCESSED_TIME = "lastAccessedTime";
+    private static final String MAX_INACTIVE_INTERVAL = "maxInactiveInterval";
+    private static final byte[][] FIELDS = {bytes(CREATION_TIME), bytes(LAST_ACCESSED_TIME), bytes(MAX_INACTIVE_INTERVAL)};
+
+    /**
+     * Sesión activa de un usuario. {@code id} es un hash del ID de sesión: el ID real es la credencial
+     * de la cookie y no se expone.
+     */
+    public record ActiveSession(String id, Instant createdAt, Instant lastAccessedAt, Instant expiresAt) {
+    }
+
+    private final StringRedisTemplate redis;
+    private final Duration indexTtl;
+    private final Clock clock;
+
+    private final Counter pruned;
+    private final Counter revoked;
+
+    public SessionIndex(StringRedisTemplate redis, Duration indexTtl, Clock clock, MeterRegistry meterRegistry) {
+        this.redis = redis;
+        this.indexTtl = indexTtl;
+        this.clock = clock;
+        this.pruned = Counter.builder("login.session.index.pruned")
+                .description("Sesiones expiradas sacadas del índice por usuario")
+                .register(meterRegistry);
+        this.revoked = Counter.builder("login.session.index.revoked")
+                .description("Sesiones cerradas desde el índice (cerrar todas, revocación puntual)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Registra la sesión creada por el callback. Un solo round-trip (pipeline).
+     */
+    public void add(String email, String sessionId) {
+        byte[] key = bytes(key(email));
+        long now = clock.millis();
+        try {
+            SharedConnectionPipeline.execute(redis, c -> List.of(
+                    c.zadd(key, now, bytes(sessionId)),
+                    c.zremrangebyscore(key, Range.create(Double.NEGATIVE_INFINITY, (double) (now - indexTtl.toMillis()))),
+                    c.pexpire(key, indexTtl.toMillis())));
+        } catch (RuntimeException e) {
+            logger.warn("No se pudo indexar la sesión del usuario: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Saca la sesión del índice (logout de la sesión actual).
+     */
+    public void remove(String email, String sessionId) {
+        try {
+            redis.opsForZSet().remove(key(email), sessionId);
+        } catch (RuntimeException e) {
+            logger.warn("No se pudo sacar la sesión del índice: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * IDs de sesión indexados del usuario (pueden incluir sesiones ya expiradas).
+     */
+    public List<String> sessionIds(String email) {
+        return members(key(email));
+    }
+
+    /**
+     * Sesiones vivas del usuario, de la más vieja a la más nueva. Limpia del índice las que ya expiraron.
+     */
+    public List<ActiveSession> list(String email) {
+        String key = key(email);
+        List<String> ids = members(key);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        List<Object> fields = SharedConnectionPipeline.execute(redis, c -> {
+            List<RedisFuture<?>> futures = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                futures.add(c.hmget(bytes(SESSION_KEY_PREFIX + id), FIELDS));
+            }
+            return futures;
+        });
+
+        List<ActiveSession> sessions = new ArrayList<>(ids.size());
+        List<String> expired = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            ActiveSession session = toSession(ids.get(i), (List<?>) fields.get(i));
+            if (session != null) {
+                sessions.add(session);
+            } else {
+                expired.add(ids.get(i));
+            }
+        }
+        if (!expired.isEmpty()) {
+            redis.opsForZSet().remove(key, expired.toArray());
+            pruned.increment(expired.size());
+        }
+        return sessions;
+    }
+
+    /**
+     * Si al usuario le queda alguna sesión viva (limpia las expiradas como {@link #list}). Si Redis falla
+     * responde que sí: lo que cuelga del usuario (el refresh del token de Google) expira solo por inactividad.
+     */
+    public boolean hasLiveSessions(String email) {
+        try {
+            return !list(email).isEmpty();
+        } catch (RuntimeException e) {
+            logger.warn("No se pudieron leer las sesiones del usuario: {}", e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Borra todas las sesiones del usuario (hash de Spring Session + índice) en un round-trip.
+     * Las sesiones creadas mientras tanto quedan: son logins posteriores.
+     *
+     * @return los IDs de sesión borrados, para revocar lo que cuelga de ellos (tokens firmados)
+     */
+    public List<String> revokeAll(String email) {
+        String key = key(email);
+        List<String> ids = members(key);
+        if (ids.isEmpty()) {
+            return ids;
+        }
+        SharedConnectionPipeline.execute(redis, c -> List.of(
+                c.del(ids.stream().map(id -> bytes(SESSION_KEY_PREFIX + id)).toArray(byte[][]::new)),
+                c.zrem(bytes(key), ids.stream().map(SessionIndex::bytes).toArray(byte[][]::new))));
+        revoked.increment(ids.size());
+        return ids;
+    }
+
+    /**
+     * Borra una sesión del usuario a partir del id que devuelve {@link #list}.
+     *
+     * @return el ID de sesión borrado, o null si no es una sesión de este usuario
+     */
+    public String revoke(String email, String publicId) {
+        String key = key(email);
+        for (String sessionId : members(key)) {
+            if (SessionTokens.sessionHash(sessionId).equals(publicId)) {
+                SharedConnectionPipeline.execute(redis, c -> List.of(
+                        c.del(bytes(SESSION_KEY_PREFIX + sessionId)),
+                        c.zrem(bytes(key), bytes(sessionId))));
+                revoked.increment();
+                return sessionId;
+            }
+        }
+        return null;
+    }
+
+    private List<String> members(String key) {
+        Set<String> members = redis.opsForZSet().range(key, 0, -1);
+        return members == null ? new ArrayList<>() : new ArrayList<>(members);
+    }
+
+    /**
+     * @param fields respuesta de HMGET (creationTime, lastAccessedTime, maxInactiveInterval)
+     */
+    private static ActiveSession toSession(String sessionId, List<?> fields) {
+        Long created = parseLong(fields.get(0));
+        Long lastAccessed = parseLong(fields.get(1));
+        if (created == null || lastAccessed == null) {
+            return null;
+        }
+        Long maxInactive = parseLong(fields.get(2));
+        Instant lastAccessedAt = Instant.ofEpochMilli(lastAccessed);
+        return new ActiveSession(SessionTokens.sessionHash(sessionId), Instant.ofEpochMilli(created), lastAccessedAt,
+                maxInactive != null && maxInactive >= 0 ? lastAccessedAt.plusSeconds(maxInactive) : null);
+    }
+
+    /**
+     * Los metadatos se guardan con el serializador de la sesión (JSON): un número es su texto.
+     */
+    @SuppressWarnings("unchecked")
+    private static Long parseLong(Object field) {
+        byte[] value = ((KeyValue<byte[], byte[]>) field).getValueOrElse(null);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(new String(value, StandardCharsets.UTF_8).trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String key(String email) {
+        return KEY_PREFIX + UserProfileCache.normalize(email);
+    }
+}
@@ -0,0 +1,58 @@
+package com.microservicios.login.session;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Pipeline sobre la conexión compartida de Lettuce: los comandos salen uno detrás de otro sin esperar
+ * respuesta y se esperan todos al final, un solo round-trip.
+ *
+ * {@code RedisTemplate.executePipelined} no sirve acá: sin pool abre una conexión dedicada por llamada
+ * (TCP + TLS + HELLO + PING antes de los comandos), más cara que los round-trips que ahorra.
+ */
+final class SharedConnectionPipeline {
+
+    private SharedConnectionPipeline() {
+    }
+
+    /**
+     * @param commands encola los comandos sobre la API async y devuelve sus futuros
+     * @return los resultados en el mismo orden
+     */
+    static List<Object> execute(RedisTemplate<?, ?> redis,
+                                Function<RedisClusterAsyncCommands<byte[], byte[]>, List<RedisFuture<?>>> commands) {
+        Duration timeout = redis.getConnectionFactory() instanceof LettuceConnectionFactory lettuce
+                ? lettuce.getClientConfiguration().getCommandTimeout() : Duration.ofSeconds(5);
+        return redis.execute((RedisCallback<List<Object>>) connection -> {
+            @SuppressWarnings("unchecked")
+            RedisClusterAsyncCommands<byte[], byte[]> async =
+                    (RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+            List<RedisFuture<?>> futures = commands.apply(async);
+            long deadline = System.nanoTime() + timeout.toNanos();
+            List<Object> results = new ArrayList<>(futures.size());
+            try {
+                for (RedisFuture<?> future : futures) {
+                    results.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RedisSystemException("Pipeline interrumpido", e);
+            } catch (ExecutionException | TimeoutException e) {
+                throw new RedisSystemException("Error en pipeline a Redis: " + e.getMessage(), e);
+            }
+            return results;
+        });
+    }
+}
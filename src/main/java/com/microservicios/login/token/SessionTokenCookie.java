@@ -0,0 +1,60 @@
+package com.microservicios.login.token;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+
+import java.time.Duration;
+
+/**
+ * Cookie HttpOnly con el token de sesión firmado. Usa los mismos Secure/SameSite que JSESSIONID.
+ * También se acepta el token en {@code Authorization: Bearer} para llamadas entre servicios.
+ */
+public class SessionTokenCookie {
+
+    public static final String NAME = "LOGIN_TOKEN";
+
+    private final boolean secure;
+    private final String sameSite;
+
+    public SessionTokenCookie(boolean secure, String sameSite) {
+        this.secure = secure;
+        this.sameSite = sameSite;
+    }
+
+    public String read(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (NAME.equals(cookie.getName())) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization != null && authorization.startsWith("Bearer ")) {
+            return authorization.substring("Bearer ".length());
+        }
+        return null;
+    }
+
+    public void write(HttpServletResponse response, String token, Duration ttl) {
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie(token, ttl).toString());
+    }
+
+    public void clear(HttpServletResponse response) {
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie("", Duration.ZERO).toString());
+    }
+
+    private ResponseCookie cookie(String value, Duration maxAge) {
+        return ResponseCookie.from(NAME, value)
+                .httpOnly(true)
+                .secure(secure)
+                .sameSite(sameSite)
+                .path("/")
+                .maxAge(maxAge)
+                .build();
+    }
+}
@@ -0,0 +1,70 @@
+package com.microservicios.login.token;
+
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+
+import javax.crypto.SecretKey;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keyset local (kid → clave HMAC) para firmar los tokens de sesión.
+ *
+ * Formato: {@code kid1:secretoBase64,kid2:secretoBase64}. Se firma siempre con la clave activa
+ * y se acepta cualquiera del keyset. Para rotar: agregar la clave nueva, activarla y sacar la
+ * vieja cuando pase el TTL del token (los tokens firmados con ella ya vencieron).
+ */
+public class SessionTokenKeys {
+
+    private final Map<String, SecretKey> keys;
+    private final String activeKid;
+
+    public SessionTokenKeys(Map<String, SecretKey> keys, String activeKid) {
+        if (!keys.containsKey(activeKid)) {
+            throw new IllegalArgumentException("La clave activa '" + activeKid + "' no está en el keyset");
+        }
+        this.keys = Collections.unmodifiableMap(new LinkedHashMap<>(keys));
+        this.activeKid = activeKid;
+    }
+
+    /**
+     * @param activeKid kid con el que se firma; vacío = el primero del keyset
+     */
+    public static SessionTokenKeys parse(String keyset, String activeKid) {
+        Map<String, SecretKey> keys = new LinkedHashMap<>();
+        for (String entry : keyset.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int separator = trimmed.indexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Entrada de keyset inválida, se espera kid:secretoBase64");
+            }
+            // hmacShaKeyFor rechaza claves de menos de 256 bits
+            keys.put(trimmed.substring(0, separator),
+                    Keys.hmacShaKeyFor(Decoders.BASE64.decode(trimmed.substring(separator + 1))));
+        }
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("auth.token.keys está vacío");
+        }
+        String active = activeKid == null || activeKid.isBlank() ? keys.keySet().iterator().next() : activeKid;
+        return new SessionTokenKeys(keys, active);
+    }
+
+    public String activeKid() {
+        return activeKid;
+    }
+
+    public SecretKey activeKey() {
+        return keys.get(activeKid);
+    }
+
+    /**
+     * @return la clave del kid, o null si no está (token firmado con una clave ya retirada)
+     */
+    public SecretKey get(String kid) {
+        return kid != null ? keys.get(kid) : null;
+    }
+}
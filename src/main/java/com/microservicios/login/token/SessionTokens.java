@@ -0,0 +1,188 @@
+package com.microservicios.login.token;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import coms.dto.UserDTO;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.ProtectedHeader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Tokens de sesión firmados (JWS HMAC) con los datos del {@link UserDTO}.
+ *
+ * /me y los servicios que tengan el keyset los validan en memoria, sin ir a Redis. Viven poco
+ * (auth.token.ttl): cuando vencen se vuelve a la sesión de Redis, que es la fuente de verdad.
+ *
+ * Revocación: el logout agrega la sesión al deny-list. El deny-list es local, acotado por tamaño,
+ * y cada entrada vive sólo el TTL del token (después el token ya no es válido de todas formas).
+ * Las revocaciones se publican por Redis pub/sub para que las demás réplicas las agreguen también.
+ *
+ * El token no lleva el id de la sesión (es la credencial de la cookie JSESSIONID) sino un hash.
+ */
+public class SessionTokens {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionTokens.class);
+
+    public static final String REVOCATION_CHANNEL = "login:token:revoked";
+
+    static final String CLAIM_NAME = "name";
+    static final String CLAIM_PICTURE = "picture";
+    static final String CLAIM_SESSION = "sid";
+
+    /**
+     * Token válido: usuario y hash de la sesión que lo emitió.
+     */
+    public record Verified(UserDTO user, String sessionHash, Instant expiresAt) {
+    }
+
+    private final SessionTokenKeys keys;
+    private final Duration ttl;
+    private final Clock clock;
+    private final StringRedisTemplate redis;
+    private final JwtParser parser;
+    private final Cache<String, Boolean> revoked;
+
+    private final Counter valid;
+    private final Counter expired;
+    private final Counter invalid;
+    private final Counter denied;
+
+    /**
+     * @param redis para publicar revocaciones a las demás réplicas; si es null el deny-list es sólo local
+     */
+    public SessionTokens(SessionTokenKeys keys, Duration ttl, long denyListMaxSize, Clock clock,
+                         StringRedisTemplate redis, MeterRegistry meterRegistry) {
+        this.keys = keys;
+        this.ttl = ttl;
+        this.clock = clock;
+        this.redis = redis;
+        this.parser = Jwts.parser()
+                .keyLocator(new LocatorAdapter<Key>() {
+                    @Override
+                    protected Key locate(ProtectedHeader header) {
+                        return keys.get(header.getKeyId());
+                    }
+                })
+                .clock(() -> Date.from(clock.instant()))
+                .build();
+        this.revoked = Caffeine.newBuilder()
+                .maximumSize(denyListMaxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, revoked, "login.session.token.denylist");
+        this.valid = verification(meterRegistry, "valid");
+        this.expired = verification(meterRegistry, "expired");
+        this.invalid = verification(meterRegistry, "invalid");
+        this.denied = verification(meterRegistry, "revoked");
+    }
+
+    private static Counter verification(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("login.session.token.verifications").tag("result", result).register(meterRegistry);
+    }
+
+    public Duration ttl() {
+        return ttl;
+    }
+
+    public String issue(UserDTO user, String sessionId) {
+        Instant now = clock.instant();
+        return Jwts.builder()
+                .header().keyId(keys.activeKid()).and()
+                .id(UUID.randomUUID().toString())
+                .subject(user.getEmail())
+                .claim(CLAIM_NAME, user.getName())
+                .claim(CLAIM_PICTURE, user.getProfilePicture())
+                .claim(CLAIM_SESSION, sessionHash(sessionId))
+                .issuedAt(Date.from(now))
+                .expiration(Date.from(now.plus(ttl)))
+                .signWith(keys.activeKey())
+                .compact();
+    }
+
+    /**
+     * @return el token validado, o null si es inválido, venció o su sesión fue revocada
+     */
+    public Verified verify(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        Claims claims;
+        try {
+            claims = parser.parseSignedClaims(token).getPayload();
+        } catch (ExpiredJwtException e) {
+            expired.increment();
+            return null;
+        } catch (JwtException | IllegalArgumentException e) {
+            invalid.increment();
+            logger.debug("Token de sesión inválido: {}", e.getMessage());
+            return null;
+        }
+        String sessionHash = claims.get(CLAIM_SESSION, String.class);
+        if (sessionHash == null || revoked.getIfPresent(sessionHash) != null) {
+            denied.increment();
+            return null;
+        }
+        UserDTO user = new UserDTO();
+        user.setEmail(claims.getSubject());
+        user.setName(claims.get(CLAIM_NAME, String.class));
+        user.setProfilePicture(claims.get(CLAIM_PICTURE, String.class));
+        valid.increment();
+        return new Verified(user, sessionHash, claims.getExpiration().toInstant());
+    }
+
+    /**
+     * Invalida todos los tokens emitidos para la sesión, en esta réplica y (vía Redis) en las demás.
+     */
+    public void revokeSession(String sessionId) {
+        String sessionHash = sessionHash(sessionId);
+        onRevoked(sessionHash);
+        if (redis == null) {
+            return;
+        }
+        try {
+            redis.convertAndSend(REVOCATION_CHANNEL, sessionHash);
+        } catch (RuntimeException e) {
+            // Las otras réplicas aceptan el token hasta que venza (como mucho auth.token.ttl)
+            logger.warn("No se pudo publicar la revocación del token de sesión: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Revocación recibida de otra réplica (o de esta misma).
+     */
+    public void onRevoked(String sessionHash) {
+        revoked.put(sessionHash, Boolean.TRUE);
+    }
+
+    public static String sessionHash(String sessionId) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sessionId.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.microservicios.login.warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.auth.oauth2.TokenResponse;
+import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeTokenRequest;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.json.Json;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.webtoken.JsonWebSignature;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.microservicios.login.dto.AirtableMapper;
+import com.microservicios.login.dto.AirtableUserResponse;
+import com.microservicios.login.google.GoogleSigningKeys;
+import com.microservicios.login.google.GoogleTokenVerifier;
+import com.microservicios.login.session.CompactSessionSerializer;
+import com.microservicios.login.session.LoginSession;
+import com.microservicios.login.token.SessionTokens;
+import coms.dto.UserDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * El callback de Google de punta a punta en memoria, con las mismas clases que el login real:
+ * canje del code ({@link GoogleAuthorizationCodeTokenRequest}), verificación del ID token con
+ * {@link GoogleTokenVerifier}, respuesta del microservicio de usuarios → {@link AirtableMapper},
+ * {@link LoginSession} ida y vuelta por {@link CompactSessionSerializer} y, si está habilitado, el token firmado.
+ *
+ * Google y el microservicio de usuarios son stubs: un {@link MockHttpTransport} que responde el token y el JWKS
+ * de una clave RSA generada al arrancar, y un JSON fijo de user?email=. No sale nada a la red.
+ */
+class CallbackStubs implements Closeable {
+
+    private static final String CLIENT_ID = "warmup-client";
+    private static final String KEY_ID = "warmup";
+    private static final String CERTS_URL = "https://warmup.invalid/certs";
+    private static final String TOKEN_URL = "https://warmup.invalid/token";
+    private static final String SESSION_ID = "00000000-0000-0000-0000-000000000000";
+
+    private final JsonFactory jsonFactory;
+    private final ObjectMapper objectMapper;
+    private final SessionTokens sessionTokens;
+    private final MockHttpTransport transport;
+    private final GoogleSigningKeys signingKeys;
+    private final GoogleTokenVerifier verifier;
+    private final String userResponse;
+    private final AirtableMapper airtableMapper = new AirtableMapper();
+    private final CompactSessionSerializer serializer = new CompactSessionSerializer();
+
+    /**
+     * @param sessionTokens null si auth.token.enabled=false
+     */
+    CallbackStubs(JsonFactory jsonFactory, ObjectMapper objectMapper, SessionTokens sessionTokens, String email)
+            throws GeneralSecurityException, IOException {
+        this.jsonFactory = jsonFactory;
+        this.objectMapper = objectMapper;
+        this.sessionTokens = sessionTokens;
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        String tokenResponse = "{\"access_token\":\"ya29.warmup\",\"expires_in\":3599,\"refresh_token\":\"1//warmup\","
+                + "\"scope\":\"openid email profile\",\"token_type\":\"Bearer\",\"id_token\":\""
+                + idToken(keyPair, email) + "\"}";
+        String jwks = jwks((RSAPublicKey) keyPair.getPublic());
+        this.userResponse = "{\"id\":\"recWarmUp\",\"fields\":{\"Nombre\":\"Warm Up\",\"Correo Moby\":\"" + email
+                + "\",\"Foto de Perfil URL\":\"https://lh3.googleusercontent.com/a/warmup\"}}";
+
+        this.transport = new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) {
+                MockLowLevelHttpResponse response = new MockLowLevelHttpResponse()
+                        .setContentType(Json.MEDIA_TYPE)
+                        .setContent(url.startsWith(CERTS_URL) ? jwks : tokenResponse);
+                response.addHeader("Cache-Control", "public, max-age=21600");
+                return new MockLowLevelHttpRequest(url).setResponse(response);
+            }
+        };
+        // Métricas aparte: las de las claves de Google reales no cuentan el warm-up
+        this.signingKeys = new GoogleSigningKeys(transport, CERTS_URL, Duration.ofMinutes(5), Duration.ofMinutes(5),
+                Clock.systemUTC(), new SimpleMeterRegistry());
+        this.verifier = new GoogleTokenVerifier(transport, jsonFactory, signingKeys, CLIENT_ID);
+    }
+
+    /**
+     * Un login completo contra los stubs.
+     */
+    void login() throws IOException, GeneralSecurityException {
+        TokenResponse tokens = new GoogleAuthorizationCodeTokenRequest(transport, jsonFactory, CLIENT_ID,
+                "warmup-secret", "4/warmup", "https://warmup.invalid/callback")
+                .setTokenServerUrl(new GenericUrl(TOKEN_URL))
+                .execute();
+        GoogleIdToken idToken = verifier.verify(tokens.get("id_token").toString());
+        if (idToken == null) {
+            throw new IllegalStateException("El ID token del stub no pasó la verificación");
+        }
+
+        UserDTO user = airtableMapper.fromAirtable(objectMapper.readValue(userResponse, AirtableUserResponse.class));
+        LoginSession login = LoginSession.of(user, tokens.getAccessToken(), tokens.getRefreshToken(),
+                System.currentTimeMillis() + tokens.getExpiresInSeconds() * 1000);
+        LoginSession stored = (LoginSession) serializer.deserialize(serializer.serialize(login));
+        if (sessionTokens != null) {
+            sessionTokens.verify(sessionTokens.issue(stored.user(), SESSION_ID));
+        }
+        objectMapper.writeValueAsBytes(stored.user());
+    }
+
+    private String idToken(KeyPair keyPair, String email) throws GeneralSecurityException, IOException {
+        JsonWebSignature.Header header = new JsonWebSignature.Header();
+        header.setAlgorithm("RS256");
+        header.setKeyId(KEY_ID);
+        long now = System.currentTimeMillis() / 1000;
+        GoogleIdToken.Payload payload = new GoogleIdToken.Payload();
+        payload.setIssuer("https://accounts.google.com");
+        payload.setAudience(CLIENT_ID);
+        payload.setIssuedAtTimeSeconds(now);
+        // Alcanza para cualquier login.warmup.timeout razonable
+        payload.setExpirationTimeSeconds(now + 3600);
+        payload.setEmail(email);
+        payload.setEmailVerified(true);
+        payload.set("given_name", "Warm");
+        payload.set("family_name", "Up");
+        return JsonWebSignature.signUsingRsaSha256(keyPair.getPrivate(), jsonFactory, header, payload);
+    }
+
+    private static String jwks(RSAPublicKey key) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return "{\"keys\":[{\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\",\"kid\":\"" + KEY_ID
+                + "\",\"n\":\"" + encoder.encodeToString(unsigned(key.getModulus().toByteArray()))
+                + "\",\"e\":\"" + encoder.encodeToString(unsigned(key.getPublicExponent().toByteArray())) + "\"}]}";
+    }
+
+    private static byte[] unsigned(byte[] bytes) {
+        if (bytes.length > 1 && bytes[0] == 0) {
+            byte[] trimmed = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, trimmed, 0, trimmed.length);
+            return trimmed;
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+        signingKeys.close();
+    }
+}
@@ -0,0 +1,421 @@
+package com.microservicios.login.warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.microservicios.login.ratelimit.RateLimitFilter;
+import com.microservicios.login.ratelimit.RateLimits;
+import com.microservicios.login.session.LoginSession;
+import com.microservicios.login.session.LoginSessions;
+import com.microservicios.login.token.SessionTokenCookie;
+import com.microservicios.login.token.SessionTokens;
+import com.netflix.appinfo.ApplicationInfoManager;
+import com.netflix.appinfo.InstanceInfo;
+import coms.dto.UserDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warm-up de una réplica nueva antes de recibir tráfico (login.warmup.enabled).
+ *
+ * Corre al terminar el arranque (ApplicationReadyEvent). Hasta que termina, el health responde OUT_OF_SERVICE
+ * (503) y la instancia queda en Eureka como STARTING (eureka.instance.initial-status); después pasa a UP.
+ * Fases, en el orden de login.warmup.phases:
+ *
+ * - redis: abre las conexiones compartidas de Lettuce (imperativa y reactiva, con su handshake TLS).
+ * - http: abre login.warmup.http.connections conexiones keep-alive a la vez por cada host de login.warmup.http.urls,
+ *   en el pool del HttpClient y, en el modo reactivo, en el del WebClient.
+ * - callback: login.warmup.iterations logins contra stubs en memoria (ver {@link CallbackStubs}).
+ * - me: login.warmup.requests GET /api/auth/me por loopback con una sesión de warm-up en Redis (y su token
+ *   firmado, si está habilitado), más algún callback con error y /me sin sesión: Tomcat, filtros y controller.
+ *
+ * Todo con un tope de login.warmup.timeout: las fases que no llegan se saltean y la réplica pasa a UP igual.
+ * Una fase que falla (Redis o una dependencia caída) no frena el arranque. Cada fase se mide en
+ * login.warmup.phase{phase,outcome} y el total en login.warmup.
+ */
+public class WarmUp implements HealthIndicator, ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarmUp.class);
+
+    public static final String REDIS = "redis";
+    public static final String HTTP = "http";
+    public static final String CALLBACK = "callback";
+    public static final String ME = "me";
+
+    private static final int REDIS_PINGS = 20;
+    // Nombre de la cookie de Spring Session (ver SessionConfig)
+    private static final String SESSION_COOKIE = "JSESSIONID";
+
+    private enum State { PENDING, RUNNING, DONE }
+
+    private final boolean enabled;
+    private final List<String> phases;
+    private final int iterations;
+    private final int requests;
+    private final int connectionsPerHost;
+    private final List<String> urls;
+    private final Duration timeout;
+
+    private final RedisConnectionFactory redisConnectionFactory;
+    private final RestTemplate restTemplate;
+    private final HttpTransport googleHttpTransport;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final WebClient webClient;
+    private final SessionRepository<Session> sessionRepository;
+    private final LoginSessions loginSessions;
+    private final JsonFactory jsonFactory;
+    private final ObjectMapper objectMapper;
+    private final SessionTokens sessionTokens;
+    private final RateLimits rateLimits;
+    private final ApplicationInfoManager applicationInfoManager;
+    private final MeterRegistry meterRegistry;
+
+    // Usuario y valor del header de los requests de warm-up: exentos del rate limit sólo mientras dura
+    private final String email = "warmup-" + UUID.randomUUID().toString().substring(0, 8) + "@mobydigital.com";
+    private final String requestKey = UUID.randomUUID().toString();
+
+    private volatile State state = State.PENDING;
+    private volatile String phase;
+    private final Map<String, Long> durations = new LinkedHashMap<>();
+
+    /**
+     * @param webClient              cliente del modo reactivo (null en modo servlet)
+     * @param sessionTokens          null con auth.token.enabled=false
+     * @param rateLimits             null con login.rate-limit.enabled=false
+     * @param applicationInfoManager null con eureka.client.enabled=false
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public WarmUp(boolean enabled, List<String> phases, int iterations, int requests, int connectionsPerHost,
+                  List<String> urls, Duration timeout, RedisConnectionFactory redisConnectionFactory,
+                  RestTemplate restTemplate, HttpTransport googleHttpTransport,
+                  PoolingHttpClientConnectionManager connectionManager,
+                  WebClient webClient, SessionRepository<? extends Session> sessionRepository, LoginSessions loginSessions,
+                  JsonFactory jsonFactory, ObjectMapper objectMapper, SessionTokens sessionTokens, RateLimits rateLimits,
+                  ApplicationInfoManager applicationInfoManager, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.phases = phases;
+        this.iterations = iterations;
+        this.requests = requests;
+        this.connectionsPerHost = connectionsPerHost;
+        this.urls = urls;
+        this.timeout = timeout;
+        this.redisConnectionFactory = redisConnectionFactory;
+        this.restTemplate = restTemplate;
+        this.googleHttpTransport = googleHttpTransport;
+        this.connectionManager = connectionManager;
+        this.webClient = webClient;
+        // Sólo se crea, se guarda y se borra la sesión de warm-up
+        this.sessionRepository = (SessionRepository) sessionRepository;
+        this.loginSessions = loginSessions;
+        this.jsonFactory = jsonFactory;
+        this.objectMapper = objectMapper;
+        this.sessionTokens = sessionTokens;
+        this.rateLimits = rateLimits;
+        this.applicationInfoManager = applicationInfoManager;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Health health() {
+        if (state == State.DONE) {
+            synchronized (durations) {
+                return Health.up().withDetail("durationsMs", new LinkedHashMap<>(durations)).build();
+            }
+        }
+        Health.Builder health = Health.outOfService().withDetail("state", state.name().toLowerCase());
+        String current = phase;
+        return current != null ? health.withDetail("phase", current).build() : health.build();
+    }
+
+    /**
+     * Corre en el hilo del arranque: Spring publica el readiness ACCEPTING_TRAFFIC recién cuando termina.
+     */
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (state != State.PENDING) {
+            return;
+        }
+        int port = event.getApplicationContext() instanceof WebServerApplicationContext web
+                ? web.getWebServer().getPort() : -1;
+        run(port);
+    }
+
+    void run(int port) {
+        if (!enabled) {
+            ready();
+            return;
+        }
+        state = State.RUNNING;
+        long start = System.nanoTime();
+        long deadline = start + timeout.toNanos();
+        if (rateLimits != null) {
+            rateLimits.exempt(email);
+            rateLimits.exempt(requestKey);
+        }
+        try {
+            for (String name : phases) {
+                if (System.nanoTime() >= deadline) {
+                    logger.warn("Warm-up: se cumplió el tope de {}s, no corre la fase {}", timeout.toSeconds(), name);
+                    continue;
+                }
+                runPhase(name, port, deadline);
+            }
+        } finally {
+            if (rateLimits != null) {
+                rateLimits.removeExemption(email);
+                rateLimits.removeExemption(requestKey);
+            }
+            long elapsed = System.nanoTime() - start;
+            Timer.builder("login.warmup")
+                    .description("Warm-up completo de la réplica, antes de pasar a UP")
+                    .register(meterRegistry)
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            synchronized (durations) {
+                logger.info("Warm-up terminado en {}ms: {}", TimeUnit.NANOSECONDS.toMillis(elapsed), durations);
+            }
+            ready();
+        }
+    }
+
+    private void runPhase(String name, int port, long deadline) {
+        phase = name;
+        long start = System.nanoTime();
+        String outcome = "success";
+        try {
+            switch (name) {
+                case REDIS -> redis(deadline);
+                case HTTP -> http(deadline);
+                case CALLBACK -> callback(deadline);
+                case ME -> me(port, deadline);
+                default -> throw new IllegalArgumentException("Fase de warm-up desconocida: " + name);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            outcome = "error";
+        } catch (Exception e) {
+            outcome = "error";
+            logger.warn("Warm-up: falló la fase {}: {}", name, e.toString());
+        }
+        long elapsed = System.nanoTime() - start;
+        Timer.builder("login.warmup.phase").tag("phase", name).tag("outcome", outcome)
+                .description("Duración de cada fase del warm-up")
+                .register(meterRegistry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        synchronized (durations) {
+            durations.put(name, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+    }
+
+    private void ready() {
+        phase = null;
+        state = State.DONE;
+        if (applicationInfoManager != null) {
+            applicationInfoManager.setInstanceStatus(InstanceInfo.InstanceStatus.UP);
+        }
+    }
+
+    private void redis(long deadline) {
+        RedisConnection connection = redisConnectionFactory.getConnection();
+        try {
+            for (int i = 0; i < REDIS_PINGS; i++) {
+                connection.ping();
+            }
+        } finally {
+            connection.close();
+        }
+        // El modo reactivo y el cache de perfiles usan la otra conexión compartida
+        if (redisConnectionFactory instanceof ReactiveRedisConnectionFactory reactiveFactory) {
+            ReactiveRedisConnection reactive = reactiveFactory.getReactiveConnection();
+            try {
+                Flux.range(0, REDIS_PINGS).concatMap(i -> reactive.ping()).blockLast(remaining(deadline));
+            } finally {
+                reactive.close();
+            }
+        }
+    }
+
+    /**
+     * Requests simultáneos por host: con el pool vacío cada uno abre (y deja abierta) su propia conexión.
+     * Van por el RestTemplate y el transporte de Google, los mismos clientes del login, y no sólo por el pool.
+     */
+    private void http(long deadline) throws Exception {
+        Set<URI> origins = new LinkedHashSet<>();
+        for (String url : urls) {
+            if (url != null && !url.isBlank()) {
+                URI uri = URI.create(url.trim());
+                origins.add(URI.create(uri.getScheme() + "://" + uri.getAuthority() + "/"));
+            }
+        }
+        if (origins.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(origins.size() * (connectionsPerHost + 1), r -> {
+            Thread t = new Thread(r, "warmup-http");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<?>> results = new ArrayList<>();
+            for (URI origin : origins) {
+                for (int i = 0; i < connectionsPerHost; i++) {
+                    results.add(executor.submit(() -> {
+                        go.await();
+                        // Cualquier respuesta sirve: la conexión ya quedó abierta y vuelve al pool
+                        try {
+                            return restTemplate.exchange(origin, HttpMethod.HEAD, null, Void.class).getStatusCode().value();
+                        } catch (RestClientResponseException e) {
+                            return e.getStatusCode().value();
+                        }
+                    }));
+                }
+                results.add(executor.submit(() -> {
+                    go.await();
+                    googleHttpTransport.createRequestFactory()
+                            .buildHeadRequest(new GenericUrl(origin))
+                            .setThrowExceptionOnExecuteError(false)
+                            .execute()
+                            .disconnect();
+                    return null;
+                }));
+            }
+            go.countDown();
+            int failed = 0;
+            for (Future<?> result : results) {
+                try {
+                    result.get(remaining(deadline).toNanos(), TimeUnit.NANOSECONDS);
+                } catch (ExecutionException e) {
+                    failed++;
+                }
+            }
+            logger.info("Warm-up: {} conexiones HTTP abiertas ({} fallidas) a {}",
+                    connectionManager.getTotalStats().getAvailable(), failed, origins);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (webClient != null) {
+            Flux.fromIterable(origins)
+                    .flatMap(origin -> Flux.range(0, connectionsPerHost)
+                            .flatMap(i -> webClient.head().uri(origin)
+                                    .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()))
+                                    .onErrorResume(e -> Mono.empty())))
+                    .blockLast(remaining(deadline));
+        }
+    }
+
+    private void callback(long deadline) throws Exception {
+        try (CallbackStubs stubs = new CallbackStubs(jsonFactory, objectMapper, sessionTokens, email)) {
+            for (int i = 0; i < iterations && System.nanoTime() < deadline; i++) {
+                stubs.login();
+            }
+        }
+    }
+
+    private void me(int port, long deadline) throws Exception {
+        if (port <= 0) {
+            logger.info("Warm-up: sin servidor web escuchando, no corre la fase {}", ME);
+            return;
+        }
+        UserDTO user = new UserDTO();
+        user.setEmail(email);
+        user.setName("Warm Up");
+        Session session = sessionRepository.createSession();
+        loginSessions.write(session, LoginSession.of(user, "ya29.warmup", null, null));
+        sessionRepository.save(session);
+        try {
+            HttpClient client = HttpClient.newBuilder()
+                    .followRedirects(HttpClient.Redirect.NEVER)
+                    .connectTimeout(Duration.ofSeconds(2))
+                    .build();
+            String base = "http://127.0.0.1:" + port + "/api/auth";
+            String sessionCookie = SESSION_COOKIE + "="
+                    + Base64.getEncoder().encodeToString(session.getId().getBytes(StandardCharsets.UTF_8));
+            String token = null;
+            for (int i = 0; i < requests && System.nanoTime() < deadline; i++) {
+                // Con el token firmado (si el primer /me lo emitió) se alterna el camino sin Redis
+                String cookie = token != null && i % 2 == 1
+                        ? sessionCookie + "; " + SessionTokenCookie.NAME + "=" + token : sessionCookie;
+                HttpResponse<Void> me = client.send(request(base + "/me").header("Cookie", cookie).build(),
+                        HttpResponse.BodyHandlers.discarding());
+                if (me.statusCode() != 200) {
+                    throw new IllegalStateException("/me respondió " + me.statusCode());
+                }
+                if (token == null) {
+                    token = tokenCookie(me);
+                }
+                if (i % 50 == 0) {
+                    // Callback que Google rechazó (400, no sale a la red) y /me sin sesión (403)
+                    client.send(request(base + "/google/callback?code=warmup&error=access_denied").build(),
+                            HttpResponse.BodyHandlers.discarding());
+                    client.send(request(base + "/me").build(), HttpResponse.BodyHandlers.discarding());
+                }
+            }
+        } finally {
+            sessionRepository.deleteById(session.getId());
+        }
+    }
+
+    private HttpRequest.Builder request(String url) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(5))
+                .header(RateLimitFilter.WARMUP_HEADER, requestKey);
+    }
+
+    private static String tokenCookie(HttpResponse<?> response) {
+        for (String header : response.headers().allValues("Set-Cookie")) {
+            if (header.startsWith(SessionTokenCookie.NAME + "=")) {
+                int end = header.indexOf(';');
+                return header.substring(SessionTokenCookie.NAME.length() + 1, end < 0 ? header.length() : end);
+            }
+        }
+        return null;
+    }
+
+    private static Duration remaining(long deadline) {
+        return Duration.ofNanos(Math.max(deadline - System.nanoTime(), 1));
+    }
+}
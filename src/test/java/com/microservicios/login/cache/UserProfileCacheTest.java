@@ -0,0 +1,44 @@
+package com.microservicios.login.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import coms.dto.UserDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserProfileCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final UserProfileCache cache = new UserProfileCache(100, Duration.ofMinutes(10), Duration.ofHours(1),
+            Duration.ofSeconds(30), null, null, new ObjectMapper(), registry);
+
+    @Test
+    void devuelveElUsuarioCacheadoSinImportarMayusculas() {
+        UserDTO user = new UserDTO();
+        user.setEmail("ana@mobydigital.com");
+        cache.put("Ana@MobyDigital.com", user);
+
+        assertEquals("ana@mobydigital.com", cache.get("ana@mobydigital.com").user().getEmail());
+        assertNull(cache.get("otro@mobydigital.com"));
+        assertEquals(1, registry.get("cache.gets").tag("result", "hit").functionCounter().count());
+        assertEquals(1, registry.get("cache.gets").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void laMigracionReemplazaEl404Cacheado() {
+        cache.putNotFound("nuevo@mobydigital.com");
+        assertTrue(cache.get("nuevo@mobydigital.com").isNotFound());
+
+        UserDTO migrated = new UserDTO();
+        migrated.setEmail("nuevo@mobydigital.com");
+        cache.put("nuevo@mobydigital.com", migrated);
+
+        assertEquals(migrated, cache.get("nuevo@mobydigital.com").user());
+        assertEquals(1, registry.counter("login.user.cache.negative.hits").count());
+    }
+}
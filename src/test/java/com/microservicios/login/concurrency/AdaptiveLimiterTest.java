@@ -0,0 +1,81 @@
+package com.microservicios.login.concurrency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveLimiterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void rechazaEnElActoConElLimiteLleno() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 2, 1, 10, Duration.ofSeconds(1), 0.5, registry);
+        AdaptiveLimiter.Permit first = limiter.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(limiter.tryAcquire());
+        assertNull(limiter.tryAcquire());
+        assertEquals(1, registry.counter("login.limiter.rejected", "name", "test").count());
+
+        first.success();
+        assertNotNull(limiter.tryAcquire());
+    }
+
+    @Test
+    void bajaConErroresYSubeConRespuestasRapidas() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 8, 2, 10, Duration.ofSeconds(1), 0.5, registry);
+        limiter.tryAcquire().dropped();
+        assertEquals(4, limiter.getLimit());
+        limiter.tryAcquire().dropped();
+        limiter.tryAcquire().dropped();
+        assertEquals(2, limiter.getLimit());
+        assertEquals(3, registry.counter("login.limiter.dropped", "name", "test").count());
+
+        // Con el límite en uso, cada respuesta rápida lo sube de a uno
+        for (int i = 0; i < 20; i++) {
+            List<AdaptiveLimiter.Permit> permits = new ArrayList<>();
+            AdaptiveLimiter.Permit permit;
+            while ((permit = limiter.tryAcquire()) != null) {
+                permits.add(permit);
+            }
+            permits.forEach(AdaptiveLimiter.Permit::success);
+        }
+        assertEquals(10, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void noCreceSinUsoYElBulkheadNoCambia() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 8, 2, 20, Duration.ofSeconds(1), 0.5, registry);
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire().success();
+        }
+        assertEquals(8, limiter.getLimit());
+
+        AdaptiveLimiter bulkhead = AdaptiveLimiter.fixed("session", 3, registry);
+        bulkhead.tryAcquire().dropped();
+        AdaptiveLimiter.Permit permit = bulkhead.tryAcquire();
+        permit.success();
+        permit.success();
+        assertEquals(3, bulkhead.getLimit());
+        assertEquals(0, bulkhead.getInFlight());
+    }
+
+    @Test
+    void unaRespuestaLentaCuentaComoSobrecarga() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 8, 2, 10, Duration.ofMillis(20), 0.5, registry);
+        AdaptiveLimiter.Permit permit = limiter.tryAcquire();
+        Thread.sleep(40);
+        permit.success();
+        assertEquals(4, limiter.getLimit());
+        assertTrue(registry.find("login.limiter.limit").tag("name", "test").gauge().value() == 4);
+    }
+}
@@ -0,0 +1,125 @@
+package com.microservicios.login.concurrency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HedgedRequestTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void unHedgeQueFallaNoCortaAlPrimerIntento() throws Exception {
+        CompletableFuture<String> result = hedge(executor).submit(attempts(
+                () -> sleepAndReturn(200, "primero"),
+                () -> {
+                    throw new IllegalStateException("503 en el hedge");
+                }));
+
+        assertEquals("primero", result.get(2, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void siElPrimerIntentoFallaGanaElHedge() throws Exception {
+        CompletableFuture<String> result = hedge(executor).submit(attempts(
+                () -> {
+                    sleepAndReturn(100, null);
+                    throw new IllegalStateException("conexión cortada");
+                },
+                () -> sleepAndReturn(200, "hedge")));
+
+        assertEquals("hedge", result.get(2, TimeUnit.SECONDS));
+        assertEquals(1, registry.counter("login.hedge.sent", "operation", "test").count());
+    }
+
+    @Test
+    void fallaCuandoFallanTodosConElErrorDelPrimero() {
+        IllegalStateException primary = new IllegalStateException("primero");
+        CompletableFuture<String> result = hedge(executor).submit(attempts(
+                () -> {
+                    sleepAndReturn(100, null);
+                    throw primary;
+                },
+                () -> {
+                    throw new IllegalStateException("hedge");
+                }));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(2, TimeUnit.SECONDS));
+        assertSame(primary, e.getCause());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void unErrorAntesDelDelayNoLanzaElHedge() throws Exception {
+        CompletableFuture<String> result = hedge(executor).submit(attempts(
+                () -> {
+                    throw new IllegalStateException("400");
+                },
+                () -> "hedge"));
+
+        assertThrows(ExecutionException.class, () -> result.get(2, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void sinHilosParaElHedgeSigueElPrimerIntento() throws Exception {
+        // Acepta el primer intento y rechaza todo lo demás, como un pool lleno
+        AtomicInteger accepted = new AtomicInteger();
+        Executor full = command -> {
+            if (accepted.getAndIncrement() > 0) {
+                throw new RejectedExecutionException("pool lleno");
+            }
+            executor.execute(command);
+        };
+
+        CompletableFuture<String> result = hedge(full).submit(attempts(() -> sleepAndReturn(150, "primero"), () -> "hedge"));
+
+        assertEquals("primero", result.get(2, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        assertEquals(2, accepted.get());
+    }
+
+    private HedgedRequest hedge(Executor executor) {
+        return new HedgedRequest(executor, registry, "test", 0.95, Duration.ofMillis(50), Duration.ofMillis(10));
+    }
+
+    /**
+     * El primer llamado corre el primer intento y el segundo el hedge.
+     */
+    private Supplier<String> attempts(Supplier<String> primary, Supplier<String> hedge) {
+        return () -> calls.getAndIncrement() == 0 ? primary.get() : hedge.get();
+    }
+
+    private static String sleepAndReturn(long millis, String value) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,34 @@
+package com.microservicios.login.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Con lazy-initialization (perfil faststart) el camino del login se sigue creando al arrancar.
+ */
+@SpringBootTest(properties = {"spring.main.lazy-initialization=true", "login.warmup.enabled=false",
+        "eureka.client.enabled=false"})
+class LazyInitializationConfigTest {
+
+    @Autowired
+    private ConfigurableListableBeanFactory beanFactory;
+
+    @Test
+    void losBeansDelLoginNoSonLazy() {
+        for (String bean : new String[]{"googleSigningKeys", "googleTokenVerifier", "googleTokenBroker",
+                "outboundConnectionManager", "loginController"}) {
+            assertFalse(beanFactory.getBeanDefinition(bean).isLazyInit(), bean);
+            assertTrue(beanFactory.containsSingleton(bean), bean);
+        }
+        // Sus dependencias se crean con ellos
+        assertTrue(beanFactory.containsSingleton("googleHttpTransport"));
+        assertTrue(beanFactory.containsSingleton("outboundHttpClient"));
+        // Lo que el login no usa sigue diferido
+        assertTrue(beanFactory.getBeanDefinition("healthEndpoint").isLazyInit());
+    }
+}
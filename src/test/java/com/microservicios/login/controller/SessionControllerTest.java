@@ -0,0 +1,156 @@
+package com.microservicios.login.controller;
+
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.microservicios.login.google.GoogleTokenBroker;
+import com.microservicios.login.redis.FakeRedisServer;
+import com.microservicios.login.session.LoginSession;
+import com.microservicios.login.session.LoginSessions;
+import com.microservicios.login.session.SessionIndex;
+import com.microservicios.login.token.SessionTokens;
+import coms.dto.UserDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Endpoints de sesiones con el índice sobre {@link FakeRedisServer}: las del usuario logueado y las de
+ * administración con su clave.
+ */
+class SessionControllerTest {
+
+    private static final String EMAIL = "ana@mobydigital.com";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final FakeRedisServer server = new FakeRedisServer();
+    private final LettuceConnectionFactory connectionFactory = server.connectionFactory();
+    private final StringRedisTemplate redis = new StringRedisTemplate(connectionFactory);
+    private final SessionIndex index = new SessionIndex(redis, Duration.ofDays(7), Clock.systemUTC(), registry);
+    private final GoogleTokenBroker tokenBroker = new GoogleTokenBroker(new NetHttpTransport(), GsonFactory.getDefaultInstance(),
+            "http://127.0.0.1:9/token", "client", "secret", null, null, Duration.ofMinutes(5), Duration.ofHours(1), 100, 1,
+            Duration.ofSeconds(10), Duration.ofSeconds(5), Clock.systemUTC(), registry);
+    private final LoginSessions loginSessions = new LoginSessions(true);
+    private final SessionController controller = new SessionController(index, tokenBroker, loginSessions, null, null);
+    private final MockMvc mvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+    SessionControllerTest() throws IOException {
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        tokenBroker.close();
+        connectionFactory.destroy();
+        server.close();
+    }
+
+    @Test
+    void sinClaveDeAdministracionConfiguradaLosEndpointsNoExisten() throws Exception {
+        mvc.perform(get("/api/auth/admin/sessions").param("email", EMAIL).header("X-Admin-Key", "cualquiera"))
+                .andExpect(status().isNotFound());
+        mvc.perform(delete("/api/auth/admin/sessions").param("email", EMAIL))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void conClaveDeAdministracionExigeElHeader() throws Exception {
+        ReflectionTestUtils.setField(controller, "adminKey", "clave-admin");
+        login("s1");
+        login("s2");
+
+        mvc.perform(get("/api/auth/admin/sessions").param("email", EMAIL))
+                .andExpect(status().isForbidden());
+        mvc.perform(delete("/api/auth/admin/sessions").param("email", EMAIL).header("X-Admin-Key", "clave-otra"))
+                .andExpect(status().isForbidden());
+        assertEquals(List.of("s1", "s2"), index.sessionIds(EMAIL));
+
+        mvc.perform(get("/api/auth/admin/sessions").param("email", EMAIL).header("X-Admin-Key", "clave-admin"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2));
+        mvc.perform(delete("/api/auth/admin/sessions").param("email", EMAIL).header("X-Admin-Key", "clave-admin"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.revoked").value(2));
+        assertEquals(List.of(), index.sessionIds(EMAIL));
+    }
+
+    @Test
+    void elUsuarioListaYCierraSusSesiones() throws Exception {
+        MockHttpSession current = login("actual");
+        login("otra");
+
+        mvc.perform(get("/api/auth/sessions")).andExpect(status().isForbidden());
+        mvc.perform(get("/api/auth/sessions").session(current))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(SessionTokens.sessionHash("actual")))
+                .andExpect(jsonPath("$[0].current").value(true))
+                .andExpect(jsonPath("$[1].current").value(false));
+
+        mvc.perform(delete("/api/auth/sessions/{id}", "no-existe").session(current))
+                .andExpect(status().isNotFound());
+        mvc.perform(delete("/api/auth/sessions/{id}", SessionTokens.sessionHash("otra")).session(current))
+                .andExpect(status().isOk());
+        assertEquals(List.of("actual"), index.sessionIds(EMAIL));
+
+        mvc.perform(delete("/api/auth/sessions").session(current))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.revoked").value(1));
+        assertTrue(current.isInvalid());
+        assertEquals(List.of(), index.sessionIds(EMAIL));
+    }
+
+    @Test
+    void elLogoutDeUnDispositivoNoCortaElRefreshDeLasOtrasSesiones() throws Exception {
+        LoginController loginController = new LoginController(null, null, tokenBroker, null, loginSessions, index,
+                null, null, null);
+        MockMvc loginMvc = MockMvcBuilders.standaloneSetup(loginController).build();
+        MockHttpSession laptop = login("laptop");
+        MockHttpSession phone = login("celular");
+        tokenBroker.getAccessToken(EMAIL, null,
+                new GoogleTokenBroker.BrokeredToken("ya29.a", Instant.now().plus(Duration.ofHours(1))));
+
+        loginMvc.perform(post("/api/auth/logout").session(laptop)).andExpect(status().isOk());
+        assertEquals(List.of("celular"), index.sessionIds(EMAIL));
+        assertEquals(1, registry.get("login.google.token.tracked").gauge().value());
+
+        loginMvc.perform(post("/api/auth/logout").session(phone)).andExpect(status().isOk());
+        assertEquals(List.of(), index.sessionIds(EMAIL));
+        assertEquals(0, registry.get("login.google.token.tracked").gauge().value());
+    }
+
+    /**
+     * Sesión de Ana guardada e indexada como la deja el callback.
+     */
+    private MockHttpSession login(String sessionId) throws InterruptedException {
+        UserDTO user = new UserDTO();
+        user.setEmail(EMAIL);
+        MockHttpSession session = new MockHttpSession(null, sessionId);
+        loginSessions.write(session, new LoginSession(user, "ya29.a", null, null));
+        long now = System.currentTimeMillis();
+        redis.opsForHash().putAll("spring:session:sessions:" + sessionId, Map.of(
+                "creationTime", Long.toString(now), "lastAccessedTime", Long.toString(now), "maxInactiveInterval", "3600"));
+        index.add(EMAIL, sessionId);
+        // Score distinto para que el orden del listado sea el de los logins
+        Thread.sleep(2);
+        return session;
+    }
+}
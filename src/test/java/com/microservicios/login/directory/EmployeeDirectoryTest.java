@@ -0,0 +1,177 @@
+package com.microservicios.login.directory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import coms.dto.UserDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Carga paginada y deltas contra un listado de usuarios local.
+ */
+class EmployeeDirectoryTest {
+
+    /** mail -> [nombre, modificado] */
+    private final Map<String, Object[]> users = new ConcurrentHashMap<>();
+    private final List<String> queries = new ArrayList<>();
+    private volatile Runnable beforeSecondPage = () -> { };
+    private HttpServer userService;
+    private SimpleMeterRegistry registry;
+    private EmployeeDirectory directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (int i = 0; i < 25; i++) {
+            users.put("usuario" + i + "@mobydigital.com", new Object[]{"Usuario " + i, Instant.parse("2026-01-01T00:00:00Z")});
+        }
+        userService = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        userService.createContext("/users", this::list);
+        userService.start();
+
+        registry = new SimpleMeterRegistry();
+        directory = new EmployeeDirectory(new RestTemplate(),
+                "http://127.0.0.1:" + userService.getAddress().getPort() + "/users", 10,
+                Duration.ofMinutes(1), Duration.ofHours(6), Duration.ofMinutes(1), Clock.systemUTC(), registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        directory.close();
+        userService.stop(0);
+    }
+
+    @Test
+    void cargaTodasLasPaginasAntesDeResponder() {
+        assertNull(directory.find("usuario3@mobydigital.com"));
+        assertFalse(directory.isLoaded());
+
+        directory.sync(true);
+
+        assertEquals(3, queries.size());
+        assertEquals(25, directory.size());
+        UserDTO user = directory.find("Usuario3@MobyDigital.com ");
+        assertEquals("Usuario 3", user.getName());
+        assertEquals("usuario3@mobydigital.com", user.getEmail());
+        assertNull(directory.find("nuevo@mobydigital.com"));
+        assertEquals(1, registry.counter("login.directory.lookups", "result", "hit").count());
+        assertEquals(1, registry.counter("login.directory.lookups", "result", "miss").count());
+        assertEquals(25, registry.get("login.directory.size").gauge().value());
+        assertTrue(registry.get("login.directory.memory").gauge().value() > 25 * 100);
+        assertTrue(registry.get("login.directory.sync.lag").gauge().value() < 5);
+    }
+
+    @Test
+    void elDeltaTraeSoloLosModificados() {
+        directory.sync(true);
+        queries.clear();
+        users.put("usuario7@mobydigital.com", new Object[]{"Usuaria Siete", Instant.now()});
+        users.put("nueva@mobydigital.com", new Object[]{"Nueva", Instant.now()});
+
+        directory.sync(false);
+
+        assertEquals(1, queries.size());
+        assertTrue(queries.get(0).contains("modifiedSince="));
+        assertEquals(26, directory.size());
+        assertEquals("Usuaria Siete", directory.find("usuario7@mobydigital.com").getName());
+        assertEquals("Nueva", directory.find("nueva@mobydigital.com").getName());
+    }
+
+    @Test
+    void laRecargaCompletaSacaALasBajas() {
+        directory.sync(true);
+        directory.put("migrado@mobydigital.com", user("migrado@mobydigital.com", "Migrado"));
+        assertEquals(26, directory.size());
+        users.remove("usuario0@mobydigital.com");
+
+        directory.sync(true);
+
+        assertEquals(24, directory.size());
+        assertNull(directory.find("usuario0@mobydigital.com"));
+    }
+
+    @Test
+    void noPierdeLosUsuariosAgregadosDuranteUnaRecargaCompleta() {
+        directory.sync(true);
+        // Un login migra un usuario nuevo mientras la recarga va por la segunda página
+        beforeSecondPage = () -> directory.put("migrado@mobydigital.com", user("migrado@mobydigital.com", "Migrado"));
+
+        directory.sync(true);
+
+        assertEquals(26, directory.size());
+        assertEquals("Migrado", directory.find("migrado@mobydigital.com").getName());
+        double memory = registry.get("login.directory.memory").gauge().value();
+        directory.put("otro@mobydigital.com", user("otro@mobydigital.com", "Otro"));
+        long added = EmployeeDirectory.estimateBytes("otro@mobydigital.com",
+                new EmployeeDirectory.Employee("otro@mobydigital.com", "Otro", null));
+        assertEquals(memory + added, registry.get("login.directory.memory").gauge().value());
+    }
+
+    private void list(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new LinkedHashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        queries.add(query);
+        if (query.contains("offset=10")) {
+            beforeSecondPage.run();
+        }
+        for (String pair : query.split("&")) {
+            String[] kv = pair.split("=", 2);
+            params.put(kv[0], URLDecoder.decode(kv[1], StandardCharsets.UTF_8));
+        }
+        int size = Integer.parseInt(params.get("pageSize"));
+        int offset = params.containsKey("offset") ? Integer.parseInt(params.get("offset")) : 0;
+        Instant since = params.containsKey("modifiedSince") ? Instant.parse(params.get("modifiedSince")) : Instant.MIN;
+
+        List<String> matching = users.entrySet().stream()
+                .filter(e -> ((Instant) e.getValue()[1]).isAfter(since))
+                .map(Map.Entry::getKey)
+                .sorted()
+                .toList();
+        StringBuilder body = new StringBuilder("{\"records\":[");
+        int end = Math.min(offset + size, matching.size());
+        for (int i = offset; i < end; i++) {
+            String email = matching.get(i);
+            body.append(i > offset ? "," : "")
+                    .append("{\"id\":\"rec").append(i).append("\",\"fields\":{\"Nombre\":\"")
+                    .append(users.get(email)[0]).append("\",\"Correo Moby\":\"").append(email).append("\"}}");
+        }
+        body.append("]");
+        if (end < matching.size()) {
+            body.append(",\"offset\":\"").append(end).append("\"");
+        }
+        body.append("}");
+
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static UserDTO user(String email, String name) {
+        UserDTO user = new UserDTO();
+        user.setEmail(email);
+        user.setName(name);
+        return user;
+    }
+}
@@ -0,0 +1,79 @@
+package com.microservicios.login.google;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.UrlEncodedContent;
+import com.microservicios.login.http.InstrumentedConnectionManager;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ApacheHttpClient5TransportTest {
+
+    @Test
+    void reutilizaLaConexionEntreRequests() throws Exception {
+        Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/certs", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            byte[] body = "{\"keys\":[]}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        InstrumentedConnectionManager manager = new InstrumentedConnectionManager(registry, "test");
+        try (CloseableHttpClient client = HttpClients.custom().setConnectionManager(manager).build()) {
+            ApacheHttpClient5Transport transport = new ApacheHttpClient5Transport(client);
+            GenericUrl url = new GenericUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/certs");
+            for (int i = 0; i < 5; i++) {
+                HttpResponse response = transport.createRequestFactory().buildGetRequest(url).execute();
+                assertEquals("{\"keys\":[]}", response.parseAsString());
+            }
+        } finally {
+            server.stop(0);
+        }
+
+        assertEquals(1, clientPorts.size());
+        assertEquals(5, registry.timer("http.client.pool.wait", "pool", "test", "outcome", "leased").count());
+    }
+
+    @Test
+    void mandaElFormDelTokenEndpoint() throws Exception {
+        Map<String, String> received = new ConcurrentHashMap<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/token", exchange -> {
+            received.put("contentType", exchange.getRequestHeaders().getFirst("Content-Type"));
+            received.put("body", new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            ApacheHttpClient5Transport transport = new ApacheHttpClient5Transport(client);
+            GenericUrl url = new GenericUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/token");
+            UrlEncodedContent form = new UrlEncodedContent(Map.of("grant_type", "refresh_token"));
+            transport.createRequestFactory().buildPostRequest(url, form).execute().disconnect();
+        } finally {
+            server.stop(0);
+        }
+
+        assertEquals("application/x-www-form-urlencoded; charset=UTF-8", received.get("contentType"));
+        assertEquals("grant_type=refresh_token", received.get("body"));
+    }
+}
@@ -0,0 +1,161 @@
+package com.microservicios.login.google;
+
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Refresh de access tokens contra un token endpoint local.
+ */
+class GoogleTokenBrokerTest {
+
+    private static final String EMAIL = "ana@mobydigital.com";
+    private static final String REVOKED = "rt-revocado";
+
+    private final AtomicInteger refreshes = new AtomicInteger();
+    private HttpServer tokenServer;
+    private SimpleMeterRegistry registry;
+    private GoogleTokenBroker broker;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tokenServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        tokenServer.createContext("/token", exchange -> {
+            int n = refreshes.incrementAndGet();
+            sleep(100);
+            boolean revoked = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)
+                    .contains("refresh_token=" + REVOKED);
+            byte[] body = (revoked ? "{\"error\":\"invalid_grant\",\"error_description\":\"Token has been expired or revoked.\"}"
+                    : "{\"access_token\":\"at-" + n + "\",\"expires_in\":3600,\"token_type\":\"Bearer\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(revoked ? 400 : 200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        tokenServer.setExecutor(Executors.newFixedThreadPool(4));
+        tokenServer.start();
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        broker.close();
+        tokenServer.stop(0);
+    }
+
+    @Test
+    void devuelveElTokenDeLaSesionMientrasEsteVigente() throws Exception {
+        broker = broker(Duration.ofMinutes(5));
+        GoogleTokenBroker.BrokeredToken session = new GoogleTokenBroker.BrokeredToken("at-session",
+                Instant.now().plus(Duration.ofMinutes(30)));
+
+        assertEquals("at-session", broker.getAccessToken(EMAIL, "rt", session).accessToken());
+        assertEquals(0, refreshes.get());
+    }
+
+    @Test
+    void unSoloRefreshPorUsuarioConPedidosConcurrentes() throws Exception {
+        broker = broker(Duration.ofMinutes(5));
+        GoogleTokenBroker.BrokeredToken expired = new GoogleTokenBroker.BrokeredToken("at-old",
+                Instant.now().minusSeconds(10));
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<GoogleTokenBroker.BrokeredToken>> results = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                return broker.getAccessToken(EMAIL, "rt", expired);
+            }));
+        }
+        start.countDown();
+        for (Future<GoogleTokenBroker.BrokeredToken> result : results) {
+            assertEquals("at-1", result.get().accessToken());
+        }
+        pool.shutdown();
+
+        assertEquals(1, refreshes.get());
+    }
+
+    @Test
+    void refrescaEnBackgroundAntesDelVencimiento() throws Exception {
+        // El token dura 3600s y se refresca 3599.7s antes: el próximo refresh queda a ~300ms
+        broker = broker(Duration.ofSeconds(3600).minusMillis(300));
+        assertEquals("at-1", broker.getAccessToken(EMAIL, "rt", null).accessToken());
+
+        long deadline = System.currentTimeMillis() + 3000;
+        while (refreshes.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(refreshes.get() >= 2);
+        assertTrue(registry.counter("login.google.token.refreshes", "trigger", "scheduled").count() >= 1);
+    }
+
+    @Test
+    void sinRefreshTokenYConElTokenVencidoHayQueVolverALoguearse() throws Exception {
+        broker = broker(Duration.ofMinutes(5));
+
+        assertNull(broker.getAccessToken(EMAIL, null,
+                new GoogleTokenBroker.BrokeredToken("at-old", Instant.now().minusSeconds(10))));
+        assertEquals(0, refreshes.get());
+    }
+
+    @Test
+    void conElRefreshTokenRevocadoDejaDeSeguirAlUsuario() throws Exception {
+        broker = broker(Duration.ofSeconds(3600).minusMillis(300));
+        GoogleTokenBroker.BrokeredToken session = new GoogleTokenBroker.BrokeredToken("at-session",
+                Instant.now().plusSeconds(3600));
+        assertEquals("at-session", broker.getAccessToken(EMAIL, REVOKED, session).accessToken());
+
+        // El refresh en background recibe invalid_grant: no se reprograma, el usuario deja de seguirse
+        long deadline = System.currentTimeMillis() + 3000;
+        while (registry.counter("login.google.token.refreshes", "trigger", "revoked").count() < 1
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, refreshes.get());
+        assertEquals(0, registry.get("login.google.token.tracked").gauge().value());
+
+        // Pedido con el token vencido: hay que volver a loguearse, no es un error del servicio
+        assertNull(broker.getAccessToken(EMAIL, REVOKED,
+                new GoogleTokenBroker.BrokeredToken("at-old", Instant.now().minusSeconds(10))));
+        assertEquals(2, refreshes.get());
+        assertEquals(2, registry.counter("login.google.token.refreshes", "trigger", "revoked").count());
+    }
+
+    private GoogleTokenBroker broker(Duration refreshAhead) {
+        return new GoogleTokenBroker(new NetHttpTransport(), GsonFactory.getDefaultInstance(),
+                "http://127.0.0.1:" + tokenServer.getAddress().getPort() + "/token", "client", "secret",
+                null, null, refreshAhead, Duration.ofHours(1), 100, 2,
+                Duration.ofSeconds(10), Duration.ofSeconds(5), Clock.systemUTC(), registry);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
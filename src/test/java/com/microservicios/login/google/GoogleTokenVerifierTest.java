@@ -0,0 +1,167 @@
+package com.microservicios.login.google;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.json.webtoken.JsonWebSignature;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Verifica el cacheo de claves contra un JWKS local que rota claves.
+ */
+class GoogleTokenVerifierTest {
+
+    private static final String CLIENT_ID = "test-client";
+
+    private final Map<String, KeyPair> published = new LinkedHashMap<>();
+    private final AtomicInteger fetches = new AtomicInteger();
+    private HttpServer jwksServer;
+    private SimpleMeterRegistry registry;
+    private GoogleSigningKeys signingKeys;
+    private GoogleTokenVerifier verifier;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        published.put("k1", newKeyPair());
+
+        jwksServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        jwksServer.createContext("/certs", exchange -> {
+            fetches.incrementAndGet();
+            byte[] body = jwks().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Cache-Control", "public, max-age=3600");
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        jwksServer.start();
+
+        registry = new SimpleMeterRegistry();
+        signingKeys = new GoogleSigningKeys(new NetHttpTransport(),
+                "http://127.0.0.1:" + jwksServer.getAddress().getPort() + "/certs",
+                Duration.ofMinutes(5), Duration.ofMinutes(10), Clock.systemUTC(), registry);
+        verifier = new GoogleTokenVerifier(new NetHttpTransport(), GsonFactory.getDefaultInstance(),
+                signingKeys, CLIENT_ID);
+    }
+
+    @AfterEach
+    void tearDown() {
+        signingKeys.close();
+        jwksServer.stop(0);
+    }
+
+    @Test
+    void reutilizaLasClavesEntreVerificaciones() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(verifier.verify(sign("k1", "user" + i + "@mobydigital.com")));
+        }
+        assertEquals(1, fetches.get());
+        assertEquals(4, registry.counter("login.google.keys.lookups", "result", "hit").count());
+        assertEquals(1, registry.counter("login.google.keys.lookups", "result", "miss").count());
+    }
+
+    @Test
+    void refetchUnaVezCuandoGoogleRotaLaClave() throws Exception {
+        signingKeys.close();
+        signingKeys = new GoogleSigningKeys(new NetHttpTransport(),
+                "http://127.0.0.1:" + jwksServer.getAddress().getPort() + "/certs",
+                Duration.ofMinutes(5), Duration.ZERO, Clock.systemUTC(), registry);
+        verifier = new GoogleTokenVerifier(new NetHttpTransport(), GsonFactory.getDefaultInstance(),
+                signingKeys, CLIENT_ID);
+        signingKeys.refresh();
+        assertNotNull(verifier.verify(sign("k1", "a@mobydigital.com")));
+
+        // Google publica una clave nueva: el primer token con ese kid fuerza un único refetch
+        published.put("k2", newKeyPair());
+        assertNotNull(verifier.verify(sign("k2", "b@mobydigital.com")));
+        assertNotNull(verifier.verify(sign("k2", "c@mobydigital.com")));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void noRefetcheaEnCadaKidDesconocido() throws Exception {
+        signingKeys.refresh();
+        KeyPair forged = newKeyPair();
+        for (int i = 0; i < 10; i++) {
+            assertNull(verifier.verify(sign("forged", forged, "x@mobydigital.com")));
+        }
+        assertEquals(1, fetches.get());
+        assertEquals(10, registry.counter("login.google.keys.lookups", "result", "miss").count());
+    }
+
+    @Test
+    void leeElMaxAgeDelCacheControl() {
+        assertEquals(Duration.ofSeconds(19845), GoogleSigningKeys.maxAge("public, max-age=19845, must-revalidate, no-transform"));
+        assertEquals(Duration.ofHours(1), GoogleSigningKeys.maxAge(null));
+    }
+
+    private String sign(String kid, String email) throws Exception {
+        return sign(kid, published.get(kid), email);
+    }
+
+    private String sign(String kid, KeyPair keyPair, String email) throws Exception {
+        JsonWebSignature.Header header = new JsonWebSignature.Header();
+        header.setAlgorithm("RS256");
+        header.setKeyId(kid);
+        long now = System.currentTimeMillis() / 1000;
+        GoogleIdToken.Payload payload = new GoogleIdToken.Payload();
+        payload.setIssuer("https://accounts.google.com");
+        payload.setAudience(CLIENT_ID);
+        payload.setIssuedAtTimeSeconds(now);
+        payload.setExpirationTimeSeconds(now + 600);
+        payload.setEmail(email);
+        payload.setEmailVerified(true);
+        return JsonWebSignature.signUsingRsaSha256(keyPair.getPrivate(), GsonFactory.getDefaultInstance(), header, payload);
+    }
+
+    private String jwks() {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        StringBuilder json = new StringBuilder("{\"keys\":[");
+        String sep = "";
+        for (Map.Entry<String, KeyPair> e : published.entrySet()) {
+            RSAPublicKey key = (RSAPublicKey) e.getValue().getPublic();
+            json.append(sep)
+                    .append("{\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\",\"kid\":\"").append(e.getKey())
+                    .append("\",\"n\":\"").append(encoder.encodeToString(unsigned(key.getModulus().toByteArray())))
+                    .append("\",\"e\":\"").append(encoder.encodeToString(unsigned(key.getPublicExponent().toByteArray())))
+                    .append("\"}");
+            sep = ",";
+        }
+        return json.append("]}").toString();
+    }
+
+    private static byte[] unsigned(byte[] bytes) {
+        if (bytes.length > 1 && bytes[0] == 0) {
+            byte[] trimmed = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, trimmed, 0, trimmed.length);
+            return trimmed;
+        }
+        return bytes;
+    }
+
+    private static KeyPair newKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+}
@@ -0,0 +1,54 @@
+package com.microservicios.login.metrics;
+
+import com.microservicios.login.exception.InvalidIdTokenException;
+import com.microservicios.login.exception.LoginTimeoutException;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LoginStagesTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ObservationRegistry observations = ObservationRegistry.create();
+    private final LoginStages stages = new LoginStages(observations);
+
+    LoginStagesTest() {
+        observations.observationConfig().observationHandler(new DefaultMeterObservationHandler(registry));
+    }
+
+    @Test
+    void laEtapaCorreDentroDeSuObservacionYSeEtiquetaConElResultado() {
+        Observation current = stages.observe("lookup", observations::getCurrentObservation,
+                observation -> observation != null ? LoginStages.SUCCESS : LoginStages.NOT_FOUND);
+
+        assertEquals("login lookup", current.getContextView().getContextualName());
+        assertNull(observations.getCurrentObservation());
+        assertEquals(1, count("lookup", LoginStages.SUCCESS));
+    }
+
+    @Test
+    void unIdTokenInvalidoNoCuentaComoErrorDelServicio() {
+        InvalidIdTokenException invalid = new InvalidIdTokenException("firma inválida");
+        assertSame(invalid, assertThrows(InvalidIdTokenException.class, () -> stages.observe("verify", () -> {
+            throw invalid;
+        })));
+        assertThrows(LoginTimeoutException.class, () -> stages.observe("migrate", () -> {
+            throw new LoginTimeoutException("ms-users no responde");
+        }));
+
+        assertEquals(1, count("verify", LoginStages.INVALID_TOKEN));
+        assertEquals(1, count("migrate", LoginStages.TIMEOUT));
+        assertEquals(LoginStages.SERVER_ERROR, LoginStages.outcome(new IllegalStateException()));
+    }
+
+    private long count(String stage, String outcome) {
+        return registry.get(LoginStages.STAGE).tags("stage", stage, "outcome", outcome).timer().count();
+    }
+}
@@ -0,0 +1,172 @@
+package com.microservicios.login.migration;
+
+import com.microservicios.login.exception.MailInvalidoException;
+import com.microservicios.login.redis.FakeRedisServer;
+import com.microservicios.login.session.LoginSessions;
+import coms.dto.UserDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Reintentos, reclamo de pendientes y dead-letter de la cola de migraciones, contra {@link FakeRedisServer}.
+ * El backoff es corto y el tiempo quieto de cada pendiente lo mide el servidor, así que los tests esperan de verdad.
+ */
+class MigrationWorkerTest {
+
+    private static final Duration BACKOFF = Duration.ofMillis(100);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final FakeRedisServer server = new FakeRedisServer();
+    private final LettuceConnectionFactory connectionFactory = server.connectionFactory();
+    private final StringRedisTemplate redis = new StringRedisTemplate(connectionFactory);
+    private final MigrationQueue queue = new MigrationQueue(redis, registry);
+    private final List<MigrationWorker> workers = new ArrayList<>();
+
+    MigrationWorkerTest() throws IOException {
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        workers.forEach(MigrationWorker::close);
+        connectionFactory.destroy();
+        server.close();
+    }
+
+    @Test
+    void reintentaConBackoffHastaQueLaMigracionSaleBien() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        MigrationWorker worker = worker("a", 5, job -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new IllegalStateException("ms-users no responde");
+            }
+            return user(job.email());
+        });
+        worker.poll();
+        queue.enqueue(job("ana@mobydigital.com"));
+
+        worker.poll();
+        assertEquals(1, calls.get());
+        // Dentro del backoff no se reintenta
+        worker.poll();
+        assertEquals(1, calls.get());
+
+        Thread.sleep(BACKOFF.toMillis() + 50);
+        worker.poll();
+        assertEquals(2, calls.get());
+        // El segundo intento espera el doble
+        Thread.sleep(BACKOFF.toMillis() + 50);
+        worker.poll();
+        assertEquals(2, calls.get());
+        Thread.sleep(BACKOFF.toMillis());
+        worker.poll();
+
+        assertEquals(3, calls.get());
+        assertEquals(1, jobs("migrated"));
+        assertEquals(2, jobs("retried"));
+        assertEquals(0, redis.opsForStream().size(MigrationQueue.STREAM_KEY));
+        assertEquals(0, redis.opsForStream().pending(MigrationQueue.STREAM_KEY, MigrationQueue.GROUP).getTotalPendingMessages());
+    }
+
+    @Test
+    void reclamaLosTrabajosDeUnConsumidorCaidoAunqueHayaOtrosEnBackoff() throws InterruptedException {
+        Map<String, Integer> migrated = new ConcurrentHashMap<>();
+        MigrationWorker worker = worker("b", 5, job -> {
+            migrated.merge(job.email(), 1, Integer::sum);
+            return user(job.email());
+        });
+        worker.poll();
+        RecordId first = RecordId.of(queue.enqueue(job("uno@mobydigital.com")));
+        RecordId second = RecordId.of(queue.enqueue(job("dos@mobydigital.com")));
+        queue.enqueue(job("huerfano@mobydigital.com"));
+
+        // Una réplica lee los tres y se cae sin XACK
+        List<MapRecord<String, Object, Object>> read = readAs("muerta", 3);
+        assertEquals(3, read.size());
+        Thread.sleep(BACKOFF.toMillis() + 50);
+        // Los dos primeros los acaba de reclamar otra réplica (segunda entrega: backoff 2x), el tercero es huérfano
+        redis.opsForStream().claim(MigrationQueue.STREAM_KEY, MigrationQueue.GROUP, "viva", Duration.ZERO, first, second);
+
+        worker.poll();
+
+        // batchSize = 2: el huérfano está en la segunda página de pendientes
+        assertEquals(Map.of("huerfano@mobydigital.com", 1), migrated);
+        assertEquals(1, jobs("retried"));
+        assertEquals(2, redis.opsForStream().pending(MigrationQueue.STREAM_KEY, MigrationQueue.GROUP).getTotalPendingMessages());
+        assertEquals(2, redis.opsForStream().size(MigrationQueue.STREAM_KEY));
+    }
+
+    @Test
+    void pasaAlDeadLetterTrasElUltimoIntentoOConUnErrorPermanente() throws InterruptedException {
+        MigrationWorker worker = worker("c", 2, job -> {
+            if (job.email().startsWith("externo")) {
+                throw new MailInvalidoException("El mail no pertenece a la nómina");
+            }
+            throw new IllegalStateException("ms-users no responde");
+        });
+        worker.poll();
+        queue.enqueue(job("ana@mobydigital.com"));
+        queue.enqueue(job("externo@gmail.com"));
+
+        worker.poll();
+        assertEquals(1, jobs("dead"));
+        Thread.sleep(BACKOFF.toMillis() + 50);
+        worker.poll();
+
+        assertEquals(2, jobs("dead"));
+        assertEquals(0, redis.opsForStream().size(MigrationQueue.STREAM_KEY));
+        List<MapRecord<String, Object, Object>> dead = redis.opsForStream().range(MigrationQueue.DEAD_LETTER_KEY, Range.unbounded());
+        assertEquals(List.of("externo@gmail.com", "ana@mobydigital.com"),
+                dead.stream().map(record -> record.getValue().get(MigrationQueue.EMAIL)).toList());
+        assertEquals("1", dead.get(0).getValue().get("attempts"));
+        assertEquals("2", dead.get(1).getValue().get("attempts"));
+        assertEquals("ms-users no responde", dead.get(1).getValue().get("error"));
+    }
+
+    private MigrationWorker worker(String consumerName, int maxAttempts, MigrationWorker.Migration migration) {
+        MigrationWorker worker = new MigrationWorker(redis, migration, null, new LoginSessions(true), null, null, consumerName,
+                2, maxAttempts, BACKOFF, Duration.ofSeconds(1), Duration.ofSeconds(1), Clock.systemUTC(), registry);
+        workers.add(worker);
+        return worker;
+    }
+
+    private List<MapRecord<String, Object, Object>> readAs(String consumerName, int count) {
+        return redis.opsForStream().read(Consumer.from(MigrationQueue.GROUP, consumerName),
+                StreamReadOptions.empty().count(count),
+                StreamOffset.create(MigrationQueue.STREAM_KEY, ReadOffset.lastConsumed()));
+    }
+
+    private double jobs(String outcome) {
+        return registry.counter("login.user.migration.jobs", "outcome", outcome).count();
+    }
+
+    private static MigrationQueue.Job job(String email) {
+        return new MigrationQueue.Job(email, "Ana", "Pérez", null);
+    }
+
+    private static UserDTO user(String email) {
+        UserDTO user = new UserDTO();
+        user.setEmail(email);
+        return user;
+    }
+}
@@ -0,0 +1,60 @@
+package com.microservicios.login.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * IP del rate limit con la configuración de proxies de application.properties, contra el Tomcat embebido.
+ * Los requests llegan desde loopback, que para Tomcat es un proxy interno (como el balanceador en producción).
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"login.warmup.enabled=false", "eureka.client.enabled=false"})
+class RateLimitFilterTest {
+
+    @SpyBean
+    private RateLimits rateLimits;
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void unXForwardedForInventadoPorElClienteNoCambiaLaIp() throws Exception {
+        // El cliente manda una IP distinta en cada request; el proxy agrega la real a la derecha
+        for (int i = 0; i < 3; i++) {
+            me("198.51.100." + i + ", 203.0.113.7");
+        }
+
+        verify(rateLimits, times(3)).checkIp(RateLimits.ME, "203.0.113.7");
+        verify(rateLimits, never()).checkIp(eq(RateLimits.ME), startsWith("198.51.100."));
+    }
+
+    @Test
+    void losProxiesInternosSeSaltean() throws Exception {
+        me("203.0.113.9, 10.1.2.3");
+
+        verify(rateLimits).checkIp(RateLimits.ME, "203.0.113.9");
+        verify(rateLimits, never()).checkIp(anyString(), eq("10.1.2.3"));
+    }
+
+    private void me(String forwardedFor) throws Exception {
+        client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/auth/me"))
+                .header("X-Forwarded-For", forwardedFor)
+                .build(), HttpResponse.BodyHandlers.discarding());
+    }
+}
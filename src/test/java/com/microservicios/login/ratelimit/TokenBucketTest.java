@@ -0,0 +1,123 @@
+package com.microservicios.login.ratelimit;
+
+import com.microservicios.login.redis.FakeRedisServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pre-check local del token bucket con el script Lua corriendo en {@link FakeRedisServer}.
+ */
+class TokenBucketTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final FakeRedisServer server = new FakeRedisServer();
+    private final LettuceConnectionFactory connectionFactory = server.connectionFactory();
+    private final StringRedisTemplate redis = new StringRedisTemplate(connectionFactory);
+
+    TokenBucketTest() throws IOException {
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        connectionFactory.destroy();
+        server.close();
+    }
+
+    @Test
+    void gastaLosTokensTomadosDeRedisSinVolverAConsultar() {
+        TokenBucket bucket = bucket(100, Duration.ofMinutes(1), 10, Duration.ofSeconds(10));
+        for (int i = 0; i < 25; i++) {
+            assertTrue(bucket.tryAcquire("10.0.0.1").allowed());
+        }
+        assertEquals(3, scriptCalls());
+        assertEquals(22, registry.counter("login.ratelimit.checks", "endpoint", "me", "dimension", "ip", "source", "local").count());
+        assertEquals(70, tokens("10.0.0.1"), 1);
+
+        // Otra clave tiene su propio bucket
+        assertTrue(bucket.tryAcquire("10.0.0.2").allowed());
+        assertEquals(4, scriptCalls());
+    }
+
+    @Test
+    void recuerdaElRechazoHastaElRetryAfter() throws InterruptedException {
+        TokenBucket bucket = bucket(4, Duration.ofMillis(400), 4, Duration.ofSeconds(10));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(bucket.tryAcquire("ana@mobydigital.com").allowed());
+        }
+        TokenBucket.Decision denied = bucket.tryAcquire("ana@mobydigital.com");
+        assertFalse(denied.allowed());
+        assertTrue(denied.retryAfterMillis() > 0 && denied.retryAfterMillis() <= 100);
+        assertFalse(bucket.tryAcquire("ana@mobydigital.com").allowed());
+        assertEquals(2, scriptCalls());
+        assertEquals(2, registry.counter("login.ratelimit.denied", "endpoint", "me", "dimension", "ip").count());
+
+        // Vuelve a haber tokens cuando pasa el Retry-After
+        Thread.sleep(denied.retryAfterMillis() + 20);
+        assertTrue(bucket.tryAcquire("ana@mobydigital.com").allowed());
+    }
+
+    @Test
+    void devuelveLoQueNoUsoDelLeaseVencido() throws InterruptedException {
+        TokenBucket replica = bucket(10, Duration.ofHours(1), 5, Duration.ofMillis(50));
+        assertTrue(replica.tryAcquire("10.0.0.1").allowed());
+        assertEquals(5, tokens("10.0.0.1"), 0.01);
+
+        // Vence el lease con 4 sin usar: vuelven al bucket en el próximo round-trip
+        Thread.sleep(60);
+        assertTrue(replica.tryAcquire("10.0.0.1").allowed());
+        assertEquals(4, tokens("10.0.0.1"), 0.01);
+
+        // Otra réplica ve lo devuelto
+        TokenBucket other = bucket(10, Duration.ofHours(1), 4, Duration.ofMillis(50));
+        assertTrue(other.tryAcquire("10.0.0.1").allowed());
+        assertEquals(0, tokens("10.0.0.1"), 0.01);
+    }
+
+    @Test
+    void elLeaseEsLoQueSeRecuperaEnSuDuracion() {
+        assertEquals(2, TokenBucket.leaseSize(120, Duration.ofMinutes(1), Duration.ofSeconds(1)));
+        assertEquals(20, TokenBucket.leaseSize(1200, Duration.ofMinutes(1), Duration.ofSeconds(1)));
+        assertEquals(1, TokenBucket.leaseSize(10, Duration.ofMinutes(5), Duration.ofSeconds(1)));
+        assertEquals(5, TokenBucket.leaseSize(5, Duration.ofSeconds(1), Duration.ofSeconds(10)));
+    }
+
+    @Test
+    void dejaPasarSiRedisFalla() throws IOException {
+        LettuceConnectionFactory down = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", 9));
+        down.afterPropertiesSet();
+        try {
+            TokenBucket bucket = new TokenBucket("me:ip", 1, Duration.ofMinutes(1), 1, Duration.ofSeconds(10),
+                    new StringRedisTemplate(down), Clock.systemUTC(), registry);
+            assertTrue(bucket.tryAcquire("10.0.0.1").allowed());
+            assertTrue(bucket.tryAcquire("10.0.0.1").allowed());
+            assertEquals(2, registry.counter("login.ratelimit.errors", "endpoint", "me", "dimension", "ip").count());
+        } finally {
+            down.destroy();
+        }
+    }
+
+    private TokenBucket bucket(int capacity, Duration period, int leaseSize, Duration leaseTtl) {
+        return new TokenBucket("me:ip", capacity, period, leaseSize, leaseTtl, redis, Clock.systemUTC(), registry);
+    }
+
+    private long scriptCalls() {
+        return server.commandCounts().getOrDefault("EVAL", 0L);
+    }
+
+    private double tokens(String key) {
+        Object tokens = redis.opsForHash().get(TokenBucket.KEY_PREFIX + "me:ip:" + key, "t");
+        return Double.parseDouble((String) tokens);
+    }
+}
@@ -0,0 +1,1120 @@
+package com.microservicios.login.redis;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaString;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redis mínimo en memoria (protocolo RESP2) para los tests y la prueba de carga sin red.
+ *
+ * Implementa sólo los comandos que usan Lettuce, Spring Session (RedisSessionRepository y la versión
+ * reactiva) y las clases del servicio: strings con TTL, hashes, sets, sorted sets, streams con consumer groups,
+ * pub/sub (sin entrega) y EVAL, que corre los scripts Lua del servicio tal cual en un intérprete Lua sobre estos
+ * mismos comandos.
+ * Un comando desconocido responde error, así la prueba falla en lugar de medir algo distinto a producción.
+ */
+public class FakeRedisServer implements Closeable {
+
+    private static final byte[] OK = "+OK\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "fake-redis");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<String, Object> data = new ConcurrentHashMap<>();
+    private final Map<String, Long> expiresAt = new ConcurrentHashMap<>();
+    // Comandos recibidos por nombre, y respuestas enviadas (un flush = un round-trip del cliente)
+    private final Map<String, LongAdder> commandCounts = new ConcurrentHashMap<>();
+    private final LongAdder roundTrips = new LongAdder();
+    // Un solo intérprete para todos los scripts (compilados una vez por texto); se usa bajo el lock del servidor
+    private final Globals lua = lua();
+    private final Map<String, LuaValue> scripts = new HashMap<>();
+
+    public FakeRedisServer() throws IOException {
+        serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        connections.execute(this::acceptLoop);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Conexión de Lettuce a este servidor, ya iniciada (la cierra el test con destroy()).
+     */
+    public LettuceConnectionFactory connectionFactory() {
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(InetAddress.getLoopbackAddress().getHostAddress(), getPort()));
+        factory.afterPropertiesSet();
+        factory.start();
+        return factory;
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * Comandos recibidos hasta ahora, por nombre (SET, HMSET, EVAL...).
+     */
+    public Map<String, Long> commandCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        commandCounts.forEach((name, count) -> counts.put(name, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Round-trips: un pipeline de varios comandos cuenta uno.
+     */
+    public long roundTrips() {
+        return roundTrips.sum();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             InputStream in = new BufferedInputStream(socket.getInputStream());
+             OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+            while (true) {
+                List<byte[]> command = readCommand(in);
+                if (command == null) {
+                    return;
+                }
+                out.write(execute(command));
+                // Lettuce hace pipelining: sólo vaciamos el buffer cuando no hay más comandos esperando
+                if (in.available() == 0) {
+                    out.flush();
+                    roundTrips.increment();
+                }
+            }
+        } catch (IOException e) {
+            // conexión cerrada por el cliente
+        }
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            return null;
+        }
+        if (type != '*') {
+            throw new IOException("Se esperaba un array RESP");
+        }
+        int count = Integer.parseInt(readLine(in));
+        List<byte[]> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Se esperaba un bulk string RESP");
+            }
+            int length = Integer.parseInt(readLine(in));
+            byte[] arg = in.readNBytes(length);
+            in.readNBytes(2);
+            args.add(arg);
+        }
+        return args;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) {
+                throw new IOException("Conexión cerrada");
+            }
+            line.append((char) c);
+        }
+        in.read();
+        return line.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] execute(List<byte[]> command) {
+        String name = str(command.get(0)).toUpperCase(Locale.ROOT);
+        commandCounts.computeIfAbsent(name, k -> new LongAdder()).increment();
+        try {
+            switch (name) {
+                case "PING":
+                    return simple("PONG");
+                case "HELLO":
+                    // Lettuce vuelve a RESP2
+                    return error("ERR unknown command 'HELLO'");
+                case "CLIENT":
+                case "SELECT":
+                case "FLUSHALL":
+                case "FLUSHDB":
+                    if (name.startsWith("FLUSH")) {
+                        data.clear();
+                        expiresAt.clear();
+                    }
+                    return OK;
+                case "INFO":
+                    return bulk("# Server\r\nredis_version:7.2.0\r\n".getBytes(StandardCharsets.US_ASCII));
+                case "DBSIZE":
+                    return integer(data.size());
+                case "GET": {
+                    Object value = live(str(command.get(1)));
+                    return value == null ? NULL : bulk((byte[]) value);
+                }
+                case "SET":
+                    return set(command);
+                case "SETEX":
+                case "PSETEX": {
+                    long ttl = Long.parseLong(str(command.get(2)));
+                    return set(List.of(command.get(0), command.get(1), command.get(3),
+                            (name.equals("SETEX") ? "EX" : "PX").getBytes(StandardCharsets.US_ASCII),
+                            Long.toString(ttl).getBytes(StandardCharsets.US_ASCII)));
+                }
+                case "DEL":
+                case "UNLINK": {
+                    int removed = 0;
+                    for (int i = 1; i < command.size(); i++) {
+                        removed += remove(str(command.get(i))) ? 1 : 0;
+                    }
+                    return integer(removed);
+                }
+                case "EXISTS": {
+                    int found = 0;
+                    for (int i = 1; i < command.size(); i++) {
+                        found += live(str(command.get(i))) != null ? 1 : 0;
+                    }
+                    return integer(found);
+                }
+                case "EXPIRE":
+                    return expire(str(command.get(1)), Long.parseLong(str(command.get(2))) * 1000);
+                case "PEXPIRE":
+                    return expire(str(command.get(1)), Long.parseLong(str(command.get(2))));
+                case "EXPIREAT":
+                    return expire(str(command.get(1)), Long.parseLong(str(command.get(2))) * 1000 - System.currentTimeMillis());
+                case "PEXPIREAT":
+                    return expire(str(command.get(1)), Long.parseLong(str(command.get(2))) - System.currentTimeMillis());
+                case "PERSIST":
+                    return integer(expiresAt.remove(str(command.get(1))) != null ? 1 : 0);
+                case "TTL":
+                case "PTTL": {
+                    String key = str(command.get(1));
+                    if (live(key) == null) {
+                        return integer(-2);
+                    }
+                    Long at = expiresAt.get(key);
+                    if (at == null) {
+                        return integer(-1);
+                    }
+                    long millis = at - System.currentTimeMillis();
+                    return integer(name.equals("TTL") ? millis / 1000 : millis);
+                }
+                case "RENAME": {
+                    String from = str(command.get(1));
+                    Object value = live(from);
+                    if (value == null) {
+                        return error("ERR no such key");
+                    }
+                    String to = str(command.get(2));
+                    Long at = expiresAt.remove(from);
+                    data.remove(from);
+                    data.put(to, value);
+                    if (at != null) {
+                        expiresAt.put(to, at);
+                    } else {
+                        expiresAt.remove(to);
+                    }
+                    return OK;
+                }
+                case "HSET":
+                case "HMSET": {
+                    Map<String, byte[]> hash = hash(str(command.get(1)), true);
+                    int added = 0;
+                    synchronized (hash) {
+                        for (int i = 2; i + 1 < command.size(); i += 2) {
+                            added += hash.put(str(command.get(i)), command.get(i + 1)) == null ? 1 : 0;
+                        }
+                    }
+                    return name.equals("HSET") ? integer(added) : OK;
+                }
+                case "HGET": {
+                    Map<String, byte[]> hash = hash(str(command.get(1)), false);
+                    if (hash == null) {
+                        return NULL;
+                    }
+                    synchronized (hash) {
+                        byte[] value = hash.get(str(command.get(2)));
+                        return value == null ? NULL : bulk(value);
+                    }
+                }
+                case "HMGET": {
+                    Map<String, byte[]> hash = hash(str(command.get(1)), false);
+                    List<byte[]> values = new ArrayList<>();
+                    for (int i = 2; i < command.size(); i++) {
+                        byte[] value = null;
+                        if (hash != null) {
+                            synchronized (hash) {
+                                value = hash.get(str(command.get(i)));
+                            }
+                        }
+                        values.add(value);
+                    }
+                    return array(values);
+                }
+                case "HGETALL": {
+                    Map<String, byte[]> hash = hash(str(command.get(1)), false);
+                    List<byte[]> values = new ArrayList<>();
+                    if (hash != null) {
+                        synchronized (hash) {
+                            for (Map.Entry<String, byte[]> e : hash.entrySet()) {
+                                values.add(e.getKey().getBytes(StandardCharsets.UTF_8));
+                                values.add(e.getValue());
+                            }
+                        }
+                    }
+                    return array(values);
+                }
+                case "HDEL": {
+                    Map<String, byte[]> hash = hash(str(command.get(1)), false);
+                    int removed = 0;
+                    if (hash != null) {
+                        synchronized (hash) {
+                            for (int i = 2; i < command.size(); i++) {
+                                removed += hash.remove(str(command.get(i))) != null ? 1 : 0;
+                            }
+                        }
+                    }
+                    return integer(removed);
+                }
+                case "SADD":
+                case "SREM": {
+                    Set<String> set = set(str(command.get(1)), name.equals("SADD"));
+                    int changed = 0;
+                    if (set != null) {
+                        synchronized (set) {
+                            for (int i = 2; i < command.size(); i++) {
+                                boolean done = name.equals("SADD") ? set.add(str(command.get(i))) : set.remove(str(command.get(i)));
+                                changed += done ? 1 : 0;
+                            }
+                        }
+                    }
+                    return integer(changed);
+                }
+                case "SMEMBERS": {
+                    Set<String> set = set(str(command.get(1)), false);
+                    List<byte[]> values = new ArrayList<>();
+                    if (set != null) {
+                        synchronized (set) {
+                            for (String member : set) {
+                                values.add(member.getBytes(StandardCharsets.UTF_8));
+                            }
+                        }
+                    }
+                    return array(values);
+                }
+                case "ZADD": {
+                    Map<String, Double> zset = zset(str(command.get(1)), true);
+                    int added = 0;
+                    synchronized (zset) {
+                        for (int i = 2; i + 1 < command.size(); i += 2) {
+                            added += zset.put(str(command.get(i + 1)), Double.parseDouble(str(command.get(i)))) == null ? 1 : 0;
+                        }
+                    }
+                    return integer(added);
+                }
+                case "ZREM": {
+                    Map<String, Double> zset = zset(str(command.get(1)), false);
+                    int removed = 0;
+                    if (zset != null) {
+                        synchronized (zset) {
+                            for (int i = 2; i < command.size(); i++) {
+                                removed += zset.remove(str(command.get(i))) != null ? 1 : 0;
+                            }
+                        }
+                    }
+                    return integer(removed);
+                }
+                case "ZREMRANGEBYSCORE": {
+                    Map<String, Double> zset = zset(str(command.get(1)), false);
+                    int removed = 0;
+                    if (zset != null) {
+                        double min = score(str(command.get(2)));
+                        double max = score(str(command.get(3)));
+                        synchronized (zset) {
+                            int before = zset.size();
+                            zset.values().removeIf(score -> score >= min && score <= max);
+                            removed = before - zset.size();
+                        }
+                    }
+                    return integer(removed);
+                }
+                case "ZRANGE": {
+                    // Sólo por posición, sin WITHSCORES
+                    Map<String, Double> zset = zset(str(command.get(1)), false);
+                    List<byte[]> values = new ArrayList<>();
+                    if (zset != null) {
+                        List<Map.Entry<String, Double>> sorted;
+                        synchronized (zset) {
+                            sorted = new ArrayList<>(zset.entrySet());
+                        }
+                        sorted.sort(Map.Entry.comparingByValue());
+                        int start = Integer.parseInt(str(command.get(2)));
+                        int stop = Integer.parseInt(str(command.get(3)));
+                        start = start < 0 ? Math.max(sorted.size() + start, 0) : start;
+                        stop = stop < 0 ? sorted.size() + stop : Math.min(stop, sorted.size() - 1);
+                        for (int i = start; i <= stop; i++) {
+                            values.add(sorted.get(i).getKey().getBytes(StandardCharsets.UTF_8));
+                        }
+                    }
+                    return array(values);
+                }
+                case "XADD":
+                case "XLEN":
+                case "XRANGE":
+                case "XDEL":
+                case "XGROUP":
+                case "XREADGROUP":
+                case "XACK":
+                case "XPENDING":
+                case "XCLAIM":
+                    synchronized (this) {
+                        return stream(name, command);
+                    }
+                case "PUBLISH":
+                    return integer(0);
+                case "SUBSCRIBE":
+                case "PSUBSCRIBE":
+                    return subscribed(name.toLowerCase(Locale.ROOT), command);
+                case "EVALSHA":
+                    // DefaultScriptExecutor reintenta con EVAL
+                    return error("NOSCRIPT No matching script. Please use EVAL.");
+                case "EVAL":
+                    return eval(command);
+                default:
+                    return error("ERR unknown command '" + name + "'");
+            }
+        } catch (ClassCastException e) {
+            return error("WRONGTYPE Operation against a key holding the wrong kind of value");
+        }
+    }
+
+    private byte[] set(List<byte[]> command) {
+        String key = str(command.get(1));
+        byte[] value = command.get(2);
+        Long ttlMillis = null;
+        boolean nx = false;
+        boolean xx = false;
+        for (int i = 3; i < command.size(); i++) {
+            String option = str(command.get(i)).toUpperCase(Locale.ROOT);
+            switch (option) {
+                case "EX" -> ttlMillis = Long.parseLong(str(command.get(++i))) * 1000;
+                case "PX" -> ttlMillis = Long.parseLong(str(command.get(++i)));
+                case "NX" -> nx = true;
+                case "XX" -> xx = true;
+                default -> {
+                    return error("ERR syntax error");
+                }
+            }
+        }
+        synchronized (this) {
+            boolean exists = live(key) != null;
+            if ((nx && exists) || (xx && !exists)) {
+                return NULL;
+            }
+            data.put(key, value);
+            if (ttlMillis != null) {
+                expiresAt.put(key, System.currentTimeMillis() + ttlMillis);
+            } else {
+                expiresAt.remove(key);
+            }
+        }
+        return OK;
+    }
+
+    /**
+     * Streams: XADD (ID automático o explícito), XLEN, XRANGE, XDEL y consumer groups con su lista de pendientes
+     * (XGROUP CREATE/DELCONSUMER, XREADGROUP, XACK, XPENDING, XCLAIM). Sin BLOCK ni recorte por MAXLEN.
+     */
+    private byte[] stream(String name, List<byte[]> command) {
+        String key = str(command.get(1));
+        Stream stream = (Stream) live(key);
+        long now = System.currentTimeMillis();
+        switch (name) {
+            case "XADD": {
+                int i = 2;
+                boolean create = true;
+                for (; ; i++) {
+                    String option = str(command.get(i)).toUpperCase(Locale.ROOT);
+                    if (option.equals("NOMKSTREAM")) {
+                        create = false;
+                    } else if (option.equals("MAXLEN") || option.equals("MINID")) {
+                        return error("ERR MAXLEN/MINID no soportado");
+                    } else {
+                        break;
+                    }
+                }
+                if (stream == null) {
+                    if (!create) {
+                        return NULL;
+                    }
+                    stream = new Stream();
+                    data.put(key, stream);
+                }
+                String requested = str(command.get(i));
+                StreamId id;
+                if (requested.equals("*")) {
+                    id = now > stream.lastId.ms() ? new StreamId(now, 0) : stream.lastId.next();
+                } else {
+                    id = StreamId.parse(requested, 0);
+                    if (id.compareTo(stream.lastId) <= 0) {
+                        return error("ERR The ID specified in XADD is equal or smaller than the target stream top item");
+                    }
+                }
+                stream.entries.put(id, new ArrayList<>(command.subList(i + 1, command.size())));
+                stream.lastId = id;
+                return bulk(bytes(id.toString()));
+            }
+            case "XLEN":
+                return integer(stream == null ? 0 : stream.entries.size());
+            case "XRANGE": {
+                List<Object> entries = new ArrayList<>();
+                if (stream != null) {
+                    int count = command.size() > 5 ? Integer.parseInt(str(command.get(5))) : Integer.MAX_VALUE;
+                    for (Map.Entry<StreamId, List<byte[]>> entry : stream.entries
+                            .subMap(lowerBound(str(command.get(2))), true, upperBound(str(command.get(3))), true).entrySet()) {
+                        if (entries.size() == count) {
+                            break;
+                        }
+                        entries.add(entry(entry.getKey(), entry.getValue()));
+                    }
+                }
+                return reply(entries);
+            }
+            case "XDEL": {
+                int removed = 0;
+                for (int i = 2; stream != null && i < command.size(); i++) {
+                    removed += stream.entries.remove(StreamId.parse(str(command.get(i)), 0)) != null ? 1 : 0;
+                }
+                return integer(removed);
+            }
+            case "XGROUP":
+                return xgroup(command, stream);
+            default:
+                break;
+        }
+
+        // Comandos sobre un grupo: XREADGROUP GROUP <grupo> <consumidor> ... STREAMS <clave> <id>
+        boolean read = name.equals("XREADGROUP");
+        if (read) {
+            int streams = indexOf(command, "STREAMS");
+            key = str(command.get(streams + 1));
+            stream = (Stream) live(key);
+        }
+        String groupName = str(command.get(2));
+        Group group = stream != null ? stream.groups.get(groupName) : null;
+        if (group == null) {
+            return error("NOGROUP No such key '" + key + "' or consumer group '" + groupName + "'");
+        }
+        switch (name) {
+            case "XREADGROUP": {
+                String consumer = str(command.get(3));
+                int countAt = indexOf(command, "COUNT");
+                int count = countAt > 0 ? Integer.parseInt(str(command.get(countAt + 1))) : Integer.MAX_VALUE;
+                String from = str(command.get(indexOf(command, "STREAMS") + 2));
+                group.consumers.add(consumer);
+                List<Object> entries = new ArrayList<>();
+                if (from.equals(">")) {
+                    for (Map.Entry<StreamId, List<byte[]>> entry : stream.entries.tailMap(group.lastDelivered, false).entrySet()) {
+                        if (entries.size() == count) {
+                            break;
+                        }
+                        group.pending.put(entry.getKey(), new Pending(consumer, now, 1));
+                        group.lastDelivered = entry.getKey();
+                        entries.add(entry(entry.getKey(), entry.getValue()));
+                    }
+                    if (entries.isEmpty()) {
+                        return "*-1\r\n".getBytes(StandardCharsets.US_ASCII);
+                    }
+                } else {
+                    // Historial: los pendientes propios a partir del ID
+                    for (Map.Entry<StreamId, Pending> pending : group.pending.tailMap(StreamId.parse(from, 0), false).entrySet()) {
+                        if (entries.size() == count) {
+                            break;
+                        }
+                        if (pending.getValue().consumer.equals(consumer)) {
+                            entries.add(entry(pending.getKey(), stream.entries.get(pending.getKey())));
+                        }
+                    }
+                }
+                return reply(List.of(List.of(bytes(key), entries)));
+            }
+            case "XACK": {
+                int acked = 0;
+                for (int i = 3; i < command.size(); i++) {
+                    acked += group.pending.remove(StreamId.parse(str(command.get(i)), 0)) != null ? 1 : 0;
+                }
+                return integer(acked);
+            }
+            case "XPENDING": {
+                if (command.size() == 3) {
+                    Map<String, Long> perConsumer = new TreeMap<>();
+                    group.pending.values().forEach(p -> perConsumer.merge(p.consumer, 1L, Long::sum));
+                    List<Object> consumers = new ArrayList<>();
+                    perConsumer.forEach((consumer, count) -> consumers.add(List.of(bytes(consumer), bytes(count.toString()))));
+                    return reply(group.pending.isEmpty() ? java.util.Arrays.asList(0L, null, null, null)
+                            : List.of((long) group.pending.size(), bytes(group.pending.firstKey().toString()),
+                            bytes(group.pending.lastKey().toString()), consumers));
+                }
+                int i = 3;
+                long minIdle = 0;
+                if (str(command.get(i)).equalsIgnoreCase("IDLE")) {
+                    minIdle = Long.parseLong(str(command.get(i + 1)));
+                    i += 2;
+                }
+                StreamId start = lowerBound(str(command.get(i)));
+                StreamId end = upperBound(str(command.get(i + 1)));
+                int count = Integer.parseInt(str(command.get(i + 2)));
+                String consumer = command.size() > i + 3 ? str(command.get(i + 3)) : null;
+                List<Object> entries = new ArrayList<>();
+                if (start.compareTo(end) <= 0) {
+                    for (Map.Entry<StreamId, Pending> entry : group.pending.subMap(start, true, end, true).entrySet()) {
+                        Pending pending = entry.getValue();
+                        if (entries.size() == count) {
+                            break;
+                        }
+                        if ((consumer == null || consumer.equals(pending.consumer)) && now - pending.deliveredAt >= minIdle) {
+                            entries.add(List.of(bytes(entry.getKey().toString()), bytes(pending.consumer),
+                                    now - pending.deliveredAt, pending.deliveries));
+                        }
+                    }
+                }
+                return reply(entries);
+            }
+            case "XCLAIM": {
+                String consumer = str(command.get(3));
+                long minIdle = Long.parseLong(str(command.get(4)));
+                boolean justId = false;
+                List<StreamId> ids = new ArrayList<>();
+                for (int i = 5; i < command.size(); i++) {
+                    String arg = str(command.get(i)).toUpperCase(Locale.ROOT);
+                    switch (arg) {
+                        case "JUSTID" -> justId = true;
+                        case "FORCE" -> {
+                        }
+                        case "IDLE", "TIME", "RETRYCOUNT", "LASTID" -> {
+                            return error("ERR opción de XCLAIM no soportada: " + arg);
+                        }
+                        default -> ids.add(StreamId.parse(arg, 0));
+                    }
+                }
+                group.consumers.add(consumer);
+                List<Object> entries = new ArrayList<>();
+                for (StreamId id : ids) {
+                    Pending pending = group.pending.get(id);
+                    if (pending == null || now - pending.deliveredAt < minIdle) {
+                        continue;
+                    }
+                    List<byte[]> fields = stream.entries.get(id);
+                    if (fields == null) {
+                        // Como Redis 7: una entrada borrada del stream sale de los pendientes
+                        group.pending.remove(id);
+                        continue;
+                    }
+                    pending.consumer = consumer;
+                    pending.deliveredAt = now;
+                    if (!justId) {
+                        pending.deliveries++;
+                    }
+                    entries.add(justId ? bytes(id.toString()) : entry(id, fields));
+                }
+                return reply(entries);
+            }
+            default:
+                return error("ERR unknown command '" + name + "'");
+        }
+    }
+
+    private byte[] xgroup(List<byte[]> command, Stream stream) {
+        String subcommand = str(command.get(1)).toUpperCase(Locale.ROOT);
+        String key = str(command.get(2));
+        String groupName = str(command.get(3));
+        switch (subcommand) {
+            case "CREATE": {
+                if (stream == null) {
+                    if (indexOf(command, "MKSTREAM") < 0) {
+                        return error("ERR The XGROUP subcommand requires the key to exist. "
+                                + "Note that for CREATE you may want to use the MKSTREAM option to create an empty stream automatically.");
+                    }
+                    stream = new Stream();
+                    data.put(key, stream);
+                }
+                if (stream.groups.containsKey(groupName)) {
+                    return error("BUSYGROUP Consumer Group name already exists");
+                }
+                String from = str(command.get(4));
+                Group group = new Group();
+                group.lastDelivered = from.equals("$") ? stream.lastId : StreamId.parse(from, 0);
+                stream.groups.put(groupName, group);
+                return OK;
+            }
+            case "DELCONSUMER": {
+                Group group = stream != null ? stream.groups.get(groupName) : null;
+                if (group == null) {
+                    return error("NOGROUP No such key '" + key + "' or consumer group '" + groupName + "'");
+                }
+                String consumer = str(command.get(4));
+                int before = group.pending.size();
+                group.pending.values().removeIf(pending -> pending.consumer.equals(consumer));
+                group.consumers.remove(consumer);
+                return integer(before - group.pending.size());
+            }
+            default:
+                return error("ERR XGROUP " + subcommand + " no soportado");
+        }
+    }
+
+    /**
+     * Extremo inferior de un rango de IDs: "-", "ms", "ms-seq" o "(ms-seq" (exclusivo).
+     */
+    private static StreamId lowerBound(String id) {
+        if (id.equals("-")) {
+            return StreamId.MIN;
+        }
+        return id.startsWith("(") ? StreamId.parse(id.substring(1), 0).next() : StreamId.parse(id, 0);
+    }
+
+    private static StreamId upperBound(String id) {
+        if (id.equals("+")) {
+            return StreamId.MAX;
+        }
+        return id.startsWith("(") ? StreamId.parse(id.substring(1), Long.MAX_VALUE).previous()
+                : StreamId.parse(id, Long.MAX_VALUE);
+    }
+
+    private static int indexOf(List<byte[]> command, String keyword) {
+        for (int i = 1; i < command.size(); i++) {
+            if (str(command.get(i)).equalsIgnoreCase(keyword)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<Object> entry(StreamId id, List<byte[]> fields) {
+        return List.of(bytes(id.toString()), fields);
+    }
+
+    /**
+     * ID de una entrada de stream: milisegundos y secuencia.
+     */
+    private record StreamId(long ms, long seq) implements Comparable<StreamId> {
+
+        static final StreamId MIN = new StreamId(0, 0);
+        static final StreamId MAX = new StreamId(Long.MAX_VALUE, Long.MAX_VALUE);
+
+        /**
+         * @param defaultSeq secuencia si el ID viene sólo con milisegundos
+         */
+        static StreamId parse(String id, long defaultSeq) {
+            int dash = id.indexOf('-');
+            return dash < 0 ? new StreamId(Long.parseLong(id), defaultSeq)
+                    : new StreamId(Long.parseLong(id.substring(0, dash)), Long.parseLong(id.substring(dash + 1)));
+        }
+
+        StreamId next() {
+            return seq == Long.MAX_VALUE ? new StreamId(ms + 1, 0) : new StreamId(ms, seq + 1);
+        }
+
+        StreamId previous() {
+            return seq == 0 ? new StreamId(ms - 1, Long.MAX_VALUE) : new StreamId(ms, seq - 1);
+        }
+
+        @Override
+        public int compareTo(StreamId other) {
+            int byMs = Long.compare(ms, other.ms);
+            return byMs != 0 ? byMs : Long.compare(seq, other.seq);
+        }
+
+        @Override
+        public String toString() {
+            return ms + "-" + seq;
+        }
+    }
+
+    private static final class Stream {
+        final TreeMap<StreamId, List<byte[]>> entries = new TreeMap<>();
+        final Map<String, Group> groups = new HashMap<>();
+        StreamId lastId = StreamId.MIN;
+    }
+
+    private static final class Group {
+        final TreeMap<StreamId, Pending> pending = new TreeMap<>();
+        final Set<String> consumers = new LinkedHashSet<>();
+        StreamId lastDelivered;
+    }
+
+    /**
+     * Entrada de la lista de pendientes: dueño, última entrega y cantidad de entregas.
+     */
+    private static final class Pending {
+        String consumer;
+        long deliveredAt;
+        long deliveries;
+
+        Pending(String consumer, long deliveredAt, long deliveries) {
+            this.consumer = consumer;
+            this.deliveredAt = deliveredAt;
+            this.deliveries = deliveries;
+        }
+    }
+
+    /**
+     * EVAL con el intérprete Lua (luaj): el script corre tal cual, con redis.call / redis.pcall sobre los mismos
+     * comandos de este servidor y las conversiones de tipos de Redis. Como en Redis, nada se intercala con un script.
+     */
+    private byte[] eval(List<byte[]> command) {
+        String script = str(command.get(1));
+        int numKeys = Integer.parseInt(str(command.get(2)));
+        synchronized (this) {
+            LuaTable keys = new LuaTable();
+            for (int i = 0; i < numKeys; i++) {
+                keys.set(i + 1, LuaValue.valueOf(command.get(3 + i)));
+            }
+            LuaTable argv = new LuaTable();
+            for (int i = 3 + numKeys; i < command.size(); i++) {
+                argv.set(i - 2 - numKeys, LuaValue.valueOf(command.get(i)));
+            }
+            lua.set("KEYS", keys);
+            lua.set("ARGV", argv);
+            try {
+                LuaValue chunk = scripts.computeIfAbsent(script, text -> lua.load(text, "@user_script"));
+                return toResp(chunk.call());
+            } catch (LuaError e) {
+                String message = e.getMessage() != null ? e.getMessage() : "script error";
+                return error(message.startsWith("ERR") || message.startsWith("WRONGTYPE") ? message : "ERR " + message);
+            }
+        }
+    }
+
+    private Globals lua() {
+        Globals globals = JsePlatform.standardGlobals();
+        LuaTable redis = new LuaTable();
+        redis.set("call", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                LuaValue reply = redisCall(args);
+                if (reply.istable() && !reply.get("err").isnil()) {
+                    throw new LuaError(reply.get("err").tojstring());
+                }
+                return reply;
+            }
+        });
+        redis.set("pcall", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                return redisCall(args);
+            }
+        });
+        redis.set("status_reply", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                return LuaValue.tableOf(new LuaValue[]{LuaValue.valueOf("ok"), args.arg1()});
+            }
+        });
+        redis.set("error_reply", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                return LuaValue.tableOf(new LuaValue[]{LuaValue.valueOf("err"), args.arg1()});
+            }
+        });
+        globals.set("redis", redis);
+        return globals;
+    }
+
+    private LuaValue redisCall(Varargs args) {
+        List<byte[]> call = new ArrayList<>(args.narg());
+        for (int i = 1; i <= args.narg(); i++) {
+            LuaValue arg = args.arg(i);
+            if (arg.type() != LuaValue.TSTRING && arg.type() != LuaValue.TNUMBER) {
+                throw new LuaError("ERR Lua redis lib command arguments must be strings or integers");
+            }
+            call.add(bytes(arg.checkstring()));
+        }
+        return fromResp(execute(call), new int[]{0});
+    }
+
+    /**
+     * Respuesta RESP → valor Lua, con las conversiones de Redis: nil → false, status → {ok=...}, error → {err=...}.
+     */
+    private static LuaValue fromResp(byte[] reply, int[] position) {
+        byte type = reply[position[0]];
+        int lineEnd = position[0];
+        while (reply[lineEnd] != '\r') {
+            lineEnd++;
+        }
+        String line = new String(reply, position[0] + 1, lineEnd - position[0] - 1, StandardCharsets.UTF_8);
+        position[0] = lineEnd + 2;
+        switch (type) {
+            case '+':
+                return LuaValue.tableOf(new LuaValue[]{LuaValue.valueOf("ok"), LuaValue.valueOf(line)});
+            case '-':
+                return LuaValue.tableOf(new LuaValue[]{LuaValue.valueOf("err"), LuaValue.valueOf(line)});
+            case ':':
+                return LuaValue.valueOf(Long.parseLong(line));
+            case '$': {
+                int length = Integer.parseInt(line);
+                if (length < 0) {
+                    return LuaValue.FALSE;
+                }
+                byte[] value = new byte[length];
+                System.arraycopy(reply, position[0], value, 0, length);
+                position[0] += length + 2;
+                return LuaValue.valueOf(value);
+            }
+            case '*': {
+                int count = Integer.parseInt(line);
+                if (count < 0) {
+                    return LuaValue.FALSE;
+                }
+                LuaTable values = new LuaTable();
+                for (int i = 1; i <= count; i++) {
+                    values.set(i, fromResp(reply, position));
+                }
+                return values;
+            }
+            default:
+                throw new LuaError("ERR respuesta RESP inválida");
+        }
+    }
+
+    /**
+     * Valor devuelto por el script → RESP: número → entero (truncado), tabla → array hasta el primer nil,
+     * true → 1, false/nil → nil.
+     */
+    private static byte[] toResp(LuaValue value) {
+        if (value.isnil() || value == LuaValue.FALSE) {
+            return NULL;
+        }
+        if (value.isboolean()) {
+            return integer(1);
+        }
+        if (value.type() == LuaValue.TNUMBER) {
+            return integer((long) value.todouble());
+        }
+        if (value.type() == LuaValue.TSTRING) {
+            return bulk(bytes(value.checkstring()));
+        }
+        if (value.istable()) {
+            if (!value.get("ok").isnil()) {
+                return simple(value.get("ok").tojstring());
+            }
+            if (!value.get("err").isnil()) {
+                return error(value.get("err").tojstring());
+            }
+            try (java.io.ByteArrayOutputStream items = new java.io.ByteArrayOutputStream()) {
+                int count = 0;
+                for (LuaValue item = value.get(1); !item.isnil(); item = value.get(++count + 1)) {
+                    items.write(toResp(item));
+                }
+                byte[] header = ("*" + count + "\r\n").getBytes(StandardCharsets.US_ASCII);
+                byte[] reply = new byte[header.length + items.size()];
+                System.arraycopy(header, 0, reply, 0, header.length);
+                System.arraycopy(items.toByteArray(), 0, reply, header.length, items.size());
+                return reply;
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return error("ERR tipo de retorno no soportado");
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(LuaString value) {
+        byte[] bytes = new byte[value.rawlen()];
+        value.copyInto(0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private byte[] subscribed(String kind, List<byte[]> command) {
+        StringBuilder reply = new StringBuilder();
+        for (int i = 1; i < command.size(); i++) {
+            String channel = str(command.get(i));
+            reply.append("*3\r\n$").append(kind.length()).append("\r\n").append(kind).append("\r\n")
+                    .append('$').append(channel.getBytes(StandardCharsets.UTF_8).length).append("\r\n").append(channel).append("\r\n")
+                    .append(':').append(i).append("\r\n");
+        }
+        return reply.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] expire(String key, long millis) {
+        if (live(key) == null) {
+            return integer(0);
+        }
+        if (millis <= 0) {
+            remove(key);
+        } else {
+            expiresAt.put(key, System.currentTimeMillis() + millis);
+        }
+        return integer(1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, byte[]> hash(String key, boolean create) {
+        Object value = live(key);
+        if (value == null && create) {
+            return (Map<String, byte[]>) data.computeIfAbsent(key, k -> new LinkedHashMap<String, byte[]>());
+        }
+        return (Map<String, byte[]>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> set(String key, boolean create) {
+        Object value = live(key);
+        if (value == null && create) {
+            return (Set<String>) data.computeIfAbsent(key, k -> new LinkedHashSet<String>());
+        }
+        return (Set<String>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Double> zset(String key, boolean create) {
+        Object value = live(key);
+        if (value == null && create) {
+            return (Map<String, Double>) data.computeIfAbsent(key, k -> new HashMap<String, Double>());
+        }
+        return (Map<String, Double>) value;
+    }
+
+    private static double score(String value) {
+        return switch (value) {
+            case "-inf" -> Double.NEGATIVE_INFINITY;
+            case "+inf", "inf" -> Double.POSITIVE_INFINITY;
+            default -> Double.parseDouble(value);
+        };
+    }
+
+    /**
+     * Valor de la clave, expirándola si venció (expiración perezosa, como hace Redis al leer).
+     */
+    private Object live(String key) {
+        Long at = expiresAt.get(key);
+        if (at != null && at <= System.currentTimeMillis()) {
+            remove(key);
+            return null;
+        }
+        return data.get(key);
+    }
+
+    private boolean remove(String key) {
+        expiresAt.remove(key);
+        return data.remove(key) != null;
+    }
+
+    private static String str(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] simple(String value) {
+        return ("+" + value + "\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] error(String message) {
+        return ("-" + message + "\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] integer(long value) {
+        return (":" + value + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] bulk(byte[] value) {
+        byte[] header = ("$" + value.length + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] reply = new byte[header.length + value.length + 2];
+        System.arraycopy(header, 0, reply, 0, header.length);
+        System.arraycopy(value, 0, reply, header.length, value.length);
+        reply[reply.length - 2] = '\r';
+        reply[reply.length - 1] = '\n';
+        return reply;
+    }
+
+    private static byte[] array(List<byte[]> values) {
+        try (java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream()) {
+            out.write(("*" + values.size() + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            for (byte[] value : values) {
+                out.write(value == null ? NULL : bulk(value));
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Array RESP anidado: byte[] → bulk, Long → entero, List → array, null → nil.
+     */
+    private static byte[] reply(List<?> values) {
+        try (java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream()) {
+            out.write(("*" + values.size() + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            for (Object value : values) {
+                if (value == null) {
+                    out.write(NULL);
+                } else if (value instanceof byte[] bulk) {
+                    out.write(bulk(bulk));
+                } else if (value instanceof Long number) {
+                    out.write(integer(number));
+                } else {
+                    out.write(reply((List<?>) value));
+                }
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.shutdownNow();
+    }
+}
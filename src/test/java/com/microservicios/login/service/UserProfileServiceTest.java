@@ -0,0 +1,368 @@
+package com.microservicios.login.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservicios.login.cache.UserProfileCache;
+import com.microservicios.login.concurrency.HedgedRequest;
+import com.microservicios.login.concurrency.ParallelLookup;
+import com.microservicios.login.concurrency.RedisLeaseLock;
+import com.microservicios.login.dto.ProvisionalUserDTO;
+import com.microservicios.login.exception.LoginTimeoutException;
+import com.microservicios.login.metrics.LoginStages;
+import com.microservicios.login.migration.MigrationQueue;
+import com.microservicios.login.redis.FakeRedisServer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import coms.dto.UserDTO;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Primer login concurrente del mismo usuario contra un microservicio de usuarios local.
+ */
+class UserProfileServiceTest {
+
+    private static final String EMAIL = "ana@mobydigital.com";
+
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final AtomicInteger migrations = new AtomicInteger();
+    private volatile boolean migrated;
+    private volatile long firstLookupDelay = 50;
+    private volatile long checkDelay;
+    private volatile long migrateDelay = 200;
+    private volatile boolean lookupFails;
+    // El cliente HTTP del JDK corta la llamada si se interrumpe el hilo (HttpURLConnection no)
+    private RestTemplate restTemplate = new RestTemplate();
+    private volatile StringRedisTemplate sharedRedis;
+    private final AtomicLong lockTtlMillis = new AtomicLong(-1);
+    private String base;
+    private HttpServer userService;
+    private SimpleMeterRegistry registry;
+    private UserProfileService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        userService = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        userService.createContext("/user", exchange -> {
+            sleep(lookups.incrementAndGet() == 1 ? firstLookupDelay : 50);
+            if (lookupFails) {
+                respond(exchange, 503, "{}");
+                return;
+            }
+            respond(exchange, migrated ? 200 : 404, migrated ? userJson() : "{}");
+        });
+        userService.createContext("/checkEmail", exchange -> {
+            sleep(checkDelay);
+            respond(exchange, 200, "true");
+        });
+        userService.createContext("/migrateUser", exchange -> {
+            migrations.incrementAndGet();
+            if (sharedRedis != null) {
+                lockTtlMillis.set(sharedRedis.getExpire("login:lock:migrate:" + EMAIL, TimeUnit.MILLISECONDS));
+            }
+            sleep(migrateDelay);
+            migrated = true;
+            respond(exchange, 200, userJson());
+        });
+        userService.setExecutor(Executors.newFixedThreadPool(8));
+        userService.start();
+
+        base = "http://127.0.0.1:" + userService.getAddress().getPort() + "/";
+        registry = new SimpleMeterRegistry();
+        service = service(null);
+    }
+
+    private UserProfileService service(ParallelLookup parallel) {
+        return service(parallel, null);
+    }
+
+    private UserProfileService service(ParallelLookup parallel, MigrationQueue queue) {
+        return service(parallel, queue, null);
+    }
+
+    /**
+     * @param redis caché compartida y lock de migración entre réplicas; si es null, ninguno de los dos
+     */
+    private UserProfileService service(ParallelLookup parallel, MigrationQueue queue, StringRedisTemplate redis) {
+        return service(parallel, queue, redis, null);
+    }
+
+    /**
+     * @param lockWait espera a la réplica que tiene el lock; null = el lease (2 x (1s + 2s + 5s) + 2s)
+     */
+    private UserProfileService service(ParallelLookup parallel, MigrationQueue queue, StringRedisTemplate redis,
+                                       Duration lockWait) {
+        UserProfileCache cache = new UserProfileCache(100, Duration.ofMinutes(10), Duration.ofHours(1),
+                Duration.ofSeconds(30), redis, null, new ObjectMapper(), registry);
+        ObservationRegistry observations = ObservationRegistry.create();
+        observations.observationConfig().observationHandler(new DefaultMeterObservationHandler(registry));
+        return new UserProfileService(restTemplate, cache, redis != null ? new RedisLeaseLock(redis) : null, parallel,
+                null, queue, registry, new LoginStages(observations), base, base + "checkEmail?email=",
+                Duration.ofSeconds(2), Duration.ofSeconds(5), Duration.ofSeconds(1), Duration.ofSeconds(2), lockWait);
+    }
+
+    private ParallelLookup parallel(Duration deadline) {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        HedgedRequest hedge = new HedgedRequest(executor, registry, "user_lookup", 0.95,
+                Duration.ofMillis(100), Duration.ofMillis(10));
+        return new ParallelLookup(executor, hedge, deadline);
+    }
+
+    @AfterEach
+    void tearDown() {
+        userService.stop(0);
+    }
+
+    @Test
+    void migraUnaSolaVezConLoginsConcurrentes() throws Exception {
+        int threads = 32;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<UserDTO>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                return service.resolve(EMAIL, "Ana", "Pérez", null);
+            }));
+        }
+        start.countDown();
+        for (Future<UserDTO> result : results) {
+            assertEquals(EMAIL, result.get().getEmail());
+        }
+        pool.shutdown();
+
+        assertEquals(1, migrations.get());
+        assertEquals(1, lookups.get());
+        assertTrue(registry.counter("login.singleflight.coalesced", "operation", "user_resolve").count() > 0);
+    }
+
+    @Test
+    void migraUnaSolaVezEntreReplicasConElLockEnRedis() throws Exception {
+        FakeRedisServer server = new FakeRedisServer();
+        LettuceConnectionFactory connectionFactory = server.connectionFactory();
+        try {
+            sharedRedis = new StringRedisTemplate(connectionFactory);
+            // Dos réplicas: cada una con su caché local, las dos con el mismo Redis
+            List<UserProfileService> replicas = List.of(service(null, null, sharedRedis), service(null, null, sharedRedis));
+            ExecutorService pool = Executors.newFixedThreadPool(8);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<UserDTO>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                UserProfileService replica = replicas.get(i % 2);
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return replica.resolve(EMAIL, "Ana", "Pérez", null);
+                }));
+            }
+            start.countDown();
+            for (Future<UserDTO> result : results) {
+                assertEquals(EMAIL, result.get().getEmail());
+            }
+            pool.shutdown();
+
+            assertEquals(1, migrations.get());
+            assertEquals(1, registry.counter("login.user.migration.coalesced").count());
+            // Lease derivado de los timeouts: 2 x (1s + 2s + 5s) + 2s
+            Duration lease = UserProfileService.migrationLockLease(Duration.ofSeconds(2), Duration.ofSeconds(5),
+                    Duration.ofSeconds(1), Duration.ofSeconds(2));
+            assertEquals(Duration.ofSeconds(18), lease);
+            assertTrue(lockTtlMillis.get() > lease.toMillis() - 1000 && lockTtlMillis.get() <= lease.toMillis(),
+                    "ttl del lock=" + lockTtlMillis.get() + "ms");
+            assertFalse(sharedRedis.hasKey("login:lock:migrate:" + EMAIL));
+        } finally {
+            connectionFactory.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    void sinElLockNoMigraAunqueLaOtraReplicaTardeMasQueLaEspera() throws Exception {
+        migrateDelay = 1500;
+        FakeRedisServer server = new FakeRedisServer();
+        LettuceConnectionFactory connectionFactory = server.connectionFactory();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            StringRedisTemplate redis = new StringRedisTemplate(connectionFactory);
+            Future<UserDTO> holder = pool.submit(() -> service(null, null, redis).resolve(EMAIL, "Ana", "Pérez", null));
+            while (migrations.get() == 0) {
+                Thread.sleep(10);
+            }
+
+            // Espera configurada más corta que la migración en curso: falla el login, no se migra sin el lock
+            UserProfileService impatient = service(null, null, redis, Duration.ofMillis(300));
+            assertThrows(LoginTimeoutException.class, () -> impatient.resolve(EMAIL, "Ana", "Pérez", null));
+            // Espera por defecto (el lease): recibe el usuario que deja la otra réplica
+            assertEquals(EMAIL, service(null, null, redis).resolve(EMAIL, "Ana", "Pérez", null).getEmail());
+
+            assertEquals(EMAIL, holder.get().getEmail());
+            assertEquals(1, migrations.get());
+            assertEquals(1, registry.counter("login.user.migration.coalesced").count());
+        } finally {
+            pool.shutdown();
+            connectionFactory.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    void modoParaleloConsultaLaNominaMientrasBuscaElUsuario() throws Exception {
+        firstLookupDelay = 400;
+        checkDelay = 400;
+        UserProfileService parallelService = service(parallel(Duration.ofSeconds(5)));
+
+        long start = System.nanoTime();
+        assertEquals(EMAIL, parallelService.resolve(EMAIL, "Ana", "Pérez", null).getEmail());
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(1, migrations.get());
+        // con el hedge puede haber dos intentos de lookup
+        assertTrue(registry.get(LoginStages.STAGE).tags("stage", "lookup", "outcome", "not_found").timer().count() >= 1);
+        assertEquals(1, registry.get(LoginStages.STAGE).tags("stage", "migrate", "outcome", "success").timer().count());
+        // En serie serían lookup (400ms) + nómina (400ms) + migración (200ms)
+        assertTrue(elapsedMillis < 400 + 400, "tardó " + elapsedMillis + "ms");
+    }
+
+    @Test
+    void elHedgeRespondeCuandoElPrimerLookupSeDemora() throws Exception {
+        migrated = true;
+        firstLookupDelay = 2000;
+        UserProfileService parallelService = service(parallel(Duration.ofSeconds(5)));
+
+        long start = System.nanoTime();
+        assertEquals(EMAIL, parallelService.resolve(EMAIL, "Ana", "Pérez", null).getEmail());
+
+        // respondió el segundo intento, sin esperar los 2s del primero
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 1000);
+        assertEquals(1, registry.counter("login.hedge.sent", "operation", "user_lookup").count());
+        assertEquals(1, registry.counter("login.user.nomina.speculative.discarded").count());
+    }
+
+    @Test
+    void siElLookupFallaCancelaElCheckDeNominaEnCurso() throws Exception {
+        lookupFails = true;
+        checkDelay = 2000;
+        restTemplate = new RestTemplate(new JdkClientHttpRequestFactory());
+        UserProfileService parallelService = service(parallel(Duration.ofSeconds(5)));
+
+        long start = System.nanoTime();
+        assertThrows(HttpServerErrorException.class, () -> parallelService.resolve(EMAIL, "Ana", "Pérez", null));
+
+        // El check no espera los 2s de la nómina: se interrumpe y libera el hilo
+        long deadline = System.currentTimeMillis() + 1000;
+        while (registry.find(LoginStages.STAGE).tags("stage", "nomina").timer() == null
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, registry.get(LoginStages.STAGE).tags("stage", "nomina", "outcome", "server_error").timer().count());
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 1500);
+        assertEquals(0, migrations.get());
+    }
+
+    @Test
+    void cortaElLoginAlSuperarElTiempoMaximo() {
+        checkDelay = 1000;
+        UserProfileService parallelService = service(parallel(Duration.ofMillis(400)));
+
+        assertThrows(LoginTimeoutException.class, () -> parallelService.resolve(EMAIL, "Ana", "Pérez", null));
+        assertEquals(0, migrations.get());
+    }
+
+    @Test
+    void conLaColaElLoginNoEsperaLaMigracion() throws Exception {
+        RecordingQueue queue = new RecordingQueue(false);
+        UserProfileService asyncService = service(null, queue);
+
+        UserDTO provisional = asyncService.resolve(EMAIL, "Ana", "Pérez", "https://foto");
+        assertTrue(provisional instanceof ProvisionalUserDTO);
+        assertEquals("Ana Pérez", provisional.getName());
+        assertEquals(0, migrations.get());
+        assertEquals(1, queue.jobs.size());
+        assertNull(asyncService.migratedUser(EMAIL));
+
+        // Lo que hace el worker; un segundo trabajo del mismo mail no vuelve a crear el usuario
+        assertEquals(EMAIL, asyncService.completeMigration(queue.jobs.get(0)).getEmail());
+        asyncService.completeMigration(queue.jobs.get(0));
+        assertEquals(1, migrations.get());
+        assertEquals(EMAIL, asyncService.migratedUser(EMAIL).getEmail());
+    }
+
+    @Test
+    void siNoSePuedeEncolarMigraEnElMomento() throws Exception {
+        UserProfileService asyncService = service(null, new RecordingQueue(true));
+
+        UserDTO user = asyncService.resolve(EMAIL, "Ana", "Pérez", null);
+        assertFalse(user instanceof ProvisionalUserDTO);
+        assertEquals(1, migrations.get());
+    }
+
+    /**
+     * Cola sin Redis: guarda los trabajos, o falla como un Redis caído.
+     */
+    private class RecordingQueue extends MigrationQueue {
+        final List<Job> jobs = new ArrayList<>();
+        private final boolean failing;
+
+        RecordingQueue(boolean failing) {
+            super(null, registry);
+            this.failing = failing;
+        }
+
+        @Override
+        public String enqueue(Job job) {
+            if (failing) {
+                throw new RedisConnectionFailureException("Redis caído");
+            }
+            jobs.add(job);
+            return "1-" + jobs.size();
+        }
+    }
+
+    private static String userJson() {
+        return "{\"id\":\"rec1\",\"fields\":{\"Nombre\":\"Ana\",\"Correo Moby\":\"" + EMAIL + "\"}}";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
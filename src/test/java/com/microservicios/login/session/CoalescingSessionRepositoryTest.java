@@ -0,0 +1,130 @@
+package com.microservicios.login.session;
+
+import com.microservicios.login.redis.FakeRedisServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Throttle de lastAccessedTime y saves sobre sesiones borradas, contra {@link FakeRedisServer}.
+ */
+class CoalescingSessionRepositoryTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final FakeRedisServer server = new FakeRedisServer();
+    private final LettuceConnectionFactory connectionFactory = server.connectionFactory();
+    private final RedisTemplate<String, Object> redis = template(connectionFactory);
+    private final CoalescingSessionRepository repository = new CoalescingSessionRepository(
+            redis, Duration.ofHours(1), Duration.ofSeconds(60), registry);
+
+    CoalescingSessionRepositoryTest() throws IOException {
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        connectionFactory.destroy();
+        server.close();
+    }
+
+    @Test
+    void unAccesoDentroDelIntervaloNoEscribe() {
+        Instant persisted = Instant.now().minusSeconds(30);
+        CoalescingSessionRepository.CoalescingSession session = stored(persisted);
+
+        session.setLastAccessedTime(persisted.plusSeconds(30));
+        repository.save(session);
+
+        assertEquals(1, registry.counter("login.session.touch.skipped").count());
+        assertEquals(1, registry.counter("login.session.writes").count());
+        assertEquals(persisted.plusSeconds(30), session.getLastAccessedTime());
+    }
+
+    @Test
+    void escribeSiPasoElIntervaloOSiCambioUnAtributo() {
+        Instant persisted = Instant.now().minusSeconds(120).truncatedTo(ChronoUnit.MILLIS);
+
+        CoalescingSessionRepository.CoalescingSession touched = stored(persisted);
+        touched.setLastAccessedTime(persisted.plusSeconds(61));
+        repository.save(touched);
+        assertEquals(persisted.plusSeconds(61), repository.findById(touched.getId()).getLastAccessedTime());
+
+        CoalescingSessionRepository.CoalescingSession changed = stored(persisted);
+        changed.setLastAccessedTime(persisted.plusSeconds(1));
+        changed.setAttribute("x", "y");
+        repository.save(changed);
+        assertEquals("y", repository.findById(changed.getId()).getAttribute("x"));
+
+        assertEquals(0, registry.counter("login.session.touch.skipped").count());
+        assertEquals(4, registry.counter("login.session.writes").count());
+    }
+
+    @Test
+    void noRecreaUnaSesionBorradaEntreLaLecturaYElSave() {
+        CoalescingSessionRepository.CoalescingSession session = stored(Instant.now());
+        CoalescingSessionRepository.CoalescingSession loaded = repository.findById(session.getId());
+
+        // Logout / revoke-all en otra réplica mientras el request sigue en curso
+        repository.deleteById(session.getId());
+        loaded.setAttribute("x", "y");
+        repository.save(loaded);
+
+        assertFalse(redis.hasKey(CoalescingSessionRepository.SESSION_KEY_PREFIX + session.getId()));
+        assertNull(repository.findById(session.getId()));
+        assertEquals(1, registry.counter("login.session.save.invalidated").count());
+    }
+
+    @Test
+    void unHashIncompletoNoEsUnaSesion() {
+        String key = CoalescingSessionRepository.SESSION_KEY_PREFIX + "parcial";
+        redis.opsForHash().put(key, "sessionAttr:x", "y");
+        redis.opsForHash().put(key, "lastAccessedTime", System.currentTimeMillis());
+
+        assertNull(repository.findById("parcial"));
+        assertFalse(redis.hasKey(key));
+    }
+
+    @Test
+    void unaSesionNuevaSeGuardaCompleta() {
+        CoalescingSessionRepository.CoalescingSession session = repository.createSession();
+        session.setAttribute("x", "y");
+        repository.save(session);
+
+        CoalescingSessionRepository.CoalescingSession found = repository.findById(session.getId());
+        assertNotNull(found);
+        assertEquals("y", found.getAttribute("x"));
+        assertEquals(Duration.ofHours(1), found.getMaxInactiveInterval());
+    }
+
+    /**
+     * Sesión ya guardada en Redis con ese lastAccessedTime, como la devolvería findById.
+     */
+    private CoalescingSessionRepository.CoalescingSession stored(Instant lastAccessedTime) {
+        CoalescingSessionRepository.CoalescingSession session = repository.createSession();
+        session.setLastAccessedTime(lastAccessedTime);
+        repository.save(session);
+        return repository.findById(session.getId());
+    }
+
+    private static RedisTemplate<String, Object> template(LettuceConnectionFactory connectionFactory) {
+        RedisTemplate<String, Object> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(StringRedisSerializer.UTF_8);
+        template.setHashKeySerializer(StringRedisSerializer.UTF_8);
+        template.setHashValueSerializer(new CompactSessionSerializer());
+        template.afterPropertiesSet();
+        return template;
+    }
+}
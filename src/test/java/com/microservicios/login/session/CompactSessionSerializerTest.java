@@ -0,0 +1,89 @@
+package com.microservicios.login.session;
+
+import com.microservicios.login.dto.ProvisionalUserDTO;
+import coms.dto.UserDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactSessionSerializerTest {
+
+    private static final String ACCESS = "ya29.a0AfB_byC" + "x".repeat(200);
+    private static final String REFRESH = "1//0gL" + "y".repeat(96);
+
+    private final CompactSessionSerializer serializer = new CompactSessionSerializer();
+    private final GenericJackson2JsonRedisSerializer legacy = new GenericJackson2JsonRedisSerializer();
+
+    @Test
+    void leeLoQueEscribe() {
+        LoginSession login = new LoginSession(user(), ACCESS, REFRESH, 1_700_000_000_000L);
+
+        LoginSession read = (LoginSession) serializer.deserialize(serializer.serialize(login));
+
+        assertEquals(ACCESS, read.accessToken());
+        assertEquals(REFRESH, read.refreshToken());
+        assertEquals(1_700_000_000_000L, read.accessTokenExpiresAt());
+        assertEquals("ana@mobydigital.com", read.user().getEmail());
+        assertEquals("Ana", read.user().getName());
+    }
+
+    @Test
+    void guardaLaMarcaDeUsuarioProvisorio() {
+        LoginSession provisional = LoginSession.of(ProvisionalUserDTO.of("ana@mobydigital.com", "Ana", "Pérez", null),
+                ACCESS, REFRESH, null);
+
+        LoginSession read = (LoginSession) serializer.deserialize(serializer.serialize(provisional));
+        assertTrue(read.isProvisional());
+        assertFalse(read.withUser(user()).isProvisional());
+        // Sin la marca el formato no cambia
+        assertFalse(new String(serializer.serialize(read.withUser(user())), StandardCharsets.UTF_8).contains("pv"));
+    }
+
+    @Test
+    void sigueLeyendoAtributosDelFormatoAnterior() {
+        byte[] stored = legacy.serialize(user());
+
+        Object read = serializer.deserialize(stored);
+
+        UserDTO user = assertInstanceOf(UserDTO.class, read);
+        assertEquals("ana@mobydigital.com", user.getEmail());
+        assertEquals("valor", serializer.deserialize(legacy.serialize("valor")));
+    }
+
+    @Test
+    void ocupaMenosQueLosAtributosSueltos() {
+        Map<String, String> tokens = new HashMap<>();
+        tokens.put("accessToken", ACCESS);
+        tokens.put("refreshToken", REFRESH);
+        // Cada atributo es un campo "sessionAttr:<nombre>" del hash de la sesión en Redis
+        int before = field("tokens") + legacy.serialize(tokens).length
+                + field("accessToken") + legacy.serialize(ACCESS).length
+                + field("refreshToken") + legacy.serialize(REFRESH).length
+                + field("user") + legacy.serialize(user()).length;
+
+        int after = field(LoginSessions.ATTRIBUTE)
+                + serializer.serialize(new LoginSession(user(), ACCESS, REFRESH, 1_700_000_000_000L)).length;
+
+        assertTrue(after * 10 < before * 6, "compacto=" + after + " anterior=" + before);
+    }
+
+    private static int field(String attribute) {
+        return ("sessionAttr:" + attribute).length();
+    }
+
+    private static UserDTO user() {
+        UserDTO user = new UserDTO();
+        user.setName("Ana");
+        user.setEmail("ana@mobydigital.com");
+        user.setProfilePicture("https://lh3.googleusercontent.com/a/ACg8ocJ");
+        return user;
+    }
+}
@@ -0,0 +1,78 @@
+package com.microservicios.login.session;
+
+import com.microservicios.login.dto.ProvisionalUserDTO;
+import coms.dto.UserDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.session.MapSession;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoginSessionsTest {
+
+    private final GenericJackson2JsonRedisSerializer previousVersion = new GenericJackson2JsonRedisSerializer();
+
+    @Test
+    void conCompactLoginApagadoEscribeElFormatoAnterior() {
+        MapSession session = new MapSession();
+        LoginSession login = LoginSession.of(ProvisionalUserDTO.of("ana@mobydigital.com", "Ana", "Pérez", null),
+                "ya29.a", "1//r", 1_700_000_000_000L);
+
+        new LoginSessions(false).write(session, login);
+
+        assertNull(session.getAttribute(LoginSessions.ATTRIBUTE));
+        assertEquals("ya29.a", session.getAttribute(LoginSessions.LEGACY_ACCESS_TOKEN));
+        assertEquals(Map.of("accessToken", "ya29.a", "refreshToken", "1//r"), session.getAttribute(LoginSessions.LEGACY_TOKENS));
+        // La réplica anterior lee "user" con GenericJackson2JsonRedisSerializer y no tiene ProvisionalUserDTO
+        UserDTO user = session.getAttribute(LoginSessions.LEGACY_USER);
+        assertSame(UserDTO.class, user.getClass());
+        assertFalse(new String(previousVersion.serialize(user), StandardCharsets.UTF_8).contains("Provisional"));
+
+        LoginSession read = new LoginSessions(false).read(session);
+        assertEquals("ana@mobydigital.com", read.user().getEmail());
+        assertEquals("1//r", read.refreshToken());
+        assertEquals(1_700_000_000_000L, read.accessTokenExpiresAt());
+        assertTrue(read.isProvisional());
+    }
+
+    @Test
+    void conCompactLoginEncendidoMigraLasSesionesDelFormatoAnterior() {
+        MapSession session = new MapSession();
+        new LoginSessions(false).write(session, new LoginSession(user(), "ya29.a", "1//r", null));
+
+        LoginSession read = new LoginSessions(true).read(session);
+
+        assertEquals("ya29.a", read.accessToken());
+        assertEquals(read, session.getAttribute(LoginSessions.ATTRIBUTE));
+        assertEquals(Set.of(LoginSessions.ATTRIBUTE), session.getAttributeNames());
+    }
+
+    @Test
+    void conCompactLoginApagadoLeeYReescribeUnaSesionCompacta() {
+        MapSession session = new MapSession();
+        LoginSession login = new LoginSession(user(), "ya29.a", "1//r", null);
+        new LoginSessions(true).write(session, login);
+
+        LoginSessions legacy = new LoginSessions(false);
+        assertEquals(login, legacy.read(session));
+        legacy.write(session, login);
+
+        assertNull(session.getAttribute(LoginSessions.ATTRIBUTE));
+        assertEquals(login, legacy.read(session));
+    }
+
+    private static UserDTO user() {
+        UserDTO user = new UserDTO();
+        user.setName("Ana");
+        user.setEmail("ana@mobydigital.com");
+        return user;
+    }
+}
@@ -0,0 +1,113 @@
+package com.microservicios.login.session;
+
+import com.microservicios.login.redis.FakeRedisServer;
+import com.microservicios.login.token.SessionTokens;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Índice de sesiones por usuario contra {@link FakeRedisServer}. Los hashes de sesión se arman a mano con los
+ * metadatos como los deja Spring Session (números en JSON).
+ */
+class SessionIndexTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-02T12:00:00Z");
+    private static final Duration TTL = Duration.ofDays(7);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final FakeRedisServer server = new FakeRedisServer();
+    private final LettuceConnectionFactory connectionFactory = server.connectionFactory();
+    private final StringRedisTemplate redis = new StringRedisTemplate(connectionFactory);
+    private final SessionIndex index = index(NOW);
+
+    SessionIndexTest() throws IOException {
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        connectionFactory.destroy();
+        server.close();
+    }
+
+    @Test
+    void listaLasSesionesVivasYSacaDelIndiceLasQueExpiraron() {
+        index(NOW.minusSeconds(60)).add("Ana@mobydigital.com", "s1");
+        index(NOW.minusSeconds(30)).add("ana@mobydigital.com", "s2");
+        index.add("ana@mobydigital.com", "s3");
+        storeSession("s1", NOW.minusSeconds(60), NOW.minusSeconds(10));
+        storeSession("s3", NOW, NOW);
+
+        List<SessionIndex.ActiveSession> sessions = index.list("ana@mobydigital.com");
+
+        assertEquals(List.of(SessionTokens.sessionHash("s1"), SessionTokens.sessionHash("s3")),
+                sessions.stream().map(SessionIndex.ActiveSession::id).toList());
+        assertEquals(NOW.minusSeconds(60), sessions.get(0).createdAt());
+        assertEquals(NOW.minusSeconds(10).plusSeconds(3600), sessions.get(0).expiresAt());
+        assertEquals(List.of("s1", "s3"), index.sessionIds("ana@mobydigital.com"));
+        assertEquals(1, registry.counter("login.session.index.pruned").count());
+    }
+
+    @Test
+    void cadaLoginDescartaLasEntradasMasViejasQueElTtl() {
+        index(NOW.minus(TTL).minusSeconds(1)).add("ana@mobydigital.com", "vieja");
+        index.add("ana@mobydigital.com", "nueva");
+
+        assertEquals(List.of("nueva"), index.sessionIds("ana@mobydigital.com"));
+        long ttl = redis.getExpire(SessionIndex.key("ana@mobydigital.com"));
+        assertTrue(ttl > TTL.getSeconds() - 5 && ttl <= TTL.getSeconds(), "ttl=" + ttl);
+
+        index.remove("ana@mobydigital.com", "nueva");
+        assertEquals(List.of(), index.sessionIds("ana@mobydigital.com"));
+    }
+
+    @Test
+    void revocaUnaSesionPorSuIdPublicoOTodasLasDelUsuario() {
+        index.add("ana@mobydigital.com", "s1");
+        index.add("ana@mobydigital.com", "s2");
+        index.add("beto@mobydigital.com", "s3");
+        storeSession("s1", NOW, NOW);
+        storeSession("s2", NOW, NOW);
+        storeSession("s3", NOW, NOW);
+
+        // El id público de una sesión de otro usuario no sirve
+        assertNull(index.revoke("ana@mobydigital.com", SessionTokens.sessionHash("s3")));
+        assertEquals("s1", index.revoke("ana@mobydigital.com", SessionTokens.sessionHash("s1")));
+        assertFalse(redis.hasKey(SessionIndex.SESSION_KEY_PREFIX + "s1"));
+
+        assertEquals(List.of("s2"), index.revokeAll("ana@mobydigital.com"));
+        assertFalse(redis.hasKey(SessionIndex.SESSION_KEY_PREFIX + "s2"));
+        assertEquals(List.of(), index.sessionIds("ana@mobydigital.com"));
+        assertEquals(List.of(), index.revokeAll("ana@mobydigital.com"));
+
+        assertTrue(redis.hasKey(SessionIndex.SESSION_KEY_PREFIX + "s3"));
+        assertEquals(List.of("s3"), index.sessionIds("beto@mobydigital.com"));
+        assertEquals(2, registry.counter("login.session.index.revoked").count());
+    }
+
+    private SessionIndex index(Instant now) {
+        return new SessionIndex(redis, TTL, Clock.fixed(now, ZoneOffset.UTC), registry);
+    }
+
+    private void storeSession(String sessionId, Instant createdAt, Instant lastAccessedAt) {
+        redis.opsForHash().putAll(SessionIndex.SESSION_KEY_PREFIX + sessionId, Map.of(
+                "creationTime", Long.toString(createdAt.toEpochMilli()),
+                "lastAccessedTime", Long.toString(lastAccessedAt.toEpochMilli()),
+                "maxInactiveInterval", "3600"));
+    }
+}
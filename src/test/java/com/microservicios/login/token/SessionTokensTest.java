@@ -0,0 +1,78 @@
+package com.microservicios.login.token;
+
+import coms.dto.UserDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SessionTokensTest {
+
+    private static final String K1 = Base64.getEncoder().encodeToString("clave-uno-de-al-menos-32-bytes!!".getBytes());
+    private static final String K2 = Base64.getEncoder().encodeToString("clave-dos-de-al-menos-32-bytes!!".getBytes());
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Clock clock = Clock.fixed(Instant.parse("2024-05-01T12:00:00Z"), ZoneOffset.UTC);
+
+    @Test
+    void validaElTokenYDevuelveElUsuario() {
+        SessionTokens tokens = tokens("k1:" + K1, "k1", clock);
+
+        SessionTokens.Verified verified = tokens.verify(tokens.issue(user(), "sesion-1"));
+
+        assertNotNull(verified);
+        assertEquals("ana@mobydigital.com", verified.user().getEmail());
+        assertEquals("Ana", verified.user().getName());
+        assertEquals(clock.instant().plus(Duration.ofMinutes(5)), verified.expiresAt());
+    }
+
+    @Test
+    void aceptaTokensDeLaClaveAnteriorDuranteLaRotacion() {
+        String token = tokens("k1:" + K1, "k1", clock).issue(user(), "sesion-1");
+
+        assertNotNull(tokens("k1:" + K1 + ",k2:" + K2, "k2", clock).verify(token));
+        assertNull(tokens("k2:" + K2, "k2", clock).verify(token));
+    }
+
+    @Test
+    void rechazaTokensVencidosOAlterados() {
+        String token = tokens("k1:" + K1, "k1", clock).issue(user(), "sesion-1");
+        Clock later = Clock.offset(clock, Duration.ofMinutes(6));
+
+        assertNull(tokens("k1:" + K1, "k1", later).verify(token));
+        assertNull(tokens("k1:" + K1, "k1", clock).verify(token.substring(0, token.length() - 2) + "xx"));
+    }
+
+    @Test
+    void elLogoutRevocaLosTokensDeLaSesion() {
+        SessionTokens tokens = tokens("k1:" + K1, "k1", clock);
+        String token = tokens.issue(user(), "sesion-1");
+        String other = tokens.issue(user(), "sesion-2");
+
+        tokens.revokeSession("sesion-1");
+
+        assertNull(tokens.verify(token));
+        assertNotNull(tokens.verify(other));
+        assertEquals(1, registry.counter("login.session.token.verifications", "result", "revoked").count());
+    }
+
+    private SessionTokens tokens(String keyset, String activeKid, Clock clock) {
+        return new SessionTokens(SessionTokenKeys.parse(keyset, activeKid), Duration.ofMinutes(5), 100,
+                clock, null, registry);
+    }
+
+    private static UserDTO user() {
+        UserDTO user = new UserDTO();
+        user.setName("Ana");
+        user.setEmail("ana@mobydigital.com");
+        return user;
+    }
+}
@@ -0,0 +1,50 @@
+package com.microservicios.login.warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.json.gson.GsonFactory;
+import com.microservicios.login.session.LoginSessions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Fase callback contra los stubs en memoria y estado del health antes y después del warm-up.
+ */
+class WarmUpTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void elCallbackContraLosStubsVerificaElIdToken() throws Exception {
+        try (CallbackStubs stubs = new CallbackStubs(GsonFactory.getDefaultInstance(), new ObjectMapper(), null,
+                "warmup@mobydigital.com")) {
+            for (int i = 0; i < 3; i++) {
+                stubs.login();
+            }
+        }
+    }
+
+    @Test
+    void quedaFueraDeServicioHastaTerminar() {
+        WarmUp warmUp = warmUp(List.of(WarmUp.CALLBACK, "desconocida"));
+        assertEquals(Status.OUT_OF_SERVICE, warmUp.health().getStatus());
+
+        warmUp.run(-1);
+
+        // Una fase que falla no deja la réplica afuera
+        assertEquals(Status.UP, warmUp.health().getStatus());
+        assertEquals(1, registry.timer("login.warmup.phase", "phase", WarmUp.CALLBACK, "outcome", "success").count());
+        assertEquals(1, registry.timer("login.warmup.phase", "phase", "desconocida", "outcome", "error").count());
+        assertEquals(1, registry.timer("login.warmup").count());
+    }
+
+    private WarmUp warmUp(List<String> phases) {
+        return new WarmUp(true, phases, 5, 0, 1, List.of(), Duration.ofSeconds(30), null, null, null, null, null,
+                null, new LoginSessions(true), GsonFactory.getDefaultInstance(), new ObjectMapper(), null, null, null, registry);
+    }
+}